@@ -0,0 +1,145 @@
+package it.uninsubria.benchmarks;
+
+import it.uninsubria.DBConnection;
+import it.uninsubria.bulk.DatasetGenerator;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * Fixture loader of the database used by the benchmarks.
+ * The benchmarks run against a dedicated local database
+ * (by default {@code jdbc:postgresql://localhost:5432/theknife_bench}, owned by the {@code theknife} user,
+ * or the local database started by {@link BenchmarkRunner}),
+ * which is filled with a synthetic dataset of the requested size the first time it is used.
+ * The dataset is regenerated only when the requested size or seed change.
+ * <p>
+ * Configuration through system properties:
+ * {@code theknife.db.url}, {@code theknife.db.user}, {@code theknife.db.password},
+ * {@code theknife.bench.users}, {@code theknife.bench.restaurants}, {@code theknife.bench.reviews},
+ * {@code theknife.bench.favorites} and {@code theknife.bench.seed}.
+ *
+ * @author Lorenzo Radice
+ */
+public class BenchmarkDatabase {
+    /** Default URL of the benchmark database */
+    private static final String DEFAULT_URL = "jdbc:postgresql://localhost:5432/theknife_bench";
+    /** Table creation scripts, in foreign key order */
+    private static final String[] TABLE_SCRIPTS = {"addresses", "users", "restaurants", "favorites", "reviews"};
+    /** Query to read the description of the loaded fixture */
+    private static final String QUERY_FIXTURE = "SELECT seed, users, restaurants, reviews, favorites FROM benchmark_fixture";
+    /** Whether the fixture has already been checked by this JVM */
+    private static boolean ready = false;
+
+    /**
+     * Private constructor to prevent instantiation.
+     */
+    private BenchmarkDatabase() {}
+
+    /**
+     * Connects to the benchmark database and loads the fixture if it is missing or outdated.
+     * @throws Exception if the database cannot be prepared
+     */
+    public static synchronized void ensureFixture() throws Exception {
+        if (ready) {
+            return;
+        }
+        if (System.getProperty("theknife.db.url") == null) {
+            System.setProperty("theknife.db.url", DEFAULT_URL);
+        }
+        DBConnection.login(new String[]{
+                System.getProperty("theknife.db.user", "theknife"),
+                System.getProperty("theknife.db.password", "password")});
+        long seed = Long.getLong("theknife.bench.seed", 42L);
+        int users = Integer.getInteger("theknife.bench.users", 20_000);
+        int restaurants = Integer.getInteger("theknife.bench.restaurants", 100_000);
+        int reviews = Integer.getInteger("theknife.bench.reviews", 200_000);
+        int favorites = Integer.getInteger("theknife.bench.favorites", 50_000);
+        Connection conn = DBConnection.getConnection();
+        createSchema(conn);
+        if (!isLoaded(conn, seed, users, restaurants, reviews, favorites)) {
+            System.out.println("Loading benchmark fixture...");
+            try (Statement stmt = conn.createStatement()) {
+                stmt.executeUpdate("TRUNCATE reviews, favorites, restaurants, users, addresses, benchmark_fixture CASCADE");
+            }
+            new DatasetGenerator(seed, users, restaurants, reviews, favorites)
+                    .load(Runtime.getRuntime().availableProcessors());
+            try (PreparedStatement stmt = conn.prepareStatement("INSERT INTO benchmark_fixture VALUES (?, ?, ?, ?, ?)")) {
+                stmt.setLong(1, seed);
+                stmt.setInt(2, users);
+                stmt.setInt(3, restaurants);
+                stmt.setInt(4, reviews);
+                stmt.setInt(5, favorites);
+                stmt.executeUpdate();
+            }
+        }
+        ready = true;
+    }
+
+    /**
+     * Creates the tables of the application if they do not exist yet.
+     * @param conn database connection
+     * @throws SQLException if the tables cannot be created
+     * @throws IOException if a creation script cannot be read
+     */
+    private static void createSchema(Connection conn) throws SQLException, IOException {
+        try (Statement stmt = conn.createStatement()) {
+            ResultSet rs = stmt.executeQuery("SELECT to_regclass('reviews') IS NOT NULL");
+            rs.next();
+            if (!rs.getBoolean(1)) {
+                for (String table : TABLE_SCRIPTS) {
+                    stmt.execute(readScript("/db/tables/" + table + ".sql"));
+                }
+            }
+            // The addresses and reviews scripts are idempotent and add the columns and indexes
+            // introduced after older fixtures were loaded
+            stmt.execute(readScript("/db/tables/addresses.sql"));
+            stmt.execute(readScript("/db/tables/reviews.sql"));
+            // The writes are measured with the change notification triggers, as on the server database
+            stmt.execute(readScript("/db/notify_changes.sql"));
+            stmt.execute("CREATE TABLE IF NOT EXISTS benchmark_fixture (" +
+                    "seed BIGINT, users INT, restaurants INT, reviews INT, favorites INT)");
+        }
+    }
+
+    /**
+     * Checks whether the loaded fixture matches the requested one.
+     * @param conn database connection
+     * @param seed seed of the dataset
+     * @param users number of users
+     * @param restaurants number of restaurants
+     * @param reviews number of reviews
+     * @param favorites number of favorites
+     * @return true if the fixture is already loaded
+     * @throws SQLException if the fixture cannot be checked
+     */
+    private static boolean isLoaded(Connection conn, long seed, int users, int restaurants, int reviews, int favorites)
+            throws SQLException {
+        try (Statement stmt = conn.createStatement(); ResultSet rs = stmt.executeQuery(QUERY_FIXTURE)) {
+            return rs.next() && rs.getLong("seed") == seed && rs.getInt("users") == users
+                    && rs.getInt("restaurants") == restaurants && rs.getInt("reviews") == reviews
+                    && rs.getInt("favorites") == favorites;
+        }
+    }
+
+    /**
+     * Reads an SQL script from the resources of the server.
+     * @param resource path of the script
+     * @return content of the script
+     * @throws IOException if the script cannot be read
+     */
+    private static String readScript(String resource) throws IOException {
+        try (InputStream in = DBConnection.class.getResourceAsStream(resource)) {
+            if (in == null) {
+                throw new IOException("Missing resource " + resource);
+            }
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package it.uninsubria.benchmarks;
+
+import it.uninsubria.testsupport.LocalDatabase;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Entry point of the benchmarks.
+ * Runs the benchmarks matching a regular expression and writes the results as JSON,
+ * so that different runs can be compared.
+ * Usage: {@code java -jar benchmarks.jar [regex] [result.json]}.
+ * <p>
+ * Unless a database is given with {@code -Dtheknife.db.url}, a {@link LocalDatabase} is started
+ * for the whole run and passed to the forked benchmark JVMs, so no PostgreSQL has to be installed.
+ *
+ * @author Lorenzo Radice
+ */
+public class BenchmarkRunner {
+    /**
+     * Main method for the benchmarks
+     * @param args command line arguments: benchmark filter and result file
+     * @throws Exception if the benchmarks cannot be run
+     */
+    public static void main(String[] args) throws Exception {
+        String include = args.length >= 1 ? args[0] : "it.uninsubria.benchmarks.*";
+        String result = args.length >= 2 ? args[1] : "jmh-result.json";
+        ChainedOptionsBuilder options = new OptionsBuilder()
+                .include(include)
+                .resultFormat(ResultFormatType.JSON)
+                .result(result);
+        if (System.getProperty("theknife.db.url") != null) {
+            new Runner(options.build()).run();
+        } else {
+            try (LocalDatabase database = LocalDatabase.start(false)) {
+                options.jvmArgsAppend("-Dtheknife.db.url=" + database.getUrl(),
+                        "-Dtheknife.db.user=" + LocalDatabase.USER,
+                        "-Dtheknife.db.password=" + LocalDatabase.PASSWORD);
+                new Runner(options.build()).run();
+            }
+        }
+        System.out.println("Results written to " + result);
+    }
+}
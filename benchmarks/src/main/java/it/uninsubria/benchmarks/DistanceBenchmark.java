@@ -0,0 +1,110 @@
+package it.uninsubria.benchmarks;
+
+import it.uninsubria.DBConnection;
+import org.openjdk.jmh.annotations.*;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark of the database cost of the Haversine distance per scanned row, computed from the coordinates
+ * in degrees or from the trigonometric columns stored in the addresses.
+ * Both expressions are summed over a table of {@value #ROWS} random points with the columns of the addresses,
+ * so that the results are in nanoseconds per row.
+ *
+ * @author Lorenzo Radice
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@OperationsPerInvocation(DistanceBenchmark.ROWS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class DistanceBenchmark {
+    /** Number of scanned points */
+    static final int ROWS = 1_000_000;
+    /** Distance computed from the coordinates in degrees, as before the trigonometric columns */
+    private static final String QUERY_RADIANS = "SELECT SUM(6371 * ACOS(LEAST(1, " +
+            "COS(RADIANS(?)) * COS(RADIANS(latitude)) * COS(RADIANS(longitude) - RADIANS(?)) + " +
+            "SIN(RADIANS(?)) * SIN(RADIANS(latitude))))) FROM distance_points";
+    /** Distance computed from the trigonometric columns */
+    private static final String QUERY_PRECOMPUTED = "SELECT SUM(6371 * ACOS(LEAST(1, " +
+            "COS(RADIANS(?)) * lat_cos * COS(lon_rad - RADIANS(?)) + SIN(RADIANS(?)) * lat_sin))) FROM distance_points";
+    /** Latitude of the search */
+    private static final double LATITUDE = 45.4642;
+    /** Longitude of the search */
+    private static final double LONGITUDE = 9.1900;
+
+    /**
+     * Creates the table of points if it is missing.
+     * @throws Exception if the database cannot be prepared
+     */
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        BenchmarkDatabase.ensureFixture();
+        Connection conn = DBConnection.getConnection();
+        try (Statement stmt = conn.createStatement()) {
+            ResultSet rs = stmt.executeQuery("SELECT to_regclass('distance_points') IS NOT NULL");
+            rs.next();
+            if (!rs.getBoolean(1)) {
+                // Same columns and generation expressions as the addresses
+                stmt.execute("CREATE TABLE distance_points (LIKE addresses INCLUDING GENERATED)");
+                stmt.executeUpdate("INSERT INTO distance_points (address_id, country, city, street, latitude, longitude) " +
+                        "SELECT g, 'Italy', 'Milano', 'Via Roma', random() * 180 - 90, random() * 360 - 180 " +
+                        "FROM generate_series(1, " + ROWS + ") g");
+                stmt.execute("VACUUM ANALYZE distance_points");
+            }
+        }
+    }
+
+    /**
+     * Closes the database connection.
+     */
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        DBConnection.closeConnection();
+    }
+
+    /**
+     * Sums the distances computed from the coordinates in degrees.
+     * @return the sum of the distances
+     * @throws SQLException if the query fails
+     */
+    @Benchmark
+    public double radians() throws SQLException {
+        return sum(QUERY_RADIANS);
+    }
+
+    /**
+     * Sums the distances computed from the trigonometric columns.
+     * @return the sum of the distances
+     * @throws SQLException if the query fails
+     */
+    @Benchmark
+    public double precomputed() throws SQLException {
+        return sum(QUERY_PRECOMPUTED);
+    }
+
+    /**
+     * Runs a sum of the distances from the search position, whose latitude, longitude and latitude are the parameters.
+     * @param query query to run
+     * @return the sum of the distances
+     * @throws SQLException if the query fails
+     */
+    private static double sum(String query) throws SQLException {
+        try (PreparedStatement stmt = DBConnection.getConnection().prepareStatement(query)) {
+            stmt.setDouble(1, LATITUDE);
+            stmt.setDouble(2, LONGITUDE);
+            stmt.setDouble(3, LATITUDE);
+            try (ResultSet rs = stmt.executeQuery()) {
+                rs.next();
+                return rs.getDouble(1);
+            }
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package it.uninsubria.benchmarks;
+
+import it.uninsubria.dto.CuisineType;
+import it.uninsubria.dto.UserDTO;
+import it.uninsubria.utilclient.ClientUtil;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark of the CPU-bound helpers on the request paths:
+ * {@link CuisineType#fromDisplayName(String)} and {@link ClientUtil#calculateDistance(double, double, double, double)}.
+ *
+ * @author Lorenzo Radice
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class LookupBenchmark {
+    /** Latitude of the first point */
+    private double lat1 = 45.8081;
+    /** Longitude of the first point */
+    private double lon1 = 9.0852;
+    /** Latitude of the second point */
+    private double lat2 = 45.4642;
+    /** Longitude of the second point */
+    private double lon2 = 9.1900;
+
+    /**
+     * Looks up a cuisine by display name.
+     * @param name display name to look up
+     * @return the found cuisine, or null
+     */
+    @Benchmark
+    public CuisineType cuisineFromDisplayName(CuisineName name) {
+        return CuisineType.fromDisplayName(name.cuisine);
+    }
+
+    /**
+     * Computes the distance between two points.
+     * @return the distance in kilometers
+     */
+    @Benchmark
+    public double calculateDistance() {
+        return ClientUtil.calculateDistance(lat1, lon1, lat2, lon2);
+    }
+
+    /**
+     * Display name looked up by {@link #cuisineFromDisplayName(CuisineName)}.
+     */
+    @State(Scope.Thread)
+    public static class CuisineName {
+        /** Display name to look up: first, middle and last constant, and an unknown name */
+        @Param({"Afghan", "Italian", "Zhejiang", "Unknown"})
+        public String cuisine;
+    }
+
+    /**
+     * Benchmark of the argon2 hashing and verification of a password, which dominate the registration and login costs.
+     */
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @Warmup(iterations = 2, time = 2)
+    @Measurement(iterations = 3, time = 2)
+    @State(Scope.Thread)
+    public static class PasswordBenchmark {
+        /** User credentials as sent by the client */
+        private UserDTO credentials;
+        /** User record holding the stored hash */
+        private UserDTO record;
+
+        /**
+         * Hashes the password once.
+         */
+        @Setup
+        public void setUp() {
+            credentials = new UserDTO("user", "password");
+            record = new UserDTO("user", credentials.getHashedPassword());
+        }
+
+        /**
+         * Verifies the password against the stored hash.
+         * @return true if the password matches
+         */
+        @Benchmark
+        public boolean verifyPassword() {
+            return record.verifyPassword("password");
+        }
+
+        /**
+         * Hashes a password as the registration does.
+         * @return the hash
+         */
+        @Benchmark
+        public String hashPassword() {
+            return credentials.getHashedPassword();
+        }
+    }
+}
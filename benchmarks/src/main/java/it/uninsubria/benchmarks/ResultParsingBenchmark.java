@@ -0,0 +1,93 @@
+package it.uninsubria.benchmarks;
+
+import it.uninsubria.DBConnection;
+import it.uninsubria.dao.RestaurantDAO;
+import it.uninsubria.dao.ReviewDAO;
+import it.uninsubria.dto.RestaurantDTO;
+import it.uninsubria.dto.ReviewDTO;
+import org.openjdk.jmh.annotations.*;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark of the conversion of query results to DTOs:
+ * {@link RestaurantDAO#parseSQLRestaurantResults(ResultSet)} and {@link ReviewDAO#parseReviewResultSet(ResultSet)}.
+ * The result sets are fetched once and rewound before every invocation,
+ * so that only the parsing (including the per-row lookups of the restaurant parser) is measured.
+ *
+ * @author Lorenzo Radice
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ResultParsingBenchmark {
+    /** Number of rows of the result sets */
+    @Param({"25"})
+    public int rows;
+    /** Statement of the restaurant rows */
+    private PreparedStatement restaurantStmt;
+    /** Statement of the review rows */
+    private PreparedStatement reviewStmt;
+    /** Restaurant rows */
+    private ResultSet restaurants;
+    /** Review rows */
+    private ResultSet reviews;
+
+    /**
+     * Prepares the database and fetches the result sets.
+     * @throws Exception if the database cannot be prepared
+     */
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        BenchmarkDatabase.ensureFixture();
+        restaurantStmt = DBConnection.getConnection().prepareStatement(
+                "SELECT *, 0 AS distance FROM restaurants ORDER BY restaurant_id LIMIT ?",
+                ResultSet.TYPE_SCROLL_INSENSITIVE, ResultSet.CONCUR_READ_ONLY);
+        restaurantStmt.setInt(1, rows);
+        restaurants = restaurantStmt.executeQuery();
+        reviewStmt = DBConnection.getConnection().prepareStatement(
+                "SELECT * FROM reviews LIMIT ?",
+                ResultSet.TYPE_SCROLL_INSENSITIVE, ResultSet.CONCUR_READ_ONLY);
+        reviewStmt.setInt(1, rows);
+        reviews = reviewStmt.executeQuery();
+    }
+
+    /**
+     * Releases the result sets and the database connection.
+     * @throws Exception if the resources cannot be released
+     */
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        restaurantStmt.close();
+        reviewStmt.close();
+        DBConnection.closeConnection();
+    }
+
+    /**
+     * Parses the restaurant rows.
+     * @return the parsed restaurants
+     * @throws Exception if the rows cannot be parsed
+     */
+    @Benchmark
+    public List<RestaurantDTO> parseRestaurants() throws Exception {
+        restaurants.beforeFirst();
+        return RestaurantDAO.parseSQLRestaurantResults(restaurants);
+    }
+
+    /**
+     * Parses the review rows.
+     * @return the parsed reviews
+     * @throws Exception if the rows cannot be parsed
+     */
+    @Benchmark
+    public List<ReviewDTO> parseReviews() throws Exception {
+        reviews.beforeFirst();
+        return ReviewDAO.parseReviewResultSet(reviews);
+    }
+}
@@ -0,0 +1,92 @@
+package it.uninsubria.benchmarks;
+
+import it.uninsubria.DBConnection;
+import it.uninsubria.dao.RestaurantDAO;
+import it.uninsubria.dto.CuisineType;
+import it.uninsubria.dto.RestaurantDTO;
+import it.uninsubria.dto.SearchCriteriaDTO;
+import org.openjdk.jmh.annotations.*;
+
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark of {@link RestaurantDAO#searchRestaurants(SearchCriteriaDTO)} with different filter combinations.
+ * Runs against the benchmark database prepared by {@link BenchmarkDatabase}.
+ *
+ * @author Lorenzo Radice
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SearchBenchmark {
+    /** Filters applied to the search */
+    @Param({"none", "cuisine", "price", "services", "rating", "all"})
+    public String filters;
+    /** Search position, as latitude and longitude */
+    @Param({"45.4642,9.1900", "35.6762,139.6503"})
+    public String position;
+    /** Criteria of the search */
+    private SearchCriteriaDTO criteria;
+
+    /**
+     * Prepares the database and the search criteria.
+     * @throws Exception if the database cannot be prepared
+     */
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        BenchmarkDatabase.ensureFixture();
+        String[] coordinates = position.split(",");
+        SearchCriteriaDTO.Builder builder = SearchCriteriaDTO.builder()
+                .coordinates(Double.parseDouble(coordinates[0]), Double.parseDouble(coordinates[1]));
+        if (filters.equals("cuisine") || filters.equals("all")) {
+            builder.cuisineType(mostCommonCuisine());
+        }
+        if (filters.equals("price") || filters.equals("all")) {
+            builder.priceRange(15.0, 60.0);
+        }
+        if (filters.equals("services") || filters.equals("all")) {
+            builder.deliveryAvailable(true).onlineBookingAvailable(true);
+        }
+        if (filters.equals("rating") || filters.equals("all")) {
+            builder.minRating(4);
+        }
+        criteria = builder.build();
+    }
+
+    /**
+     * Closes the database connection.
+     */
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        DBConnection.closeConnection();
+    }
+
+    /**
+     * Searches the restaurants closest to the position.
+     * @return the found restaurants
+     */
+    @Benchmark
+    public List<RestaurantDTO> search() {
+        return RestaurantDAO.searchRestaurants(criteria);
+    }
+
+    /**
+     * Finds the cuisine of most restaurants, so that the cuisine filter always has matches.
+     * @return the most common cuisine
+     * @throws Exception if the query fails
+     */
+    private static CuisineType mostCommonCuisine() throws Exception {
+        try (Statement stmt = DBConnection.getConnection().createStatement();
+             ResultSet rs = stmt.executeQuery(
+                     "SELECT r_type FROM restaurants GROUP BY r_type ORDER BY COUNT(*) DESC LIMIT 1")) {
+            rs.next();
+            return CuisineType.fromDisplayName(rs.getString(1));
+        }
+    }
+}
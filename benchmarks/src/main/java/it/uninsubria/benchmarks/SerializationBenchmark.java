@@ -0,0 +1,121 @@
+package it.uninsubria.benchmarks;
+
+import it.uninsubria.dto.AddressDTO;
+import it.uninsubria.dto.CuisineType;
+import it.uninsubria.dto.RestaurantDTO;
+import it.uninsubria.dto.ReviewDTO;
+import it.uninsubria.dto.SearchCriteriaDTO;
+import it.uninsubria.dto.UserDTO;
+import it.uninsubria.dto.UserRoleDTO;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.sql.Date;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark of the Java serialization round trips of the DTOs exchanged over RMI.
+ *
+ * @author Lorenzo Radice
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class SerializationBenchmark {
+    /** A page of search results */
+    private List<RestaurantDTO> restaurants;
+    /** The reviews of a restaurant */
+    private List<ReviewDTO> reviews;
+    /** Search criteria with every filter */
+    private SearchCriteriaDTO criteria;
+    /** A complete user */
+    private UserDTO user;
+
+    /**
+     * Builds the objects to serialize.
+     */
+    @Setup
+    public void setUp() {
+        restaurants = new ArrayList<>();
+        reviews = new ArrayList<>();
+        for (int i = 0; i < 25; i++) {
+            AddressDTO address = new AddressDTO("Italy", "Milan", "Via Roma", String.valueOf(i), 45.46 + i / 1000.0, 9.19);
+            RestaurantDTO restaurant = new RestaurantDTO(String.valueOf(i), "owner" + i, "Restaurant " + i,
+                    30.0, true, false, CuisineType.values()[i], address);
+            restaurant.setAvgRating(4.2);
+            restaurant.setReviewsNumber(17);
+            restaurants.add(restaurant);
+            reviews.add(new ReviewDTO("user" + i, "1", 4, "Great food and friendly staff!", i % 3 == 0 ? "Thank you!" : null));
+        }
+        criteria = SearchCriteriaDTO.builder().coordinates(45.46, 9.19).cuisineType(CuisineType.ITALIAN)
+                .priceRange(10.0, 50.0).deliveryAvailable(true).onlineBookingAvailable(true).minRating(3).build();
+        user = new UserDTO("user", "password", "Anna", "Rossi", Date.valueOf("1990-01-01"), UserRoleDTO.CLIENT,
+                new AddressDTO("Italy", "Como", "Via Valleggio", "11", 45.80, 9.08));
+    }
+
+    /**
+     * Round trip of a page of search results.
+     * @return the deserialized copy
+     * @throws Exception if the serialization fails
+     */
+    @Benchmark
+    public Object restaurantPage() throws Exception {
+        return roundTrip(restaurants);
+    }
+
+    /**
+     * Round trip of the reviews of a restaurant.
+     * @return the deserialized copy
+     * @throws Exception if the serialization fails
+     */
+    @Benchmark
+    public Object reviewPage() throws Exception {
+        return roundTrip(reviews);
+    }
+
+    /**
+     * Round trip of search criteria.
+     * @return the deserialized copy
+     * @throws Exception if the serialization fails
+     */
+    @Benchmark
+    public Object searchCriteria() throws Exception {
+        return roundTrip(criteria);
+    }
+
+    /**
+     * Round trip of a user.
+     * @return the deserialized copy
+     * @throws Exception if the serialization fails
+     */
+    @Benchmark
+    public Object user() throws Exception {
+        return roundTrip(user);
+    }
+
+    /**
+     * Serializes and deserializes an object, as RMI does for arguments and results.
+     * @param object object to copy
+     * @return the deserialized copy
+     * @throws IOException if the serialization fails
+     * @throws ClassNotFoundException if the deserialization fails
+     */
+    private static Object roundTrip(Object object) throws IOException, ClassNotFoundException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(object);
+        }
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+            return in.readObject();
+        }
+    }
+}
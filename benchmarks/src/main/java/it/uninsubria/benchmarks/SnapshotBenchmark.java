@@ -0,0 +1,131 @@
+package it.uninsubria.benchmarks;
+
+import it.uninsubria.dto.AddressDTO;
+import it.uninsubria.dto.CuisineType;
+import it.uninsubria.dto.RestaurantDTO;
+import it.uninsubria.dto.SearchCriteriaDTO;
+import it.uninsubria.search.RestaurantSnapshot;
+import it.uninsubria.utilclient.ClientUtil;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark of the in-memory search of the closest matching restaurants, on the columnar
+ * {@link RestaurantSnapshot} and on a list of {@link RestaurantDTO}, over the same random restaurants.
+ * No database is needed.
+ *
+ * @author Lorenzo Radice
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SnapshotBenchmark {
+    /** Number of returned restaurants */
+    private static final int LIMIT = 25;
+    /** Number of restaurants */
+    @Param({"100000", "1000000"})
+    public int restaurants;
+    /** Filters applied to the search */
+    @Param({"none", "all"})
+    public String filters;
+    /** Columnar snapshot of the restaurants */
+    private RestaurantSnapshot snapshot;
+    /** Object graph of the same restaurants */
+    private List<RestaurantDTO> list;
+    /** Criteria of the search */
+    private SearchCriteriaDTO criteria;
+
+    /**
+     * Generates the restaurants and the search criteria.
+     */
+    @Setup(Level.Trial)
+    public void setUp() {
+        Random random = new Random(42);
+        CuisineType[] cuisines = CuisineType.values();
+        RestaurantSnapshot.Builder builder = new RestaurantSnapshot.Builder();
+        list = new ArrayList<>(restaurants);
+        for (int i = 0; i < restaurants; i++) {
+            double latitude = 36 + random.nextDouble() * 11;
+            double longitude = 6 + random.nextDouble() * 12;
+            CuisineType cuisine = cuisines[random.nextInt(20)];
+            double price = 10 + random.nextInt(150);
+            boolean delivery = random.nextBoolean();
+            boolean booking = random.nextBoolean();
+            Double rating = random.nextInt(5) == 0 ? null : 1 + random.nextDouble() * 4;
+            builder.add(i + 1, i + 1, "owner", "Restaurant " + i, latitude, longitude, cuisine, price,
+                    delivery, booking, rating, rating == null ? 0 : 1 + random.nextInt(50));
+            RestaurantDTO restaurant = new RestaurantDTO(String.valueOf(i + 1), "owner", "Restaurant " + i, price,
+                    delivery, booking, cuisine, new AddressDTO("Italy", "City", "Street", "1", latitude, longitude));
+            restaurant.setAvgRating(rating);
+            list.add(restaurant);
+        }
+        snapshot = builder.build();
+        SearchCriteriaDTO.Builder search = SearchCriteriaDTO.builder().coordinates(45.4642, 9.1900);
+        if (filters.equals("all")) {
+            search.cuisineType(cuisines[3]).priceRange(15.0, 60.0).deliveryAvailable(true).minRating(3);
+        }
+        criteria = search.build();
+    }
+
+    /**
+     * Searches the columnar snapshot.
+     * @return rows of the closest matching restaurants
+     */
+    @Benchmark
+    public int[] snapshot() {
+        return snapshot.searchRows(criteria, LIMIT);
+    }
+
+    /**
+     * Searches the list of DTOs, keeping the closest matches in a bounded priority queue.
+     * @return the closest matching restaurants
+     */
+    @Benchmark
+    public List<RestaurantDTO> objectGraph() {
+        double latitude = criteria.getLatitude();
+        double longitude = criteria.getLongitude();
+        PriorityQueue<Object[]> closest = new PriorityQueue<>(LIMIT + 1,
+                Comparator.comparingDouble((Object[] entry) -> (Double) entry[0]).reversed());
+        for (RestaurantDTO restaurant : list) {
+            if (!matches(restaurant)) {
+                continue;
+            }
+            AddressDTO address = restaurant.getAddress();
+            double distance = ClientUtil.calculateDistance(latitude, longitude, address.getLatitude(), address.getLongitude());
+            if (closest.size() < LIMIT) {
+                closest.add(new Object[]{distance, restaurant});
+            } else if (distance < (Double) closest.peek()[0]) {
+                closest.poll();
+                closest.add(new Object[]{distance, restaurant});
+            }
+        }
+        List<RestaurantDTO> result = new ArrayList<>(closest.size());
+        while (!closest.isEmpty()) {
+            result.add(0, (RestaurantDTO) closest.poll()[1]);
+        }
+        return result;
+    }
+
+    /**
+     * Checks the filters of the criteria on a DTO.
+     * @param restaurant restaurant to check
+     * @return true if the restaurant matches every filter
+     */
+    private boolean matches(RestaurantDTO restaurant) {
+        return (criteria.getCuisineType() == null || restaurant.getR_type() == criteria.getCuisineType())
+                && (criteria.getMinPrice() == null || restaurant.getAvg_price() >= criteria.getMinPrice())
+                && (criteria.getMaxPrice() == null || restaurant.getAvg_price() <= criteria.getMaxPrice())
+                && (criteria.getDeliveryAvailable() == null || restaurant.getDelivery().equals(criteria.getDeliveryAvailable()))
+                && (criteria.getOnlineBookingAvailable() == null || restaurant.getBooking().equals(criteria.getOnlineBookingAvailable()))
+                && (criteria.getMinRating() == null || (restaurant.getAvgRating() != null && restaurant.getAvgRating() >= criteria.getMinRating()));
+    }
+}
@@ -0,0 +1,291 @@
+package it.uninsubria.loadtest;
+
+import it.uninsubria.balancing.LoadBalancer;
+import it.uninsubria.metrics.LatencyHistogram;
+import it.uninsubria.services.RestaurantService;
+import it.uninsubria.services.ReviewService;
+import it.uninsubria.services.UserService;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Headless load generator for the server.
+ * Many threads, each one a {@link VirtualClient}, call the services through their real RMI stubs
+ * following a {@link ScenarioMix}, and the throughput and latency percentiles of every operation are reported.
+ * <p>
+ * Two modes are supported:
+ * <ul>
+ *     <li>closed loop (default): every thread sends a request as soon as the previous one completes,
+ *     optionally after a think time, so the load adapts to the speed of the server;</li>
+ *     <li>open loop ({@code --rate}): requests are scheduled at a fixed total rate, spread over the threads,
+ *     regardless of how fast the server answers.
+ *     Latencies are measured from the scheduled start of every request instead of its actual start,
+ *     so that the time a request waits behind a slow one is counted (no coordinated omission).
+ *     The number of threads must be large enough to sustain the rate, otherwise the report shows the queueing.</li>
+ * </ul>
+ * Usage: {@code java -cp benchmarks.jar it.uninsubria.loadtest.LoadGenerator [options]}, with options
+ * {@code --host}, {@code --port}, {@code --servers} (comma-separated {@code host:port} list of a fleet,
+ * balanced by a {@link LoadBalancer}, instead of host and port),
+ * {@code --threads}, {@code --duration} and {@code --warmup} (seconds),
+ * {@code --rate} (requests per second, open loop), {@code --think} (milliseconds, closed loop),
+ * {@code --mix}, {@code --users}, {@code --restaurants} (size of the dataset), {@code --password} and {@code --seed}.
+ *
+ * @author Lorenzo Radice
+ */
+public class LoadGenerator {
+    /** Default values of the options */
+    private static final String[][] DEFAULTS = {
+            {"host", "localhost"}, {"port", "1099"}, {"servers", ""}, {"threads", "32"}, {"duration", "60"}, {"warmup", "10"},
+            {"rate", "0"}, {"think", "0"}, {"mix", ScenarioMix.DEFAULT}, {"users", "20000"},
+            {"restaurants", "100000"}, {"password", "password"}, {"seed", "42"}};
+    /** Percentiles shown in the report */
+    private static final double[] PERCENTILES = {50, 95, 99, 99.9};
+
+    /** User service stub */
+    private final UserService userService;
+    /** Restaurant service stub */
+    private final RestaurantService restaurantService;
+    /** Review service stub */
+    private final ReviewService reviewService;
+    /** Options of the run */
+    private final Map<String, String> options;
+
+    /**
+     * Constructor for LoadGenerator
+     * @param options options of the run
+     * @throws Exception if the services cannot be found in the registry
+     */
+    public LoadGenerator(Map<String, String> options) throws Exception {
+        this.options = options;
+        String servers = options.get("servers");
+        if (servers.isEmpty()) {
+            servers = options.get("host") + ":" + options.get("port");
+        }
+        LoadBalancer balancer = LoadBalancer.of(servers, Integer.parseInt(options.get("port")));
+        userService = balancer.service(UserService.class, "UserService");
+        restaurantService = balancer.service(RestaurantService.class, "RestaurantService",
+                RestaurantService.USER_AFFINITY);
+        reviewService = balancer.service(ReviewService.class, "ReviewService");
+    }
+
+    /**
+     * Main method of the load generator
+     * @param args command line options, as {@code --name value} pairs
+     * @throws Exception if the run cannot be started
+     */
+    public static void main(String[] args) throws Exception {
+        new LoadGenerator(parseOptions(args)).run();
+    }
+
+    /**
+     * Parses the command line options, filling in the defaults.
+     * @param args command line options, as {@code --name value} pairs
+     * @return the options by name
+     * @throws IllegalArgumentException if an option is unknown or has no value
+     */
+    static Map<String, String> parseOptions(String[] args) {
+        Map<String, String> options = new HashMap<>();
+        for (String[] option : DEFAULTS) {
+            options.put(option[0], option[1]);
+        }
+        for (int i = 0; i < args.length; i += 2) {
+            String name = args[i].startsWith("--") ? args[i].substring(2) : args[i];
+            if (!options.containsKey(name) || i + 1 >= args.length) {
+                throw new IllegalArgumentException("Unknown option or missing value: " + args[i]);
+            }
+            options.put(name, args[i + 1]);
+        }
+        return options;
+    }
+
+    /**
+     * Runs the load and prints the report.
+     * @throws InterruptedException if interrupted while waiting for the threads
+     */
+    public void run() throws InterruptedException {
+        int threads = Integer.parseInt(options.get("threads"));
+        double rate = Double.parseDouble(options.get("rate"));
+        long think = TimeUnit.MILLISECONDS.toNanos(Long.parseLong(options.get("think")));
+        long warmup = TimeUnit.SECONDS.toNanos(Long.parseLong(options.get("warmup")));
+        long duration = TimeUnit.SECONDS.toNanos(Long.parseLong(options.get("duration")));
+        ScenarioMix mix = ScenarioMix.parse(options.get("mix"));
+        int users = Integer.parseInt(options.get("users"));
+        int restaurants = Integer.parseInt(options.get("restaurants"));
+        SplittableRandom root = new SplittableRandom(Long.parseLong(options.get("seed")));
+        // Interval between two requests of the same thread in open loop
+        long interval = rate > 0 ? (long) (TimeUnit.SECONDS.toNanos(1) * threads / rate) : 0;
+
+        System.out.printf(Locale.ROOT, "Running %s loop with %d threads for %d s (+%d s warmup)%s%n",
+                rate > 0 ? "open" : "closed", threads, TimeUnit.NANOSECONDS.toSeconds(duration),
+                TimeUnit.NANOSECONDS.toSeconds(warmup), rate > 0 ? " at " + rate + " requests/s" : "");
+        long start = System.nanoTime();
+        long measureStart = start + warmup;
+        long end = measureStart + duration;
+        List<Worker> workers = new ArrayList<>();
+        for (int i = 0; i < threads; i++) {
+            VirtualClient client = new VirtualClient(userService, restaurantService, reviewService,
+                    root.split(), users, restaurants, options.get("password"));
+            // Threads are staggered so that open loop requests are spread evenly over the interval
+            Worker worker = new Worker(client, mix, root.split(), start + interval * i / threads,
+                    interval, think, measureStart, end);
+            worker.setName("load-" + i);
+            workers.add(worker);
+            worker.start();
+        }
+        LatencyHistogram[] latencies = new LatencyHistogram[Operation.values().length];
+        long[] errors = new long[latencies.length];
+        for (int i = 0; i < latencies.length; i++) {
+            latencies[i] = new LatencyHistogram();
+        }
+        for (Worker worker : workers) {
+            worker.join();
+            for (int i = 0; i < latencies.length; i++) {
+                latencies[i].add(worker.latencies[i]);
+                errors[i] += worker.errors[i];
+            }
+        }
+        printReport(latencies, errors, duration);
+    }
+
+    /**
+     * Prints throughput and latency percentiles of every operation.
+     * @param latencies latencies of the operations, in nanoseconds
+     * @param errors number of failed calls of the operations
+     * @param duration length of the measurement, in nanoseconds
+     */
+    private static void printReport(LatencyHistogram[] latencies, long[] errors, long duration) {
+        double seconds = duration / 1e9;
+        LatencyHistogram all = new LatencyHistogram();
+        long allErrors = 0;
+        System.out.printf(Locale.ROOT, "%n%-10s %10s %8s %10s %9s %9s %9s %9s %9s %9s%n", "operation",
+                "count", "errors", "ops/s", "mean ms", "p50 ms", "p95 ms", "p99 ms", "p99.9 ms", "max ms");
+        for (Operation operation : Operation.values()) {
+            LatencyHistogram histogram = latencies[operation.ordinal()];
+            if (histogram.getCount() > 0) {
+                printRow(operation.getName(), histogram, errors[operation.ordinal()], seconds);
+                all.add(histogram);
+                allErrors += errors[operation.ordinal()];
+            }
+        }
+        printRow("total", all, allErrors, seconds);
+    }
+
+    /**
+     * Prints a row of the report.
+     * @param name name of the row
+     * @param histogram latencies, in nanoseconds
+     * @param errors number of failed calls
+     * @param seconds length of the measurement, in seconds
+     */
+    private static void printRow(String name, LatencyHistogram histogram, long errors, double seconds) {
+        StringBuilder row = new StringBuilder(String.format(Locale.ROOT, "%-10s %10d %8d %10.1f %9.2f",
+                name, histogram.getCount(), errors, histogram.getCount() / seconds, histogram.getMean() / 1e6));
+        for (double percentile : PERCENTILES) {
+            row.append(String.format(Locale.ROOT, " %9.2f", histogram.getValueAtPercentile(percentile) / 1e6));
+        }
+        row.append(String.format(Locale.ROOT, " %9.2f", histogram.getMax() / 1e6));
+        System.out.println(row);
+    }
+
+    /**
+     * Thread driving one virtual client.
+     * Latencies are recorded in histograms owned by the thread and merged at the end,
+     * so that the threads do not contend while measuring.
+     */
+    private static class Worker extends Thread {
+        /** Virtual client driven by this thread */
+        private final VirtualClient client;
+        /** Scenario mix */
+        private final ScenarioMix mix;
+        /** Source of randomness of the scenario */
+        private final SplittableRandom random;
+        /** Scheduled start of the first request, in nanoseconds */
+        private final long firstStart;
+        /** Interval between two scheduled requests in open loop, 0 in closed loop */
+        private final long interval;
+        /** Think time between two requests in closed loop, in nanoseconds */
+        private final long think;
+        /** Start of the measurement, in nanoseconds */
+        private final long measureStart;
+        /** End of the run, in nanoseconds */
+        private final long end;
+        /** Latencies of the operations, in nanoseconds */
+        private final LatencyHistogram[] latencies = new LatencyHistogram[Operation.values().length];
+        /** Number of failed calls of the operations */
+        private final long[] errors = new long[Operation.values().length];
+
+        /**
+         * Constructor for Worker
+         * @param client virtual client driven by this thread
+         * @param mix scenario mix
+         * @param random source of randomness of the scenario
+         * @param firstStart scheduled start of the first request, in nanoseconds
+         * @param interval interval between two scheduled requests in open loop, 0 in closed loop
+         * @param think think time between two requests in closed loop, in nanoseconds
+         * @param measureStart start of the measurement, in nanoseconds
+         * @param end end of the run, in nanoseconds
+         */
+        Worker(VirtualClient client, ScenarioMix mix, SplittableRandom random, long firstStart, long interval,
+               long think, long measureStart, long end) {
+            this.client = client;
+            this.mix = mix;
+            this.random = random;
+            this.firstStart = firstStart;
+            this.interval = interval;
+            this.think = think;
+            this.measureStart = measureStart;
+            this.end = end;
+            for (int i = 0; i < latencies.length; i++) {
+                latencies[i] = new LatencyHistogram();
+            }
+        }
+
+        @Override
+        public void run() {
+            long scheduled = firstStart;
+            while (true) {
+                long intended;
+                if (interval > 0) {
+                    intended = scheduled;
+                    scheduled += interval;
+                    long wait;
+                    while ((wait = intended - System.nanoTime()) > 0) {
+                        LockSupport.parkNanos(wait);
+                    }
+                    if (intended >= end) {
+                        return;
+                    }
+                } else {
+                    intended = System.nanoTime();
+                    if (intended >= end) {
+                        return;
+                    }
+                }
+                Operation operation = mix.pick(random);
+                boolean failed = false;
+                try {
+                    client.execute(operation);
+                } catch (Exception e) {
+                    failed = true;
+                }
+                long done = System.nanoTime();
+                if (intended >= measureStart) {
+                    latencies[operation.ordinal()].record(done - intended);
+                    if (failed) {
+                        errors[operation.ordinal()]++;
+                    }
+                }
+                if (interval == 0 && think > 0) {
+                    LockSupport.parkNanos(think);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package it.uninsubria.loadtest;
+
+/**
+ * Operations performed by the virtual clients of the load generator.
+ * Every operation reproduces the remote calls made by the client application for the same user action.
+ *
+ * @author Lorenzo Radice
+ */
+public enum Operation {
+    /** Login with username and password */
+    LOGIN("login"),
+    /** Search of the restaurants near a position */
+    SEARCH("search"),
+    /** Opening of the page of a restaurant: its reviews and the favorites of the user */
+    OPEN_RESTAURANT("open"),
+    /** Creation or update of a review */
+    POST_REVIEW("review"),
+    /** Addition or removal of a favorite restaurant */
+    TOGGLE_FAVORITE("favorite"),
+    /** Registration of a new user with their address */
+    REGISTER("register");
+
+    /** Name of the operation in the scenario mix */
+    private final String name;
+
+    /**
+     * Constructor for Operation
+     * @param name name of the operation in the scenario mix
+     */
+    Operation(String name) {
+        this.name = name;
+    }
+
+    /**
+     * Returns the name of the operation in the scenario mix.
+     * @return name of the operation
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Finds an operation by its name in the scenario mix.
+     * @param name name of the operation
+     * @return the operation
+     * @throws IllegalArgumentException if no operation has the given name
+     */
+    public static Operation fromName(String name) {
+        for (Operation operation : values()) {
+            if (operation.name.equalsIgnoreCase(name)) {
+                return operation;
+            }
+        }
+        throw new IllegalArgumentException("Unknown operation: " + name);
+    }
+}
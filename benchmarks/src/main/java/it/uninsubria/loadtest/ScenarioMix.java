@@ -0,0 +1,81 @@
+package it.uninsubria.loadtest;
+
+import java.util.SplittableRandom;
+
+/**
+ * Relative frequencies of the operations performed by the virtual clients.
+ * A mix is written as a comma separated list of {@code operation=weight} pairs,
+ * for example {@code search=60,open=25,login=5,review=5,favorite=5};
+ * operations not listed are never performed.
+ *
+ * @author Lorenzo Radice
+ */
+public class ScenarioMix {
+    /** Mix used when none is given: mostly browsing, few writes */
+    public static final String DEFAULT = "login=5,search=50,open=30,review=5,favorite=10";
+
+    /** Cumulative weights of the operations, indexed by ordinal */
+    private final double[] cumulative = new double[Operation.values().length];
+
+    /**
+     * Constructor for ScenarioMix
+     * @param weights weights of the operations, indexed by ordinal
+     */
+    private ScenarioMix(double[] weights) {
+        double sum = 0;
+        for (int i = 0; i < weights.length; i++) {
+            sum += weights[i];
+            cumulative[i] = sum;
+        }
+        if (sum <= 0) {
+            throw new IllegalArgumentException("The scenario mix must contain at least one operation");
+        }
+    }
+
+    /**
+     * Parses a scenario mix.
+     * @param spec comma separated list of {@code operation=weight} pairs
+     * @return the scenario mix
+     * @throws IllegalArgumentException if the mix is malformed
+     */
+    public static ScenarioMix parse(String spec) {
+        double[] weights = new double[Operation.values().length];
+        for (String pair : spec.split(",")) {
+            String[] parts = pair.trim().split("=");
+            if (parts.length != 2) {
+                throw new IllegalArgumentException("Malformed scenario entry: " + pair);
+            }
+            double weight = Double.parseDouble(parts[1].trim());
+            if (weight < 0) {
+                throw new IllegalArgumentException("Negative weight: " + pair);
+            }
+            weights[Operation.fromName(parts[0].trim()).ordinal()] += weight;
+        }
+        return new ScenarioMix(weights);
+    }
+
+    /**
+     * Draws the next operation to perform.
+     * @param random source of randomness
+     * @return the operation
+     */
+    public Operation pick(SplittableRandom random) {
+        double value = random.nextDouble() * cumulative[cumulative.length - 1];
+        for (int i = 0; i < cumulative.length; i++) {
+            if (value < cumulative[i]) {
+                return Operation.values()[i];
+            }
+        }
+        return Operation.values()[cumulative.length - 1];
+    }
+
+    /**
+     * Returns the share of an operation.
+     * @param operation operation
+     * @return fraction of the operations, between 0 and 1
+     */
+    public double share(Operation operation) {
+        int i = operation.ordinal();
+        return (cumulative[i] - (i == 0 ? 0 : cumulative[i - 1])) / cumulative[cumulative.length - 1];
+    }
+}
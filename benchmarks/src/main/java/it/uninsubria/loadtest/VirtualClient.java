@@ -0,0 +1,177 @@
+package it.uninsubria.loadtest;
+
+import it.uninsubria.dto.AddressDTO;
+import it.uninsubria.dto.RestaurantDTO;
+import it.uninsubria.dto.ReviewDTO;
+import it.uninsubria.dto.SearchCriteriaDTO;
+import it.uninsubria.dto.UserDTO;
+import it.uninsubria.dto.UserRoleDTO;
+import it.uninsubria.services.RestaurantService;
+import it.uninsubria.services.ReviewService;
+import it.uninsubria.services.UserService;
+
+import java.rmi.RemoteException;
+import java.sql.Date;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.SplittableRandom;
+
+/**
+ * Simulated user of the client application, driven by one thread of the load generator.
+ * It remembers the restaurants of its last search and its favorites, so that opening a restaurant,
+ * reviewing it and toggling a favorite behave as a real session would.
+ * The users and restaurants are those of the synthetic dataset
+ * ({@code user0 ... userN}, all with the same password, and restaurant ids from 1).
+ * Registrations sign up new users with random names, so that concurrent sign-ups do not collide.
+ *
+ * @author Lorenzo Radice
+ */
+class VirtualClient {
+    /** Search positions: centers of the cities of the synthetic dataset */
+    private static final double[][] POSITIONS = {
+            {45.4642, 9.1900}, {41.9028, 12.4964}, {48.8566, 2.3522}, {51.5072, -0.1276},
+            {40.4168, -3.7038}, {52.5200, 13.4050}, {40.7128, -74.0060}, {35.6762, 139.6503}};
+    /** Probability of reusing a restaurant of the last search instead of a random one */
+    private static final double BROWSE_PROBABILITY = 0.7;
+
+    /** User service stub */
+    private final UserService userService;
+    /** Restaurant service stub */
+    private final RestaurantService restaurantService;
+    /** Review service stub */
+    private final ReviewService reviewService;
+    /** Source of randomness of this client */
+    private final SplittableRandom random;
+    /** Number of restaurants of the dataset */
+    private final int restaurants;
+    /** Username of this client */
+    private final String username;
+    /** Password of this client */
+    private final String password;
+    /** Restaurants found by the last search */
+    private final List<String> lastSearch = new ArrayList<>();
+    /** Favorite restaurants added by this client */
+    private final Set<String> favorites = new HashSet<>();
+
+    /**
+     * Constructor for VirtualClient
+     * @param userService user service stub
+     * @param restaurantService restaurant service stub
+     * @param reviewService review service stub
+     * @param random source of randomness of this client
+     * @param users number of users of the dataset
+     * @param restaurants number of restaurants of the dataset
+     * @param password password of the users
+     */
+    VirtualClient(UserService userService, RestaurantService restaurantService, ReviewService reviewService,
+                  SplittableRandom random, int users, int restaurants, String password) {
+        this.userService = userService;
+        this.restaurantService = restaurantService;
+        this.reviewService = reviewService;
+        this.random = random;
+        this.restaurants = restaurants;
+        this.username = "user" + random.nextInt(users);
+        this.password = password;
+    }
+
+    /**
+     * Performs an operation through the remote services.
+     * @param operation operation to perform
+     * @throws RemoteException if the remote call fails
+     * @throws IllegalStateException if the server refused a write, which it reports as false
+     */
+    void execute(Operation operation) throws RemoteException {
+        switch (operation) {
+            case LOGIN:
+                userService.login(new UserDTO(username, password));
+                break;
+            case SEARCH:
+                search();
+                break;
+            case OPEN_RESTAURANT:
+                reviewService.getReviews(pickRestaurant());
+                restaurantService.getFavoriteRestaurants(username);
+                break;
+            case POST_REVIEW:
+                written(reviewService.createOrUpdateReview(
+                        new ReviewDTO(username, pickRestaurant(), 1 + random.nextInt(5), "Load test review", null)),
+                        "review");
+                break;
+            case TOGGLE_FAVORITE:
+                String restaurantId = pickRestaurant();
+                if (favorites.remove(restaurantId)) {
+                    written(restaurantService.removeFavoriteRestaurant(username, restaurantId), "favorite removal");
+                } else {
+                    written(restaurantService.addFavoriteRestaurant(username, restaurantId), "favorite addition");
+                    favorites.add(restaurantId);
+                }
+                break;
+            case REGISTER:
+                register();
+                break;
+        }
+    }
+
+    /**
+     * Fails the operation if the server refused a write.
+     * @param written result of the remote call
+     * @param what description of the write
+     * @throws IllegalStateException if the write was refused
+     */
+    private static void written(boolean written, String what) {
+        if (!written) {
+            throw new IllegalStateException("The server refused the " + what);
+        }
+    }
+
+    /**
+     * Signs up a new user living near a city of the dataset.
+     * @throws RemoteException if the remote call fails
+     */
+    private void register() throws RemoteException {
+        String newUsername = "signup" + Long.toUnsignedString(random.nextLong(), 36);
+        double[] position = POSITIONS[random.nextInt(POSITIONS.length)];
+        AddressDTO address = new AddressDTO("Italy", "Load Test", "Load Test Street", String.valueOf(1 + random.nextInt(200)),
+                position[0] + (random.nextDouble() - 0.5) * 0.1, position[1] + (random.nextDouble() - 0.5) * 0.1);
+        userService.register(new UserDTO(newUsername, password, "Load", "Test", Date.valueOf("1990-01-01"),
+                UserRoleDTO.CLIENT, address));
+    }
+
+    /**
+     * Searches the restaurants near a city, sometimes with filters, and remembers the results.
+     * @throws RemoteException if the remote call fails
+     */
+    private void search() throws RemoteException {
+        double[] position = POSITIONS[random.nextInt(POSITIONS.length)];
+        SearchCriteriaDTO.Builder builder = SearchCriteriaDTO.builder()
+                .coordinates(position[0] + (random.nextDouble() - 0.5) * 0.1,
+                        position[1] + (random.nextDouble() - 0.5) * 0.1);
+        if (random.nextDouble() < 0.3) {
+            builder.priceRange(10.0, 40.0 + random.nextInt(60));
+        }
+        if (random.nextDouble() < 0.2) {
+            builder.deliveryAvailable(true);
+        }
+        if (random.nextDouble() < 0.2) {
+            builder.minRating(1 + random.nextInt(5));
+        }
+        List<RestaurantDTO> found = restaurantService.searchRestaurants(builder.build());
+        lastSearch.clear();
+        for (RestaurantDTO restaurant : found) {
+            lastSearch.add(restaurant.getRestaurant_id());
+        }
+    }
+
+    /**
+     * Chooses a restaurant, preferably one of the last search.
+     * @return id of the restaurant
+     */
+    private String pickRestaurant() {
+        if (!lastSearch.isEmpty() && random.nextDouble() < BROWSE_PROBABILITY) {
+            return lastSearch.get(random.nextInt(lastSearch.size()));
+        }
+        return String.valueOf(1 + random.nextInt(restaurants));
+    }
+}
@@ -0,0 +1,51 @@
+package it.uninsubria.loadtest;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+import java.util.SplittableRandom;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ScenarioMixTest {
+
+    @Test
+    void sharesFollowWeights() {
+        ScenarioMix mix = ScenarioMix.parse("search=3, open=1");
+        assertEquals(0.75, mix.share(Operation.SEARCH), 1e-9);
+        assertEquals(0.0, mix.share(Operation.LOGIN), 1e-9);
+        SplittableRandom random = new SplittableRandom(1);
+        int searches = 0;
+        for (int i = 0; i < 10_000; i++) {
+            Operation operation = mix.pick(random);
+            assertTrue(operation == Operation.SEARCH || operation == Operation.OPEN_RESTAURANT);
+            if (operation == Operation.SEARCH) {
+                searches++;
+            }
+        }
+        assertEquals(7500, searches, 300);
+    }
+
+    @Test
+    void registrationsCanBeTheWholeMix() {
+        ScenarioMix mix = ScenarioMix.parse("register=1");
+        assertEquals(1.0, mix.share(Operation.REGISTER), 1e-9);
+        assertEquals(Operation.REGISTER, mix.pick(new SplittableRandom(1)));
+    }
+
+    @Test
+    void malformedMixIsRejected() {
+        assertThrows(IllegalArgumentException.class, () -> ScenarioMix.parse("search"));
+        assertThrows(IllegalArgumentException.class, () -> ScenarioMix.parse("dance=1"));
+        assertThrows(IllegalArgumentException.class, () -> ScenarioMix.parse("search=0"));
+    }
+
+    @Test
+    void optionsHaveDefaults() {
+        Map<String, String> options = LoadGenerator.parseOptions(new String[]{"--rate", "200", "--threads", "64"});
+        assertEquals("200", options.get("rate"));
+        assertEquals("64", options.get("threads"));
+        assertEquals(ScenarioMix.DEFAULT, options.get("mix"));
+        assertThrows(IllegalArgumentException.class, () -> LoadGenerator.parseOptions(new String[]{"--rps", "1"}));
+    }
+}
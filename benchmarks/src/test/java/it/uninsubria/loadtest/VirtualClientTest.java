@@ -0,0 +1,34 @@
+package it.uninsubria.loadtest;
+
+import it.uninsubria.services.RestaurantService;
+import it.uninsubria.services.ReviewService;
+import it.uninsubria.services.UserService;
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.Proxy;
+import java.util.SplittableRandom;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class VirtualClientTest {
+
+    @Test
+    void refusedWritesFailTheOperation() throws Exception {
+        VirtualClient refused = new VirtualClient(service(UserService.class, false),
+                service(RestaurantService.class, false), service(ReviewService.class, false),
+                new SplittableRandom(1), 10, 10, "password");
+        assertThrows(IllegalStateException.class, () -> refused.execute(Operation.POST_REVIEW));
+        assertThrows(IllegalStateException.class, () -> refused.execute(Operation.TOGGLE_FAVORITE));
+
+        VirtualClient accepted = new VirtualClient(service(UserService.class, true),
+                service(RestaurantService.class, true), service(ReviewService.class, true),
+                new SplittableRandom(1), 10, 10, "password");
+        accepted.execute(Operation.POST_REVIEW);
+        accepted.execute(Operation.TOGGLE_FAVORITE);
+    }
+
+    private static <T> T service(Class<T> type, boolean result) {
+        return type.cast(Proxy.newProxyInstance(VirtualClientTest.class.getClassLoader(), new Class<?>[]{type},
+                (proxy, method, args) -> method.getReturnType() == boolean.class ? result : null));
+    }
+}
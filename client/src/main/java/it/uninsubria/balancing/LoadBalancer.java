@@ -0,0 +1,282 @@
+package it.uninsubria.balancing;
+
+import it.uninsubria.exceptions.ServerBusyException;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.rmi.ConnectException;
+import java.rmi.ConnectIOException;
+import java.rmi.NoSuchObjectException;
+import java.rmi.NotBoundException;
+import java.rmi.Remote;
+import java.rmi.RemoteException;
+import java.rmi.UnknownHostException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Client-side load balancer over a fleet of servers.
+ * Every call goes to the less loaded of two random available servers (power of two choices),
+ * the load being the number of calls in progress from this client.
+ * A server which cannot be reached is ejected for a time which doubles with every consecutive failure,
+ * and the call is retried on another server: this is safe because the call never reached the failed server.
+ * When every server is ejected, the one whose ejection ends first is tried anyway.
+ * <p>
+ * The calls of the methods with affinity are routed by their first argument instead, with rendezvous hashing
+ * over the available servers, so that the calls with the same key reach the same server for as long as it is
+ * available, and only the keys of an ejected server move to the others.
+ *
+ * @author Lorenzo Radice
+ */
+public class LoadBalancer {
+    /** Servers of the fleet */
+    private final List<ServerEndpoint> endpoints;
+    /** Ejection time after the first failure, in nanoseconds */
+    private final long ejectTime;
+    /** Maximum ejection time, in nanoseconds */
+    private final long maxEjectTime;
+
+    /**
+     * Constructor for LoadBalancer
+     * @param endpoints servers of the fleet
+     * @param ejectMillis ejection time after the first failure, in milliseconds
+     * @param maxEjectMillis maximum ejection time, in milliseconds
+     */
+    public LoadBalancer(List<ServerEndpoint> endpoints, long ejectMillis, long maxEjectMillis) {
+        if (endpoints.isEmpty()) {
+            throw new IllegalArgumentException("At least one server is required");
+        }
+        this.endpoints = List.copyOf(endpoints);
+        this.ejectTime = TimeUnit.MILLISECONDS.toNanos(ejectMillis);
+        this.maxEjectTime = TimeUnit.MILLISECONDS.toNanos(maxEjectMillis);
+    }
+
+    /**
+     * Creates a load balancer over a comma-separated list of {@code host:port} addresses.
+     * @param addresses addresses of the servers
+     * @param defaultPort port used by the addresses without one
+     * @return the load balancer, with an ejection time from 1 to 30 seconds
+     */
+    public static LoadBalancer of(String addresses, int defaultPort) {
+        List<ServerEndpoint> endpoints = new ArrayList<>();
+        for (String address : addresses.split(",")) {
+            if (!address.isBlank()) {
+                endpoints.add(ServerEndpoint.parse(address, defaultPort));
+            }
+        }
+        return new LoadBalancer(endpoints, 1000, 30_000);
+    }
+
+    /**
+     * Creates a stub of a service which balances its calls across the servers.
+     * The service is looked up on the servers until one has it, so that a fleet which cannot be reached
+     * is reported immediately.
+     * @param type remote interface of the service
+     * @param name name of the service in the registries
+     * @param <T> remote interface of the service
+     * @return the balanced stub
+     * @throws RemoteException if no server can be reached
+     * @throws NotBoundException if the reachable servers do not have the service
+     */
+    public <T extends Remote> T service(Class<T> type, String name) throws RemoteException, NotBoundException {
+        return service(type, name, Set.of());
+    }
+
+    /**
+     * Creates a stub of a service which balances its calls across the servers,
+     * except for the methods with affinity, whose calls go to the server chosen by their first argument.
+     * @param type remote interface of the service
+     * @param name name of the service in the registries
+     * @param affinity names of the methods with affinity
+     * @param <T> remote interface of the service
+     * @return the balanced stub
+     * @throws RemoteException if no server can be reached
+     * @throws NotBoundException if the reachable servers do not have the service
+     */
+    public <T extends Remote> T service(Class<T> type, String name, Set<String> affinity)
+            throws RemoteException, NotBoundException {
+        Exception last = null;
+        for (ServerEndpoint endpoint : endpoints) {
+            try {
+                endpoint.lookup(name);
+                last = null;
+                break;
+            } catch (RemoteException | NotBoundException e) {
+                eject(endpoint, e);
+                last = e;
+            }
+        }
+        if (last instanceof NotBoundException) {
+            throw (NotBoundException) last;
+        }
+        if (last != null) {
+            throw (RemoteException) last;
+        }
+        return type.cast(Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type},
+                (proxy, method, args) -> {
+                    if (method.getDeclaringClass() == Object.class) {
+                        return method.invoke(this, args);
+                    }
+                    Object key = affinity.contains(method.getName()) && args != null && args.length > 0 ? args[0] : null;
+                    return call(name, method, args, key);
+                }));
+    }
+
+    /**
+     * Calls a method of a service on a chosen server, retrying on the others if the server cannot be reached
+     * or refuses the call because it is overloaded.
+     * A call with affinity is not moved to another server because of the load, only if its server cannot be reached.
+     * @param name name of the service
+     * @param method called method
+     * @param args arguments of the call
+     * @param key key choosing the server, null to balance the call
+     * @return result of the call
+     * @throws Throwable the exception of the call, or the last connection error if no server could be reached
+     */
+    private Object call(String name, Method method, Object[] args, Object key) throws Throwable {
+        Throwable last = null;
+        for (int attempt = 0; attempt < endpoints.size(); attempt++) {
+            ServerEndpoint endpoint = key == null ? choose() : choose(key);
+            endpoint.begin();
+            try {
+                Object result = method.invoke(endpoint.lookup(name), args);
+                endpoint.succeed();
+                return result;
+            } catch (InvocationTargetException e) {
+                Throwable cause = e.getCause();
+                if (key == null && cause instanceof ServerBusyException && !((ServerBusyException) cause).isRateLimited()) {
+                    // The overloaded server did not execute the call, another one may have room for it
+                    last = cause;
+                    continue;
+                }
+                if (!isUnreachable(cause)) {
+                    // The server answered, possibly with an error of the application
+                    endpoint.succeed();
+                    throw cause;
+                }
+                eject(endpoint, cause);
+                last = cause;
+            } catch (RemoteException | NotBoundException e) {
+                eject(endpoint, e);
+                last = e;
+            } finally {
+                endpoint.end();
+            }
+        }
+        if (last instanceof NotBoundException) {
+            throw new RemoteException("Service " + name + " not available", last);
+        }
+        throw last;
+    }
+
+    /**
+     * Chooses the server of the next call.
+     * @return the less loaded of two random available servers, or the one whose ejection ends first
+     */
+    ServerEndpoint choose() {
+        long now = System.nanoTime();
+        List<ServerEndpoint> available = new ArrayList<>(endpoints.size());
+        ServerEndpoint soonest = null;
+        for (ServerEndpoint endpoint : endpoints) {
+            if (endpoint.isAvailable(now)) {
+                available.add(endpoint);
+            } else if (soonest == null || endpoint.getEjectedUntil() - soonest.getEjectedUntil() < 0) {
+                soonest = endpoint;
+            }
+        }
+        int size = available.size();
+        if (size == 0) {
+            return soonest;
+        }
+        if (size == 1) {
+            return available.get(0);
+        }
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int first = random.nextInt(size);
+        int second = random.nextInt(size - 1);
+        if (second >= first) {
+            second++;
+        }
+        ServerEndpoint a = available.get(first);
+        ServerEndpoint b = available.get(second);
+        return b.getOutstanding() < a.getOutstanding() ? b : a;
+    }
+
+    /**
+     * Chooses the server of a call with affinity.
+     * @param key key of the call
+     * @return the available server with the highest rendezvous weight for the key,
+     * or the one whose ejection ends first
+     */
+    ServerEndpoint choose(Object key) {
+        long now = System.nanoTime();
+        ServerEndpoint chosen = null;
+        long chosenWeight = 0;
+        ServerEndpoint soonest = null;
+        for (ServerEndpoint endpoint : endpoints) {
+            if (endpoint.isAvailable(now)) {
+                long weight = weight(key, endpoint);
+                if (chosen == null || weight > chosenWeight) {
+                    chosen = endpoint;
+                    chosenWeight = weight;
+                }
+            } else if (soonest == null || endpoint.getEjectedUntil() - soonest.getEjectedUntil() < 0) {
+                soonest = endpoint;
+            }
+        }
+        return chosen != null ? chosen : soonest;
+    }
+
+    /**
+     * Computes the rendezvous weight of a server for a key.
+     * @param key key of a call
+     * @param endpoint server
+     * @return the weight, the same on every client
+     */
+    private static long weight(Object key, ServerEndpoint endpoint) {
+        long h = (long) key.hashCode() * 0x9E3779B97F4A7C15L ^ endpoint.toString().hashCode();
+        // Finalizer of MurmurHash3, so that close keys and addresses get unrelated weights
+        h ^= h >>> 33;
+        h *= 0xFF51AFD7ED558CCDL;
+        h ^= h >>> 33;
+        h *= 0xC4CEB9FE1A85EC53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    /**
+     * Ejects a server which could not be reached.
+     * @param endpoint failed server
+     * @param cause error of the server
+     */
+    private void eject(ServerEndpoint endpoint, Throwable cause) {
+        boolean healthy = endpoint.getFailures() == 0;
+        endpoint.eject(System.nanoTime(), ejectTime, maxEjectTime);
+        if (healthy) {
+            System.err.println("Server " + endpoint + " ejected: " + cause.getMessage());
+        }
+    }
+
+    /**
+     * Checks whether an error means that the call did not reach the server,
+     * so that it can be retried elsewhere.
+     * @param error error of the call
+     * @return true for connection errors and stubs of objects no longer exported
+     */
+    static boolean isUnreachable(Throwable error) {
+        return error instanceof ConnectException || error instanceof ConnectIOException
+                || error instanceof UnknownHostException || error instanceof NoSuchObjectException;
+    }
+
+    /**
+     * Returns the servers of the fleet.
+     * @return servers of the fleet
+     */
+    public List<ServerEndpoint> getEndpoints() {
+        return endpoints;
+    }
+}
@@ -0,0 +1,153 @@
+package it.uninsubria.balancing;
+
+import java.rmi.NotBoundException;
+import java.rmi.Remote;
+import java.rmi.RemoteException;
+import java.rmi.registry.LocateRegistry;
+import java.rmi.registry.Registry;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Server of the fleet, reached through its RMI registry.
+ * The stubs of the services are looked up once and cached until the server fails.
+ * The endpoint also keeps the state used by the {@link LoadBalancer}: the calls in progress
+ * and, after a failure, the time until which it is ejected.
+ *
+ * @author Lorenzo Radice
+ */
+public class ServerEndpoint {
+    /** Host name of the server */
+    private final String host;
+    /** Port of the RMI registry */
+    private final int port;
+    /** Stubs of the services, by name */
+    private final Map<String, Remote> stubs = new ConcurrentHashMap<>();
+    /** Number of calls in progress */
+    private final AtomicInteger outstanding = new AtomicInteger();
+    /** Number of consecutive failures */
+    private int failures = 0;
+    /** Time until which the endpoint is ejected, as given by {@link System#nanoTime()} */
+    private long ejectedUntil = 0;
+
+    /**
+     * Constructor for ServerEndpoint
+     * @param host host name of the server
+     * @param port port of the RMI registry
+     */
+    public ServerEndpoint(String host, int port) {
+        this.host = host;
+        this.port = port;
+    }
+
+    /**
+     * Parses an endpoint written as {@code host:port} or {@code host}, with the given default port.
+     * @param address address of the endpoint
+     * @param defaultPort port used when the address has none
+     * @return the endpoint
+     * @throws IllegalArgumentException if the port is not a number
+     */
+    public static ServerEndpoint parse(String address, int defaultPort) {
+        String trimmed = address.trim();
+        int colon = trimmed.lastIndexOf(':');
+        if (colon < 0) {
+            return new ServerEndpoint(trimmed, defaultPort);
+        }
+        try {
+            return new ServerEndpoint(trimmed.substring(0, colon), Integer.parseInt(trimmed.substring(colon + 1)));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid server address: " + address);
+        }
+    }
+
+    /**
+     * Returns the stub of a service of the server, looking it up in the registry the first time.
+     * @param name name of the service in the registry
+     * @return the stub
+     * @throws RemoteException if the registry cannot be reached
+     * @throws NotBoundException if the service is not bound
+     */
+    public Remote lookup(String name) throws RemoteException, NotBoundException {
+        Remote stub = stubs.get(name);
+        if (stub == null) {
+            Registry registry = LocateRegistry.getRegistry(host, port);
+            stub = registry.lookup(name);
+            stubs.put(name, stub);
+        }
+        return stub;
+    }
+
+    /**
+     * Counts a call which starts on this server.
+     */
+    void begin() {
+        outstanding.incrementAndGet();
+    }
+
+    /**
+     * Counts a call which ended on this server.
+     */
+    void end() {
+        outstanding.decrementAndGet();
+    }
+
+    /**
+     * Returns the number of calls in progress.
+     * @return calls in progress
+     */
+    public int getOutstanding() {
+        return outstanding.get();
+    }
+
+    /**
+     * Returns whether the endpoint can receive calls at the given time.
+     * @param now current time, as given by {@link System#nanoTime()}
+     * @return false while the endpoint is ejected
+     */
+    synchronized boolean isAvailable(long now) {
+        return failures == 0 || now - ejectedUntil >= 0;
+    }
+
+    /**
+     * Returns the time until which the endpoint is ejected.
+     * @return end of the ejection, as given by {@link System#nanoTime()}
+     */
+    synchronized long getEjectedUntil() {
+        return ejectedUntil;
+    }
+
+    /**
+     * Ejects the endpoint after a failure, for a time doubling with every consecutive failure.
+     * The cached stubs are dropped, since the server may have been restarted.
+     * @param now current time, as given by {@link System#nanoTime()}
+     * @param baseNanos ejection time after the first failure
+     * @param maxNanos maximum ejection time
+     */
+    synchronized void eject(long now, long baseNanos, long maxNanos) {
+        failures++;
+        long time = baseNanos << Math.min(failures - 1, 16);
+        ejectedUntil = now + Math.min(time, maxNanos);
+        stubs.clear();
+    }
+
+    /**
+     * Readmits the endpoint after a successful call.
+     */
+    synchronized void succeed() {
+        failures = 0;
+    }
+
+    /**
+     * Returns the number of consecutive failures.
+     * @return consecutive failures, 0 if the endpoint is healthy
+     */
+    public synchronized int getFailures() {
+        return failures;
+    }
+
+    @Override
+    public String toString() {
+        return host + ":" + port;
+    }
+}
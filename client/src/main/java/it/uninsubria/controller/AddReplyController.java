@@ -12,8 +12,6 @@ import javafx.stage.Stage;
 
 import java.rmi.NotBoundException;
 import java.rmi.RemoteException;
-import java.rmi.registry.LocateRegistry;
-import java.rmi.registry.Registry;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -63,8 +61,7 @@ public class AddReplyController {
 
     private void initServices() {
         try {
-            Registry registry = ServerAddress.getRegistry();
-            reviewService = (ReviewService) registry.lookup("ReviewService");
+            reviewService = ServerAddress.getService(ReviewService.class);
         } catch (NotBoundException | RemoteException e) {
             System.err.println("Error connecting to ReviewService: " + e.getMessage());
             throw new RuntimeException(e);
@@ -226,7 +223,15 @@ public class AddReplyController {
 
         String replyText = replyTextArea.getText().trim();
         try {
-            handleReplySubmission(replyText);
+            if (!handleReplySubmission(replyText)) {
+                Alert alert = new Alert(Alert.AlertType.WARNING);
+                alert.setTitle("Review Changed");
+                alert.setHeaderText("The Reply was not submitted");
+                alert.setContentText("The review was edited or answered in the meantime. Please open it again.");
+                alert.showAndWait();
+                closeWindow();
+                return;
+            }
 
             // Show success message
             Alert alert = new Alert(Alert.AlertType.INFORMATION);
@@ -255,17 +260,25 @@ public class AddReplyController {
 
     /**
      * Handles submitting a restaurant reply to a review.
+     * Only the reply is sent, and it is written only if the review is still the one shown to the owner.
      *
      * @param replyText The reply text content
+     * @return true if the reply was written, false if the review changed in the meantime
      */
-    private void handleReplySubmission(String replyText) {
-        originalReview.setReply(replyText);
+    private boolean handleReplySubmission(String replyText) {
+        boolean written;
         try {
-            reviewService.createOrUpdateReview(originalReview);
+            written = reviewService.replyToReview(userSession.getUserId(), originalReview, replyText);
         } catch (RemoteException e) {
             throw new RuntimeException(e);
         }
-        LOGGER.info("Reply submitted successfully for review by: " + originalReview.getUsername());
+        if (written) {
+            originalReview.setReply(replyText);
+            LOGGER.info("Reply submitted successfully for review by: " + originalReview.getUsername());
+        } else {
+            LOGGER.warning("Review by " + originalReview.getUsername() + " changed before the reply");
+        }
+        return written;
     }
 
     /**
@@ -18,7 +18,6 @@ import javafx.util.StringConverter;
 import java.io.IOException;
 import java.rmi.NotBoundException;
 import java.rmi.RemoteException;
-import java.rmi.registry.Registry;
 import java.util.Arrays;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -75,8 +74,7 @@ public class AddRestaurantController {
 
     private void initServices() {
         try {
-            Registry registry = ServerAddress.getRegistry();
-            restaurantService = (RestaurantService) registry.lookup("RestaurantService");
+            restaurantService = ServerAddress.getService(RestaurantService.class);
         } catch (NotBoundException | RemoteException e) {
             System.err.println("Error connecting to UserService: " + e.getMessage());
             throw new RuntimeException(e);
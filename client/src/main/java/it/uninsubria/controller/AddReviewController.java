@@ -10,8 +10,6 @@ import javafx.stage.Stage;
 
 import java.rmi.NotBoundException;
 import java.rmi.RemoteException;
-import java.rmi.registry.LocateRegistry;
-import java.rmi.registry.Registry;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -88,8 +86,7 @@ public class AddReviewController {
      */
     private void initServices() {
         try {
-            Registry registry = LocateRegistry.getRegistry("localhost");
-            reviewService = (ReviewService) registry.lookup("ReviewService");
+            reviewService = ServerAddress.getService(ReviewService.class);
         } catch (NotBoundException | RemoteException e) {
             LOGGER.log(Level.SEVERE, "Error connecting to ReviewService: " + e.getMessage(), e);
             showError("Unable to connect to review service. Please try again later.");
@@ -294,20 +291,12 @@ public class AddReviewController {
                     null
             );
 
-            // Submit review via service
-            boolean success = reviewService.createOrUpdateReview(newReview);
+            // Submit review via service: the server acknowledges once the review is queued,
+            // and the notifier tells the user when it has been written
+            boolean success = reviewService.submitReview(newReview, notifier());
             if (success) {
                 String operationType = isEditingMode ? "updated" : "added";
-                String titleText = isEditingMode ? "Review Updated" : "Review Added";
-                String headerText = isEditingMode ? "Successfully updated review" : "Successfully submitted review";
-
-                Alert alert = new Alert(Alert.AlertType.INFORMATION);
-                alert.setTitle(titleText);
-                alert.setHeaderText(headerText);
-                alert.setContentText("Thank you for sharing your experience");
-                alert.showAndWait();
-
-                LOGGER.info("Review " + operationType + " successfully for restaurant " + restaurant.getRestaurant_id());
+                LOGGER.info("Review " + operationType + " submitted for restaurant " + restaurant.getRestaurant_id());
                 closeWindow();
             } else {
                 String operationType = isEditingMode ? "Update" : "Add";
@@ -325,6 +314,20 @@ public class AddReviewController {
         }
     }
 
+    /**
+     * Returns the listener told when the submitted review has been written.
+     *
+     * @return The exported listener, or null if it cannot be exported
+     */
+    private ReviewNotifier notifier() {
+        try {
+            return ReviewNotifier.getInstance();
+        } catch (RemoteException e) {
+            LOGGER.log(Level.WARNING, "Review outcome will not be notified: " + e.getMessage(), e);
+            return null;
+        }
+    }
+
     /**
      * Handles the delete review button action.
      * Deletes the current review after validation.
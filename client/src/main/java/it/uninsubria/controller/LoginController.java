@@ -15,8 +15,6 @@ import javafx.stage.Stage;
 import java.io.IOException;
 import java.rmi.NotBoundException;
 import java.rmi.RemoteException;
-import java.rmi.registry.LocateRegistry;
-import java.rmi.registry.Registry;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -55,8 +53,7 @@ public class LoginController {
 
     private void initServices() {
         try {
-            Registry registry = LocateRegistry.getRegistry("localhost");
-            userService = (UserService) registry.lookup("UserService");
+            userService = ServerAddress.getService(UserService.class);
         } catch (NotBoundException | RemoteException e) {
             System.err.println("Error connecting to UserService: " + e.getMessage());
             throw new RuntimeException(e);
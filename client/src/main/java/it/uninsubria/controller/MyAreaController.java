@@ -2,6 +2,7 @@ package it.uninsubria.controller;
 
 import it.uninsubria.controller.ui_components.GenericResultsComponent;
 import it.uninsubria.dto.RestaurantDTO;
+import it.uninsubria.dto.RestaurantStatsDTO;
 import it.uninsubria.services.RestaurantService;
 import it.uninsubria.session.UserSession;
 import javafx.fxml.FXML;
@@ -17,8 +18,7 @@ import javafx.stage.Stage;
 import java.io.IOException;
 import java.rmi.NotBoundException;
 import java.rmi.RemoteException;
-import java.rmi.registry.LocateRegistry;
-import java.rmi.registry.Registry;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -82,8 +82,7 @@ public class MyAreaController {
 
     private void initServices() {
         try {
-            Registry registry = LocateRegistry.getRegistry("localhost");
-            restaurantService = (RestaurantService) registry.lookup("RestaurantService");
+            restaurantService = ServerAddress.getService(RestaurantService.class);
         } catch (NotBoundException | RemoteException e) {
             System.err.println("Error connecting to UserService: " + e.getMessage());
             throw new RuntimeException(e);
@@ -207,14 +206,18 @@ public class MyAreaController {
     private void loadRestaurateurData() {
         String userId = userSession.getUserId();
 
-        // Load owned
-        List<RestaurantDTO> ownedRestaurants = null;
+        // Load owned restaurants with the statistics of their reviews in one call
+        List<RestaurantStatsDTO> dashboard = null;
         try {
-            ownedRestaurants = restaurantService.getOwnedRestaurants(userId);
+            dashboard = restaurantService.getOwnerDashboard(userId);
         } catch (RemoteException e) {
-            statusLabel.setText("Error loading review restaurants");
+            statusLabel.setText("Error loading owned restaurants");
             throw new RuntimeException(e);
         }
+        List<RestaurantDTO> ownedRestaurants = new ArrayList<>();
+        for (RestaurantStatsDTO stats : dashboard) {
+            ownedRestaurants.add(stats.getRestaurant());
+        }
         leftResultsComponent.showRestaurants(ownedRestaurants);
 
         // Load reviewed
@@ -228,7 +231,7 @@ public class MyAreaController {
         rightResultsComponent.showRestaurants(reviewedRestaurants);
 
         // Update statistics labels
-        updateOwnerStatistics(ownedRestaurants, reviewedRestaurants);
+        updateOwnerStatistics(dashboard, reviewedRestaurants);
 
         LOGGER.info("Loaded " + ownedRestaurants.size() + " owned restaurants and " +
                 reviewedRestaurants.size() + " reviewed restaurants for owner: " + userId);
@@ -260,16 +263,28 @@ public class MyAreaController {
     /**
      * Updates statistics labels for restaurant owner users.
      *
-     * @param ownedRestaurants List of owned restaurants
+     * @param dashboard Owned restaurants with the statistics of their reviews
      * @param reviewedRestaurants List of reviewed restaurants
      */
-    private void updateOwnerStatistics(List<RestaurantDTO> ownedRestaurants,
+    private void updateOwnerStatistics(List<RestaurantStatsDTO> dashboard,
                                        List<RestaurantDTO> reviewedRestaurants) {
+        // Average over all the reviews of the owned restaurants, and reviews still waiting for a reply
+        double totalRating = 0.0;
+        int reviews = 0;
+        int unreplied = 0;
+        for (RestaurantStatsDTO stats : dashboard) {
+            if (stats.getAverageRating() != null) {
+                totalRating += stats.getAverageRating() * stats.getReviewCount();
+                reviews += stats.getReviewCount();
+            }
+            unreplied += stats.getUnrepliedCount();
+        }
+
         // Update owned restaurants count
-        leftStatsLabel.setText("My Restaurants: " + ownedRestaurants.size() + " restaurants");
+        leftStatsLabel.setText("My Restaurants: " + dashboard.size() + " restaurants, "
+                + unreplied + " reviews to reply");
 
-        // Calculate average rating of owned restaurants
-        double avgRating = calculateAverageRating(ownedRestaurants);
+        double avgRating = reviews > 0 ? totalRating / reviews : 0.0;
         if (avgRating > 0) {
             averageRatingLabel.setText(String.format("Average rating: %.1f stars", avgRating));
         } else {
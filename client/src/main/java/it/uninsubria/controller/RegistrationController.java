@@ -16,8 +16,6 @@ import javafx.stage.Stage;
 import java.io.IOException;
 import java.rmi.NotBoundException;
 import java.rmi.RemoteException;
-import java.rmi.registry.LocateRegistry;
-import java.rmi.registry.Registry;
 import java.sql.Date;
 import java.time.LocalDate;
 import java.time.Month;
@@ -86,8 +84,7 @@ public class RegistrationController {
 
     private void initServices() {
         try {
-            Registry registry = LocateRegistry.getRegistry("localhost");
-            userService = (UserService) registry.lookup("UserService");
+            userService = ServerAddress.getService(UserService.class);
         } catch (NotBoundException | RemoteException e) {
             System.err.println("Error connecting to UserService: " + e.getMessage());
             throw new RuntimeException(e);
@@ -20,8 +20,6 @@ import javafx.stage.Stage;
 import java.io.IOException;
 import java.rmi.NotBoundException;
 import java.rmi.RemoteException;
-import java.rmi.registry.LocateRegistry;
-import java.rmi.registry.Registry;
 import java.util.List;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -76,9 +74,8 @@ public class RestaurantInfoController {
 
     private void initServices() {
         try {
-            Registry registry = LocateRegistry.getRegistry("localhost");
-            restaurantService = (RestaurantService) registry.lookup("RestaurantService");
-            reviewService = (ReviewService) registry.lookup("ReviewService");
+            restaurantService = ServerAddress.getService(RestaurantService.class);
+            reviewService = ServerAddress.getService(ReviewService.class);
         } catch (NotBoundException | RemoteException e) {
             System.err.println("Error connecting to UserService: " + e.getMessage());
             throw new RuntimeException(e);
@@ -0,0 +1,75 @@
+package it.uninsubria.controller;
+
+import it.uninsubria.dto.ReviewDTO;
+import it.uninsubria.services.ReviewCallback;
+import javafx.application.Platform;
+import javafx.scene.control.Alert;
+
+import java.rmi.RemoteException;
+import java.rmi.server.UnicastRemoteObject;
+import java.util.logging.Logger;
+
+/**
+ * Listener exported by the client to be told by the server when a submitted review has been written.
+ * The outcome is shown in a non-modal alert, since the review window has been closed in the meantime.
+ * A single listener is exported for the whole application.
+ *
+ * @author Lorenzo Radice
+ */
+public class ReviewNotifier extends UnicastRemoteObject implements ReviewCallback {
+
+    private static final Logger LOGGER = Logger.getLogger(ReviewNotifier.class.getName());
+    private static ReviewNotifier instance = null;
+
+    /**
+     * Constructs and exports the listener.
+     *
+     * @throws RemoteException if the listener cannot be exported
+     */
+    private ReviewNotifier() throws RemoteException {}
+
+    /**
+     * Returns the listener of the application, exporting it on first use.
+     *
+     * @return The exported listener
+     * @throws RemoteException if the listener cannot be exported
+     */
+    public static synchronized ReviewNotifier getInstance() throws RemoteException {
+        if (instance == null) {
+            instance = new ReviewNotifier();
+        }
+        return instance;
+    }
+
+    @Override
+    public void reviewCommitted(ReviewDTO review) {
+        LOGGER.info("Review committed for restaurant " + review.getRestaurant_id());
+        show(Alert.AlertType.INFORMATION, "Review Published",
+                "Your review is now visible", "Thank you for sharing your experience");
+    }
+
+    @Override
+    public void reviewFailed(ReviewDTO review, String reason) {
+        LOGGER.warning("Review failed for restaurant " + review.getRestaurant_id() + ": " + reason);
+        show(Alert.AlertType.ERROR, "Review Failed", "Your review could not be saved",
+                "We are sorry for the inconvenience. Please try again later.");
+    }
+
+    /**
+     * Shows a non-modal alert on the JavaFX application thread.
+     *
+     * @param type The type of the alert
+     * @param title The title of the alert
+     * @param header The header text
+     * @param content The content text
+     */
+    private static void show(Alert.AlertType type, String title, String header, String content) {
+        Platform.runLater(() -> {
+            Alert alert = new Alert(type);
+            alert.setTitle(title);
+            alert.setHeaderText(header);
+            alert.setContentText(content);
+            alert.show();
+        });
+    }
+}
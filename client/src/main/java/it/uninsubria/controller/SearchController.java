@@ -23,7 +23,6 @@ import javafx.util.StringConverter;
 import java.io.IOException;
 import java.rmi.NotBoundException;
 import java.rmi.RemoteException;
-import java.rmi.registry.Registry;
 import java.text.DecimalFormat;
 import java.util.Arrays;
 import java.util.List;
@@ -111,8 +110,7 @@ public class SearchController {
 
     private void initServices() {
         try {
-            Registry registry = ServerAddress.getRegistry();
-            restaurantService= (RestaurantService) registry.lookup("RestaurantService");
+            restaurantService= ServerAddress.getService(RestaurantService.class);
         } catch (NotBoundException | RemoteException e) {
             System.err.println("Error connecting to UserService: " + e.getMessage());
             throw new RuntimeException(e);
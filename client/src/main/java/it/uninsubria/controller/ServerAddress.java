@@ -1,54 +1,61 @@
 package it.uninsubria.controller;
 
-import java.rmi.RemoteException;
-import java.rmi.registry.LocateRegistry;
-import java.rmi.registry.Registry;
+import it.uninsubria.balancing.LoadBalancer;
+import it.uninsubria.services.RestaurantService;
 
-import static java.lang.System.exit;
+import java.rmi.NotBoundException;
+import java.rmi.Remote;
+import java.rmi.RemoteException;
 
 /**
- * ServerAddress class for managing the RMI registry connection.
- * This class provides a singleton instance of the RMI registry used by the client to communicate with the server.
- * It initializes the connection to the RMI registry at a specified IP address and port.
+ * ServerAddress class for managing the connection to the servers.
+ * The client can talk to a fleet of servers, listed as {@code host:port} pairs separated by commas
+ * in the {@code theknife.servers} system property or in the {@code THEKNIFE_SERVERS} environment variable;
+ * by default it uses a single server at the specified IP address and port.
+ * The services are balanced across the servers by a {@link LoadBalancer}, except for the favorites of a user,
+ * which always go to the same server (see {@link RestaurantService#USER_AFFINITY}).
  */
 public class ServerAddress {
     /** Server IP Address */
     public final static String IP_ADDRESS = "localhost";
     /** Server RMI Registry Port */
     public final static int PORT = 1099;
-    /** RMI Registry instance */
-    private static Registry registry;
+    /** Load balancer over the servers */
+    private static LoadBalancer balancer;
 
     /**
      * Private constructor to prevent instantiation.
-     * Initializes the RMI registry connection.
      */
-    private ServerAddress() {
-        init();
-    }
+    private ServerAddress() {}
     /**
-     * Initializes the RMI registry connection.
-     * This method attempts to connect to the RMI registry at the specified IP address and port.
-     * If the connection fails, it prints an error message and exits the application.
+     * Returns a stub of a service which balances the calls across the servers.
+     * The service is bound in the registries under the simple name of its interface.
+     *
+     * @param type remote interface of the service
+     * @param <T> remote interface of the service
+     * @return The balanced stub of the service
+     * @throws RemoteException If no server can be reached
+     * @throws NotBoundException If the servers do not have the service
      */
-    private void init() {
-        try {
-            registry = LocateRegistry.getRegistry(IP_ADDRESS, PORT);
-        } catch (RemoteException e) {
-            System.err.println("Error connecting to RMI registry: " + e.getMessage());
-            exit(1);
+    public static <T extends Remote> T getService(Class<T> type) throws RemoteException, NotBoundException {
+        if (type == RestaurantService.class) {
+            return getBalancer().service(type, type.getSimpleName(), RestaurantService.USER_AFFINITY);
         }
+        return getBalancer().service(type, type.getSimpleName());
     }
     /**
-     * Returns the RMI registry instance.
-     * If the registry is not initialized, it initializes it first.
+     * Returns the load balancer over the configured servers, creating it the first time.
      *
-     * @return The RMI registry instance
+     * @return The load balancer
      */
-    public static Registry getRegistry() {
-        if (registry == null) {
-            new ServerAddress();
+    private static synchronized LoadBalancer getBalancer() {
+        if (balancer == null) {
+            String servers = System.getProperty("theknife.servers", System.getenv("THEKNIFE_SERVERS"));
+            if (servers == null || servers.isBlank()) {
+                servers = IP_ADDRESS + ":" + PORT;
+            }
+            balancer = LoadBalancer.of(servers, PORT);
         }
-        return registry;
+        return balancer;
     }
 }
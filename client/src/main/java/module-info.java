@@ -10,5 +10,6 @@ module client {
     opens it.uninsubria.controller to javafx.fxml;
     exports it.uninsubria.controller;
     exports it.uninsubria.session;
+    exports it.uninsubria.balancing;
     opens it.uninsubria.session to javafx.fxml;
 }
\ No newline at end of file
@@ -0,0 +1,145 @@
+package it.uninsubria.balancing;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.rmi.Remote;
+import java.rmi.RemoteException;
+import java.rmi.registry.LocateRegistry;
+import java.rmi.registry.Registry;
+import java.rmi.server.UnicastRemoteObject;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LoadBalancerTest {
+    private final List<Registry> registries = new ArrayList<>();
+    private final List<Remote> services = new ArrayList<>();
+
+    public interface NameService extends Remote {
+        String name() throws RemoteException;
+
+        String nameFor(String user) throws RemoteException;
+    }
+
+    private static class NameServiceImpl implements NameService {
+        private final String name;
+
+        NameServiceImpl(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public String name() {
+            return name;
+        }
+
+        @Override
+        public String nameFor(String user) {
+            return name;
+        }
+    }
+
+    @AfterEach
+    void stopServers() throws RemoteException {
+        for (Remote service : services) {
+            UnicastRemoteObject.unexportObject(service, true);
+        }
+        for (Registry registry : registries) {
+            UnicastRemoteObject.unexportObject(registry, true);
+        }
+    }
+
+    @Test
+    void callsAreSpreadAcrossServers() throws Exception {
+        String servers = startServer("a") + "," + startServer("b") + "," + startServer("c");
+        NameService service = LoadBalancer.of(servers, 1099).service(NameService.class, "NameService");
+        Map<String, Integer> calls = new HashMap<>();
+        for (int i = 0; i < 300; i++) {
+            calls.merge(service.name(), 1, Integer::sum);
+        }
+        assertEquals(3, calls.size(), calls.toString());
+        for (int count : calls.values()) {
+            assertTrue(count > 30, calls.toString());
+        }
+    }
+
+    @Test
+    void failedServerIsEjected() throws Exception {
+        String servers = startServer("a") + "," + startServer("b");
+        LoadBalancer balancer = LoadBalancer.of(servers, 1099);
+        NameService service = balancer.service(NameService.class, "NameService");
+        service.name();
+        UnicastRemoteObject.unexportObject(services.remove(0), true);
+        UnicastRemoteObject.unexportObject(registries.remove(0), true);
+        for (int i = 0; i < 20; i++) {
+            assertEquals("b", service.name());
+        }
+        assertTrue(balancer.getEndpoints().get(0).getFailures() > 0);
+        assertEquals(0, balancer.getEndpoints().get(1).getFailures());
+    }
+
+    @Test
+    void callsWithAffinityStayOnOneServer() throws Exception {
+        String servers = startServer("a") + "," + startServer("b") + "," + startServer("c");
+        LoadBalancer balancer = LoadBalancer.of(servers, 1099);
+        NameService service = balancer.service(NameService.class, "NameService", Set.of("nameFor"));
+        Map<String, String> owners = new HashMap<>();
+        for (int user = 0; user < 30; user++) {
+            owners.put("user" + user, service.nameFor("user" + user));
+        }
+        assertEquals(3, new HashSet<>(owners.values()).size(), owners.toString());
+        for (int i = 0; i < 10; i++) {
+            for (Map.Entry<String, String> owner : owners.entrySet()) {
+                assertEquals(owner.getValue(), service.nameFor(owner.getKey()));
+            }
+        }
+
+        // Only the users of a failed server move to the others
+        UnicastRemoteObject.unexportObject(services.remove(0), true);
+        UnicastRemoteObject.unexportObject(registries.remove(0), true);
+        for (Map.Entry<String, String> owner : owners.entrySet()) {
+            String moved = service.nameFor(owner.getKey());
+            if (owner.getValue().equals("a")) {
+                assertNotEquals("a", moved);
+                assertEquals(moved, service.nameFor(owner.getKey()));
+            } else {
+                assertEquals(owner.getValue(), moved);
+            }
+        }
+    }
+
+    @Test
+    void lessLoadedServerIsChosen() {
+        ServerEndpoint busy = new ServerEndpoint("busy", 1099);
+        ServerEndpoint idle = new ServerEndpoint("idle", 1099);
+        LoadBalancer balancer = new LoadBalancer(List.of(busy, idle), 1000, 30_000);
+        busy.begin();
+        for (int i = 0; i < 20; i++) {
+            assertSame(idle, balancer.choose());
+        }
+        busy.end();
+        idle.eject(System.nanoTime(), 1_000_000_000L, 1_000_000_000L);
+        assertSame(busy, balancer.choose());
+    }
+
+    private String startServer(String name) throws IOException {
+        int port;
+        try (ServerSocket socket = new ServerSocket(0)) {
+            port = socket.getLocalPort();
+        }
+        Registry registry = LocateRegistry.createRegistry(port);
+        NameService service = new NameServiceImpl(name);
+        registry.rebind("NameService", UnicastRemoteObject.exportObject(service, 0));
+        registries.add(registry);
+        services.add(service);
+        return "localhost:" + port;
+    }
+}
@@ -0,0 +1,89 @@
+package it.uninsubria.dto;
+
+import java.io.Serializable;
+import java.util.Locale;
+
+/**
+ * Data Transfer Object for the statistics of a cache of the server.
+ *
+ * @author Lorenzo Radice
+ */
+public class CacheStatsDTO implements Serializable {
+    /** Serial version UID for serialization */
+    private static final long serialVersionUID = 1L;
+    /** Name of the cache */
+    private final String name;
+    /** Number of cached entries */
+    private final int size;
+    /** Maximum number of entries */
+    private final int capacity;
+    /** Number of lookups which found the entry */
+    private final long hits;
+    /** Number of lookups which did not find the entry */
+    private final long misses;
+
+    /**
+     * Constructor with all the statistics.
+     * @param name name of the cache
+     * @param size number of cached entries
+     * @param capacity maximum number of entries
+     * @param hits number of lookups which found the entry
+     * @param misses number of lookups which did not find the entry
+     */
+    public CacheStatsDTO(String name, int size, int capacity, long hits, long misses) {
+        this.name = name;
+        this.size = size;
+        this.capacity = capacity;
+        this.hits = hits;
+        this.misses = misses;
+    }
+    /**
+     * Gets the name of the cache.
+     * @return name of the cache
+     */
+    public String getName() {
+        return name;
+    }
+    /**
+     * Gets the number of cached entries.
+     * @return number of cached entries
+     */
+    public int getSize() {
+        return size;
+    }
+    /**
+     * Gets the maximum number of entries.
+     * @return maximum number of entries
+     */
+    public int getCapacity() {
+        return capacity;
+    }
+    /**
+     * Gets the number of hits.
+     * @return number of lookups which found the entry
+     */
+    public long getHits() {
+        return hits;
+    }
+    /**
+     * Gets the number of misses.
+     * @return number of lookups which did not find the entry
+     */
+    public long getMisses() {
+        return misses;
+    }
+    /**
+     * Gets the fraction of lookups which found the entry.
+     * @return hit rate between 0 and 1, 0 if the cache was never used
+     */
+    public double getHitRate() {
+        long lookups = hits + misses;
+        return lookups == 0 ? 0 : (double) hits / lookups;
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.ROOT, "%s size=%d/%d hits=%d misses=%d hitRate=%.1f%%",
+                name, size, capacity, hits, misses, getHitRate() * 100);
+    }
+}
@@ -0,0 +1,56 @@
+package it.uninsubria.dto;
+
+import java.io.Serializable;
+
+/**
+ * Data Transfer Object for the statistics of a garbage collector of the server JVM.
+ *
+ * @author Lorenzo Radice
+ */
+public class GcStatsDTO implements Serializable {
+    /** Serial version UID for serialization */
+    private static final long serialVersionUID = 1L;
+    /** Name of the collector */
+    private final String name;
+    /** Number of collections */
+    private final long collections;
+    /** Total time spent collecting, in milliseconds */
+    private final long timeMillis;
+
+    /**
+     * Constructor with all the statistics.
+     * @param name name of the collector
+     * @param collections number of collections
+     * @param timeMillis total time spent collecting, in milliseconds
+     */
+    public GcStatsDTO(String name, long collections, long timeMillis) {
+        this.name = name;
+        this.collections = collections;
+        this.timeMillis = timeMillis;
+    }
+    /**
+     * Gets the name of the collector.
+     * @return name of the collector
+     */
+    public String getName() {
+        return name;
+    }
+    /**
+     * Gets the number of collections.
+     * @return number of collections
+     */
+    public long getCollections() {
+        return collections;
+    }
+    /**
+     * Gets the total time spent collecting.
+     * @return total time spent collecting, in milliseconds
+     */
+    public long getTimeMillis() {
+        return timeMillis;
+    }
+    @Override
+    public String toString() {
+        return name + " collections=" + collections + " time=" + timeMillis + "ms";
+    }
+}
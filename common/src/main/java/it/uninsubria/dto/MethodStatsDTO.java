@@ -0,0 +1,148 @@
+package it.uninsubria.dto;
+
+import java.io.Serializable;
+import java.util.Locale;
+
+/**
+ * Data Transfer Object for the statistics of a remote method of the server.
+ * Latencies are in milliseconds and cover every call since the server started.
+ *
+ * @author Lorenzo Radice
+ */
+public class MethodStatsDTO implements Serializable {
+    /** Serial version UID for serialization */
+    private static final long serialVersionUID = 1L;
+    /** Name of the remote interface */
+    private final String service;
+    /** Name of the method */
+    private final String method;
+    /** Number of completed calls */
+    private final long calls;
+    /** Number of failed calls */
+    private final long errors;
+    /** Number of calls refused by the admission control */
+    private final long rejected;
+    /** Number of calls being executed */
+    private final long inFlight;
+    /** Total time the calls waited to be admitted, in milliseconds */
+    private final double queueWaitMillis;
+    /** Mean latency in milliseconds */
+    private final double meanMillis;
+    /** Median latency in milliseconds */
+    private final double p50Millis;
+    /** 99th percentile of the latency in milliseconds */
+    private final double p99Millis;
+    /** Highest latency in milliseconds */
+    private final double maxMillis;
+
+    /**
+     * Constructor with all the statistics.
+     * @param service name of the remote interface
+     * @param method name of the method
+     * @param calls number of completed calls
+     * @param errors number of failed calls
+     * @param rejected number of calls refused by the admission control
+     * @param inFlight number of calls being executed
+     * @param queueWaitMillis total time the calls waited to be admitted, in milliseconds
+     * @param meanMillis mean latency in milliseconds
+     * @param p50Millis median latency in milliseconds
+     * @param p99Millis 99th percentile of the latency in milliseconds
+     * @param maxMillis highest latency in milliseconds
+     */
+    public MethodStatsDTO(String service, String method, long calls, long errors, long rejected, long inFlight, double queueWaitMillis, double meanMillis, double p50Millis, double p99Millis, double maxMillis) {
+        this.service = service;
+        this.method = method;
+        this.calls = calls;
+        this.errors = errors;
+        this.rejected = rejected;
+        this.inFlight = inFlight;
+        this.queueWaitMillis = queueWaitMillis;
+        this.meanMillis = meanMillis;
+        this.p50Millis = p50Millis;
+        this.p99Millis = p99Millis;
+        this.maxMillis = maxMillis;
+    }
+    /**
+     * Gets the name of the remote interface.
+     * @return name of the remote interface
+     */
+    public String getService() {
+        return service;
+    }
+    /**
+     * Gets the name of the method.
+     * @return name of the method
+     */
+    public String getMethod() {
+        return method;
+    }
+    /**
+     * Gets the number of completed calls.
+     * @return number of completed calls
+     */
+    public long getCalls() {
+        return calls;
+    }
+    /**
+     * Gets the number of failed calls.
+     * @return number of failed calls
+     */
+    public long getErrors() {
+        return errors;
+    }
+    /**
+     * Gets the number of calls refused by the admission control.
+     * @return number of refused calls
+     */
+    public long getRejected() {
+        return rejected;
+    }
+    /**
+     * Gets the number of calls being executed.
+     * @return number of calls being executed
+     */
+    public long getInFlight() {
+        return inFlight;
+    }
+    /**
+     * Gets the total time the calls waited to be admitted.
+     * @return wait in milliseconds
+     */
+    public double getQueueWaitMillis() {
+        return queueWaitMillis;
+    }
+    /**
+     * Gets the mean latency.
+     * @return mean latency in milliseconds
+     */
+    public double getMeanMillis() {
+        return meanMillis;
+    }
+    /**
+     * Gets the median latency.
+     * @return median latency in milliseconds
+     */
+    public double getP50Millis() {
+        return p50Millis;
+    }
+    /**
+     * Gets the 99th percentile of the latency.
+     * @return 99th percentile of the latency in milliseconds
+     */
+    public double getP99Millis() {
+        return p99Millis;
+    }
+    /**
+     * Gets the highest latency.
+     * @return highest latency in milliseconds
+     */
+    public double getMaxMillis() {
+        return maxMillis;
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.ROOT,
+                "%s.%s calls=%d errors=%d rejected=%d inFlight=%d queueWait=%.0fms mean=%.2fms p50=%.2fms p99=%.2fms max=%.2fms", service, method, calls, errors, rejected, inFlight, queueWaitMillis, meanMillis, p50Millis, p99Millis, maxMillis);
+    }
+}
@@ -0,0 +1,91 @@
+package it.uninsubria.dto;
+
+import java.io.Serializable;
+import java.time.Instant;
+
+/**
+ * Data Transfer Object for the dashboard of an owner: a restaurant with the statistics of its reviews.
+ * The number of reviews and the average rating are those of the restaurant.
+ *
+ * @author Lorenzo Radice
+ */
+public class RestaurantStatsDTO implements Serializable {
+    /** Serial version UID for serialization */
+    private static final long serialVersionUID = 1L;
+    /** Restaurant, with its average rating and number of reviews */
+    private final RestaurantDTO restaurant;
+    /** Number of reviews for every rating, from 1 to 5 stars */
+    private final int[] ratingHistogram;
+    /** Number of reviews without a reply of the owner */
+    private final int unrepliedCount;
+    /** Time of the latest review, null without reviews */
+    private final Instant latestReview;
+
+    /**
+     * Constructor with all the statistics.
+     * @param restaurant restaurant, with its average rating and number of reviews
+     * @param ratingHistogram number of reviews for every rating, from 1 to 5 stars
+     * @param unrepliedCount number of reviews without a reply of the owner
+     * @param latestReview time of the latest review, null without reviews
+     */
+    public RestaurantStatsDTO(RestaurantDTO restaurant, int[] ratingHistogram, int unrepliedCount, Instant latestReview) {
+        this.restaurant = restaurant;
+        this.ratingHistogram = ratingHistogram.clone();
+        this.unrepliedCount = unrepliedCount;
+        this.latestReview = latestReview;
+    }
+    /**
+     * Gets the restaurant.
+     * @return restaurant, with its average rating and number of reviews
+     */
+    public RestaurantDTO getRestaurant() {
+        return restaurant;
+    }
+    /**
+     * Gets the number of reviews.
+     * @return number of reviews of the restaurant
+     */
+    public int getReviewCount() {
+        return restaurant.getReviewsNumber() == null ? 0 : restaurant.getReviewsNumber();
+    }
+    /**
+     * Gets the average rating.
+     * @return average rating, null without reviews
+     */
+    public Double getAverageRating() {
+        return restaurant.getAvgRating();
+    }
+    /**
+     * Gets the number of reviews with a given rating.
+     * @param stars rating, from 1 to 5
+     * @return number of reviews with that rating
+     * @throws IllegalArgumentException if the rating is not between 1 and 5
+     */
+    public int getRatingCount(int stars) {
+        if (stars < 1 || stars > ratingHistogram.length) {
+            throw new IllegalArgumentException("Invalid rating: " + stars);
+        }
+        return ratingHistogram[stars - 1];
+    }
+    /**
+     * Gets the number of reviews for every rating.
+     * @return copy of the counts, index 0 for 1 star up to index 4 for 5 stars
+     */
+    public int[] getRatingHistogram() {
+        return ratingHistogram.clone();
+    }
+    /**
+     * Gets the number of reviews without a reply.
+     * @return number of reviews without a reply of the owner
+     */
+    public int getUnrepliedCount() {
+        return unrepliedCount;
+    }
+    /**
+     * Gets the time of the latest review.
+     * @return time of the latest review, null without reviews
+     */
+    public Instant getLatestReview() {
+        return latestReview;
+    }
+}
@@ -1,6 +1,7 @@
 package it.uninsubria.dto;
 
 import java.io.Serializable;
+import java.time.Instant;
 
 /**
  * Data Transfer Object for Review information.
@@ -22,6 +23,8 @@ public class ReviewDTO implements Serializable {
     private String comment = null;
     /** Optional reply written by the restaurant owner */
     private String reply = null;
+    /** Time of the last change of the rating or comment, null if not read from the database */
+    private Instant reviewedAt = null;
 
     /**
      * Complete constructor with all review information.
@@ -123,4 +126,18 @@ public class ReviewDTO implements Serializable {
     public void setReply(String reply) {
         this.reply = reply;
     }
+    /**
+     * Gets the time of the last change of the rating or comment, which identifies the version of the review.
+     * @return Time of the review, or null if not read from the database
+     */
+    public Instant getReviewedAt() {
+        return reviewedAt;
+    }
+    /**
+     * Sets the time of the last change of the rating or comment.
+     * @param reviewedAt Time of the review
+     */
+    public void setReviewedAt(Instant reviewedAt) {
+        this.reviewedAt = reviewedAt;
+    }
 }
@@ -0,0 +1,335 @@
+package it.uninsubria.dto;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Data Transfer Object for a snapshot of the state of the server,
+ * returned by the admin service: database connection pool, caches, remote calls,
+ * JVM memory and garbage collection, and settings of the slow-query log.
+ *
+ * @author Lorenzo Radice
+ */
+public class ServerStatusDTO implements Serializable {
+    /** Serial version UID for serialization */
+    private static final long serialVersionUID = 1L;
+    /** Time since the server started, in milliseconds */
+    private long uptimeMillis;
+    /** Maximum number of database connections of the pool */
+    private int poolMaxSize;
+    /** Number of open database connections */
+    private int poolOpen;
+    /** Number of database connections in use */
+    private int poolInUse;
+    /** Number of requests waiting for a database connection */
+    private int poolWaiting;
+    /** 99th percentile of the wait for a database connection, in milliseconds */
+    private double connectionWaitP99Millis;
+    /** Number of remote calls being executed */
+    private long inFlight;
+    /** Statistics of the remote methods */
+    private List<MethodStatsDTO> methods = new ArrayList<>();
+    /** Statistics of the caches */
+    private List<CacheStatsDTO> caches = new ArrayList<>();
+    /** Heap memory in use, in bytes */
+    private long heapUsed;
+    /** Heap memory committed, in bytes */
+    private long heapCommitted;
+    /** Maximum heap memory, in bytes */
+    private long heapMax;
+    /** Non-heap memory in use, in bytes */
+    private long nonHeapUsed;
+    /** Number of live threads */
+    private int threads;
+    /** Statistics of the garbage collectors */
+    private List<GcStatsDTO> garbageCollectors = new ArrayList<>();
+    /** Whether slow SQL statements are logged */
+    private boolean slowQueryLogEnabled;
+    /** Execution time above which an SQL statement is slow, in milliseconds */
+    private long slowQueryThresholdMillis;
+    /** Whether the plans of slow queries are captured */
+    private boolean explainSlowQueries;
+
+    /** Constructor with no arguments */
+    public ServerStatusDTO() {}
+
+    @Override
+    public String toString() {
+        StringBuilder report = new StringBuilder();
+        report.append("Uptime: ").append(uptimeMillis / 1000).append(" s\n");
+        report.append("Pool: ").append(poolInUse).append(" in use, ").append(poolOpen).append(" open, ")
+                .append(poolMaxSize).append(" max, ").append(poolWaiting).append(" waiting, p99 wait ")
+                .append(connectionWaitP99Millis).append(" ms\n");
+        report.append("Remote calls in flight: ").append(inFlight).append('\n');
+        for (MethodStatsDTO method : methods) {
+            report.append("  ").append(method).append('\n');
+        }
+        report.append("Caches:\n");
+        for (CacheStatsDTO cache : caches) {
+            report.append("  ").append(cache).append('\n');
+        }
+        report.append("Heap: ").append(heapUsed >> 20).append(" MiB used, ").append(heapCommitted >> 20)
+                .append(" MiB committed, ").append(heapMax >> 20).append(" MiB max; non-heap ")
+                .append(nonHeapUsed >> 20).append(" MiB; threads ").append(threads).append('\n');
+        for (GcStatsDTO gc : garbageCollectors) {
+            report.append("  ").append(gc).append('\n');
+        }
+        report.append("Slow-query log: ").append(slowQueryLogEnabled ? "on" : "off")
+                .append(", threshold ").append(slowQueryThresholdMillis).append(" ms, explain ")
+                .append(explainSlowQueries ? "on" : "off");
+        return report.toString();
+    }
+    /**
+     * Gets the time since the server started, in milliseconds.
+     * @return time since the server started, in milliseconds
+     */
+    public long getUptimeMillis() {
+        return uptimeMillis;
+    }
+    /**
+     * Sets the time since the server started, in milliseconds.
+     * @param uptimeMillis time since the server started, in milliseconds
+     */
+    public void setUptimeMillis(long uptimeMillis) {
+        this.uptimeMillis = uptimeMillis;
+    }
+    /**
+     * Gets the maximum number of database connections of the pool.
+     * @return maximum number of database connections of the pool
+     */
+    public int getPoolMaxSize() {
+        return poolMaxSize;
+    }
+    /**
+     * Sets the maximum number of database connections of the pool.
+     * @param poolMaxSize maximum number of database connections of the pool
+     */
+    public void setPoolMaxSize(int poolMaxSize) {
+        this.poolMaxSize = poolMaxSize;
+    }
+    /**
+     * Gets the number of open database connections.
+     * @return number of open database connections
+     */
+    public int getPoolOpen() {
+        return poolOpen;
+    }
+    /**
+     * Sets the number of open database connections.
+     * @param poolOpen number of open database connections
+     */
+    public void setPoolOpen(int poolOpen) {
+        this.poolOpen = poolOpen;
+    }
+    /**
+     * Gets the number of database connections in use.
+     * @return number of database connections in use
+     */
+    public int getPoolInUse() {
+        return poolInUse;
+    }
+    /**
+     * Sets the number of database connections in use.
+     * @param poolInUse number of database connections in use
+     */
+    public void setPoolInUse(int poolInUse) {
+        this.poolInUse = poolInUse;
+    }
+    /**
+     * Gets the number of requests waiting for a database connection.
+     * @return number of requests waiting for a database connection
+     */
+    public int getPoolWaiting() {
+        return poolWaiting;
+    }
+    /**
+     * Sets the number of requests waiting for a database connection.
+     * @param poolWaiting number of requests waiting for a database connection
+     */
+    public void setPoolWaiting(int poolWaiting) {
+        this.poolWaiting = poolWaiting;
+    }
+    /**
+     * Gets the 99th percentile of the wait for a database connection, in milliseconds.
+     * @return 99th percentile of the wait for a database connection, in milliseconds
+     */
+    public double getConnectionWaitP99Millis() {
+        return connectionWaitP99Millis;
+    }
+    /**
+     * Sets the 99th percentile of the wait for a database connection, in milliseconds.
+     * @param connectionWaitP99Millis 99th percentile of the wait for a database connection, in milliseconds
+     */
+    public void setConnectionWaitP99Millis(double connectionWaitP99Millis) {
+        this.connectionWaitP99Millis = connectionWaitP99Millis;
+    }
+    /**
+     * Gets the number of remote calls being executed.
+     * @return number of remote calls being executed
+     */
+    public long getInFlight() {
+        return inFlight;
+    }
+    /**
+     * Sets the number of remote calls being executed.
+     * @param inFlight number of remote calls being executed
+     */
+    public void setInFlight(long inFlight) {
+        this.inFlight = inFlight;
+    }
+    /**
+     * Gets the statistics of the remote methods.
+     * @return statistics of the remote methods
+     */
+    public List<MethodStatsDTO> getMethods() {
+        return methods;
+    }
+    /**
+     * Sets the statistics of the remote methods.
+     * @param methods statistics of the remote methods
+     */
+    public void setMethods(List<MethodStatsDTO> methods) {
+        this.methods = methods;
+    }
+    /**
+     * Gets the statistics of the caches.
+     * @return statistics of the caches
+     */
+    public List<CacheStatsDTO> getCaches() {
+        return caches;
+    }
+    /**
+     * Sets the statistics of the caches.
+     * @param caches statistics of the caches
+     */
+    public void setCaches(List<CacheStatsDTO> caches) {
+        this.caches = caches;
+    }
+    /**
+     * Gets the heap memory in use, in bytes.
+     * @return heap memory in use, in bytes
+     */
+    public long getHeapUsed() {
+        return heapUsed;
+    }
+    /**
+     * Sets the heap memory in use, in bytes.
+     * @param heapUsed heap memory in use, in bytes
+     */
+    public void setHeapUsed(long heapUsed) {
+        this.heapUsed = heapUsed;
+    }
+    /**
+     * Gets the heap memory committed, in bytes.
+     * @return heap memory committed, in bytes
+     */
+    public long getHeapCommitted() {
+        return heapCommitted;
+    }
+    /**
+     * Sets the heap memory committed, in bytes.
+     * @param heapCommitted heap memory committed, in bytes
+     */
+    public void setHeapCommitted(long heapCommitted) {
+        this.heapCommitted = heapCommitted;
+    }
+    /**
+     * Gets the maximum heap memory, in bytes.
+     * @return maximum heap memory, in bytes
+     */
+    public long getHeapMax() {
+        return heapMax;
+    }
+    /**
+     * Sets the maximum heap memory, in bytes.
+     * @param heapMax maximum heap memory, in bytes
+     */
+    public void setHeapMax(long heapMax) {
+        this.heapMax = heapMax;
+    }
+    /**
+     * Gets the non-heap memory in use, in bytes.
+     * @return non-heap memory in use, in bytes
+     */
+    public long getNonHeapUsed() {
+        return nonHeapUsed;
+    }
+    /**
+     * Sets the non-heap memory in use, in bytes.
+     * @param nonHeapUsed non-heap memory in use, in bytes
+     */
+    public void setNonHeapUsed(long nonHeapUsed) {
+        this.nonHeapUsed = nonHeapUsed;
+    }
+    /**
+     * Gets the number of live threads.
+     * @return number of live threads
+     */
+    public int getThreads() {
+        return threads;
+    }
+    /**
+     * Sets the number of live threads.
+     * @param threads number of live threads
+     */
+    public void setThreads(int threads) {
+        this.threads = threads;
+    }
+    /**
+     * Gets the statistics of the garbage collectors.
+     * @return statistics of the garbage collectors
+     */
+    public List<GcStatsDTO> getGarbageCollectors() {
+        return garbageCollectors;
+    }
+    /**
+     * Sets the statistics of the garbage collectors.
+     * @param garbageCollectors statistics of the garbage collectors
+     */
+    public void setGarbageCollectors(List<GcStatsDTO> garbageCollectors) {
+        this.garbageCollectors = garbageCollectors;
+    }
+    /**
+     * Gets whether slow SQL statements are logged.
+     * @return whether slow SQL statements are logged
+     */
+    public boolean isSlowQueryLogEnabled() {
+        return slowQueryLogEnabled;
+    }
+    /**
+     * Sets whether slow SQL statements are logged.
+     * @param slowQueryLogEnabled whether slow SQL statements are logged
+     */
+    public void setSlowQueryLogEnabled(boolean slowQueryLogEnabled) {
+        this.slowQueryLogEnabled = slowQueryLogEnabled;
+    }
+    /**
+     * Gets the execution time above which an SQL statement is slow, in milliseconds.
+     * @return execution time above which an SQL statement is slow, in milliseconds
+     */
+    public long getSlowQueryThresholdMillis() {
+        return slowQueryThresholdMillis;
+    }
+    /**
+     * Sets the execution time above which an SQL statement is slow, in milliseconds.
+     * @param slowQueryThresholdMillis execution time above which an SQL statement is slow, in milliseconds
+     */
+    public void setSlowQueryThresholdMillis(long slowQueryThresholdMillis) {
+        this.slowQueryThresholdMillis = slowQueryThresholdMillis;
+    }
+    /**
+     * Gets whether the plans of slow queries are captured.
+     * @return whether the plans of slow queries are captured
+     */
+    public boolean isExplainSlowQueries() {
+        return explainSlowQueries;
+    }
+    /**
+     * Sets whether the plans of slow queries are captured.
+     * @param explainSlowQueries whether the plans of slow queries are captured
+     */
+    public void setExplainSlowQueries(boolean explainSlowQueries) {
+        this.explainSlowQueries = explainSlowQueries;
+    }
+}
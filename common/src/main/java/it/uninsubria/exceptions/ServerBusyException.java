@@ -0,0 +1,56 @@
+package it.uninsubria.exceptions;
+
+import java.rmi.RemoteException;
+
+/**
+ * Exception thrown by the server when it refuses a call without executing it,
+ * either because the client exceeded its rate limit or because the server is overloaded.
+ * The call can be repeated after {@link #getRetryAfterMillis()}; a call refused because of overload
+ * can also be sent at once to another server.
+ */
+public class ServerBusyException extends RemoteException {
+    /** Serial version UID for serialization */
+    private static final long serialVersionUID = 1L;
+    /** Suggested wait before repeating the call, in milliseconds */
+    private final long retryAfterMillis;
+    /** Whether the call was refused because of the rate limit of the client */
+    private final boolean rateLimited;
+
+    /**
+     * Constructor for ServerBusyException
+     * @param message description of the refusal
+     * @param retryAfterMillis suggested wait before repeating the call, in milliseconds
+     * @param rateLimited whether the call exceeded the rate limit of the client
+     */
+    public ServerBusyException(String message, long retryAfterMillis, boolean rateLimited) {
+        super(message);
+        this.retryAfterMillis = retryAfterMillis;
+        this.rateLimited = rateLimited;
+    }
+
+    /**
+     * Returns the suggested wait before repeating the call.
+     * @return wait in milliseconds
+     */
+    public long getRetryAfterMillis() {
+        return retryAfterMillis;
+    }
+
+    /**
+     * Returns whether the call was refused because of the rate limit of the client,
+     * rather than because the server is overloaded.
+     * @return true if the client exceeded its rate limit
+     */
+    public boolean isRateLimited() {
+        return rateLimited;
+    }
+
+    /**
+     * Skips the stack trace, which is useless to the client and expensive to fill when shedding load.
+     * @return this exception
+     */
+    @Override
+    public synchronized Throwable fillInStackTrace() {
+        return this;
+    }
+}
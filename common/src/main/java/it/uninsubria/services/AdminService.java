@@ -0,0 +1,61 @@
+package it.uninsubria.services;
+
+import it.uninsubria.dto.ServerStatusDTO;
+
+import java.rmi.Remote;
+import java.rmi.RemoteException;
+
+/**
+ * Remote interface for monitoring and tuning a running server.
+ * Every operation requires the admin key configured on the server.
+ *
+ * @author Lorenzo Radice
+ */
+public interface AdminService extends Remote {
+
+    /**
+     * Takes a snapshot of the state of the server.
+     *
+     * @param adminKey admin key of the server
+     * @return Snapshot of the connection pool, caches, remote calls, JVM memory and garbage collection
+     * @throws RemoteException If a remote communication error occurs
+     * @throws SecurityException If the admin key is wrong
+     */
+    ServerStatusDTO getStatus(String adminKey) throws RemoteException, SecurityException;
+
+    /**
+     * Removes every entry of a cache.
+     *
+     * @param adminKey admin key of the server
+     * @param cacheName Name of the cache, or null to clear every cache
+     * @return true if a cache was cleared, false if no cache has the given name
+     * @throws RemoteException If a remote communication error occurs
+     * @throws SecurityException If the admin key is wrong
+     */
+    boolean clearCache(String adminKey, String cacheName) throws RemoteException, SecurityException;
+
+    /**
+     * Changes the maximum number of connections of the database connection pool.
+     * Connections in use beyond the new size are closed when they are released.
+     *
+     * @param adminKey admin key of the server
+     * @param size New maximum number of connections, at least 1
+     * @throws RemoteException If a remote communication error occurs
+     * @throws SecurityException If the admin key is wrong
+     * @throws IllegalArgumentException If the size is less than 1
+     */
+    void resizePool(String adminKey, int size) throws RemoteException, SecurityException, IllegalArgumentException;
+
+    /**
+     * Changes the settings of the slow-query log.
+     *
+     * @param adminKey admin key of the server
+     * @param enabled Whether slow SQL statements are logged
+     * @param thresholdMillis Execution time above which a statement is slow, in milliseconds
+     * @param explain Whether the plans of slow queries are captured
+     * @throws RemoteException If a remote communication error occurs
+     * @throws SecurityException If the admin key is wrong
+     */
+    void setSlowQueryCapture(String adminKey, boolean enabled, long thresholdMillis, boolean explain)
+            throws RemoteException, SecurityException;
+}
@@ -1,11 +1,13 @@
 package it.uninsubria.services;
 
 import it.uninsubria.dto.RestaurantDTO;
+import it.uninsubria.dto.RestaurantStatsDTO;
 import it.uninsubria.dto.SearchCriteriaDTO;
 
 import java.rmi.Remote;
 import java.rmi.RemoteException;
 import java.util.List;
+import java.util.Set;
 
 /**
  * Remote interface for restaurant-related operations in TheKnife system.
@@ -16,6 +18,13 @@ import java.util.List;
  */
 public interface RestaurantService extends Remote {
 
+    /**
+     * Methods whose calls must reach the same server for the same user, the first argument.
+     * A server writes the favorite changes behind a local buffer, so until they are flushed
+     * they are visible only on the server which accepted them.
+     */
+    Set<String> USER_AFFINITY = Set.of("getFavoriteRestaurants", "addFavoriteRestaurant", "removeFavoriteRestaurant");
+
     /**
      * Searches for restaurants based on the provided criteria.
      *
@@ -52,6 +61,17 @@ public interface RestaurantService extends Remote {
      */
     List<RestaurantDTO> getReviewedRestaurants(String userId) throws RemoteException;
 
+    /**
+     * Retrieves the dashboard of a restaurateur: every owned restaurant with the number of its reviews,
+     * its average rating, the number of reviews for every rating, the number of reviews without a reply
+     * and the time of the latest review.
+     *
+     * @param ownerId The ID of the owner
+     * @return A list of owned restaurants with their statistics
+     * @throws RemoteException If a remote communication error occurs
+     */
+    List<RestaurantStatsDTO> getOwnerDashboard(String ownerId) throws RemoteException;
+
     /**
      * Adds a restaurant to a user's favorites list.
      *
@@ -0,0 +1,34 @@
+package it.uninsubria.services;
+
+import it.uninsubria.dto.ReviewDTO;
+
+import java.rmi.Remote;
+import java.rmi.RemoteException;
+
+/**
+ * Remote listener exported by a client to learn the outcome of the reviews it submitted
+ * with {@link ReviewService#submitReview(ReviewDTO, ReviewCallback)}.
+ * The server calls it back from its own threads once the review is written to the database, or has failed,
+ * so the client must be reachable by the server.
+ *
+ * @author Lorenzo Radice
+ */
+public interface ReviewCallback extends Remote {
+
+    /**
+     * Called when a review was written to the database, so that it is part of the ratings of the restaurant.
+     *
+     * @param review The submitted review
+     * @throws RemoteException If a remote communication error occurs
+     */
+    void reviewCommitted(ReviewDTO review) throws RemoteException;
+
+    /**
+     * Called when a review could not be written to the database.
+     *
+     * @param review The submitted review
+     * @param reason Description of the failure
+     * @throws RemoteException If a remote communication error occurs
+     */
+    void reviewFailed(ReviewDTO review, String reason) throws RemoteException;
+}
@@ -36,6 +36,46 @@ public interface ReviewService extends Remote {
      */
     boolean createOrUpdateReview(ReviewDTO review) throws RemoteException, SecurityException, IllegalArgumentException;
 
+    /**
+     * Creates a new review or updates an existing one without waiting for it to be written.
+     * The call returns as soon as the server has durably queued the review; the callback, if any,
+     * is then told whether the review was written.
+     *
+     * @param review The review to create or update
+     * @param callback The listener told of the outcome, or null
+     * @return true if the review was queued, false otherwise
+     * @throws RemoteException If a remote communication error occurs, or the server has too many queued reviews
+     * @throws SecurityException If the user does not have permission to review this restaurant
+     * @throws IllegalArgumentException If the review data is invalid
+     */
+    boolean submitReview(ReviewDTO review, ReviewCallback callback) throws RemoteException, SecurityException, IllegalArgumentException;
+
+    /**
+     * Retrieves a page of the reviews of an owner's restaurants which still have no reply, oldest first.
+     *
+     * @param ownerId The ID of the owner
+     * @param after The last review of the previous page, as returned by this method, or null for the first page
+     * @param limit The maximum number of reviews of the page, at most 100
+     * @return A list of reviews waiting for a reply, empty after the last page
+     * @throws RemoteException If a remote communication error occurs
+     */
+    List<ReviewDTO> getPendingReplies(String ownerId, ReviewDTO after, int limit) throws RemoteException;
+
+    /**
+     * Sets the reply of the owner to a review, leaving its rating and comment untouched.
+     * The reply is only written if the review did not change since it was read, so that the owner never
+     * replies to a comment they have not seen nor overwrites a concurrent reply.
+     *
+     * @param ownerId The ID of the owner of the reviewed restaurant
+     * @param review The review as it was read from the server
+     * @param reply The reply text
+     * @return true if the reply was written, false if the review changed in the meantime,
+     *         no longer exists or is not about a restaurant of the owner
+     * @throws RemoteException If a remote communication error occurs
+     * @throws IllegalArgumentException If the review was not read from the server
+     */
+    boolean replyToReview(String ownerId, ReviewDTO review, String reply) throws RemoteException, IllegalArgumentException;
+
     /**
      * Deletes a review.
      * A user can only delete their own reviews.
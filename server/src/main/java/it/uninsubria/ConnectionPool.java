@@ -0,0 +1,274 @@
+package it.uninsubria;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Bounded pool of database connections.
+ * Connections are opened on demand up to the maximum size and reused afterwards;
+ * when all of them are in use, callers wait until one is released or the timeout expires.
+ * The maximum size can be changed while the pool is in use.
+ *
+ * @author Lorenzo Radice
+ */
+public class ConnectionPool {
+    /**
+     * Opener of new connections.
+     */
+    @FunctionalInterface
+    public interface ConnectionFactory {
+        /**
+         * Opens a new connection.
+         * @return the new connection
+         * @throws SQLException if the connection cannot be opened
+         */
+        Connection open() throws SQLException;
+    }
+
+    /** Opener of new connections */
+    private final ConnectionFactory factory;
+    /** Maximum time to wait for a connection, in nanoseconds */
+    private final long timeout;
+    /** Lock guarding the state of the pool */
+    private final ReentrantLock lock = new ReentrantLock();
+    /** Signalled when a connection is released or the pool grows */
+    private final Condition available = lock.newCondition();
+    /** Idle connections, the most recently used first */
+    private final Deque<Connection> idle = new ArrayDeque<>();
+    /** Maximum number of open connections */
+    private int maxSize;
+    /** Number of open connections, idle or in use */
+    private int open = 0;
+    /** Number of callers waiting for a connection */
+    private int waiting = 0;
+    /** Whether the pool has been closed */
+    private boolean closed = false;
+
+    /**
+     * Constructor for ConnectionPool
+     * @param factory opener of new connections
+     * @param maxSize maximum number of open connections
+     * @param timeoutMillis maximum time to wait for a connection, in milliseconds
+     * @param initial already open connection to add to the pool, or null
+     */
+    public ConnectionPool(ConnectionFactory factory, int maxSize, long timeoutMillis, Connection initial) {
+        if (maxSize < 1) {
+            throw new IllegalArgumentException("The pool size must be at least 1");
+        }
+        this.factory = factory;
+        this.maxSize = maxSize;
+        this.timeout = TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        if (initial != null) {
+            idle.push(initial);
+            open = 1;
+        }
+    }
+
+    /**
+     * Takes a connection from the pool, opening a new one if none is idle and the pool is not full.
+     * @return a connection, to give back with {@link #release(Connection)}
+     * @throws SQLTimeoutException if no connection becomes available within the timeout
+     * @throws SQLException if the pool is closed or a new connection cannot be opened
+     */
+    public Connection acquire() throws SQLException {
+        long remaining = timeout;
+        lock.lock();
+        try {
+            while (true) {
+                if (closed) {
+                    throw new SQLException("The connection pool is closed");
+                }
+                Connection connection = idle.poll();
+                if (connection != null) {
+                    if (!connection.isClosed()) {
+                        return connection;
+                    }
+                    open--;
+                    continue;
+                }
+                if (open < maxSize) {
+                    // Reserve the slot, the connection is opened outside the lock
+                    open++;
+                    break;
+                }
+                if (remaining <= 0) {
+                    throw new SQLTimeoutException("No database connection available within "
+                            + TimeUnit.NANOSECONDS.toMillis(timeout) + " ms");
+                }
+                waiting++;
+                try {
+                    remaining = available.awaitNanos(remaining);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new SQLException("Interrupted while waiting for a database connection", e);
+                } finally {
+                    waiting--;
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+        try {
+            return factory.open();
+        } catch (SQLException | RuntimeException e) {
+            discard();
+            throw e;
+        }
+    }
+
+    /**
+     * Gives a connection back to the pool.
+     * A pending transaction is rolled back; broken connections and connections beyond the maximum size are closed.
+     * @param connection connection taken with {@link #acquire()}
+     */
+    public void release(Connection connection) {
+        boolean reusable;
+        try {
+            if (!connection.getAutoCommit()) {
+                connection.rollback();
+                connection.setAutoCommit(true);
+            }
+            reusable = !connection.isClosed();
+        } catch (SQLException e) {
+            reusable = false;
+        }
+        lock.lock();
+        try {
+            if (reusable && !closed && open <= maxSize) {
+                idle.push(connection);
+                available.signal();
+                return;
+            }
+        } finally {
+            lock.unlock();
+        }
+        close(connection);
+        discard();
+    }
+
+    /**
+     * Changes the maximum number of open connections.
+     * Idle connections beyond the new size are closed immediately, connections in use when they are released.
+     * @param size new maximum number of connections
+     * @throws IllegalArgumentException if the size is less than 1
+     */
+    public void resize(int size) {
+        if (size < 1) {
+            throw new IllegalArgumentException("The pool size must be at least 1");
+        }
+        Deque<Connection> excess = new ArrayDeque<>();
+        lock.lock();
+        try {
+            maxSize = size;
+            while (open > maxSize && !idle.isEmpty()) {
+                excess.push(idle.pollLast());
+                open--;
+            }
+            available.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        excess.forEach(ConnectionPool::close);
+    }
+
+    /**
+     * Closes the pool and its idle connections; connections in use are closed when they are released.
+     */
+    public void close() {
+        Deque<Connection> toClose;
+        lock.lock();
+        try {
+            closed = true;
+            toClose = new ArrayDeque<>(idle);
+            open -= idle.size();
+            idle.clear();
+            available.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        toClose.forEach(ConnectionPool::close);
+    }
+
+    /**
+     * Returns the maximum number of open connections.
+     * @return maximum size of the pool
+     */
+    public int getMaxSize() {
+        lock.lock();
+        try {
+            return maxSize;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the number of open connections, idle or in use.
+     * @return number of open connections
+     */
+    public int getOpen() {
+        lock.lock();
+        try {
+            return open;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the number of connections in use.
+     * @return number of connections in use
+     */
+    public int getInUse() {
+        lock.lock();
+        try {
+            return open - idle.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the number of callers waiting for a connection.
+     * @return number of waiting callers
+     */
+    public int getWaiting() {
+        lock.lock();
+        try {
+            return waiting;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Frees the slot of a connection which was closed or could not be opened.
+     */
+    private void discard() {
+        lock.lock();
+        try {
+            open--;
+            available.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Closes a connection, ignoring errors.
+     * @param connection connection to close
+     */
+    private static void close(Connection connection) {
+        try {
+            connection.close();
+        } catch (SQLException e) {
+            System.err.println("Error closing a database connection: " + e.getMessage());
+        }
+    }
+}
@@ -1,25 +1,57 @@
 package it.uninsubria;
 
+import it.uninsubria.metrics.SqlMonitor;
+import it.uninsubria.metrics.TimedConnection;
+
 import java.sql.Connection;
 import java.sql.SQLException;
 
 /**
- * DBConnection class provides a singleton connection to the database
+ * DBConnection class provides the connections to the database
  * and manages the connection attempts.
+ * After the login, connections are taken from a {@link ConnectionPool} and bound to the calling thread
+ * until {@link #releaseConnection()} is called.
+ * Read-only queries use {@link #getReadConnection()}, which spreads them across the read replicas
+ * when some are configured (see {@link ReplicaRouter}).
  */
 public class DBConnection {
-    /** Database connection */
+    /** Database connection established by the login, the first connection of the pool */
     private static Connection connection = null;
+    /** Pool of the connections, created by the login */
+    private static ConnectionPool pool = null;
+    /** Connection bound to each thread */
+    private static final ThreadLocal<Connection> bound = new ThreadLocal<>();
+    /** Router of the reads across the replicas, null if there are none */
+    private static ReplicaRouter router = null;
+    /** Replica connection bound to each thread */
+    private static final ThreadLocal<Connection> boundRead = new ThreadLocal<>();
+    /** Replica of the connection bound to each thread */
+    private static final ThreadLocal<ReplicaRouter.Replica> boundReplica = new ThreadLocal<>();
+    /** User on whose behalf each thread is working, to route their reads after their writes */
+    private static final ThreadLocal<String> caller = new ThreadLocal<>();
+    /** Whether each thread asked for the primary connection to write */
+    private static final ThreadLocal<Boolean> writing = new ThreadLocal<>();
+    /** Maximum number of pooled connections */
+    private static final int poolSize = Integer.getInteger("theknife.db.pool", 10);
+    /** Maximum time to wait for a pooled connection, in milliseconds */
+    private static final long poolTimeout = 30_000;
+    /** Connector which established the current connection, reused to open dedicated connections */
+    private static DBConnector connector = null;
     /** Maximum number of attempts to connect to the database */
     private static final short maxAttempts = 3;
     /** Number of remaining attempts to connect to the database */
     private static short remainingAttempts = maxAttempts;
     /**
      * Method to log in to the database given command line arguments which
-     * might contain username and password
+     * might contain username and password.
+     * Does nothing if already logged in, so that the pool and the connections bound to the threads are kept;
+     * call {@link #closeConnection()} first to log in again.
      * @param args command line arguments
      */
     public static synchronized void login(String[] args) {
+        if (pool != null) {
+            return;
+        }
         DBConnector dbConnector;
         String username = null;
         if (args.length >= 1) {
@@ -37,19 +69,184 @@ public class DBConnection {
             dbConnector = new DBConnector(username);
             attempt(dbConnector);
         }
+        pool = new ConnectionPool(() -> TimedConnection.wrap(openConnection()), poolSize, poolTimeout, connection);
+        router = ReplicaRouter.fromProperties(pool, DBConnection::openReplicaConnection, poolSize, poolTimeout);
         System.out.println("Database connection established");
     }
     /**
-     * Gets the singleton database connection instance.
+     * Gets the database connection of the calling thread, taking one from the pool if the thread has none.
+     * The connection is wrapped to time its statements, and the time spent waiting for it is recorded.
+     *
+     * @return The database connection
+     * @throws IllegalStateException if connection has not been established via login(),
+     * or if no connection is available
+     */
+    public static Connection getConnection() {
+        writing.set(Boolean.TRUE);
+        return getPrimaryConnection();
+    }
+    /**
+     * Gets the primary connection of the calling thread, taking one from the pool if the thread has none.
+     *
+     * @return The database connection
+     * @throws IllegalStateException if connection has not been established via login(),
+     * or if no connection is available
+     */
+    private static Connection getPrimaryConnection() {
+        Connection current = bound.get();
+        try {
+            if (current != null && !current.isClosed()) {
+                return current;
+            }
+        } catch (SQLException e) {
+            // Broken connection, replaced below
+        }
+        ConnectionPool currentPool = getPool();
+        if (currentPool == null) {
+            throw new IllegalStateException("Database connection not established. Call login() first.");
+        }
+        if (current != null) {
+            bound.remove();
+            currentPool.release(current);
+        }
+        long start = System.nanoTime();
+        try {
+            current = currentPool.acquire();
+        } catch (SQLException e) {
+            throw new IllegalStateException("Database connection not available: " + e.getMessage(), e);
+        } finally {
+            SqlMonitor.get().recordConnectionWait(System.nanoTime() - start);
+        }
+        bound.set(current);
+        return current;
+    }
+    /**
+     * Gets a connection for read-only queries.
+     * The query goes to a healthy replica, unless there are no replicas, the thread already wrote
+     * on the primary, or the user of the thread wrote recently: in these cases the primary connection is returned,
+     * so that the writes are visible.
+     *
+     * @return The database connection to read from
+     * @throws IllegalStateException if connection has not been established via login(),
+     * or if no connection is available
+     */
+    public static Connection getReadConnection() {
+        ReplicaRouter currentRouter = getRouter();
+        if (currentRouter == null || bound.get() != null || currentRouter.mustReadPrimary(caller.get())) {
+            return getPrimaryConnection();
+        }
+        Connection current = boundRead.get();
+        try {
+            if (current != null && !current.isClosed()) {
+                return current;
+            }
+        } catch (SQLException e) {
+            // Broken connection, replaced below
+        }
+        releaseReadConnection();
+        for (int i = 0; i < currentRouter.getReplicas().size(); i++) {
+            ReplicaRouter.Replica replica = currentRouter.pick();
+            if (replica == null) {
+                break;
+            }
+            try {
+                current = replica.getPool().acquire();
+                boundRead.set(current);
+                boundReplica.set(replica);
+                return current;
+            } catch (SQLException e) {
+                currentRouter.markDown(replica, e);
+            }
+        }
+        return getPrimaryConnection();
+    }
+    /**
+     * Sets the user on whose behalf the calling thread is working, until the connections are released.
+     * @param user username, or null for anonymous work
+     */
+    public static void setCaller(String user) {
+        caller.set(user);
+    }
+    /**
+     * Gives the connections of the calling thread back to their pools.
+     * If the thread wrote on behalf of a user, the next reads of that user go to the primary for a while.
+     * Does nothing if the thread has no connection.
+     */
+    public static void releaseConnection() {
+        String user = caller.get();
+        boolean wrote = writing.get() != null;
+        caller.remove();
+        writing.remove();
+        releaseReadConnection();
+        Connection current = bound.get();
+        if (current != null) {
+            bound.remove();
+            getPool().release(current);
+        }
+        ReplicaRouter currentRouter = getRouter();
+        if (wrote && currentRouter != null && user != null) {
+            currentRouter.recordWrite(user);
+        }
+    }
+    /**
+     * Gives the replica connection of the calling thread back to its pool.
+     */
+    private static void releaseReadConnection() {
+        Connection current = boundRead.get();
+        if (current != null) {
+            boundRead.remove();
+            boundReplica.get().getPool().release(current);
+            boundReplica.remove();
+        }
+    }
+    /**
+     * Gets the router of the reads across the replicas.
+     * @return the router, or null if no replica is configured
+     */
+    public static synchronized ReplicaRouter getRouter() {
+        return router;
+    }
+    /**
+     * Gets the pool of the database connections.
+     * @return the connection pool, or null if the login has not been done
+     */
+    public static synchronized ConnectionPool getPool() {
+        return pool;
+    }
+    /**
+     * Opens a new dedicated connection to the database using the credentials
+     * of the last successful login.
+     * The caller owns the returned connection and is responsible for closing it.
      *
-     * @return The database connection, or null if not yet established
+     * @return a new database connection
      * @throws IllegalStateException if connection has not been established via login()
+     * @throws SQLException if the connection cannot be opened
      */
-    public static synchronized Connection getConnection() {
-        if (connection == null) {
+    public static synchronized Connection openConnection() throws SQLException {
+        if (connector == null) {
             throw new IllegalStateException("Database connection not established. Call login() first.");
         }
-        return connection;
+        Connection dedicated = connector.getConnection();
+        if (dedicated == null) {
+            throw new SQLException("Unable to open a new database connection");
+        }
+        return dedicated;
+    }
+    /**
+     * Opens a new connection to a read replica using the credentials of the last successful login.
+     * The connection is read-only and wrapped to time its statements.
+     *
+     * @param url URL of the replica
+     * @return a new replica connection
+     * @throws SQLException if the connection cannot be opened
+     */
+    private static synchronized Connection openReplicaConnection(String url) throws SQLException {
+        Connection replica = connector.getConnection(url);
+        if (replica == null) {
+            throw new SQLException("Unable to connect to the replica " + url);
+        }
+        replica.setReadOnly(true);
+        return TimedConnection.wrap(replica);
     }
     /**
      * Method to attempt to connect to the database
@@ -57,6 +254,10 @@ public class DBConnection {
      */
     private static void attempt(DBConnector connector) {
         connection = connector.getConnection();
+        if (connection != null) {
+            connection = TimedConnection.wrap(connection);
+            DBConnection.connector = connector;
+        }
         remainingAttempts--;
         checkAttempts();
     }
@@ -75,7 +276,15 @@ public class DBConnection {
      * @return true if the connection was closed successfully, false otherwise
      */
     public static synchronized boolean closeConnection() {
-        if (connection != null) {
+        releaseConnection();
+        if (router != null) {
+            router.close();
+            router = null;
+        }
+        if (pool != null) {
+            pool.close();
+            pool = null;
+        } else if (connection != null) {
             try {
                 connection.close();
             } catch (SQLException e) {
@@ -83,6 +292,7 @@ public class DBConnection {
                 return false;
             }
         }
+        connection = null;
         System.out.println("Database connection closed");
         return true;
     }
@@ -13,8 +13,8 @@ import java.io.Console;
  * given the credentials.
  */
 public class DBConnector {
-    /** Database URL */
-    private static final String url = "jdbc:postgresql://localhost:5432/theknife_db";
+    /** Default database URL, can be overridden with the theknife.db.url system property */
+    private static final String defaultUrl = "jdbc:postgresql://localhost:5432/theknife_db";
     /** Database properties */
     private final Properties properties = new Properties();
     /**
@@ -64,10 +64,19 @@ public class DBConnector {
         return (new String(c.readPassword("Password: ")));
     }
     /**
-     * Get the connection to the database
+     * Get the connection to the database.
+     * The URL is read at every call, so that it can be set after the class is loaded (e.g. by the tests).
      * @return Connection object
      */
     public Connection getConnection() {
+        return getConnection(System.getProperty("theknife.db.url", defaultUrl));
+    }
+    /**
+     * Get a connection to another database server with the same credentials, e.g. a read replica
+     * @param url URL of the database
+     * @return Connection object
+     */
+    public Connection getConnection(String url) {
         Connection connection = null;
         try {
             connection = DriverManager.getConnection(url, this.properties);
@@ -0,0 +1,324 @@
+package it.uninsubria;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Router of the read-only queries across the read replicas of the database.
+ * Replicas are picked in round-robin order among the healthy ones; a background check measures
+ * the replication lag of every replica and excludes those which are unreachable or lag too much.
+ * Users who wrote recently are kept on the primary for a while, so that they read their own writes.
+ * <p>
+ * Configuration through system properties:
+ * {@code theknife.db.replicas} (comma-separated JDBC URLs, with the credentials of the primary),
+ * {@code theknife.db.maxLag} (maximum lag of a usable replica in milliseconds, default 1000),
+ * {@code theknife.db.sticky} (time a user reads from the primary after writing, in milliseconds, default 5000) and
+ * {@code theknife.db.replicaCheck} (seconds between two health checks, default 5).
+ *
+ * @author Lorenzo Radice
+ */
+public class ReplicaRouter {
+    /** Query of the current WAL position of the primary */
+    private static final String QUERY_PRIMARY_LSN = "SELECT pg_current_wal_lsn()::text";
+    /**
+     * Query of the state of a replica: whether it is a standby, whether it has replayed the given
+     * position of the primary, and the age of the last replayed transaction in milliseconds
+     */
+    private static final String QUERY_REPLICA_LAG = "SELECT pg_is_in_recovery(), " +
+            "COALESCE(pg_last_wal_replay_lsn() >= CAST(? AS pg_lsn), FALSE), " +
+            "COALESCE(EXTRACT(EPOCH FROM now() - pg_last_xact_replay_timestamp()) * 1000, 0)";
+
+    /**
+     * Read replica of the database.
+     */
+    public static class Replica {
+        /** URL of the replica */
+        private final String url;
+        /** Pool of the connections to the replica */
+        private final ConnectionPool pool;
+        /** Whether the replica can serve reads */
+        private volatile boolean healthy = true;
+        /** Replication lag measured by the last check, in milliseconds */
+        private volatile long lagMillis = 0;
+
+        /**
+         * Constructor for Replica
+         * @param url URL of the replica
+         * @param pool pool of the connections to the replica
+         */
+        public Replica(String url, ConnectionPool pool) {
+            this.url = url;
+            this.pool = pool;
+        }
+
+        /**
+         * Returns the URL of the replica.
+         * @return URL of the replica
+         */
+        public String getUrl() {
+            return url;
+        }
+
+        /**
+         * Returns the pool of the connections to the replica.
+         * @return connection pool
+         */
+        public ConnectionPool getPool() {
+            return pool;
+        }
+
+        /**
+         * Returns whether the replica can serve reads.
+         * @return true if the replica is reachable and up to date
+         */
+        public boolean isHealthy() {
+            return healthy;
+        }
+
+        /**
+         * Returns the replication lag measured by the last check.
+         * @return lag in milliseconds
+         */
+        public long getLagMillis() {
+            return lagMillis;
+        }
+    }
+
+    /**
+     * Opener of the connections to a replica.
+     */
+    @FunctionalInterface
+    public interface ReplicaFactory {
+        /**
+         * Opens a new connection to a replica.
+         * @param url URL of the replica
+         * @return the new connection
+         * @throws SQLException if the connection cannot be opened
+         */
+        Connection open(String url) throws SQLException;
+    }
+
+    /** Pool of the connections to the primary, used to read its WAL position */
+    private final ConnectionPool primary;
+    /** Read replicas */
+    private final List<Replica> replicas;
+    /** Maximum lag of a usable replica, in milliseconds */
+    private final long maxLag;
+    /** Time a user reads from the primary after writing, in nanoseconds */
+    private final long sticky;
+    /** Time of the last write of the recent writers, by username */
+    private final Map<String, Long> lastWrites = new ConcurrentHashMap<>();
+    /** Position of the next replica to pick */
+    private final AtomicInteger next = new AtomicInteger();
+    /** Thread running the health checks */
+    private ScheduledExecutorService checker;
+
+    /**
+     * Constructor for ReplicaRouter
+     * @param primary pool of the connections to the primary
+     * @param replicas read replicas
+     * @param maxLagMillis maximum lag of a usable replica, in milliseconds
+     * @param stickyMillis time a user reads from the primary after writing, in milliseconds
+     */
+    public ReplicaRouter(ConnectionPool primary, List<Replica> replicas, long maxLagMillis, long stickyMillis) {
+        this.primary = primary;
+        this.replicas = List.copyOf(replicas);
+        this.maxLag = maxLagMillis;
+        this.sticky = TimeUnit.MILLISECONDS.toNanos(stickyMillis);
+    }
+
+    /**
+     * Creates the router of the replicas listed in the {@code theknife.db.replicas} property
+     * and starts their health checks.
+     * @param primary pool of the connections to the primary
+     * @param factory opener of the connections to a replica, given its URL
+     * @param poolSize maximum number of connections to every replica
+     * @param timeoutMillis maximum time to wait for a connection to a replica, in milliseconds
+     * @return the router, or null if no replica is configured
+     */
+    public static ReplicaRouter fromProperties(ConnectionPool primary, ReplicaFactory factory, int poolSize, long timeoutMillis) {
+        String urls = System.getProperty("theknife.db.replicas", "").trim();
+        if (urls.isEmpty()) {
+            return null;
+        }
+        List<Replica> replicas = new ArrayList<>();
+        for (String url : urls.split(",")) {
+            String replicaUrl = url.trim();
+            if (!replicaUrl.isEmpty()) {
+                replicas.add(new Replica(replicaUrl,
+                        new ConnectionPool(() -> factory.open(replicaUrl), poolSize, timeoutMillis, null)));
+            }
+        }
+        ReplicaRouter router = new ReplicaRouter(primary, replicas,
+                Long.getLong("theknife.db.maxLag", 1000), Long.getLong("theknife.db.sticky", 5000));
+        router.startChecks(Long.getLong("theknife.db.replicaCheck", 5));
+        System.out.println("Reads routed to " + replicas.size() + " replicas");
+        return router;
+    }
+
+    /**
+     * Picks the replica for the next read.
+     * @return a healthy replica, or null if the read must go to the primary
+     */
+    public Replica pick() {
+        int size = replicas.size();
+        int start = Math.floorMod(next.getAndIncrement(), size);
+        for (int i = 0; i < size; i++) {
+            Replica replica = replicas.get((start + i) % size);
+            if (replica.healthy) {
+                return replica;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Checks whether a user must read from the primary, because they wrote recently.
+     * @param user username, or null for anonymous reads
+     * @return true if the reads of the user must go to the primary
+     */
+    public boolean mustReadPrimary(String user) {
+        if (user == null) {
+            return false;
+        }
+        Long written = lastWrites.get(user);
+        if (written == null) {
+            return false;
+        }
+        if (System.nanoTime() - written < sticky) {
+            return true;
+        }
+        lastWrites.remove(user, written);
+        return false;
+    }
+
+    /**
+     * Records that a user wrote on the primary.
+     * @param user username
+     */
+    public void recordWrite(String user) {
+        lastWrites.put(user, System.nanoTime());
+    }
+
+    /**
+     * Excludes a replica which failed, until the next health check finds it working again.
+     * @param replica failed replica
+     * @param cause error of the replica
+     */
+    public void markDown(Replica replica, SQLException cause) {
+        if (replica.healthy) {
+            replica.healthy = false;
+            System.err.println("Replica " + replica.url + " excluded: " + cause.getMessage());
+        }
+    }
+
+    /**
+     * Updates the health of a replica from its measured lag.
+     * @param replica checked replica
+     * @param lagMillis replication lag, in milliseconds
+     */
+    void update(Replica replica, long lagMillis) {
+        replica.lagMillis = lagMillis;
+        boolean healthy = lagMillis <= maxLag;
+        if (healthy != replica.healthy) {
+            replica.healthy = healthy;
+            System.out.println("Replica " + replica.url + (healthy ? " back in use" : " excluded")
+                    + ", lag " + lagMillis + " ms");
+        }
+    }
+
+    /**
+     * Returns the replicas.
+     * @return read replicas
+     */
+    public List<Replica> getReplicas() {
+        return replicas;
+    }
+
+    /**
+     * Starts the periodic health checks of the replicas.
+     * @param period seconds between two checks
+     */
+    private synchronized void startChecks(long period) {
+        checker = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "replica-check");
+            thread.setDaemon(true);
+            return thread;
+        });
+        checker.scheduleWithFixedDelay(this::checkAll, 0, Math.max(1, period), TimeUnit.SECONDS);
+    }
+
+    /**
+     * Measures the lag of every replica against the current position of the primary.
+     */
+    private void checkAll() {
+        String lsn = null;
+        try {
+            Connection conn = primary.acquire();
+            try (Statement stmt = conn.createStatement(); ResultSet rs = stmt.executeQuery(QUERY_PRIMARY_LSN)) {
+                rs.next();
+                lsn = rs.getString(1);
+            } finally {
+                primary.release(conn);
+            }
+        } catch (SQLException e) {
+            System.err.println("Unable to read the WAL position of the primary: " + e.getMessage());
+        }
+        for (Replica replica : replicas) {
+            try {
+                update(replica, measureLag(replica, lsn));
+            } catch (SQLException e) {
+                markDown(replica, e);
+            }
+        }
+    }
+
+    /**
+     * Measures the lag of a replica.
+     * A replica which has replayed the current position of the primary has no lag; otherwise the lag is
+     * the age of its last replayed transaction. Instances which are not standbys are considered up to date.
+     * @param replica replica to check
+     * @param lsn current WAL position of the primary, or null if unknown
+     * @return lag in milliseconds
+     * @throws SQLException if the replica cannot be queried
+     */
+    private static long measureLag(Replica replica, String lsn) throws SQLException {
+        Connection conn = replica.pool.acquire();
+        try (PreparedStatement stmt = conn.prepareStatement(QUERY_REPLICA_LAG)) {
+            stmt.setString(1, lsn == null ? "FFFFFFFF/FFFFFFFF" : lsn);
+            try (ResultSet rs = stmt.executeQuery()) {
+                rs.next();
+                if (!rs.getBoolean(1) || rs.getBoolean(2)) {
+                    return 0;
+                }
+                return Math.round(rs.getDouble(3));
+            }
+        } finally {
+            replica.pool.release(conn);
+        }
+    }
+
+    /**
+     * Stops the health checks and closes the connections to the replicas.
+     */
+    public synchronized void close() {
+        if (checker != null) {
+            checker.shutdownNow();
+            checker = null;
+        }
+        for (Replica replica : replicas) {
+            replica.pool.close();
+        }
+    }
+}
@@ -1,16 +1,33 @@
 package it.uninsubria;
 
 
+import it.uninsubria.admission.AdmissionControl;
+import it.uninsubria.bulk.BulkImporter;
+import it.uninsubria.dao.FavoriteBuffer;
+import it.uninsubria.dao.ReviewCommitQueue;
+import it.uninsubria.metrics.FlightRecording;
+import it.uninsubria.metrics.MonitoredService;
+import it.uninsubria.metrics.ServerMetrics;
+import it.uninsubria.search.RestaurantSnapshot;
+import it.uninsubria.server_services.AdminServiceImpl;
 import it.uninsubria.server_services.RestaurantServiceImpl;
 import it.uninsubria.server_services.ReviewServiceImpl;
 import it.uninsubria.server_services.UserServiceImpl;
+import it.uninsubria.sync.ChangeListener;
+import it.uninsubria.services.AdminService;
 import it.uninsubria.services.RestaurantService;
 import it.uninsubria.services.ReviewService;
 import it.uninsubria.services.UserService;
 
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.nio.file.Path;
 import java.rmi.RemoteException;
 import java.rmi.registry.LocateRegistry;
 import java.rmi.registry.Registry;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 
 /**
  * Server class for TheKnife application
@@ -22,6 +39,12 @@ public class ServerTK {
     private static final String version = "1.1.0";
     /** Application title */
     private static final String title = "TheKnife Server";
+    /** Maximum number of connections used by the bulk import */
+    private static final int maxImportConnections = 8;
+    /** Port of the RMI registry, changed to run several servers on the same host */
+    private static final int registryPort = Integer.getInteger("theknife.rmi.port", 1099);
+    /** Seconds between two metrics summaries in the log, 0 to disable them */
+    private static final long metricsPeriod = Long.getLong("theknife.metrics.period", 60);
     /**
      * Main method for the server
      * @param args command line arguments
@@ -31,24 +54,105 @@ public class ServerTK {
             return;
         }
         System.out.println(title);
+        int importIndex = indexOfImport(args);
+        if (importIndex >= 0) {
+            importData(args, importIndex);
+            return;
+        }
+        FlightRecording.startIfRequested();
         DBConnection.login(args);
+        startFavoriteBuffer();
+        startReviewQueue();
+        ChangeListener.start();
+        RestaurantSnapshot.start();
         createRMIRegistry();
     }
 
     /**
-     * Creates the RMI registry and binds the services to it
+     * Starts the write-behind buffer of the favorites, which is flushed when the server stops.
+     * If its journal cannot be opened, the favorites are written directly.
+     */
+    private static void startFavoriteBuffer() {
+        try {
+            FavoriteBuffer.start();
+            Runtime.getRuntime().addShutdownHook(new Thread(FavoriteBuffer::stop, "favorites-shutdown"));
+        } catch (IOException e) {
+            System.err.println("Favorites written directly, journal not available: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Starts the group commit of the reviews, which writes the queued reviews when the server stops.
+     * If its journal cannot be opened, the reviews are written directly.
+     */
+    private static void startReviewQueue() {
+        try {
+            ReviewCommitQueue.start();
+            Runtime.getRuntime().addShutdownHook(new Thread(ReviewCommitQueue::stop, "reviews-shutdown"));
+        } catch (IOException e) {
+            System.err.println("Reviews written directly, journal not available: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Imports the data files of a directory into the database and exits.
+     * The arguments which do not belong to the import option are used as credentials.
+     * @param args command line arguments
+     * @param importIndex index of the import option in the arguments
+     */
+    private static void importData(String[] args, int importIndex) {
+        if (importIndex + 1 >= args.length) {
+            System.err.println("Missing directory for the import option");
+            showHelp();
+            return;
+        }
+        List<String> credentials = new ArrayList<>(Arrays.asList(args));
+        String directory = credentials.remove(importIndex + 1);
+        credentials.remove(importIndex);
+        DBConnection.login(credentials.toArray(new String[0]));
+        int parallelism = Math.min(Runtime.getRuntime().availableProcessors(), maxImportConnections);
+        try {
+            new BulkImporter(Path.of(directory), parallelism).importAll();
+        } catch (Exception e) {
+            System.err.println("Import failed: " + e.getMessage());
+        } finally {
+            DBConnection.closeConnection();
+        }
+    }
+
+    /**
+     * Creates the RMI registry and binds the services to it.
+     * Every service is wrapped by the metrics layer, published over JMX and summarized periodically in the log.
+     * Calls to the services are subject to the rate and concurrency limits of the {@link AdmissionControl}.
+     * The admin service is bound only if an admin key is configured.
      */
     private static void createRMIRegistry() {
         try {
-            Registry reg = LocateRegistry.createRegistry(1099);
-            UserService userService = new UserServiceImpl();
-            RestaurantService restaurantService = new RestaurantServiceImpl();
-            ReviewService reviewService = new ReviewServiceImpl();
+            Registry reg = LocateRegistry.createRegistry(registryPort);
+            List<String> methods = new ArrayList<>();
+            for (Class<?> service : List.of(UserService.class, RestaurantService.class, ReviewService.class)) {
+                for (Method method : service.getMethods()) {
+                    methods.add(method.getName());
+                }
+            }
+            AdmissionControl.configure(methods);
+            UserService userService = MonitoredService.export(UserService.class, new UserServiceImpl());
+            RestaurantService restaurantService =
+                    MonitoredService.export(RestaurantService.class, new RestaurantServiceImpl());
+            ReviewService reviewService = MonitoredService.export(ReviewService.class, new ReviewServiceImpl());
+            ServerMetrics.startReporter(metricsPeriod);
 
             reg.rebind("UserService", userService);
             reg.rebind("RestaurantService", restaurantService);
             reg.rebind("ReviewService", reviewService);
 
+            String adminKey = AdminServiceImpl.configuredKey();
+            if (adminKey != null) {
+                reg.rebind("AdminService", MonitoredService.export(AdminService.class, new AdminServiceImpl(adminKey)));
+            } else {
+                System.out.println("Admin service disabled: no admin key configured");
+            }
+
         }catch (RemoteException e){
             System.err.println(e.getMessage());
         }
@@ -81,7 +185,8 @@ public class ServerTK {
                         Usage: java -jar TheKnifeServer.jar [option|username] [password]
                         Options:
                         \t-h, --help\t\tShow this help message
-                        \t-v, --version\t\tShow version information""";
+                        \t-v, --version\t\tShow version information
+                        \t-i, --import <dir>\tImport the CSV/TSV data files of a directory and exit""";
         System.out.println(usage);
     }
     /**
@@ -105,6 +210,22 @@ public class ServerTK {
         }
         return false;
     }
+    /**
+     * Find the position of the import option in the arguments
+     * @param args command line arguments
+     * @return index of the import option, or -1 if not present
+     */
+    private static int indexOfImport(String[] args) {
+        final String[] imports = {"-i", "--import"};
+        for (int i = 0; i < args.length; i++) {
+            for (String option: imports) {
+                if (args[i].equals(option)) {
+                    return i;
+                }
+            }
+        }
+        return -1;
+    }
     /**
      * Check if the argument is a version option
      * @param arg argument to check
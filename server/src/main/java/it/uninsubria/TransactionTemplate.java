@@ -0,0 +1,219 @@
+package it.uninsubria;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * Explicit transaction around a unit of work made of one or more DAO calls.
+ * The work runs on the connection bound to the calling thread by {@link DBConnection}, which the DAOs
+ * pick up on their own, so a service composes DAO calls by running them inside {@link #execute(Work)}:
+ * they share one connection and are committed once, or rolled back together if any of them fails.
+ * <p>
+ * A template is immutable and can be kept in a constant. Its settings are:
+ * <ul>
+ *     <li>read-only: the work runs on {@link DBConnection#getReadConnection()}, so it may go to a replica,
+ *     and the database refuses any write;</li>
+ *     <li>isolation level, one of the {@code Connection.TRANSACTION_*} constants,
+ *     or {@link Connection#TRANSACTION_NONE} for the default of the database;</li>
+ *     <li>statement timeout, in milliseconds, 0 for none.</li>
+ * </ul>
+ * The settings are sent as {@code SET TRANSACTION} and {@code SET LOCAL} in the same round trip as the
+ * {@code BEGIN}, and they end with the transaction, so the connection goes back to the pool unchanged.
+ * A transaction started inside another one on the same thread joins it, with the settings of the outer one.
+ * The connection stays bound to the thread after the transaction, until {@link DBConnection#releaseConnection()}.
+ *
+ * @author Lorenzo Radice
+ */
+public final class TransactionTemplate {
+
+    /**
+     * Unit of work run inside a transaction.
+     * @param <T> type of the result
+     */
+    @FunctionalInterface
+    public interface Work<T> {
+        /**
+         * Runs the work.
+         * @param conn connection of the transaction, the same the DAOs get from {@link DBConnection}
+         * @return result of the work
+         * @throws SQLException if a statement fails, which rolls the transaction back
+         */
+        T execute(Connection conn) throws SQLException;
+    }
+
+    /** Transaction in progress on each thread */
+    private static final ThreadLocal<TransactionTemplate> active = new ThreadLocal<>();
+    /** Whether the transaction only reads */
+    private final boolean readOnly;
+    /** Isolation level, {@link Connection#TRANSACTION_NONE} for the default of the database */
+    private final int isolation;
+    /** Statement timeout in milliseconds, 0 for none */
+    private final int timeoutMillis;
+
+    /**
+     * Constructor for TransactionTemplate.
+     * @param readOnly whether the transaction only reads
+     * @param isolation isolation level, {@link Connection#TRANSACTION_NONE} for the default of the database
+     * @param timeoutMillis statement timeout in milliseconds, 0 for none
+     */
+    private TransactionTemplate(boolean readOnly, int isolation, int timeoutMillis) {
+        this.readOnly = readOnly;
+        this.isolation = isolation;
+        this.timeoutMillis = timeoutMillis;
+    }
+
+    /**
+     * Returns a template for transactions which write, with the default isolation level and no timeout.
+     * @return the template
+     */
+    public static TransactionTemplate readWrite() {
+        return new TransactionTemplate(false, Connection.TRANSACTION_NONE, 0);
+    }
+
+    /**
+     * Returns a template for transactions which only read, with the default isolation level and no timeout.
+     * @return the template
+     */
+    public static TransactionTemplate readOnly() {
+        return new TransactionTemplate(true, Connection.TRANSACTION_NONE, 0);
+    }
+
+    /**
+     * Returns a template equal to this one with another isolation level.
+     * @param level one of the {@code Connection.TRANSACTION_*} constants,
+     * {@link Connection#TRANSACTION_NONE} for the default of the database
+     * @return the new template
+     * @throws IllegalArgumentException if the level is unknown
+     */
+    public TransactionTemplate withIsolation(int level) {
+        isolationName(level);
+        return new TransactionTemplate(readOnly, level, timeoutMillis);
+    }
+
+    /**
+     * Returns a template equal to this one with another statement timeout.
+     * A statement running longer is cancelled by the database, which fails the transaction.
+     * @param millis timeout in milliseconds, 0 for none
+     * @return the new template
+     * @throws IllegalArgumentException if the timeout is negative
+     */
+    public TransactionTemplate withTimeout(int millis) {
+        if (millis < 0) {
+            throw new IllegalArgumentException("Negative timeout: " + millis);
+        }
+        return new TransactionTemplate(readOnly, isolation, millis);
+    }
+
+    /**
+     * Checks whether the transactions only read.
+     * @return true for read-only transactions
+     */
+    public boolean isReadOnly() {
+        return readOnly;
+    }
+
+    /**
+     * Runs a unit of work in a transaction, committed if the work completes and rolled back if it throws.
+     * Inside a transaction already in progress on the thread, the work joins it instead.
+     * @param work unit of work
+     * @param <T> type of the result
+     * @return result of the work
+     * @throws SQLException if the work, the commit or the settings of the transaction fail
+     * @throws IllegalStateException if a transaction which writes is started inside a read-only one,
+     * or if the database connection is not available
+     */
+    public <T> T execute(Work<T> work) throws SQLException {
+        TransactionTemplate outer = active.get();
+        if (outer != null) {
+            if (outer.readOnly && !readOnly) {
+                throw new IllegalStateException("A transaction which writes cannot join a read-only transaction");
+            }
+            return work.execute(connection());
+        }
+        Connection conn = connection();
+        conn.setAutoCommit(false);
+        active.set(this);
+        try {
+            String settings = settings();
+            if (settings != null) {
+                try (Statement stmt = conn.createStatement()) {
+                    stmt.execute(settings);
+                }
+            }
+            T result = work.execute(conn);
+            conn.commit();
+            return result;
+        } catch (SQLException | RuntimeException | Error e) {
+            try {
+                conn.rollback();
+            } catch (SQLException rollback) {
+                e.addSuppressed(rollback);
+            }
+            throw e;
+        } finally {
+            active.remove();
+            try {
+                conn.setAutoCommit(true);
+            } catch (SQLException e) {
+                // Broken connection, discarded by the pool when released
+            }
+        }
+    }
+
+    /**
+     * Gets the connection of the transaction from {@link DBConnection}: the read connection for read-only
+     * transactions, otherwise the primary one.
+     * @return the connection bound to the thread
+     */
+    private Connection connection() {
+        return readOnly ? DBConnection.getReadConnection() : DBConnection.getConnection();
+    }
+
+    /**
+     * Builds the statements applying the settings at the start of the transaction.
+     * @return the statements, or null if the defaults apply
+     */
+    String settings() {
+        StringBuilder sql = new StringBuilder();
+        if (isolation != Connection.TRANSACTION_NONE || readOnly) {
+            sql.append("SET TRANSACTION");
+            if (isolation != Connection.TRANSACTION_NONE) {
+                sql.append(" ISOLATION LEVEL ").append(isolationName(isolation));
+            }
+            if (readOnly) {
+                sql.append(isolation != Connection.TRANSACTION_NONE ? ", READ ONLY" : " READ ONLY");
+            }
+        }
+        if (timeoutMillis > 0) {
+            if (sql.length() > 0) {
+                sql.append("; ");
+            }
+            sql.append("SET LOCAL statement_timeout = ").append(timeoutMillis);
+        }
+        return sql.length() == 0 ? null : sql.toString();
+    }
+
+    /**
+     * Returns the SQL name of an isolation level.
+     * @param level one of the {@code Connection.TRANSACTION_*} constants
+     * @return the name, null for {@link Connection#TRANSACTION_NONE}
+     * @throws IllegalArgumentException if the level is unknown
+     */
+    private static String isolationName(int level) {
+        switch (level) {
+            case Connection.TRANSACTION_NONE:
+                return null;
+            case Connection.TRANSACTION_READ_UNCOMMITTED:
+                return "READ UNCOMMITTED";
+            case Connection.TRANSACTION_READ_COMMITTED:
+                return "READ COMMITTED";
+            case Connection.TRANSACTION_REPEATABLE_READ:
+                return "REPEATABLE READ";
+            case Connection.TRANSACTION_SERIALIZABLE:
+                return "SERIALIZABLE";
+            default:
+                throw new IllegalArgumentException("Unknown isolation level: " + level);
+        }
+    }
+}
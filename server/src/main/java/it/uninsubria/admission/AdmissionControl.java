@@ -0,0 +1,206 @@
+package it.uninsubria.admission;
+
+import it.uninsubria.cache.LruCache;
+import it.uninsubria.exceptions.ServerBusyException;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Admission control of the remote calls.
+ * Every call must pass two checks before reaching the service:
+ * <ul>
+ *     <li>the rate limits of its method, a token bucket for each client host and one for each user;</li>
+ *     <li>the global concurrency limit: at most a given number of calls are executed at once, and a call
+ *     which cannot start within the queue wait target is shed instead of making every other call slower.</li>
+ * </ul>
+ * Refused calls fail at once with a {@link ServerBusyException}.
+ * <p>
+ * Configuration through system properties; a limit is written as {@code rate} or {@code rate/burst},
+ * in calls per second, and {@code off} disables it:
+ * {@code theknife.limit.host} and {@code theknife.limit.user} (limits of every method, default off),
+ * {@code theknife.limit.host.<method>} and {@code theknife.limit.user.<method>} (limits of a method),
+ * {@code theknife.limit.concurrency} (calls executed at once, default 64, 0 for no limit) and
+ * {@code theknife.limit.wait} (queue wait target in milliseconds, default 100).
+ *
+ * @author Lorenzo Radice
+ */
+public class AdmissionControl {
+    /** Maximum number of clients and users whose buckets are kept */
+    private static final int MAX_BUCKETS = 100_000;
+    /** Admission control of the server, null if every call is admitted */
+    private static AdmissionControl instance = null;
+
+    /**
+     * Rate limit of a method.
+     */
+    static class Limit {
+        /** Calls per second */
+        private final double rate;
+        /** Calls allowed at once after an idle period */
+        private final double burst;
+
+        /**
+         * Constructor for Limit
+         * @param rate calls per second
+         * @param burst calls allowed at once after an idle period
+         */
+        Limit(double rate, double burst) {
+            if (rate <= 0 || burst < 1) {
+                throw new IllegalArgumentException("Invalid rate limit " + rate + "/" + burst);
+            }
+            this.rate = rate;
+            this.burst = burst;
+        }
+
+        /**
+         * Parses a limit written as {@code rate} or {@code rate/burst}.
+         * @param value text of the limit, null or {@code off} for no limit
+         * @return the limit, or null for no limit
+         */
+        static Limit parse(String value) {
+            if (value == null || value.isBlank() || value.trim().equalsIgnoreCase("off")) {
+                return null;
+            }
+            String[] parts = value.trim().split("/");
+            double rate = Double.parseDouble(parts[0]);
+            return new Limit(rate, parts.length > 1 ? Double.parseDouble(parts[1]) : Math.max(1, rate));
+        }
+    }
+
+    /** Limits by client host, by method; the key null holds the limit of the other methods */
+    private final Map<String, Limit> hostLimits;
+    /** Limits by user, by method; the key null holds the limit of the other methods */
+    private final Map<String, Limit> userLimits;
+    /** Buckets by method and client or user */
+    private final LruCache<String, TokenBucket> buckets = new LruCache<>("rate-limits", MAX_BUCKETS);
+    /** Permits of the calls being executed, null for no limit */
+    private final Semaphore permits;
+    /** Queue wait target, in nanoseconds */
+    private final long maxWait;
+
+    /**
+     * Constructor for AdmissionControl
+     * @param hostLimits limits by client host, by method; the key null holds the default limit
+     * @param userLimits limits by user, by method; the key null holds the default limit
+     * @param concurrency calls executed at once, 0 for no limit
+     * @param maxWaitMillis queue wait target, in milliseconds
+     */
+    AdmissionControl(Map<String, Limit> hostLimits, Map<String, Limit> userLimits, int concurrency, long maxWaitMillis) {
+        this.hostLimits = hostLimits;
+        this.userLimits = userLimits;
+        this.permits = concurrency > 0 ? new Semaphore(concurrency, true) : null;
+        this.maxWait = TimeUnit.MILLISECONDS.toNanos(maxWaitMillis);
+    }
+
+    /**
+     * Configures the admission control of the server from the system properties.
+     * @param methods names of the remote methods which may have their own limits
+     */
+    public static synchronized void configure(Iterable<String> methods) {
+        Map<String, Limit> hosts = new HashMap<>();
+        Map<String, Limit> users = new HashMap<>();
+        hosts.put(null, Limit.parse(System.getProperty("theknife.limit.host")));
+        users.put(null, Limit.parse(System.getProperty("theknife.limit.user")));
+        for (String method : methods) {
+            String host = System.getProperty("theknife.limit.host." + method);
+            if (host != null) {
+                hosts.put(method, Limit.parse(host));
+            }
+            String user = System.getProperty("theknife.limit.user." + method);
+            if (user != null) {
+                users.put(method, Limit.parse(user));
+            }
+        }
+        instance = new AdmissionControl(hosts, users, Integer.getInteger("theknife.limit.concurrency", 64),
+                Long.getLong("theknife.limit.wait", 100));
+    }
+
+    /**
+     * Returns the admission control of the server.
+     * @return the admission control, or null if every call is admitted
+     */
+    public static synchronized AdmissionControl get() {
+        return instance;
+    }
+
+    /**
+     * Checks the rate limits of a call.
+     * @param method name of the called method
+     * @param host address of the client, null if unknown
+     * @param user user of the call, null if anonymous
+     * @throws ServerBusyException if the client or the user exceeded the limit of the method
+     */
+    public void checkRate(String method, String host, String user) throws ServerBusyException {
+        long now = System.nanoTime();
+        if (host != null) {
+            take(hostLimits, method, "host:" + host, now);
+        }
+        if (user != null) {
+            take(userLimits, method, "user:" + user, now);
+        }
+    }
+
+    /**
+     * Waits until the call can be executed.
+     * The caller must {@link #release()} after the call if and only if this method returns.
+     * @return nanoseconds spent waiting
+     * @throws ServerBusyException if the call could not start within the queue wait target
+     */
+    public long acquire() throws ServerBusyException {
+        if (permits == null || permits.tryAcquire()) {
+            return 0;
+        }
+        long start = System.nanoTime();
+        try {
+            if (permits.tryAcquire(maxWait, TimeUnit.NANOSECONDS)) {
+                return System.nanoTime() - start;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        throw new ServerBusyException("Server overloaded, try again later", TimeUnit.NANOSECONDS.toMillis(maxWait), false);
+    }
+
+    /**
+     * Ends a call admitted by {@link #acquire()}.
+     */
+    public void release() {
+        if (permits != null) {
+            permits.release();
+        }
+    }
+
+    /**
+     * Takes a token from the bucket of a client or user for a method.
+     * @param limits limits by method
+     * @param method name of the called method
+     * @param client key of the client or user
+     * @param now current time in nanoseconds
+     * @throws ServerBusyException if the bucket is empty
+     */
+    private void take(Map<String, Limit> limits, String method, String client, long now) throws ServerBusyException {
+        // A method without a limit of its own shares the bucket of the default limit
+        boolean own = limits.containsKey(method);
+        Limit limit = own ? limits.get(method) : limits.get(null);
+        if (limit == null) {
+            return;
+        }
+        String key = own ? method + "|" + client : client;
+        TokenBucket bucket;
+        synchronized (buckets) {
+            bucket = buckets.get(key);
+            if (bucket == null) {
+                bucket = new TokenBucket(limit.rate, limit.burst, now);
+                buckets.put(key, bucket);
+            }
+        }
+        long wait = bucket.tryAcquire(now);
+        if (wait > 0) {
+            throw new ServerBusyException("Too many requests, try again later",
+                    Math.max(1, TimeUnit.NANOSECONDS.toMillis(wait)), true);
+        }
+    }
+}
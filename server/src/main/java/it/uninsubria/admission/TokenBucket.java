@@ -0,0 +1,47 @@
+package it.uninsubria.admission;
+
+/**
+ * Token bucket limiting the rate of the calls of a client.
+ * The bucket holds up to {@code burst} tokens and refills at {@code rate} tokens per second;
+ * every call takes a token and is refused when the bucket is empty.
+ *
+ * @author Lorenzo Radice
+ */
+class TokenBucket {
+    /** Tokens added per nanosecond */
+    private final double refill;
+    /** Maximum number of tokens */
+    private final double burst;
+    /** Available tokens */
+    private double tokens;
+    /** Time of the last refill, in nanoseconds */
+    private long last;
+
+    /**
+     * Constructor for TokenBucket, which starts full.
+     * @param rate tokens added per second
+     * @param burst maximum number of tokens
+     * @param now current time in nanoseconds
+     */
+    TokenBucket(double rate, double burst, long now) {
+        this.refill = rate / 1e9;
+        this.burst = burst;
+        this.tokens = burst;
+        this.last = now;
+    }
+
+    /**
+     * Takes a token if one is available.
+     * @param now current time in nanoseconds
+     * @return 0 if a token was taken, otherwise the nanoseconds until the next token
+     */
+    synchronized long tryAcquire(long now) {
+        tokens = Math.min(burst, tokens + (now - last) * refill);
+        last = now;
+        if (tokens >= 1) {
+            tokens--;
+            return 0;
+        }
+        return (long) Math.ceil((1 - tokens) / refill);
+    }
+}
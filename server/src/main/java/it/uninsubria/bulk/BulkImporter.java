@@ -0,0 +1,468 @@
+package it.uninsubria.bulk;
+
+import it.uninsubria.DBConnection;
+import it.uninsubria.dto.CuisineType;
+import org.postgresql.PGConnection;
+import org.postgresql.copy.CopyIn;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Array;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Bulk importer which loads CSV/TSV data files into the database through
+ * the PostgreSQL COPY protocol ({@code COPY ... FROM STDIN}).
+ * The directory must contain one file per table, named after the table
+ * (e.g. {@code addresses.csv}, {@code restaurants.tsv}), whose first record is
+ * the header with the names of the columns.
+ * Addresses and restaurants are split in partitions and loaded in parallel over
+ * several connections, while the other tables are streamed over a single one.
+ * Secondary indexes of the loaded tables are dropped before the load and rebuilt
+ * afterwards, then sequences and planner statistics are refreshed.
+ *
+ * @author Lorenzo Radice
+ */
+public class BulkImporter {
+    /** Tables in foreign key order */
+    private static final String[] TABLES = {"addresses", "users", "restaurants", "favorites", "reviews"};
+    /** Tables which are loaded in parallel partitions */
+    private static final Set<String> PARTITIONED_TABLES = Set.of("addresses", "restaurants");
+    /** Serial primary keys which must follow the imported identifiers */
+    private static final Map<String, String> SERIAL_KEYS = Map.of(
+            "addresses", "address_id",
+            "restaurants", "restaurant_id");
+    /** Number of records sent to a partition at once */
+    private static final int BATCH_RECORDS = 5000;
+    /** Marker telling a partition that there is no more data */
+    private static final String END_OF_DATA = "";
+    /** Cuisine labels accepted by the database, keyed by any known spelling */
+    private static final Map<String, String> CUISINES = cuisineLabels();
+    /** Query to find the indexes which do not back a constraint */
+    private static final String QUERY_SECONDARY_INDEXES = """
+            SELECT i.indexrelid::regclass::text AS index_name, pg_get_indexdef(i.indexrelid) AS definition
+            FROM pg_index i JOIN pg_class c ON c.oid = i.indrelid
+            WHERE c.relname = ANY(?) AND pg_table_is_visible(c.oid)
+            AND NOT EXISTS (SELECT 1 FROM pg_constraint k WHERE k.conindid = i.indexrelid)
+            """;
+    /** Directory containing the data files */
+    private final Path directory;
+    /** Number of connections used for partitioned tables */
+    private final int parallelism;
+
+    /**
+     * Constructor for BulkImporter
+     * @param directory directory containing the data files
+     * @param parallelism number of connections used for partitioned tables
+     */
+    public BulkImporter(Path directory, int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("Parallelism must be at least 1");
+        }
+        this.directory = directory;
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * Imports every data file found in the directory.
+     * Requires {@link DBConnection#login(String[])} to have been called.
+     * @return total number of imported rows
+     * @throws IOException if a data file cannot be read
+     * @throws SQLException if the data cannot be loaded
+     */
+    public long importAll() throws IOException, SQLException {
+        Map<String, Path> files = new HashMap<>();
+        List<String> tables = new ArrayList<>();
+        for (String table : TABLES) {
+            Path file = CopyFormat.find(directory, table);
+            if (file != null) {
+                files.put(table, file);
+                tables.add(table);
+            }
+        }
+        if (tables.isEmpty()) {
+            throw new IOException("No data files found in " + directory);
+        }
+        long total = 0;
+        long start = System.nanoTime();
+        Map<String, String> indexes = dropSecondaryIndexes(tables);
+        try {
+            for (String table : tables) {
+                total += importTable(table, files.get(table));
+            }
+        } finally {
+            rebuildIndexes(indexes);
+        }
+        refreshDerivedData(tables);
+        report("total", total, System.nanoTime() - start);
+        return total;
+    }
+
+    /**
+     * Imports the data file of a single table.
+     * @param table name of the table
+     * @param file data file
+     * @return number of imported rows
+     * @throws IOException if the data file cannot be read
+     * @throws SQLException if the data cannot be loaded
+     */
+    private long importTable(String table, Path file) throws IOException, SQLException {
+        CopyFormat format = CopyFormat.of(file);
+        long start = System.nanoTime();
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String header = CopyFormat.readRecord(reader);
+            if (header == null) {
+                return 0;
+            }
+            List<String> columns = parseColumns(format, header);
+            String copySQL = "COPY " + table + " (" + String.join(", ", columns) + ") FROM STDIN " + format.copyOptions();
+            int cuisineColumn = table.equals("restaurants") ? columns.indexOf("r_type") : -1;
+            int partitions = PARTITIONED_TABLES.contains(table) ? parallelism : 1;
+            long rows = copy(copySQL, partitions, reader, format, cuisineColumn);
+            report(table, rows, System.nanoTime() - start);
+            return rows;
+        }
+    }
+
+    /**
+     * Streams the records to the database over one or more partitions.
+     * Every partition uses its own connection and transaction; the transactions are
+     * committed only if all the partitions have been loaded successfully.
+     * @param copySQL COPY statement
+     * @param partitions number of partitions
+     * @param reader source of the records, positioned after the header
+     * @param format format of the records
+     * @param cuisineColumn index of the cuisine column to normalize, or -1
+     * @return number of imported rows
+     * @throws IOException if the data file cannot be read
+     * @throws SQLException if the data cannot be loaded
+     */
+    private long copy(String copySQL, int partitions, BufferedReader reader, CopyFormat format, int cuisineColumn)
+            throws IOException, SQLException {
+        BlockingQueue<String> queue = new ArrayBlockingQueue<>(partitions * 2);
+        List<Connection> connections = new ArrayList<>();
+        List<Future<Long>> results = new ArrayList<>();
+        ExecutorService executor = Executors.newFixedThreadPool(partitions);
+        Exception failure = null;
+        long rows = 0;
+        try {
+            for (int i = 0; i < partitions; i++) {
+                Connection conn = DBConnection.openConnection();
+                connections.add(conn);
+                conn.setAutoCommit(false);
+                results.add(executor.submit(new CopyPartition(conn, copySQL, queue)));
+            }
+            int rejected = dispatch(reader, format, cuisineColumn, queue);
+            if (rejected > 0) {
+                System.err.println("Skipped " + rejected + " records with an unknown cuisine type");
+            }
+            for (int i = 0; i < partitions; i++) {
+                queue.put(END_OF_DATA);
+            }
+            for (Future<Long> result : results) {
+                try {
+                    rows += result.get();
+                } catch (ExecutionException e) {
+                    if (failure == null) {
+                        failure = new SQLException("Error loading partition: " + e.getCause().getMessage(), e.getCause());
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            failure = new SQLException("Import interrupted", e);
+        } catch (IOException | SQLException | RuntimeException e) {
+            failure = e;
+        } finally {
+            executor.shutdownNow();
+            finish(connections, failure == null);
+        }
+        if (failure instanceof IOException) {
+            throw (IOException) failure;
+        }
+        if (failure instanceof SQLException) {
+            throw (SQLException) failure;
+        }
+        if (failure != null) {
+            throw (RuntimeException) failure;
+        }
+        return rows;
+    }
+
+    /**
+     * Reads the records and hands them to the partitions in batches.
+     * @param reader source of the records
+     * @param format format of the records
+     * @param cuisineColumn index of the cuisine column to normalize, or -1
+     * @param queue queue shared by the partitions
+     * @return number of rejected records
+     * @throws IOException if the data file cannot be read
+     * @throws InterruptedException if the thread is interrupted while waiting for a partition
+     */
+    private int dispatch(BufferedReader reader, CopyFormat format, int cuisineColumn, BlockingQueue<String> queue)
+            throws IOException, InterruptedException {
+        StringBuilder batch = new StringBuilder();
+        int inBatch = 0;
+        int rejected = 0;
+        String record;
+        while ((record = CopyFormat.readRecord(reader)) != null) {
+            if (record.isEmpty()) {
+                continue;
+            }
+            if (cuisineColumn >= 0) {
+                record = normalizeCuisine(format, record, cuisineColumn);
+                if (record == null) {
+                    rejected++;
+                    continue;
+                }
+            }
+            batch.append(record).append('\n');
+            if (++inBatch == BATCH_RECORDS) {
+                queue.put(batch.toString());
+                batch.setLength(0);
+                inBatch = 0;
+            }
+        }
+        if (inBatch > 0) {
+            queue.put(batch.toString());
+        }
+        return rejected;
+    }
+
+    /**
+     * Replaces the cuisine of a restaurant record with the label expected by the database.
+     * @param format format of the record
+     * @param record restaurant record
+     * @param cuisineColumn index of the cuisine column
+     * @return the normalized record, or null if the cuisine is unknown
+     */
+    private static String normalizeCuisine(CopyFormat format, String record, int cuisineColumn) {
+        List<String> fields = format.split(record);
+        if (cuisineColumn >= fields.size() || fields.get(cuisineColumn) == null) {
+            return null;
+        }
+        String value = fields.get(cuisineColumn);
+        String label = CUISINES.get(value.trim().toLowerCase(Locale.ROOT));
+        if (label == null) {
+            return null;
+        }
+        if (label.equals(value)) {
+            return record;
+        }
+        fields.set(cuisineColumn, label);
+        return format.join(fields);
+    }
+
+    /**
+     * Parses and validates the header of a data file.
+     * @param format format of the file
+     * @param header header record
+     * @return names of the columns
+     * @throws IOException if a column name is not a valid identifier
+     */
+    private static List<String> parseColumns(CopyFormat format, String header) throws IOException {
+        List<String> columns = new ArrayList<>();
+        for (String column : format.split(header)) {
+            String name = column == null ? "" : column.trim().toLowerCase(Locale.ROOT);
+            if (!name.matches("[a-z_][a-z0-9_]*")) {
+                throw new IOException("Invalid column name in header: " + column);
+            }
+            columns.add(name);
+        }
+        return columns;
+    }
+
+    /**
+     * Commits or rolls back the transactions of the partitions and closes their connections.
+     * @param connections connections of the partitions
+     * @param commit true to commit, false to roll back
+     * @throws SQLException if a transaction cannot be committed
+     */
+    private static void finish(List<Connection> connections, boolean commit) throws SQLException {
+        SQLException failure = null;
+        for (Connection conn : connections) {
+            try {
+                if (commit) {
+                    conn.commit();
+                } else {
+                    conn.rollback();
+                }
+            } catch (SQLException e) {
+                if (failure == null) {
+                    failure = e;
+                }
+            } finally {
+                conn.close();
+            }
+        }
+        if (failure != null && commit) {
+            throw failure;
+        }
+    }
+
+    /**
+     * Drops the indexes of the tables which do not back a constraint.
+     * @param tables tables to be loaded
+     * @return definitions of the dropped indexes, keyed by index name
+     * @throws SQLException if the indexes cannot be dropped
+     */
+    private static Map<String, String> dropSecondaryIndexes(List<String> tables) throws SQLException {
+        Map<String, String> indexes = new HashMap<>();
+        Connection conn = DBConnection.getConnection();
+        try (PreparedStatement stmt = conn.prepareStatement(QUERY_SECONDARY_INDEXES)) {
+            Array names = conn.createArrayOf("text", tables.toArray());
+            stmt.setArray(1, names);
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    indexes.put(rs.getString("index_name"), rs.getString("definition"));
+                }
+            }
+        }
+        try (Statement stmt = conn.createStatement()) {
+            for (String index : indexes.keySet()) {
+                stmt.executeUpdate("DROP INDEX IF EXISTS " + index);
+            }
+        }
+        return indexes;
+    }
+
+    /**
+     * Rebuilds the indexes dropped before the load.
+     * @param indexes definitions of the indexes, keyed by index name
+     * @throws SQLException if an index cannot be rebuilt
+     */
+    private static void rebuildIndexes(Map<String, String> indexes) throws SQLException {
+        if (indexes.isEmpty()) {
+            return;
+        }
+        long start = System.nanoTime();
+        try (Statement stmt = DBConnection.getConnection().createStatement()) {
+            for (String definition : indexes.values()) {
+                stmt.executeUpdate(definition);
+            }
+        }
+        System.out.printf("Rebuilt %d indexes in %.2f s%n", indexes.size(), (System.nanoTime() - start) / 1e9);
+    }
+
+    /**
+     * Refreshes the data derived from the loaded tables:
+     * the serial sequences are moved past the imported identifiers
+     * and the planner statistics are recomputed.
+     * @param tables loaded tables
+     * @throws SQLException if the data cannot be refreshed
+     */
+    private static void refreshDerivedData(List<String> tables) throws SQLException {
+        try (Statement stmt = DBConnection.getConnection().createStatement()) {
+            for (String table : tables) {
+                String key = SERIAL_KEYS.get(table);
+                if (key != null) {
+                    stmt.execute("SELECT setval(pg_get_serial_sequence('" + table + "', '" + key + "'), " +
+                            "COALESCE(MAX(" + key + "), 0) + 1, false) FROM " + table);
+                }
+                stmt.executeUpdate("ANALYZE " + table);
+            }
+        }
+    }
+
+    /**
+     * Prints the throughput of a load.
+     * @param what name of the loaded data
+     * @param rows number of loaded rows
+     * @param nanos elapsed time in nanoseconds
+     */
+    private static void report(String what, long rows, long nanos) {
+        double seconds = Math.max(nanos, 1) / 1e9;
+        System.out.printf("%-12s %,12d rows in %8.2f s (%,.0f rows/s)%n", what, rows, seconds, rows / seconds);
+    }
+
+    /**
+     * Builds the lookup table of the cuisine labels.
+     * Every cuisine is reachable by its display name and by its enum constant name, case-insensitively.
+     * @return map from lowercase spelling to database label
+     */
+    private static Map<String, String> cuisineLabels() {
+        Map<String, String> labels = new HashMap<>();
+        for (CuisineType cuisine : CuisineType.values()) {
+            labels.put(cuisine.getDisplayName().toLowerCase(Locale.ROOT), cuisine.getDisplayName());
+            labels.put(cuisine.name().toLowerCase(Locale.ROOT), cuisine.getDisplayName());
+        }
+        return labels;
+    }
+
+    /**
+     * A partition of a COPY operation, streaming batches of records over its own connection.
+     */
+    private static class CopyPartition implements Callable<Long> {
+        /** Connection of the partition */
+        private final Connection connection;
+        /** COPY statement */
+        private final String copySQL;
+        /** Queue of batches shared by all the partitions */
+        private final BlockingQueue<String> queue;
+
+        /**
+         * Constructor for CopyPartition
+         * @param connection connection of the partition
+         * @param copySQL COPY statement
+         * @param queue queue of batches shared by all the partitions
+         */
+        CopyPartition(Connection connection, String copySQL, BlockingQueue<String> queue) {
+            this.connection = connection;
+            this.copySQL = copySQL;
+            this.queue = queue;
+        }
+
+        /**
+         * Streams batches until the end of the data.
+         * If the copy fails the remaining batches are drained, so that the reader is never blocked.
+         * If the partition is interrupted, because the import has been aborted, it stops without draining:
+         * no end marker may ever come.
+         * @return number of copied rows
+         * @throws Exception if the copy fails
+         */
+        @Override
+        public Long call() throws Exception {
+            CopyIn copyIn = null;
+            try {
+                copyIn = connection.unwrap(PGConnection.class).getCopyAPI().copyIn(copySQL);
+                String batch;
+                while (!(batch = queue.take()).isEmpty()) {
+                    byte[] bytes = batch.getBytes(StandardCharsets.UTF_8);
+                    copyIn.writeToCopy(bytes, 0, bytes.length);
+                }
+                return copyIn.endCopy();
+            } catch (Exception e) {
+                if (copyIn != null && copyIn.isActive()) {
+                    copyIn.cancelCopy();
+                }
+                if (e instanceof InterruptedException) {
+                    throw e;
+                }
+                while (!queue.take().isEmpty()) {
+                    // discard the batches of this partition
+                }
+                throw e;
+            }
+        }
+    }
+}
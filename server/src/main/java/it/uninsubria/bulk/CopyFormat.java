@@ -0,0 +1,207 @@
+package it.uninsubria.bulk;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Describes the textual format of a bulk data file and provides the helpers
+ * to read and write its records.
+ * Files with the {@code .csv} extension are comma separated, files with the
+ * {@code .tsv} extension are tab separated; both use CSV quoting rules so that
+ * they can be streamed unchanged to {@code COPY ... (FORMAT csv)}.
+ *
+ * @author Lorenzo Radice
+ */
+class CopyFormat {
+    /** Comma separated values */
+    static final CopyFormat CSV = new CopyFormat(',', "csv");
+    /** Tab separated values */
+    static final CopyFormat TSV = new CopyFormat('\t', "tsv");
+    /** Quote character used by both formats */
+    private static final char QUOTE = '"';
+    /** Field delimiter */
+    private final char delimiter;
+    /** File extension, without the dot */
+    private final String extension;
+
+    /**
+     * Constructor for CopyFormat
+     * @param delimiter field delimiter
+     * @param extension file extension, without the dot
+     */
+    private CopyFormat(char delimiter, String extension) {
+        this.delimiter = delimiter;
+        this.extension = extension;
+    }
+
+    /**
+     * Finds the data file of a table inside a directory, trying every supported format.
+     * @param directory directory containing the data files
+     * @param table name of the table
+     * @return the data file, or null if the directory does not contain one for the table
+     */
+    static Path find(Path directory, String table) {
+        for (CopyFormat format : new CopyFormat[]{CSV, TSV}) {
+            Path file = directory.resolve(format.fileName(table));
+            if (file.toFile().isFile()) {
+                return file;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns the format of a data file given its name.
+     * @param file data file
+     * @return the format of the file
+     * @throws IllegalArgumentException if the extension is not supported
+     */
+    static CopyFormat of(Path file) {
+        String name = file.getFileName().toString();
+        if (name.endsWith("." + CSV.extension)) {
+            return CSV;
+        }
+        if (name.endsWith("." + TSV.extension)) {
+            return TSV;
+        }
+        throw new IllegalArgumentException("Unsupported data file: " + name);
+    }
+
+    /**
+     * Returns the name of the data file of a table in this format.
+     * @param table name of the table
+     * @return file name
+     */
+    String fileName(String table) {
+        return table + "." + extension;
+    }
+
+    /**
+     * Returns the options of the COPY statement matching this format.
+     * @return COPY options
+     */
+    String copyOptions() {
+        return delimiter == '\t' ? "(FORMAT csv, DELIMITER E'\\t')" : "(FORMAT csv)";
+    }
+
+    /**
+     * Reads a whole record, joining the physical lines of quoted fields containing line breaks.
+     * @param reader source of the data
+     * @return the record without the trailing line break, or null at the end of the stream
+     * @throws IOException if the stream cannot be read
+     */
+    static String readRecord(BufferedReader reader) throws IOException {
+        String line = reader.readLine();
+        if (line == null) {
+            return null;
+        }
+        StringBuilder record = null;
+        while (countQuotes(record == null ? line : record) % 2 != 0) {
+            String next = reader.readLine();
+            if (next == null) {
+                break;
+            }
+            if (record == null) {
+                record = new StringBuilder(line);
+            }
+            record.append('\n').append(next);
+        }
+        return record == null ? line : record.toString();
+    }
+
+    /**
+     * Splits a record in its unquoted fields.
+     * @param record record to split
+     * @return list of fields; empty unquoted fields are returned as null
+     */
+    List<String> split(String record) {
+        List<String> fields = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        boolean wasQuoted = false;
+        for (int i = 0; i < record.length(); i++) {
+            char c = record.charAt(i);
+            if (quoted) {
+                if (c == QUOTE && i + 1 < record.length() && record.charAt(i + 1) == QUOTE) {
+                    field.append(QUOTE);
+                    i++;
+                } else if (c == QUOTE) {
+                    quoted = false;
+                } else {
+                    field.append(c);
+                }
+            } else if (c == QUOTE) {
+                quoted = true;
+                wasQuoted = true;
+            } else if (c == delimiter) {
+                fields.add(field.length() == 0 && !wasQuoted ? null : field.toString());
+                field.setLength(0);
+                wasQuoted = false;
+            } else {
+                field.append(c);
+            }
+        }
+        fields.add(field.length() == 0 && !wasQuoted ? null : field.toString());
+        return fields;
+    }
+
+    /**
+     * Joins fields in a record, quoting them when needed.
+     * @param fields fields to join; null fields are written as SQL NULL
+     * @return the record without line break
+     */
+    String join(List<String> fields) {
+        StringBuilder record = new StringBuilder();
+        for (int i = 0; i < fields.size(); i++) {
+            if (i > 0) {
+                record.append(delimiter);
+            }
+            appendField(record, fields.get(i));
+        }
+        return record.toString();
+    }
+
+    /**
+     * Appends a single field to a record, quoting it when needed.
+     * @param record record being built
+     * @param value value of the field, null for SQL NULL
+     */
+    void appendField(StringBuilder record, String value) {
+        if (value == null) {
+            return;
+        }
+        boolean needsQuotes = value.isEmpty() || value.indexOf(delimiter) >= 0 || value.indexOf(QUOTE) >= 0
+                || value.indexOf('\n') >= 0 || value.indexOf('\r') >= 0;
+        if (!needsQuotes) {
+            record.append(value);
+            return;
+        }
+        record.append(QUOTE);
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == QUOTE) {
+                record.append(QUOTE);
+            }
+            record.append(c);
+        }
+        record.append(QUOTE);
+    }
+
+    /**
+     * Counts the quote characters in a text.
+     * @param text text to scan
+     * @return number of quotes
+     */
+    private static int countQuotes(CharSequence text) {
+        int count = 0;
+        for (int i = 0; i < text.length(); i++) {
+            if (text.charAt(i) == QUOTE) {
+                count++;
+            }
+        }
+        return count;
+    }
+}
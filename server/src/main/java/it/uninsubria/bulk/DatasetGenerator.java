@@ -0,0 +1,476 @@
+package it.uninsubria.bulk;
+
+import it.uninsubria.DBConnection;
+import it.uninsubria.dto.CuisineType;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Set;
+import java.util.SplittableRandom;
+
+/**
+ * Generator of large synthetic datasets for the TheKnife schema.
+ * The output is a directory of COPY-ready CSV files which can be loaded by the {@link BulkImporter},
+ * or the data can be loaded straight into the database.
+ * <ul>
+ *     <li>addresses are clustered around the centroids of real cities;</li>
+ *     <li>restaurants have a skewed (Zipf) cuisine distribution;</li>
+ *     <li>reviews and favorites follow power laws, both on users and on restaurants.</li>
+ * </ul>
+ * The generation is fully determined by the seed and the sizes, so that benchmark runs are comparable.
+ * Every user has the password {@code password}.
+ *
+ * @author Lorenzo Radice
+ */
+public class DatasetGenerator {
+    /** Argon2 hash of the password shared by all the generated users */
+    private static final String PASSWORD_HASH =
+            "$argon2i$v=19$m=65536,t=10,p=1$7OyiESjvuLVUoGO6B9vslA$7xlO6VA4nUBefmY6NCQrkODILpCdw9gc8y4iQrdHZnw";
+    /** Cities used as centroids: country, city, latitude, longitude, weight */
+    private static final Object[][] CITIES = {
+            {"Italy", "Milan", 45.4642, 9.1900, 3.2},
+            {"Italy", "Rome", 41.9028, 12.4964, 4.3},
+            {"Italy", "Naples", 40.8518, 14.2681, 3.1},
+            {"Italy", "Turin", 45.0703, 7.6869, 2.2},
+            {"Italy", "Como", 45.8081, 9.0852, 0.3},
+            {"Italy", "Varese", 45.8206, 8.8251, 0.3},
+            {"France", "Paris", 48.8566, 2.3522, 11.0},
+            {"France", "Lyon", 45.7640, 4.8357, 2.3},
+            {"United Kingdom", "London", 51.5072, -0.1276, 9.0},
+            {"Spain", "Madrid", 40.4168, -3.7038, 6.7},
+            {"Spain", "Barcelona", 41.3874, 2.1686, 5.6},
+            {"Germany", "Berlin", 52.5200, 13.4050, 3.7},
+            {"Germany", "Munich", 48.1351, 11.5820, 1.5},
+            {"Austria", "Vienna", 48.2082, 16.3738, 1.9},
+            {"Denmark", "Copenhagen", 55.6761, 12.5683, 1.3},
+            {"USA", "New York", 40.7128, -74.0060, 18.8},
+            {"USA", "San Francisco", 37.7749, -122.4194, 4.7},
+            {"USA", "Chicago", 41.8781, -87.6298, 8.9},
+            {"Japan", "Tokyo", 35.6762, 139.6503, 37.4},
+            {"Japan", "Kyoto", 35.0116, 135.7681, 1.5},
+            {"South Korea", "Seoul", 37.5665, 126.9780, 9.8},
+            {"China", "Hong Kong", 22.3193, 114.1694, 7.5},
+            {"Singapore", "Singapore", 1.3521, 103.8198, 5.9},
+            {"Thailand", "Bangkok", 13.7563, 100.5018, 10.5},
+    };
+    /** Standard deviation of the distance of an address from its city centroid, in degrees */
+    private static final double CITY_SPREAD = 0.05;
+    /** Street names */
+    private static final String[] STREETS = {"Main Street", "Market Street", "Station Road", "Church Lane",
+            "Garden Avenue", "River Road", "Park Lane", "High Street", "Castle Street", "Mill Lane",
+            "Harbour Road", "Bridge Street", "Via Roma", "Via Garibaldi", "Rue de la Paix", "Hauptstrasse"};
+    /** First names */
+    private static final String[] NAMES = {"Anna", "Marco", "Giulia", "Luca", "Sofia", "Paul", "Emma", "Noah",
+            "Mia", "Leon", "Yuki", "Min-jun", "Chloe", "Hugo", "Lucia", "Omar"};
+    /** Last names */
+    private static final String[] SURNAMES = {"Rossi", "Bianchi", "Smith", "Martin", "Garcia", "Muller",
+            "Tanaka", "Kim", "Dubois", "Romano", "Brown", "Schmidt", "Lopez", "Sato", "Wong", "Jensen"};
+    /** Words used to build restaurant names */
+    private static final String[] NAME_WORDS = {"Golden", "Little", "Old", "Blue", "Green", "Red", "Royal",
+            "Spoon", "Table", "Garden", "Kitchen", "House", "Corner", "Fork", "Oven", "Bistro"};
+    /** Review comments */
+    private static final String[] COMMENTS = {"Great food!", "Friendly staff and fair prices.",
+            "Too noisy for my taste.", "Will come back soon.", "Average experience.",
+            "The dessert was the best part.", "Long wait, but worth it.", "Not as good as last time."};
+    /** Cumulative probability of the ratings from 1 to 5 */
+    private static final double[] RATINGS = {0.05, 0.13, 0.30, 0.65, 1.0};
+    /** One user out of this number is an owner */
+    private static final int OWNER_RATIO = 10;
+    /** Probability that a review has a reply */
+    private static final double REPLY_PROBABILITY = 0.3;
+    /** Skew of the cuisine distribution */
+    private static final double CUISINE_SKEW = 1.1;
+    /** Skew of the popularity of restaurants */
+    private static final double RESTAURANT_SKEW = 0.9;
+    /** Skew of the activity of users */
+    private static final double USER_SKEW = 0.8;
+    /** Seed of the generation */
+    private final long seed;
+    /** Number of users */
+    private final int users;
+    /** Number of restaurants */
+    private final int restaurants;
+    /** Target number of reviews */
+    private final int reviews;
+    /** Target number of favorites */
+    private final int favorites;
+
+    /**
+     * Constructor for DatasetGenerator
+     * @param seed seed of the generation
+     * @param users number of users
+     * @param restaurants number of restaurants
+     * @param reviews target number of reviews
+     * @param favorites target number of favorites
+     */
+    public DatasetGenerator(long seed, int users, int restaurants, int reviews, int favorites) {
+        if (users < OWNER_RATIO || restaurants < 1 || reviews < 0 || favorites < 0) {
+            throw new IllegalArgumentException("At least " + OWNER_RATIO + " users and 1 restaurant are required");
+        }
+        this.seed = seed;
+        this.users = users;
+        this.restaurants = restaurants;
+        this.reviews = reviews;
+        this.favorites = favorites;
+    }
+
+    /**
+     * Main method of the generator.
+     * Usage: {@code DatasetGenerator <directory|--database> [users] [restaurants] [reviews] [favorites] [seed]};
+     * with {@code --database} the remaining arguments after the sizes are the database credentials.
+     * @param args command line arguments
+     */
+    public static void main(String[] args) {
+        if (args.length < 1) {
+            System.err.println("Usage: DatasetGenerator <directory|--database> " +
+                    "[users] [restaurants] [reviews] [favorites] [seed] [username] [password]");
+            return;
+        }
+        try {
+            int users = args.length > 1 ? Integer.parseInt(args[1]) : 20_000;
+            int restaurants = args.length > 2 ? Integer.parseInt(args[2]) : 100_000;
+            int reviews = args.length > 3 ? Integer.parseInt(args[3]) : 500_000;
+            int favorites = args.length > 4 ? Integer.parseInt(args[4]) : 200_000;
+            long seed = args.length > 5 ? Long.parseLong(args[5]) : 42L;
+            DatasetGenerator generator = new DatasetGenerator(seed, users, restaurants, reviews, favorites);
+            if (args[0].equals("--database")) {
+                String[] credentials = new String[Math.max(0, args.length - 6)];
+                System.arraycopy(args, Math.min(6, args.length), credentials, 0, credentials.length);
+                DBConnection.login(credentials);
+                try {
+                    generator.load(Runtime.getRuntime().availableProcessors());
+                } finally {
+                    DBConnection.closeConnection();
+                }
+            } else {
+                generator.write(Path.of(args[0]));
+            }
+        } catch (Exception e) {
+            System.err.println("Generation failed: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Generates the dataset and loads it straight into the database through the {@link BulkImporter}.
+     * Requires {@link DBConnection#login(String[])} to have been called.
+     * @param parallelism number of connections used by the import
+     * @return number of loaded rows
+     * @throws Exception if the data cannot be generated or loaded
+     */
+    public long load(int parallelism) throws Exception {
+        Path directory = Files.createTempDirectory("theknife-dataset");
+        try {
+            write(directory);
+            return new BulkImporter(directory, parallelism).importAll();
+        } finally {
+            File[] files = directory.toFile().listFiles();
+            if (files != null) {
+                for (File file : files) {
+                    Files.deleteIfExists(file.toPath());
+                }
+            }
+            Files.deleteIfExists(directory);
+        }
+    }
+
+    /**
+     * Writes the dataset as CSV files, one per table.
+     * @param directory output directory, created if missing
+     * @throws IOException if a file cannot be written
+     */
+    public void write(Path directory) throws IOException {
+        Files.createDirectories(directory);
+        SplittableRandom root = new SplittableRandom(seed);
+        SplittableRandom addressRandom = root.split();
+        SplittableRandom userRandom = root.split();
+        SplittableRandom restaurantRandom = root.split();
+        SplittableRandom favoriteRandom = root.split();
+        SplittableRandom reviewRandom = root.split();
+        writeAddresses(directory, addressRandom);
+        writeUsers(directory, userRandom);
+        writeRestaurants(directory, restaurantRandom);
+        writeFavorites(directory, favoriteRandom);
+        writeReviews(directory, reviewRandom);
+    }
+
+    /**
+     * Writes the addresses: users take the identifiers from 1 to the number of users,
+     * restaurants the following ones.
+     * @param directory output directory
+     * @param random source of randomness
+     * @throws IOException if the file cannot be written
+     */
+    private void writeAddresses(Path directory, SplittableRandom random) throws IOException {
+        double[] cityWeights = new double[CITIES.length];
+        double total = 0;
+        for (int i = 0; i < CITIES.length; i++) {
+            total += (double) CITIES[i][4];
+            cityWeights[i] = total;
+        }
+        try (BufferedWriter out = open(directory, "addresses")) {
+            out.write("address_id,country,city,street,house_number,latitude,longitude\n");
+            StringBuilder record = new StringBuilder();
+            int addresses = users + restaurants;
+            for (int id = 1; id <= addresses; id++) {
+                double pick = random.nextDouble() * total;
+                int city = 0;
+                while (cityWeights[city] < pick) {
+                    city++;
+                }
+                Object[] c = CITIES[city];
+                double latitude = clamp((double) c[2] + gaussian(random) * CITY_SPREAD, -90, 90);
+                double longitude = clamp((double) c[3] + gaussian(random) * CITY_SPREAD, -180, 180);
+                record.setLength(0);
+                record.append(id).append(',');
+                CopyFormat.CSV.appendField(record, (String) c[0]);
+                record.append(',');
+                CopyFormat.CSV.appendField(record, (String) c[1]);
+                record.append(',');
+                CopyFormat.CSV.appendField(record, STREETS[random.nextInt(STREETS.length)]);
+                record.append(',').append(1 + random.nextInt(200)).append(',')
+                        .append(String.format(Locale.ROOT, "%.6f,%.6f", latitude, longitude)).append('\n');
+                out.append(record);
+            }
+        }
+    }
+
+    /**
+     * Writes the users; one user out of {@link #OWNER_RATIO} is an owner.
+     * @param directory output directory
+     * @param random source of randomness
+     * @throws IOException if the file cannot be written
+     */
+    private void writeUsers(Path directory, SplittableRandom random) throws IOException {
+        LocalDate oldest = LocalDate.of(1950, 1, 1);
+        int days = (int) (LocalDate.of(2005, 12, 31).toEpochDay() - oldest.toEpochDay());
+        try (BufferedWriter out = open(directory, "users")) {
+            out.write("username,h_password,name,surname,birth_date,role,address_id\n");
+            StringBuilder record = new StringBuilder();
+            for (int i = 0; i < users; i++) {
+                LocalDate birthDate = oldest.plusDays(random.nextInt(days));
+                record.setLength(0);
+                record.append(username(i)).append(',');
+                CopyFormat.CSV.appendField(record, PASSWORD_HASH);
+                record.append(',').append(NAMES[random.nextInt(NAMES.length)])
+                        .append(',').append(SURNAMES[random.nextInt(SURNAMES.length)])
+                        .append(',').append(birthDate)
+                        .append(',').append(i % OWNER_RATIO == 0 ? "owner" : "client")
+                        .append(',').append(i + 1).append('\n');
+                out.append(record);
+            }
+        }
+    }
+
+    /**
+     * Writes the restaurants, with a Zipf distribution of the cuisines.
+     * @param directory output directory
+     * @param random source of randomness
+     * @throws IOException if the file cannot be written
+     */
+    private void writeRestaurants(Path directory, SplittableRandom random) throws IOException {
+        CuisineType[] cuisines = CuisineType.values().clone();
+        for (int i = cuisines.length - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            CuisineType swap = cuisines[i];
+            cuisines[i] = cuisines[j];
+            cuisines[j] = swap;
+        }
+        ZipfSampler cuisineSampler = new ZipfSampler(cuisines.length, CUISINE_SKEW);
+        int owners = (users + OWNER_RATIO - 1) / OWNER_RATIO;
+        try (BufferedWriter out = open(directory, "restaurants")) {
+            out.write("restaurant_id,r_owner,r_name,avg_price,delivery,booking,r_type,address_id\n");
+            StringBuilder record = new StringBuilder();
+            for (int id = 1; id <= restaurants; id++) {
+                String owner = username(random.nextInt(owners) * OWNER_RATIO);
+                String name = NAME_WORDS[random.nextInt(NAME_WORDS.length)] + " "
+                        + NAME_WORDS[random.nextInt(NAME_WORDS.length)] + " " + id;
+                double price = Math.min(500, Math.max(5, Math.exp(3.3 + gaussian(random) * 0.6)));
+                record.setLength(0);
+                record.append(id).append(',').append(owner).append(',');
+                CopyFormat.CSV.appendField(record, name);
+                record.append(',').append(String.format(Locale.ROOT, "%.2f", price))
+                        .append(',').append(random.nextDouble() < 0.4)
+                        .append(',').append(random.nextDouble() < 0.6).append(',');
+                CopyFormat.CSV.appendField(record, cuisines[cuisineSampler.sample(random)].getDisplayName());
+                record.append(',').append(users + id).append('\n');
+                out.append(record);
+            }
+        }
+    }
+
+    /**
+     * Writes the favorites, following power laws on users and restaurants.
+     * @param directory output directory
+     * @param random source of randomness
+     * @throws IOException if the file cannot be written
+     */
+    private void writeFavorites(Path directory, SplittableRandom random) throws IOException {
+        try (BufferedWriter out = open(directory, "favorites")) {
+            out.write("username,restaurant_id\n");
+            writeRelation(random, favorites, (user, restaurant) ->
+                    out.append(username(user)).append(',').append(String.valueOf(restaurant)).append('\n'));
+        }
+    }
+
+    /**
+     * Writes the reviews, following power laws on users and restaurants.
+     * @param directory output directory
+     * @param random source of randomness
+     * @throws IOException if the file cannot be written
+     */
+    private void writeReviews(Path directory, SplittableRandom random) throws IOException {
+        try (BufferedWriter out = open(directory, "reviews")) {
+            out.write("username,restaurant_id,rating,comment,reply\n");
+            StringBuilder record = new StringBuilder();
+            writeRelation(random, reviews, (user, restaurant) -> {
+                double pick = random.nextDouble();
+                int rating = 1;
+                while (RATINGS[rating - 1] < pick) {
+                    rating++;
+                }
+                record.setLength(0);
+                record.append(username(user)).append(',').append(restaurant).append(',').append(rating).append(',');
+                CopyFormat.CSV.appendField(record, COMMENTS[random.nextInt(COMMENTS.length)]);
+                record.append(',');
+                if (random.nextDouble() < REPLY_PROBABILITY) {
+                    CopyFormat.CSV.appendField(record, "Thank you for your feedback!");
+                }
+                out.append(record.append('\n'));
+            });
+        }
+    }
+
+    /**
+     * Generates distinct (user, restaurant) pairs.
+     * The number of pairs of each user decreases as a power of its activity rank,
+     * and the restaurants are drawn following a power law on their popularity rank.
+     * Ranks are scattered over the identifiers, so that popular restaurants are spread over all the cities.
+     * @param random source of randomness
+     * @param target target number of pairs
+     * @param sink consumer of the pairs
+     * @throws IOException if the sink cannot write a pair
+     */
+    private void writeRelation(SplittableRandom random, int target, PairSink sink) throws IOException {
+        ZipfSampler popularity = new ZipfSampler(restaurants, RESTAURANT_SKEW);
+        long userMultiplier = permutationMultiplier(users);
+        long restaurantMultiplier = permutationMultiplier(restaurants);
+        int maxPerUser = Math.max(1, restaurants / 2);
+        double totalWeight = 0;
+        for (int rank = 0; rank < users; rank++) {
+            totalWeight += ZipfSampler.weight(rank, USER_SKEW);
+        }
+        double cumulative = 0;
+        long assigned = 0;
+        Set<Integer> chosen = new HashSet<>();
+        for (int rank = 0; rank < users; rank++) {
+            cumulative += ZipfSampler.weight(rank, USER_SKEW);
+            long upTo = Math.round(target * cumulative / totalWeight);
+            int count = (int) Math.min(upTo - assigned, maxPerUser);
+            assigned = upTo;
+            int user = scatter(rank, users, userMultiplier);
+            chosen.clear();
+            for (int attempts = 0; chosen.size() < count && attempts < count * 10; attempts++) {
+                int restaurant = scatter(popularity.sample(random), restaurants, restaurantMultiplier) + 1;
+                if (chosen.add(restaurant)) {
+                    sink.accept(user, restaurant);
+                }
+            }
+        }
+    }
+
+    /**
+     * Maps a rank to an identifier index with a fixed permutation.
+     * @param rank rank between 0 and size - 1
+     * @param size number of identifiers
+     * @param multiplier multiplier coprime with the size
+     * @return index between 0 and size - 1
+     */
+    private static int scatter(int rank, int size, long multiplier) {
+        return (int) ((rank * multiplier + 7) % size);
+    }
+
+    /**
+     * Finds a multiplier which makes {@link #scatter(int, int, long)} a permutation.
+     * @param size number of identifiers
+     * @return multiplier coprime with the size
+     */
+    private static long permutationMultiplier(int size) {
+        long multiplier = 1_000_003L;
+        while (gcd(multiplier, size) != 1) {
+            multiplier += 2;
+        }
+        return multiplier;
+    }
+
+    /**
+     * Greatest common divisor.
+     * @param a first number
+     * @param b second number
+     * @return greatest common divisor of the numbers
+     */
+    private static long gcd(long a, long b) {
+        return b == 0 ? a : gcd(b, a % b);
+    }
+
+    /**
+     * Returns the username of a generated user.
+     * @param index index of the user
+     * @return username
+     */
+    private static String username(int index) {
+        return "user" + index;
+    }
+
+    /**
+     * Draws a value from the standard normal distribution.
+     * @param random source of randomness
+     * @return normally distributed value
+     */
+    private static double gaussian(SplittableRandom random) {
+        double u = 1.0 - random.nextDouble();
+        double v = random.nextDouble();
+        return Math.sqrt(-2.0 * Math.log(u)) * Math.cos(2.0 * Math.PI * v);
+    }
+
+    /**
+     * Limits a value to a range.
+     * @param value value to limit
+     * @param min lower bound
+     * @param max upper bound
+     * @return the limited value
+     */
+    private static double clamp(double value, double min, double max) {
+        return Math.max(min, Math.min(max, value));
+    }
+
+    /**
+     * Opens the data file of a table for writing.
+     * @param directory output directory
+     * @param table name of the table
+     * @return writer of the file
+     * @throws IOException if the file cannot be opened
+     */
+    private static BufferedWriter open(Path directory, String table) throws IOException {
+        return Files.newBufferedWriter(directory.resolve(CopyFormat.CSV.fileName(table)), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Consumer of generated (user, restaurant) pairs.
+     */
+    private interface PairSink {
+        /**
+         * Accepts a pair.
+         * @param user index of the user
+         * @param restaurant identifier of the restaurant
+         * @throws IOException if the pair cannot be written
+         */
+        void accept(int user, int restaurant) throws IOException;
+    }
+}
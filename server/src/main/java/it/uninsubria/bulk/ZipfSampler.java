@@ -0,0 +1,65 @@
+package it.uninsubria.bulk;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+/**
+ * Sampler of ranks following a Zipf (power-law) distribution:
+ * the probability of rank {@code k} is proportional to {@code 1 / (k + 1)^exponent}.
+ * The cumulative distribution is precomputed, so that every sample costs a binary search.
+ *
+ * @author Lorenzo Radice
+ */
+class ZipfSampler {
+    /** Cumulative distribution of the ranks */
+    private final double[] cumulative;
+
+    /**
+     * Constructor for ZipfSampler
+     * @param size number of ranks
+     * @param exponent skew of the distribution, 0 for uniform
+     */
+    ZipfSampler(int size, double exponent) {
+        if (size < 1) {
+            throw new IllegalArgumentException("Size must be at least 1");
+        }
+        cumulative = new double[size];
+        double sum = 0;
+        for (int k = 0; k < size; k++) {
+            sum += weight(k, exponent);
+            cumulative[k] = sum;
+        }
+        for (int k = 0; k < size; k++) {
+            cumulative[k] /= sum;
+        }
+    }
+
+    /**
+     * Returns the unnormalized weight of a rank.
+     * @param rank rank, starting from 0
+     * @param exponent skew of the distribution
+     * @return weight of the rank
+     */
+    static double weight(int rank, double exponent) {
+        return 1.0 / Math.pow(rank + 1, exponent);
+    }
+
+    /**
+     * Draws a rank.
+     * @param random source of randomness
+     * @return rank between 0 (most likely) and size - 1
+     */
+    int sample(SplittableRandom random) {
+        int index = Arrays.binarySearch(cumulative, random.nextDouble());
+        index = index >= 0 ? index : -index - 1;
+        return Math.min(index, cumulative.length - 1);
+    }
+
+    /**
+     * Returns the number of ranks.
+     * @return number of ranks
+     */
+    int size() {
+        return cumulative.length;
+    }
+}
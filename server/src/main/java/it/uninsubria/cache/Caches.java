@@ -0,0 +1,66 @@
+package it.uninsubria.cache;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Registry of the caches of the server, so that they can be inspected and cleared by the admin service.
+ *
+ * @author Lorenzo Radice
+ */
+public class Caches {
+    /** Registered caches by name */
+    private static final Map<String, LruCache<?, ?>> caches = new ConcurrentHashMap<>();
+
+    /**
+     * Private constructor to prevent instantiation.
+     */
+    private Caches() {}
+
+    /**
+     * Creates and registers a cache.
+     * @param name unique name of the cache
+     * @param capacity maximum number of entries
+     * @param <K> type of the keys
+     * @param <V> type of the values
+     * @return the new cache
+     * @throws IllegalStateException if a cache with the same name already exists
+     */
+    public static <K, V> LruCache<K, V> create(String name, int capacity) {
+        LruCache<K, V> cache = new LruCache<>(name, capacity);
+        if (caches.putIfAbsent(name, cache) != null) {
+            throw new IllegalStateException("Duplicated cache " + name);
+        }
+        return cache;
+    }
+
+    /**
+     * Returns the registered caches.
+     * @return the caches, sorted by name
+     */
+    public static List<LruCache<?, ?>> all() {
+        List<LruCache<?, ?>> all = new ArrayList<>(caches.values());
+        all.sort((a, b) -> a.getName().compareTo(b.getName()));
+        return all;
+    }
+
+    /**
+     * Clears a cache, or all of them.
+     * @param name name of the cache, or null to clear every cache
+     * @return true if a cache was cleared
+     */
+    public static boolean clear(String name) {
+        if (name == null) {
+            caches.values().forEach(LruCache::clear);
+            return true;
+        }
+        LruCache<?, ?> cache = caches.get(name);
+        if (cache == null) {
+            return false;
+        }
+        cache.clear();
+        return true;
+    }
+}
@@ -0,0 +1,121 @@
+package it.uninsubria.cache;
+
+import it.uninsubria.dto.CacheStatsDTO;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bounded in-memory cache which evicts the least recently used entry when it is full.
+ * Hits and misses are counted for the admin service.
+ *
+ * @param <K> type of the keys
+ * @param <V> type of the values
+ * @author Lorenzo Radice
+ */
+public class LruCache<K, V> {
+    /** Name of the cache */
+    private final String name;
+    /** Maximum number of entries */
+    private final int capacity;
+    /** Entries, in access order */
+    private final Map<K, V> entries;
+    /** Number of lookups which found the entry */
+    private final LongAdder hits = new LongAdder();
+    /** Number of lookups which did not find the entry */
+    private final LongAdder misses = new LongAdder();
+
+    /**
+     * Constructor for LruCache
+     * @param name name of the cache
+     * @param capacity maximum number of entries
+     */
+    public LruCache(String name, int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("The capacity must be at least 1");
+        }
+        this.name = name;
+        this.capacity = capacity;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+                return size() > LruCache.this.capacity;
+            }
+        };
+    }
+
+    /**
+     * Looks up an entry.
+     * @param key key of the entry
+     * @return cached value, or null if the entry is missing
+     */
+    public V get(K key) {
+        V value;
+        synchronized (entries) {
+            value = entries.get(key);
+        }
+        if (value == null) {
+            misses.increment();
+        } else {
+            hits.increment();
+        }
+        return value;
+    }
+
+    /**
+     * Adds or replaces an entry, evicting the least recently used one if the cache is full.
+     * @param key key of the entry
+     * @param value value to cache, not null
+     */
+    public void put(K key, V value) {
+        synchronized (entries) {
+            entries.put(key, value);
+        }
+    }
+
+    /**
+     * Removes an entry.
+     * @param key key of the entry
+     */
+    public void invalidate(K key) {
+        synchronized (entries) {
+            entries.remove(key);
+        }
+    }
+
+    /**
+     * Removes every entry; the hit and miss counts are kept.
+     */
+    public void clear() {
+        synchronized (entries) {
+            entries.clear();
+        }
+    }
+
+    /**
+     * Returns the name of the cache.
+     * @return name of the cache
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Returns the number of cached entries.
+     * @return number of entries
+     */
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    /**
+     * Takes a snapshot of the statistics of the cache.
+     * @return statistics of the cache
+     */
+    public CacheStatsDTO stats() {
+        return new CacheStatsDTO(name, size(), capacity, hits.sum(), misses.sum());
+    }
+}
@@ -0,0 +1,100 @@
+package it.uninsubria.cache;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Coalesces concurrent identical loads.
+ * The first call for a key executes the load; the calls for the same key arriving while it is in flight
+ * wait for it and receive the same result, or the same exception. Nothing is kept once the load ends,
+ * so a later call executes the load again: this complements a cache, it does not replace it.
+ * The counters are published as the MBean {@code it.uninsubria:type=SingleFlight,name=<name>}.
+ *
+ * @param <K> type of the keys, which must implement equals and hashCode
+ * @param <V> type of the results, shared between the callers and so not to be modified
+ * @author Lorenzo Radice
+ */
+public class SingleFlight<K, V> implements SingleFlightMBean {
+    /** Loads in flight by key */
+    private final ConcurrentMap<K, CompletableFuture<V>> calls = new ConcurrentHashMap<>();
+    /** Number of loads executed */
+    private final LongAdder executions = new LongAdder();
+    /** Number of calls which shared a load */
+    private final LongAdder deduplicated = new LongAdder();
+
+    /**
+     * Constructor for SingleFlight, which publishes the counters over JMX.
+     * @param name name of the MBean
+     */
+    public SingleFlight(String name) {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName objectName = new ObjectName("it.uninsubria:type=SingleFlight,name=" + name);
+            if (!server.isRegistered(objectName)) {
+                server.registerMBean(this, objectName);
+            }
+        } catch (JMException e) {
+            System.err.println("Unable to publish the counters of " + name + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Returns the result of a load, executing it unless an identical one is already in flight.
+     * @param key key identifying the load
+     * @param loader load to execute
+     * @return result of the load
+     * @throws RuntimeException thrown by the load, whichever call executed it
+     */
+    public V execute(K key, Supplier<V> loader) {
+        CompletableFuture<V> call = new CompletableFuture<>();
+        CompletableFuture<V> inFlight = calls.putIfAbsent(key, call);
+        if (inFlight != null) {
+            deduplicated.increment();
+            try {
+                return inFlight.join();
+            } catch (CompletionException e) {
+                if (e.getCause() instanceof RuntimeException) {
+                    throw (RuntimeException) e.getCause();
+                }
+                if (e.getCause() instanceof Error) {
+                    throw (Error) e.getCause();
+                }
+                throw e;
+            }
+        }
+        executions.increment();
+        try {
+            V result = loader.get();
+            call.complete(result);
+            return result;
+        } catch (RuntimeException | Error e) {
+            call.completeExceptionally(e);
+            throw e;
+        } finally {
+            calls.remove(key, call);
+        }
+    }
+
+    @Override
+    public long getExecutions() {
+        return executions.sum();
+    }
+
+    @Override
+    public long getDeduplicated() {
+        return deduplicated.sum();
+    }
+
+    @Override
+    public int getInFlight() {
+        return calls.size();
+    }
+}
@@ -0,0 +1,26 @@
+package it.uninsubria.cache;
+
+/**
+ * Management interface of a {@link SingleFlight}, published over JMX.
+ *
+ * @author Lorenzo Radice
+ */
+public interface SingleFlightMBean {
+    /**
+     * Returns the number of loads actually executed.
+     * @return number of executions
+     */
+    long getExecutions();
+
+    /**
+     * Returns the number of calls which shared the load of a concurrent identical call.
+     * @return number of deduplicated calls
+     */
+    long getDeduplicated();
+
+    /**
+     * Returns the number of loads being executed.
+     * @return number of loads in flight
+     */
+    int getInFlight();
+}
@@ -1,6 +1,8 @@
 package it.uninsubria.dao;
 
 import it.uninsubria.DBConnection;
+import it.uninsubria.cache.Caches;
+import it.uninsubria.cache.LruCache;
 import it.uninsubria.dto.AddressDTO;
 import it.uninsubria.exceptions.AddressException;
 
@@ -14,63 +16,80 @@ import java.sql.SQLException;
  * It provides methods to insert a new address and retrieve an address by its ID.
  */
 public class AddressDAO {
+    /** Cache of the addresses by ID; addresses changed by other servers are invalidated by their notifications */
+    private static final LruCache<Integer, AddressDTO> cache =
+            Caches.create("addresses", Integer.getInteger("theknife.cache.addresses", 50_000));
     /**
      * Inserts a new address into the database and returns its ID.
+     * The trigonometric columns used by the restaurant search are generated by the database from the coordinates,
+     * and the ID is taken from the sequence of the table, shared with the registration of the users.
+     * The address is not committed here: it is part of the transaction of the caller, if any.
      * @param address address to be inserted
      * @return the ID of the inserted address
-     * @throws AddressException if an error occurs while inserting or retrieving the address ID
+     * @throws AddressException if an error occurs while inserting the address
      */
-    public static synchronized Integer insert(AddressDTO address) throws AddressException {
+    public static Integer insert(AddressDTO address) throws AddressException {
         final String insertAddressSQL = """
-                INSERT INTO addresses (address_id,
-                country, city, street, house_number, latitude, longitude) VALUES ((
-                SELECT MAX(a.address_id)+1
-                FROM addresses a
-                ),?, ?, ?, ?, ?, ?);""";
-        final String getAddressIdSQL = "SELECT address_id " +
-                "FROM addresses " +
-                "WHERE country = ? AND city = ? AND street = ? " +
-                "AND house_number = ? AND latitude = ? AND longitude = ?;";
+                INSERT INTO addresses (
+                country, city, street, house_number, latitude, longitude) VALUES (
+                ?, ?, ?, ?, ?, ?)
+                RETURNING address_id;""";
         Connection conn = DBConnection.getConnection();
-        try {
-            PreparedStatement insertAddressStmt = conn.prepareStatement(insertAddressSQL);
+        try (PreparedStatement insertAddressStmt = conn.prepareStatement(insertAddressSQL)) {
             insertAddressStmt.setString(1, address.getCountry());
             insertAddressStmt.setString(2, address.getCity());
             insertAddressStmt.setString(3, address.getStreet());
             insertAddressStmt.setString(4, address.getHouseNumber());
             insertAddressStmt.setDouble(5, address.getLatitude());
             insertAddressStmt.setDouble(6, address.getLongitude());
-            insertAddressStmt.executeUpdate();
-            conn.commit();
-        } catch (SQLException ignored) {}
-        try {
-            PreparedStatement getAddressIdStmt = conn.prepareStatement(getAddressIdSQL);
-            getAddressIdStmt.setString(1, address.getCountry());
-            getAddressIdStmt.setString(2, address.getCity());
-            getAddressIdStmt.setString(3, address.getStreet());
-            getAddressIdStmt.setString(4, address.getHouseNumber());
-            getAddressIdStmt.setDouble(5, address.getLatitude());
-            getAddressIdStmt.setDouble(6, address.getLongitude());
-            ResultSet rs = getAddressIdStmt.executeQuery();
-            if (rs.next()) {
-                return rs.getInt("address_id");
-            } else {
-                throw new AddressException("Error getting address ID");
+            try (ResultSet rs = insertAddressStmt.executeQuery()) {
+                if (rs.next()) {
+                    return rs.getInt("address_id");
+                } else {
+                    throw new AddressException("Error getting address ID");
+                }
             }
         } catch (SQLException e) {
-            throw new AddressException("Error querying address ID");
+            throw new AddressException("Error inserting address: " + e.getMessage());
         }
     }
     /**
-     * Retrieves an address by its ID.
+     * Retrieves an address by its ID, from the cache if possible.
      * @param addressId the ID of the address to retrieve
      * @return AddressDTO containing the address details, or null if not found
      */
-    public static synchronized AddressDTO getAddress(Integer addressId) {
+    public static AddressDTO getAddress(Integer addressId) {
+        AddressDTO address = cache.get(addressId);
+        if (address == null) {
+            address = loadAddress(addressId);
+            if (address == null) {
+                return null;
+            }
+            cache.put(addressId, address);
+        }
+        // The cached instance is shared, callers get their own copy
+        return new AddressDTO(address.getCountry(), address.getCity(), address.getStreet(),
+                address.getHouseNumber(), address.getLatitude(), address.getLongitude());
+    }
+    /**
+     * Removes addresses from the cache, so that they are read again from the database.
+     * @param addressIds IDs of the changed addresses
+     */
+    public static void invalidate(Iterable<Integer> addressIds) {
+        for (Integer addressId : addressIds) {
+            cache.invalidate(addressId);
+        }
+    }
+    /**
+     * Reads an address from the database.
+     * @param addressId the ID of the address to retrieve
+     * @return AddressDTO containing the address details, or null if not found
+     */
+    private static synchronized AddressDTO loadAddress(Integer addressId) {
         final String getAddressSQL = "SELECT country, city, street, house_number, latitude, longitude " +
                 "FROM addresses " +
                 "WHERE address_id = ?;";
-        Connection conn = DBConnection.getConnection();
+        Connection conn = DBConnection.getReadConnection();
         try {
             PreparedStatement stmt = conn.prepareStatement(getAddressSQL);
             stmt.setInt(1, addressId);
@@ -0,0 +1,271 @@
+package it.uninsubria.dao;
+
+import it.uninsubria.DBConnection;
+import it.uninsubria.ReplicaRouter;
+import it.uninsubria.TransactionTemplate;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Write-behind buffer of the favorite changes.
+ * Adding or removing a favorite only records the new state of the (user, restaurant) pair, in memory and in a
+ * {@link FavoriteJournal}; repeated toggles of the same pair coalesce to the last state.
+ * The buffer is written to the database in a single transaction when it holds enough pairs or periodically,
+ * and the reads of the favorites apply the pending changes on top of the database.
+ * <p>
+ * The pending changes live on this server only: in a fleet, another server sees them after the next flush.
+ * The client load balancers route the favorite calls of a user to one server
+ * (see {@code RestaurantService.USER_AFFINITY}), so the user reads their own changes; if that server is
+ * ejected, the user may miss them for up to a flush period, as may the clients which do not route by user.
+ * <p>
+ * Configuration through system properties:
+ * {@code theknife.favorites.journal} (path of the journal, default {@code favorites-<port>.journal}
+ * with the registry port of the server, so that the servers of a fleet on one host never share it),
+ * {@code theknife.favorites.batch} (pairs which trigger a flush, default 100),
+ * {@code theknife.favorites.flush} (milliseconds between two periodic flushes, default 500) and
+ * {@code theknife.favorites.sync} (whether every change is forced to disk, default true).
+ *
+ * @author Lorenzo Radice
+ */
+public class FavoriteBuffer {
+    /** Query adding a favorite, ignoring pairs which already exist or refer to missing users or restaurants */
+    private static final String QUERY_INSERT = "INSERT INTO favorites (username, restaurant_id) " +
+            "SELECT u.username, r.restaurant_id FROM users u, restaurants r " +
+            "WHERE u.username = ? AND r.restaurant_id = ? ON CONFLICT DO NOTHING";
+    /** Query removing a favorite */
+    private static final String QUERY_DELETE = "DELETE FROM favorites WHERE username = ? AND restaurant_id = ?";
+    /** Transaction writing a batch */
+    private static final TransactionTemplate WRITE = TransactionTemplate.readWrite();
+    /** Buffer used by the server, null if the favorites are written directly */
+    private static FavoriteBuffer instance = null;
+
+    /**
+     * Writer of a batch of changes to the database.
+     */
+    @FunctionalInterface
+    interface BatchWriter {
+        /**
+         * Writes a batch of changes.
+         * @param batch final state of the changed pairs, by user and restaurant
+         * @throws SQLException if the batch cannot be written
+         */
+        void write(Map<String, Map<Integer, Boolean>> batch) throws SQLException;
+    }
+
+    /** Journal of the pending changes */
+    private final FavoriteJournal journal;
+    /** Writer of the batches */
+    private final BatchWriter writer;
+    /** Number of pairs which triggers a flush */
+    private final int batchSize;
+    /** Lock held by the flushes, one at a time */
+    private final Object flushLock = new Object();
+    /** Changes not yet written, by user and restaurant */
+    private Map<String, Map<Integer, Boolean>> pending = new HashMap<>();
+    /** Changes being written by the current flush, by user and restaurant */
+    private Map<String, Map<Integer, Boolean>> flushing = Collections.emptyMap();
+    /** Number of pending pairs */
+    private int size = 0;
+    /** Thread running the flushes */
+    private ScheduledExecutorService flusher;
+
+    /**
+     * Constructor for FavoriteBuffer.
+     * The changes left in the journal by a previous run become pending again.
+     * @param journal journal of the pending changes
+     * @param writer writer of the batches
+     * @param batchSize number of pairs which triggers a flush
+     * @throws IOException if the journal cannot be read
+     */
+    FavoriteBuffer(FavoriteJournal journal, BatchWriter writer, int batchSize) throws IOException {
+        this.journal = journal;
+        this.writer = writer;
+        this.batchSize = batchSize;
+        this.pending = journal.replay();
+        for (Map<Integer, Boolean> changes : pending.values()) {
+            size += changes.size();
+        }
+    }
+
+    /**
+     * Starts the buffer of the server, recovering the changes left in the journal.
+     * @throws IOException if the journal cannot be opened, or if it is in use by another server
+     */
+    public static synchronized void start() throws IOException {
+        if (instance != null) {
+            return;
+        }
+        String path = System.getProperty("theknife.favorites.journal");
+        FavoriteJournal journal = new FavoriteJournal(path == null ? RecordJournal.defaultPath("favorites") : Path.of(path),
+                Boolean.parseBoolean(System.getProperty("theknife.favorites.sync", "true")));
+        FavoriteBuffer buffer = new FavoriteBuffer(journal, FavoriteBuffer::writeBatch,
+                Integer.getInteger("theknife.favorites.batch", 100));
+        if (buffer.size > 0) {
+            System.out.println("Recovered " + buffer.size + " favorite changes from the journal");
+        }
+        long period = Long.getLong("theknife.favorites.flush", 500);
+        buffer.flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "favorites-flush");
+            thread.setDaemon(true);
+            return thread;
+        });
+        buffer.flusher.scheduleWithFixedDelay(buffer::flushQuietly, 0, period, TimeUnit.MILLISECONDS);
+        instance = buffer;
+    }
+
+    /**
+     * Stops the buffer of the server, writing the pending changes.
+     */
+    public static synchronized void stop() {
+        if (instance == null) {
+            return;
+        }
+        instance.flusher.shutdown();
+        try {
+            instance.flusher.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        instance.flushQuietly();
+        try {
+            instance.journal.close();
+        } catch (IOException e) {
+            System.err.println("Error closing the favorites journal: " + e.getMessage());
+        }
+        instance = null;
+    }
+
+    /**
+     * Returns the buffer of the server.
+     * @return the buffer, or null if the favorites are written directly
+     */
+    public static synchronized FavoriteBuffer get() {
+        return instance;
+    }
+
+    /**
+     * Records the new state of a pair; the change is durable when this method returns.
+     * @param user username
+     * @param restaurant restaurant id
+     * @param favorite true to add the restaurant to the favorites, false to remove it
+     * @throws IOException if the change cannot be journaled
+     */
+    public void set(String user, int restaurant, boolean favorite) throws IOException {
+        boolean full;
+        synchronized (this) {
+            journal.append(user, restaurant, favorite);
+            if (pending.computeIfAbsent(user, key -> new HashMap<>()).put(restaurant, favorite) == null) {
+                size++;
+            }
+            full = size >= batchSize;
+        }
+        if (full && flusher != null) {
+            flusher.execute(this::flushQuietly);
+        }
+    }
+
+    /**
+     * Returns the changes of a user not yet visible in the database.
+     * @param user username
+     * @return final state of the changed restaurants of the user: true for a favorite, false for a removal
+     */
+    public synchronized Map<Integer, Boolean> pendingFor(String user) {
+        Map<Integer, Boolean> changes = new HashMap<>(flushing.getOrDefault(user, Collections.emptyMap()));
+        changes.putAll(pending.getOrDefault(user, Collections.emptyMap()));
+        return changes;
+    }
+
+    /**
+     * Writes the pending changes to the database.
+     * If the write fails, the changes stay pending, unless they were superseded in the meantime.
+     * @throws SQLException if the changes cannot be written
+     * @throws IOException if the journal cannot be compacted
+     */
+    public void flush() throws SQLException, IOException {
+        synchronized (flushLock) {
+            Map<String, Map<Integer, Boolean>> batch;
+            synchronized (this) {
+                if (size == 0) {
+                    return;
+                }
+                batch = pending;
+                flushing = batch;
+                pending = new HashMap<>();
+                size = 0;
+            }
+            try {
+                writer.write(batch);
+            } catch (SQLException | RuntimeException e) {
+                synchronized (this) {
+                    for (Map.Entry<String, Map<Integer, Boolean>> user : batch.entrySet()) {
+                        Map<Integer, Boolean> changes = pending.computeIfAbsent(user.getKey(), key -> new HashMap<>());
+                        for (Map.Entry<Integer, Boolean> change : user.getValue().entrySet()) {
+                            if (changes.putIfAbsent(change.getKey(), change.getValue()) == null) {
+                                size++;
+                            }
+                        }
+                    }
+                    flushing = Collections.emptyMap();
+                }
+                throw e;
+            }
+            synchronized (this) {
+                flushing = Collections.emptyMap();
+                journal.rewrite(pending);
+            }
+            ReplicaRouter router = DBConnection.getRouter();
+            if (router != null) {
+                // The users read their favorites from the primary until the replicas catch up
+                batch.keySet().forEach(router::recordWrite);
+            }
+        }
+    }
+
+    /**
+     * Writes the pending changes to the database, logging the errors.
+     */
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (SQLException | IOException | RuntimeException e) {
+            System.err.println("Error writing the favorites: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Writes a batch of changes to the database in a single transaction.
+     * @param batch final state of the changed pairs, by user and restaurant
+     * @throws SQLException if the batch cannot be written
+     */
+    private static void writeBatch(Map<String, Map<Integer, Boolean>> batch) throws SQLException {
+        try {
+            WRITE.execute(conn -> {
+                try (PreparedStatement insert = conn.prepareStatement(QUERY_INSERT);
+                     PreparedStatement delete = conn.prepareStatement(QUERY_DELETE)) {
+                    for (Map.Entry<String, Map<Integer, Boolean>> user : batch.entrySet()) {
+                        for (Map.Entry<Integer, Boolean> change : user.getValue().entrySet()) {
+                            PreparedStatement stmt = change.getValue() ? insert : delete;
+                            stmt.setString(1, user.getKey());
+                            stmt.setInt(2, change.getKey());
+                            stmt.addBatch();
+                        }
+                    }
+                    insert.executeBatch();
+                    delete.executeBatch();
+                }
+                return null;
+            });
+        } finally {
+            DBConnection.releaseConnection();
+        }
+    }
+}
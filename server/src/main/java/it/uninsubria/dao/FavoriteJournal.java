@@ -0,0 +1,103 @@
+package it.uninsubria.dao;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Local journal of the favorite changes not yet written to the database.
+ * Every change is appended and forced to disk before it is acknowledged, so that it survives a crash
+ * of the server; after a flush the journal is rewritten with the changes still pending.
+ * The changes are stored in a {@link RecordJournal}, which discards a record torn by a crash
+ * and keeps other servers away from the file.
+ *
+ * @author Lorenzo Radice
+ */
+class FavoriteJournal implements Closeable {
+    /** File of the records */
+    private final RecordJournal records;
+
+    /**
+     * Constructor for FavoriteJournal.
+     * The journal is created if missing, and a torn record at its end is removed.
+     * @param path path of the journal
+     * @param sync whether every change is forced to disk
+     * @throws IOException if the journal cannot be opened, or if it is in use by another server
+     */
+    FavoriteJournal(Path path, boolean sync) throws IOException {
+        this.records = new RecordJournal(path, sync);
+    }
+
+    /**
+     * Reads the changes recorded in the journal.
+     * @return the final state of every recorded (user, restaurant) pair: true for a favorite, false for a removal
+     * @throws IOException if the journal cannot be read
+     */
+    Map<String, Map<Integer, Boolean>> replay() throws IOException {
+        Map<String, Map<Integer, Boolean>> changes = new HashMap<>();
+        for (byte[] payload : records.records()) {
+            DataInputStream record = new DataInputStream(new ByteArrayInputStream(payload));
+            boolean favorite = record.readBoolean();
+            String user = record.readUTF();
+            int restaurant = record.readInt();
+            changes.computeIfAbsent(user, key -> new HashMap<>()).put(restaurant, favorite);
+        }
+        return changes;
+    }
+
+    /**
+     * Appends a change to the journal.
+     * @param user username
+     * @param restaurant restaurant id
+     * @param favorite true if the restaurant becomes a favorite, false if it is removed
+     * @throws IOException if the change cannot be written
+     */
+    void append(String user, int restaurant, boolean favorite) throws IOException {
+        records.append(encode(user, restaurant, favorite));
+    }
+
+    /**
+     * Replaces the content of the journal with the given changes.
+     * @param changes changes still pending, by user and restaurant
+     * @throws IOException if the journal cannot be written
+     */
+    void rewrite(Map<String, Map<Integer, Boolean>> changes) throws IOException {
+        List<byte[]> payloads = new ArrayList<>();
+        for (Map.Entry<String, Map<Integer, Boolean>> user : changes.entrySet()) {
+            for (Map.Entry<Integer, Boolean> change : user.getValue().entrySet()) {
+                payloads.add(encode(user.getKey(), change.getKey(), change.getValue()));
+            }
+        }
+        records.rewrite(payloads);
+    }
+
+    @Override
+    public void close() throws IOException {
+        records.close();
+    }
+
+    /**
+     * Encodes a change as the payload of a record.
+     * @param user username
+     * @param restaurant restaurant id
+     * @param favorite new state of the pair
+     * @return the payload
+     * @throws IOException if the username is too long to be encoded
+     */
+    private static byte[] encode(String user, int restaurant, boolean favorite) throws IOException {
+        ByteArrayOutputStream payload = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(payload);
+        out.writeBoolean(favorite);
+        out.writeUTF(user);
+        out.writeInt(restaurant);
+        return payload.toByteArray();
+    }
+}
@@ -0,0 +1,224 @@
+package it.uninsubria.dao;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * Local file of checksummed records, the storage of the journals of the server.
+ * Every record is written as the length of its payload, the payload and the CRC32 of the payload,
+ * and a record torn by a crash is removed when the journal is opened.
+ * The journal is compacted by writing the records still needed aside and moving them over the old file,
+ * so that a crash leaves either of them.
+ * <p>
+ * A journal belongs to one server: it is locked through a sibling {@code .lock} file while open,
+ * since the journal itself is replaced by every compaction, and a second server opening it is refused.
+ *
+ * @author Lorenzo Radice
+ */
+class RecordJournal implements Closeable {
+    /** Maximum length of a payload, in bytes */
+    static final int MAX_RECORD = 1 << 20;
+    /** Path of the journal */
+    private final Path path;
+    /** Whether every record is forced to disk */
+    private final boolean sync;
+    /** Lock keeping other servers away from the journal */
+    private final FileLock lock;
+    /** Channel appending to the journal */
+    private FileChannel channel;
+
+    /**
+     * Constructor for RecordJournal.
+     * The journal is created if missing, and a torn record at its end is removed.
+     * @param path path of the journal
+     * @param sync whether every record is forced to disk
+     * @throws IOException if the journal cannot be opened, or if it is in use by another server
+     */
+    RecordJournal(Path path, boolean sync) throws IOException {
+        this.path = path;
+        this.sync = sync;
+        this.lock = lock(path);
+        try {
+            this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            channel.truncate(read(new ArrayList<>()));
+            channel.position(channel.size());
+        } catch (IOException | RuntimeException e) {
+            lock.channel().close();
+            throw e;
+        }
+    }
+
+    /**
+     * Returns the default path of a journal, in the working directory and named after the registry port
+     * of the server, so that the servers of a fleet on one host never share it.
+     * @param name name of the journal
+     * @return path of the journal, {@code <name>-<port>.journal}
+     */
+    static Path defaultPath(String name) {
+        return Path.of(name + "-" + Integer.getInteger("theknife.rmi.port", 1099) + ".journal");
+    }
+
+    /**
+     * Reads the records of the journal.
+     * @return the payloads of the records, in the order they were written
+     * @throws IOException if the journal cannot be read
+     */
+    synchronized List<byte[]> records() throws IOException {
+        List<byte[]> records = new ArrayList<>();
+        read(records);
+        channel.position(channel.size());
+        return records;
+    }
+
+    /**
+     * Appends a record to the journal.
+     * @param payload payload of the record
+     * @throws IOException if the record cannot be written, or if it is longer than {@value #MAX_RECORD} bytes
+     */
+    synchronized void append(byte[] payload) throws IOException {
+        ByteBuffer record = ByteBuffer.wrap(frame(payload));
+        while (record.hasRemaining()) {
+            channel.write(record);
+        }
+        if (sync) {
+            channel.force(false);
+        }
+    }
+
+    /**
+     * Replaces the content of the journal with the given records.
+     * @param payloads payloads of the records still needed
+     * @throws IOException if the journal cannot be written
+     */
+    synchronized void rewrite(Collection<byte[]> payloads) throws IOException {
+        if (payloads.isEmpty()) {
+            channel.truncate(0);
+            return;
+        }
+        Path temporary = path.resolveSibling(path.getFileName() + ".tmp");
+        try (FileChannel out = FileChannel.open(temporary, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            for (byte[] payload : payloads) {
+                ByteBuffer record = ByteBuffer.wrap(frame(payload));
+                while (record.hasRemaining()) {
+                    out.write(record);
+                }
+            }
+            out.force(false);
+        }
+        channel.close();
+        Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        channel.position(channel.size());
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        try {
+            channel.close();
+        } finally {
+            lock.channel().close();
+        }
+    }
+
+    /**
+     * Locks a journal for this server.
+     * @param path path of the journal
+     * @return the lock, held until the journal is closed
+     * @throws IOException if the lock file cannot be opened, or if the journal is in use by another server
+     */
+    private static FileLock lock(Path path) throws IOException {
+        FileChannel lockChannel = FileChannel.open(path.resolveSibling(path.getFileName() + ".lock"),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        FileLock lock;
+        try {
+            lock = lockChannel.tryLock();
+        } catch (OverlappingFileLockException e) {
+            lock = null;
+        } catch (IOException | RuntimeException e) {
+            lockChannel.close();
+            throw e;
+        }
+        if (lock == null) {
+            lockChannel.close();
+            throw new IOException("Journal " + path + " is in use by another server");
+        }
+        return lock;
+    }
+
+    /**
+     * Reads the valid records of the journal from the beginning.
+     * @param records list receiving the payloads of the records
+     * @return length of the valid part of the journal
+     * @throws IOException if the journal cannot be read
+     */
+    private long read(List<byte[]> records) throws IOException {
+        long valid = 0;
+        channel.position(0);
+        DataInputStream in = new DataInputStream(Channels.newInputStream(channel));
+        try {
+            while (true) {
+                int length = in.readInt();
+                if (length <= 0 || length > MAX_RECORD) {
+                    break;
+                }
+                byte[] payload = in.readNBytes(length);
+                if (payload.length < length || in.readInt() != checksum(payload)) {
+                    break;
+                }
+                records.add(payload);
+                valid += Integer.BYTES * 2 + length;
+            }
+        } catch (EOFException e) {
+            // End of the journal, possibly in the middle of a torn record
+        }
+        channel.position(valid);
+        return valid;
+    }
+
+    /**
+     * Frames a payload as a record: length, payload and checksum of the payload.
+     * @param payload payload of the record
+     * @return the record
+     * @throws IOException if the payload is longer than {@value #MAX_RECORD} bytes
+     */
+    private static byte[] frame(byte[] payload) throws IOException {
+        if (payload.length > MAX_RECORD) {
+            throw new IOException("Journal record too long: " + payload.length + " bytes");
+        }
+        ByteArrayOutputStream record = new ByteArrayOutputStream(payload.length + Integer.BYTES * 2);
+        DataOutputStream out = new DataOutputStream(record);
+        out.writeInt(payload.length);
+        out.write(payload);
+        out.writeInt(checksum(payload));
+        return record.toByteArray();
+    }
+
+    /**
+     * Computes the checksum of a payload.
+     * @param payload payload of a record
+     * @return CRC32 of the payload
+     */
+    private static int checksum(byte[] payload) {
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+        return (int) crc.getValue();
+    }
+}
@@ -4,11 +4,18 @@ import it.uninsubria.DBConnection;
 import it.uninsubria.dto.AddressDTO;
 import it.uninsubria.dto.CuisineType;
 import it.uninsubria.dto.RestaurantDTO;
+import it.uninsubria.dto.RestaurantStatsDTO;
 import it.uninsubria.dto.SearchCriteriaDTO;
+import it.uninsubria.search.RestaurantSnapshot;
 
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
 import java.sql.*;
+import java.util.Collections;
 import java.util.List;
 import java.util.ArrayList;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * Data Access Object for restaurant-related database operations.
@@ -17,134 +24,129 @@ import java.util.ArrayList;
  * @author Lorenzo Radice
  */
 public class RestaurantDAO {
-    private static final String projectionClause = "SELECT *, ";
-    /** Haversine formula SQL query for calculating distance */
-    private static final String HaversineQuery =
-            " (6371 * ACOS(" +
-            "COS(radians(?)) * COS(radians(latitude)) * " +
-            "COS(radians(longitude) - RADIANS(?)) + " +
-            "SIN(radians(?)) * SIN(RADIANS(latitude))" +
-            ")) AS distance ";
-    private static final String fromClause = "FROM restaurants NATURAL JOIN addresses ";
-    private static final String fullBeginningQuery = projectionClause + HaversineQuery + fromClause;
+    /** Maximum number of restaurants returned by a search */
+    private static final int SEARCH_LIMIT = 25;
+    /** Whether the first search has been logged */
+    private static final AtomicBoolean FIRST_SEARCH = new AtomicBoolean();
+    /** Whether the first search has been logged, read without contention by the following searches */
+    private static volatile boolean firstSearchServed = false;
+    /**
+     * Query of the restaurant search.
+     * The text is the same whatever the filters: every filter is bound once in {@code p}, and a null value
+     * disables it. The database plans the statement once per connection, and the driver switches to a
+     * server-side prepared statement after a few executions, as the statement cache of the connection
+     * keeps counting them. The closest candidates are chosen first, and only they get their rating
+     * aggregates and address in the same round trip.
+     * The distance uses the sine and cosine of the latitude and the longitude in radians stored in the addresses,
+     * so that only one cosine and the arc cosine are computed per row.
+     */
+    static final String SEARCH_QUERY =
+            "WITH p AS (SELECT SIN(RADIANS(v.lat)) AS lat_sin, COS(RADIANS(v.lat)) AS lat_cos, RADIANS(v.lon) AS lon_rad, v.* " +
+            "FROM (SELECT ?::float8 AS lat, ?::float8 AS lon, ?::text AS cuisine, ?::numeric AS min_price, " +
+            "?::numeric AS max_price, ?::boolean AS delivery, ?::boolean AS booking, ?::numeric AS min_rating) v), " +
+            "candidates AS (" +
+            "SELECT r.*, a.country, a.city, a.street, a.house_number, a.latitude, a.longitude, " +
+            "(6371 * ACOS(LEAST(1, p.lat_sin * a.lat_sin + p.lat_cos * a.lat_cos * COS(a.lon_rad - p.lon_rad)))) AS distance " +
+            "FROM p CROSS JOIN restaurants r JOIN addresses a ON a.address_id = r.address_id " +
+            "WHERE (p.cuisine IS NULL OR r.r_type::text = p.cuisine) " +
+            "AND (p.min_price IS NULL OR r.avg_price >= p.min_price) " +
+            "AND (p.max_price IS NULL OR r.avg_price <= p.max_price) " +
+            "AND (p.delivery IS NULL OR r.delivery = p.delivery) " +
+            "AND (p.booking IS NULL OR r.booking = p.booking) " +
+            "AND (p.min_rating IS NULL OR (SELECT AVG(rating) FROM reviews v WHERE v.restaurant_id = r.restaurant_id) >= p.min_rating) " +
+            "ORDER BY distance ASC LIMIT " + SEARCH_LIMIT + ") " +
+            "SELECT c.*, s.avg_rating, s.rating_count FROM candidates c " +
+            "LEFT JOIN LATERAL (SELECT AVG(rating) AS avg_rating, COUNT(*) AS rating_count " +
+            "FROM reviews v WHERE v.restaurant_id = c.restaurant_id) s ON TRUE " +
+            "ORDER BY c.distance ASC";
 
     /**
      * Searches for restaurants based on the provided criteria.
-     * Returns the 10 closest restaurants that match the search criteria.
+     * Returns the 25 closest restaurants that match the search criteria, with their address and ratings.
+     * When the server keeps a {@link RestaurantSnapshot}, the search runs in memory on the snapshot.
      *
      * @param criteria SearchCriteriaDTO containing search parameters such as coordinates,
      *                cuisine type, price range, delivery and booking options, and minimum rating.
-     * @return List of up to 10 RestaurantDTO objects ordered by distance from the search coordinates.
+     * @return List of up to 25 RestaurantDTO objects ordered by distance from the search coordinates.
      */
     public static List<RestaurantDTO> searchRestaurants(SearchCriteriaDTO criteria) {
         if (!criteria.hasValidCoordinates()) {
             throw new IllegalArgumentException("Search criteria must have valid coordinates");
         }
+        RestaurantSnapshot snapshot = RestaurantSnapshot.get();
+        if (snapshot != null) {
+            List<RestaurantDTO> found = snapshot.search(criteria, SEARCH_LIMIT);
+            recordFirstSearch("snapshot");
+            return found;
+        }
         List<RestaurantDTO> result = new ArrayList<>();
-        String query = buildDistanceBasedQuery(criteria);
-        Connection conn = DBConnection.getConnection();
-        try (PreparedStatement stmt = conn.prepareStatement(query)) {
+        Connection conn = DBConnection.getReadConnection();
+        try (PreparedStatement stmt = conn.prepareStatement(SEARCH_QUERY)) {
             setQueryParameters(stmt, criteria);
-            ResultSet res = stmt.executeQuery();
-            result = parseSQLRestaurantResults(res);
+            try (ResultSet res = stmt.executeQuery()) {
+                while (res.next()) {
+                    try {
+                        result.add(parseSearchResult(res));
+                    } catch (Exception e) {
+                        System.err.println("Error parsing restaurant: " + e.getMessage());
+                    }
+                }
+            }
         } catch (Exception e) {
             System.err.println("Error executing search query: " + e.getMessage());
         }
+        recordFirstSearch("database");
         return result;
     }
 
     /**
-     * Builds a distance-based SQL query with filtering criteria.
-     * The query calculates distance using the Haversine formula and orders results by proximity.
+     * Logs the time from the start of the server to the first search served, once.
      *
-     * @param criteria The search criteria containing filters and coordinates
-     * @return Complete SQL query string with distance calculation and filtering
+     * @param source where the search ran
      */
-    private static String buildDistanceBasedQuery(SearchCriteriaDTO criteria) {
-        StringBuilder query = new StringBuilder(fullBeginningQuery);
-        boolean hasWhere = false;
-
-        // Add filtering conditions (excluding coordinates since we use distance)
-        if (criteria.getCuisineType() != null) {
-            query.append(" WHERE r_type::text = ?");
-            hasWhere = true;
-        }
-
-        if (criteria.getMinPrice() != null) {
-            query.append(hasWhere ? " AND " : " WHERE ");
-            query.append("avg_price >= ? ");
-            hasWhere = true;
-        }
-
-        if (criteria.getMaxPrice() != null) {
-            query.append(hasWhere ? " AND " : " WHERE ");
-            query.append("avg_price <= ? ");
-            hasWhere = true;
-        }
-
-        if (criteria.getDeliveryAvailable() != null) {
-            query.append(hasWhere ? " AND " : " WHERE ");
-            query.append("delivery = ? ");
-            hasWhere = true;
-        }
-
-        if (criteria.getOnlineBookingAvailable() != null) {
-            query.append(hasWhere ? " AND " : " WHERE ");
-            query.append("booking = ? ");
-            hasWhere = true;
-        }
-
-        if (criteria.getMinRating() != null) {
-            query.append(hasWhere ? " AND " : " WHERE ");
-            query.append("(SELECT AVG(rating) FROM reviews rev WHERE rev.restaurant_id = restaurants.restaurant_id) >= ? ");
+    private static void recordFirstSearch(String source) {
+        if (!firstSearchServed && FIRST_SEARCH.compareAndSet(false, true)) {
+            firstSearchServed = true;
+            System.out.println("First search served from the " + source + " "
+                    + ManagementFactory.getRuntimeMXBean().getUptime() + " ms after the start of the server");
         }
-
-        // Order by distance and limit to 10 closest restaurants
-        query.append(" ORDER BY distance ASC LIMIT 25;");
-
-        return query.toString();
     }
 
     /**
-     * Sets the parameters for the prepared statement based on search criteria.
+     * Sets the parameters of the search query; the filters which are not set are bound to null.
      *
      * @param stmt     The prepared statement to set parameters for
      * @param criteria The search criteria containing the parameter values
      * @throws SQLException If there's an error setting parameters
      */
     private static void setQueryParameters(PreparedStatement stmt, SearchCriteriaDTO criteria) throws SQLException {
-        int paramIndex = 1;
-
-        // First 3 parameters are always the coordinates for distance calculation
-        stmt.setDouble(paramIndex++, criteria.getLatitude());  // For cos(radians(?))
-        stmt.setDouble(paramIndex++, criteria.getLongitude()); // For radians(longitude) - radians(?)
-        stmt.setDouble(paramIndex++, criteria.getLatitude());  // For sin(radians(?))
-
-        // Set filtering parameters
-        if (criteria.getCuisineType() != null) {
-            stmt.setString(paramIndex++, criteria.getCuisineType().getDisplayName());
-        }
-
-        if (criteria.getMinPrice() != null) {
-            stmt.setDouble(paramIndex++, criteria.getMinPrice());
-        }
-
-        if (criteria.getMaxPrice() != null) {
-            stmt.setDouble(paramIndex++, criteria.getMaxPrice());
-        }
-
-        if (criteria.getDeliveryAvailable() != null) {
-            stmt.setBoolean(paramIndex++, criteria.getDeliveryAvailable());
-        }
-
-        if (criteria.getOnlineBookingAvailable() != null) {
-            stmt.setBoolean(paramIndex++, criteria.getOnlineBookingAvailable());
-        }
-
-        if (criteria.getMinRating() != null) {
-            stmt.setDouble(paramIndex, criteria.getMinRating());
-        }
+        stmt.setDouble(1, criteria.getLatitude());
+        stmt.setDouble(2, criteria.getLongitude());
+        stmt.setObject(3, criteria.getCuisineType() == null ? null : criteria.getCuisineType().getDisplayName(), Types.VARCHAR);
+        stmt.setObject(4, criteria.getMinPrice(), Types.DOUBLE);
+        stmt.setObject(5, criteria.getMaxPrice(), Types.DOUBLE);
+        stmt.setObject(6, criteria.getDeliveryAvailable(), Types.BOOLEAN);
+        stmt.setObject(7, criteria.getOnlineBookingAvailable(), Types.BOOLEAN);
+        stmt.setObject(8, criteria.getMinRating(), Types.INTEGER);
+    }
 
+    /**
+     * Parses a row of the search query, which already holds the address and the ratings of the restaurant.
+     *
+     * @param res The ResultSet positioned on a row of the search query
+     * @return A RestaurantDTO object with the parsed data
+     * @throws SQLException If there's an error reading the row
+     */
+    private static RestaurantDTO parseSearchResult(ResultSet res) throws SQLException {
+        AddressDTO address = new AddressDTO(res.getString("country"), res.getString("city"), res.getString("street"),
+                res.getString("house_number"), res.getDouble("latitude"), res.getDouble("longitude"));
+        RestaurantDTO restaurant = new RestaurantDTO(res.getString("restaurant_id"), res.getString("r_owner"),
+                res.getString("r_name"), res.getDouble("avg_price"), res.getBoolean("delivery"), res.getBoolean("booking"),
+                CuisineType.fromDisplayName(res.getString("r_type")), address);
+        double avgRating = res.getDouble("avg_rating");
+        restaurant.setAvgRating(res.wasNull() ? null : avgRating);
+        restaurant.setReviewsNumber(res.getInt("rating_count"));
+        return restaurant;
     }
 
     /**
@@ -157,7 +159,7 @@ public class RestaurantDAO {
         int count = 0;
         final String query = "SELECT COUNT(*) AS rating_count FROM reviews WHERE restaurant_id = ?";
 
-        Connection conn = DBConnection.getConnection();
+        Connection conn = DBConnection.getReadConnection();
         try (PreparedStatement stmt = conn.prepareStatement(query)) {
             stmt.setInt(1, Integer.parseInt(restaurantId));
             try (ResultSet res = stmt.executeQuery()) {
@@ -181,7 +183,7 @@ public class RestaurantDAO {
         Double avgRating = null;
         final String query = "SELECT AVG(rating) AS avg_rating FROM reviews WHERE restaurant_id = ?";
 
-        Connection conn = DBConnection.getConnection();
+        Connection conn = DBConnection.getReadConnection();
         try (PreparedStatement stmt = conn.prepareStatement(query)) {
             stmt.setInt(1, Integer.parseInt(restaurantId));
             try (ResultSet res = stmt.executeQuery()) {
@@ -200,7 +202,7 @@ public class RestaurantDAO {
     }
 
     /**
-     * Retrieves favorite restaurants for a specific user.
+     * Retrieves favorite restaurants for a specific user, including the changes not yet written.
      *
      * @param userId The ID of the user whose favorite restaurants to retrieve
      * @return List of RestaurantDTO objects representing the user's favorite restaurants
@@ -208,11 +210,24 @@ public class RestaurantDAO {
     public static List<RestaurantDTO> getFavoriteRestaurants(String userId) {
         final String query = "SELECT *, 0 AS distance FROM restaurants WHERE restaurant_id IN " +
                 "(SELECT restaurant_id FROM favorites WHERE username = ?)";
+        final String queryWithPending = "SELECT *, 0 AS distance FROM restaurants WHERE (restaurant_id IN " +
+                "(SELECT restaurant_id FROM favorites WHERE username = ?) AND restaurant_id <> ALL (?)) " +
+                "OR restaurant_id = ANY (?)";
         List<RestaurantDTO> result = new ArrayList<>();
+        FavoriteBuffer buffer = FavoriteBuffer.get();
+        Map<Integer, Boolean> pending = buffer == null ? Collections.emptyMap() : buffer.pendingFor(userId);
 
-        Connection conn = DBConnection.getConnection();
-        try (PreparedStatement stmt = conn.prepareStatement(query)) {
+        Connection conn = DBConnection.getReadConnection();
+        try (PreparedStatement stmt = conn.prepareStatement(pending.isEmpty() ? query : queryWithPending)) {
             stmt.setString(1, userId);
+            if (!pending.isEmpty()) {
+                // Changes not yet written: removed favorites are hidden, added ones are included
+                List<Integer> added = new ArrayList<>();
+                List<Integer> removed = new ArrayList<>();
+                pending.forEach((restaurant, favorite) -> (favorite ? added : removed).add(restaurant));
+                stmt.setArray(2, conn.createArrayOf("integer", removed.toArray()));
+                stmt.setArray(3, conn.createArrayOf("integer", added.toArray()));
+            }
             try (ResultSet res = stmt.executeQuery()) {
                 result = parseSQLRestaurantResults(res);
             }
@@ -233,7 +248,7 @@ public class RestaurantDAO {
         final String query = "SELECT *, 0 AS distance FROM restaurants WHERE r_owner = ?";
         List<RestaurantDTO> result = new ArrayList<>();
 
-        Connection conn = DBConnection.getConnection();
+        Connection conn = DBConnection.getReadConnection();
         try (PreparedStatement stmt = conn.prepareStatement(query)) {
             stmt.setString(1, userId);
             try (ResultSet res = stmt.executeQuery()) {
@@ -257,7 +272,7 @@ public class RestaurantDAO {
                 "(SELECT restaurant_id FROM reviews WHERE username = ?)";
         List<RestaurantDTO> result = new ArrayList<>();
 
-        Connection conn = DBConnection.getConnection();
+        Connection conn = DBConnection.getReadConnection();
         try (PreparedStatement stmt = conn.prepareStatement(query)) {
             stmt.setString(1, userId);
             try (ResultSet res = stmt.executeQuery()) {
@@ -270,8 +285,52 @@ public class RestaurantDAO {
         return result;
     }
 
+    /**
+     * Retrieves the dashboard of an owner: every owned restaurant with the statistics of its reviews,
+     * computed by a single grouped query instead of one query per restaurant.
+     *
+     * Errors are not swallowed, so that a transaction around the call is rolled back
+     * and the caller can tell a failure, such as a statement timeout, from an owner without restaurants.
+     *
+     * @param ownerId The ID of the owner
+     * @return List of RestaurantStatsDTO objects, ordered by restaurant name
+     * @throws SQLException If there's an error executing the query
+     */
+    public static List<RestaurantStatsDTO> getOwnerDashboard(String ownerId) throws SQLException {
+        final String query = "SELECT r.restaurant_id, r.r_owner, r.r_name, r.avg_price, r.delivery, r.booking, " +
+                "r.r_type::text AS r_type, a.country, a.city, a.street, a.house_number, a.latitude, a.longitude, " +
+                "AVG(v.rating) AS avg_rating, COUNT(v.rating) AS rating_count, " +
+                "COUNT(*) FILTER (WHERE v.rating = 1) AS stars_1, COUNT(*) FILTER (WHERE v.rating = 2) AS stars_2, " +
+                "COUNT(*) FILTER (WHERE v.rating = 3) AS stars_3, COUNT(*) FILTER (WHERE v.rating = 4) AS stars_4, " +
+                "COUNT(*) FILTER (WHERE v.rating = 5) AS stars_5, " +
+                "COUNT(v.rating) FILTER (WHERE v.reply IS NULL) AS unreplied, MAX(v.reviewed_at) AS latest_review " +
+                "FROM restaurants r JOIN addresses a ON a.address_id = r.address_id " +
+                "LEFT JOIN reviews v ON v.restaurant_id = r.restaurant_id " +
+                "WHERE r.r_owner = ? GROUP BY r.restaurant_id, a.address_id ORDER BY r.r_name";
+        List<RestaurantStatsDTO> result = new ArrayList<>();
+
+        Connection conn = DBConnection.getReadConnection();
+        try (PreparedStatement stmt = conn.prepareStatement(query)) {
+            stmt.setString(1, ownerId);
+            try (ResultSet res = stmt.executeQuery()) {
+                while (res.next()) {
+                    int[] histogram = new int[5];
+                    for (int stars = 1; stars <= 5; stars++) {
+                        histogram[stars - 1] = res.getInt("stars_" + stars);
+                    }
+                    Timestamp latest = res.getTimestamp("latest_review");
+                    result.add(new RestaurantStatsDTO(parseSearchResult(res), histogram, res.getInt("unreplied"),
+                            latest == null ? null : latest.toInstant()));
+                }
+            }
+        }
+
+        return result;
+    }
+
     /**
      * Adds a restaurant to a user's favorites list.
+     * When the server buffers the favorites, the change is only journaled and written later.
      *
      * @param userId The ID of the user
      * @param restaurantId The ID of the restaurant to add to favorites
@@ -279,6 +338,9 @@ public class RestaurantDAO {
      */
     public static void insertFavoriteRestaurant(String userId, String restaurantId) throws SQLException {
         final String query = "INSERT INTO favorites (username, restaurant_id) VALUES (?, ?)";
+        if (bufferFavorite(userId, restaurantId, true)) {
+            return;
+        }
 
         Connection conn = DBConnection.getConnection();
         try (PreparedStatement stmt = conn.prepareStatement(query)) {
@@ -290,6 +352,7 @@ public class RestaurantDAO {
 
     /**
      * Removes a restaurant from a user's favorites list.
+     * When the server buffers the favorites, the change is only journaled and written later.
      *
      * @param userId The ID of the user
      * @param restaurantId The ID of the restaurant to remove from favorites
@@ -297,6 +360,9 @@ public class RestaurantDAO {
      */
     public static void deleteFavoriteRestaurant(String userId, String restaurantId) throws SQLException {
         final String query = "DELETE FROM favorites WHERE username = ? AND restaurant_id = ?";
+        if (bufferFavorite(userId, restaurantId, false)) {
+            return;
+        }
 
         Connection conn = DBConnection.getConnection();
         try (PreparedStatement stmt = conn.prepareStatement(query)) {
@@ -307,7 +373,48 @@ public class RestaurantDAO {
     }
 
     /**
-     * Inserts a new restaurant into the database.
+     * Records a favorite change in the write-behind buffer, if the server uses one.
+     * A new favorite is checked against the database first, since the batch which writes it
+     * skips the pairs whose user or restaurant does not exist, as the direct insert would have failed.
+     *
+     * @param userId The ID of the user
+     * @param restaurantId The ID of the restaurant
+     * @param favorite true to add the favorite, false to remove it
+     * @return true if the change was buffered, false if it must be written directly
+     * @throws SQLException If the user or the restaurant of a new favorite does not exist,
+     * or if the change cannot be journaled
+     */
+    private static boolean bufferFavorite(String userId, String restaurantId, boolean favorite) throws SQLException {
+        final String query = "SELECT 1 FROM users u, restaurants r WHERE u.username = ? AND r.restaurant_id = ?";
+        FavoriteBuffer buffer = FavoriteBuffer.get();
+        if (buffer == null) {
+            return false;
+        }
+        if (favorite) {
+            // The primary, so that a restaurant just created is found
+            Connection conn = DBConnection.getConnection();
+            try (PreparedStatement stmt = conn.prepareStatement(query)) {
+                stmt.setString(1, userId);
+                stmt.setInt(2, Integer.parseInt(restaurantId));
+                try (ResultSet res = stmt.executeQuery()) {
+                    if (!res.next()) {
+                        throw new SQLException("Unknown user or restaurant: " + userId + ", " + restaurantId, "23503");
+                    }
+                }
+            }
+        }
+        try {
+            buffer.set(userId, Integer.parseInt(restaurantId), favorite);
+        } catch (IOException e) {
+            throw new SQLException("Unable to record the favorite change", e);
+        }
+        return true;
+    }
+
+    /**
+     * Inserts a new restaurant into the database, after its address.
+     * The address, the choice of the ID and the restaurant are atomic only inside a transaction,
+     * see {@link it.uninsubria.TransactionTemplate}.
      *
      * @param restaurant The restaurant data to insert
      * @return The restaurant DTO with the assigned ID
@@ -378,12 +485,13 @@ public class RestaurantDAO {
 
     /**
      * Parses multiple restaurant results from a SQL ResultSet.
+     * Public so that the parsing cost can be measured by the benchmarks.
      *
      * @param res The ResultSet containing multiple restaurant records
      * @return A List of RestaurantDTO objects with the parsed data
      * @throws Exception If there's an error parsing the results
      */
-    private static List<RestaurantDTO> parseSQLRestaurantResults(ResultSet res) throws Exception {
+    public static List<RestaurantDTO> parseSQLRestaurantResults(ResultSet res) throws Exception {
         List<RestaurantDTO> result = new ArrayList<>();
         while (res.next()) {
             try {
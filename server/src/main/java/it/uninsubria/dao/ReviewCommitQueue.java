@@ -0,0 +1,469 @@
+package it.uninsubria.dao;
+
+import it.uninsubria.DBConnection;
+import it.uninsubria.ReplicaRouter;
+import it.uninsubria.TransactionTemplate;
+import it.uninsubria.dto.ReviewDTO;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.SQLTransientException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Group commit of the review upserts.
+ * Callers put their review in a bounded queue and wait; a flusher thread takes the queued reviews,
+ * up to a maximum batch size or until a short delay expires, writes them as one JDBC batch in a single
+ * transaction and then completes the callers' futures. Under load many reviews share one commit,
+ * while a lone review waits at most the delay.
+ * If a batch fails, its reviews are written one by one, so that an invalid review only fails its own caller.
+ * <p>
+ * Reviews can also be submitted without waiting for their commit with {@link #submitAsync(ReviewDTO)}:
+ * they are first recorded in a {@link ReviewJournal}, so that the reviews acknowledged but not yet written
+ * when the server stops are queued again by the next run. A journaled review is dropped only when the database
+ * refuses its data (SQLSTATE classes 22 and 23); after any other error, such as a lost connection, it stays in the
+ * journal and is written again after a pause, until it succeeds or the server stops.
+ * <p>
+ * Configuration through system properties:
+ * {@code theknife.reviews.batch} (maximum reviews per commit, default 64),
+ * {@code theknife.reviews.delay} (maximum wait for a batch to fill, in milliseconds, default 5),
+ * {@code theknife.reviews.queue} (capacity of the queue, default 1024),
+ * {@code theknife.reviews.retry} (pause before writing again the reviews which failed, in milliseconds, default 1000),
+ * {@code theknife.reviews.journal} (path of the journal, default {@code reviews-<port>.journal}
+ * with the registry port of the server, so that the servers of a fleet on one host never share it) and
+ * {@code theknife.reviews.sync} (whether every journaled review is forced to disk, default true).
+ *
+ * @author Lorenzo Radice
+ */
+public class ReviewCommitQueue {
+    /** Query inserting or updating a review; the review time only moves when the rating or comment changes */
+    static final String QUERY_UPSERT = "INSERT INTO reviews (username, restaurant_id, rating, comment, reply) VALUES (?, ?, ?, ?, ?) " +
+            "ON CONFLICT (username, restaurant_id) DO UPDATE SET rating = ?, comment = ?, reply = ?, " +
+            "reviewed_at = CASE WHEN (reviews.rating, reviews.comment) IS DISTINCT FROM (EXCLUDED.rating, EXCLUDED.comment) " +
+            "THEN now() ELSE reviews.reviewed_at END";
+    /** Maximum time a caller waits to enter the queue or for its commit, in milliseconds */
+    private static final long CALLER_TIMEOUT = 30_000;
+    /** Transaction writing a batch */
+    private static final TransactionTemplate WRITE = TransactionTemplate.readWrite();
+    /** Queue used by the server, null if the reviews are written directly */
+    private static ReviewCommitQueue instance = null;
+
+    /**
+     * Review waiting for its commit.
+     */
+    private static class Pending {
+        /** Review to write */
+        private final ReviewDTO review;
+        /** Whether the review is recorded in the journal */
+        private final boolean journaled;
+        /** Completed with the outcome of the write */
+        private final CompletableFuture<Boolean> done = new CompletableFuture<>();
+
+        /**
+         * Constructor for Pending
+         * @param review review to write
+         * @param journaled whether the review is recorded in the journal
+         */
+        private Pending(ReviewDTO review, boolean journaled) {
+            this.review = review;
+            this.journaled = journaled;
+        }
+    }
+
+    /**
+     * Writes a batch of reviews in a single transaction.
+     */
+    interface BatchWriter {
+        /**
+         * Writes the reviews, all or none.
+         * @param reviews reviews to write
+         * @return for each review, whether it was written
+         * @throws SQLException if the transaction fails
+         */
+        boolean[] write(List<ReviewDTO> reviews) throws SQLException;
+    }
+
+    /** Reviews waiting for a commit */
+    private final BlockingQueue<Pending> queue;
+    /** Writer of the batches */
+    private final BatchWriter writer;
+    /** Journal of the reviews submitted asynchronously, null if not journaled */
+    private final ReviewJournal journal;
+    /** Maximum reviews per commit */
+    private final int batchSize;
+    /** Maximum wait for a batch to fill, in nanoseconds */
+    private final long delay;
+    /** Pause before writing again the journaled reviews which failed, in nanoseconds */
+    private final long retryDelay;
+    /** Thread writing the batches */
+    private final Thread flusher;
+    /** Whether the queue is stopping */
+    private volatile boolean stopping = false;
+
+    /**
+     * Constructor for ReviewCommitQueue
+     * @param writer writer of the batches
+     * @param capacity capacity of the queue
+     * @param batchSize maximum reviews per commit
+     * @param delayMillis maximum wait for a batch to fill, in milliseconds
+     */
+    ReviewCommitQueue(BatchWriter writer, int capacity, int batchSize, long delayMillis) {
+        this(writer, null, capacity, batchSize, delayMillis);
+    }
+
+    /**
+     * Constructor for ReviewCommitQueue
+     * @param writer writer of the batches
+     * @param journal journal of the reviews submitted asynchronously, null if not journaled
+     * @param capacity capacity of the queue
+     * @param batchSize maximum reviews per commit
+     * @param delayMillis maximum wait for a batch to fill, in milliseconds
+     */
+    ReviewCommitQueue(BatchWriter writer, ReviewJournal journal, int capacity, int batchSize, long delayMillis) {
+        this(writer, journal, capacity, batchSize, delayMillis, 1000);
+    }
+
+    /**
+     * Constructor for ReviewCommitQueue
+     * @param writer writer of the batches
+     * @param journal journal of the reviews submitted asynchronously, null if not journaled
+     * @param capacity capacity of the queue
+     * @param batchSize maximum reviews per commit
+     * @param delayMillis maximum wait for a batch to fill, in milliseconds
+     * @param retryMillis pause before writing again the journaled reviews which failed, in milliseconds
+     */
+    ReviewCommitQueue(BatchWriter writer, ReviewJournal journal, int capacity, int batchSize, long delayMillis,
+                      long retryMillis) {
+        this.writer = writer;
+        this.journal = journal;
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        this.batchSize = batchSize;
+        this.delay = TimeUnit.MILLISECONDS.toNanos(delayMillis);
+        this.retryDelay = TimeUnit.MILLISECONDS.toNanos(retryMillis);
+        this.flusher = new Thread(this::run, "reviews-commit");
+        flusher.setDaemon(true);
+    }
+
+    /**
+     * Starts the queue of the server, queuing again the reviews left in the journal.
+     * @throws IOException if the journal cannot be opened, or if it is in use by another server
+     */
+    public static synchronized void start() throws IOException {
+        if (instance == null) {
+            String path = System.getProperty("theknife.reviews.journal");
+            ReviewJournal journal = new ReviewJournal(path == null ? RecordJournal.defaultPath("reviews") : Path.of(path),
+                    Boolean.parseBoolean(System.getProperty("theknife.reviews.sync", "true")));
+            instance = new ReviewCommitQueue(ReviewCommitQueue::writeBatch, journal,
+                    Integer.getInteger("theknife.reviews.queue", 1024), Integer.getInteger("theknife.reviews.batch", 64),
+                    Long.getLong("theknife.reviews.delay", 5), Long.getLong("theknife.reviews.retry", 1000));
+            instance.begin();
+        }
+    }
+
+    /**
+     * Starts the flusher thread, then queues again the reviews left in the journal.
+     */
+    void begin() {
+        flusher.start();
+        if (journal == null) {
+            return;
+        }
+        List<ReviewDTO> recovered = journal.replay();
+        for (ReviewDTO review : recovered) {
+            try {
+                queue.put(new Pending(review, true));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+        if (!recovered.isEmpty()) {
+            System.out.println("Recovered " + recovered.size() + " reviews from the journal");
+        }
+    }
+
+    /**
+     * Stops the queue of the server after writing the queued reviews.
+     */
+    public static synchronized void stop() {
+        if (instance != null) {
+            instance.end();
+            instance = null;
+        }
+    }
+
+    /**
+     * Stops the flusher thread after writing the queued reviews.
+     */
+    void end() {
+        stopping = true;
+        try {
+            flusher.join(TimeUnit.SECONDS.toMillis(10));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (journal != null) {
+            try {
+                journal.close();
+            } catch (IOException e) {
+                System.err.println("Error closing the reviews journal: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Returns the queue of the server.
+     * @return the queue, or null if the reviews are written directly
+     */
+    public static synchronized ReviewCommitQueue get() {
+        return instance;
+    }
+
+    /**
+     * Queues a review and waits for its commit.
+     * @param review review to insert or update
+     * @return true if the review was written
+     * @throws SQLException if the queue is full, the write fails or takes too long
+     */
+    public boolean submit(ReviewDTO review) throws SQLException {
+        Pending pending = new Pending(review, false);
+        try {
+            if (stopping || !queue.offer(pending, CALLER_TIMEOUT, TimeUnit.MILLISECONDS)) {
+                throw new SQLException("Too many reviews waiting to be written");
+            }
+            return pending.done.get(CALLER_TIMEOUT, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while writing the review", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof SQLException) {
+                throw (SQLException) e.getCause();
+            }
+            throw new SQLException("Error writing the review", e.getCause());
+        } catch (TimeoutException e) {
+            throw new SQLException("The review was not written in time", e);
+        }
+    }
+
+    /**
+     * Records a review in the journal and queues it, without waiting for its commit.
+     * @param review review to insert or update
+     * @return completed with true if the review was written, false if it was not,
+     * or exceptionally with the error of its write
+     * @throws SQLTransientException if the queue is full
+     * @throws SQLException if the queue is stopping or the review cannot be journaled
+     */
+    public CompletableFuture<Boolean> submitAsync(ReviewDTO review) throws SQLException {
+        Pending pending = new Pending(review, journal != null);
+        if (stopping) {
+            throw new SQLException("The reviews are no longer accepted");
+        }
+        if (journal != null) {
+            try {
+                journal.append(review);
+            } catch (IOException e) {
+                throw new SQLException("Unable to journal the review", e);
+            }
+        }
+        if (!queue.offer(pending)) {
+            if (journal != null) {
+                journal.remove(review);
+            }
+            throw new SQLTransientException("Too many reviews waiting to be written");
+        }
+        return pending.done;
+    }
+
+    /**
+     * Main loop of the flusher: collects the batches and writes them.
+     * The journaled reviews which failed are put at the head of a batch once their pause is over;
+     * those still waiting when the server stops are left in the journal for the next run.
+     */
+    private void run() {
+        List<Pending> batch = new ArrayList<>(batchSize);
+        List<Pending> retries = new ArrayList<>();
+        long retryAt = 0;
+        while (!stopping || !queue.isEmpty()) {
+            try {
+                if (!retries.isEmpty() && System.nanoTime() - retryAt >= 0) {
+                    batch.addAll(retries);
+                    retries.clear();
+                }
+                if (batch.isEmpty()) {
+                    Pending first = queue.poll(100, TimeUnit.MILLISECONDS);
+                    if (first == null) {
+                        continue;
+                    }
+                    batch.add(first);
+                }
+                long deadline = System.nanoTime() + delay;
+                while (batch.size() < batchSize) {
+                    if (queue.drainTo(batch, batchSize - batch.size()) > 0) {
+                        continue;
+                    }
+                    long remaining = deadline - System.nanoTime();
+                    Pending next = remaining > 0 ? queue.poll(remaining, TimeUnit.NANOSECONDS) : null;
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+                write(batch);
+                batch.removeIf(pending -> !pending.done.isDone() && retries.add(pending));
+                forget(batch);
+                if (!retries.isEmpty()) {
+                    retryAt = System.nanoTime() + retryDelay;
+                }
+            } catch (InterruptedException e) {
+                stopping = true;
+            } finally {
+                for (Pending pending : batch) {
+                    pending.done.completeExceptionally(new SQLException("Review not written"));
+                }
+                batch.clear();
+            }
+        }
+        if (!retries.isEmpty()) {
+            System.err.println(retries.size() + " reviews not written, left in the journal for the next run");
+        }
+    }
+
+    /**
+     * Writes a batch in a single transaction, or one review at a time if the batch fails,
+     * and completes the futures of the callers.
+     * The futures of the journaled reviews which failed for a reason other than their data are left
+     * incomplete, so that the reviews are written again.
+     * @param batch reviews to write
+     */
+    private void write(List<Pending> batch) {
+        List<ReviewDTO> reviews = new ArrayList<>(batch.size());
+        for (Pending pending : batch) {
+            reviews.add(pending.review);
+        }
+        try {
+            boolean[] written = writer.write(reviews);
+            for (int i = 0; i < batch.size(); i++) {
+                batch.get(i).done.complete(written[i]);
+            }
+        } catch (SQLException | RuntimeException e) {
+            for (Pending pending : batch) {
+                if (batch.size() == 1) {
+                    fail(pending, e);
+                    continue;
+                }
+                try {
+                    pending.done.complete(writer.write(List.of(pending.review))[0]);
+                } catch (SQLException | RuntimeException single) {
+                    fail(pending, single);
+                }
+            }
+        }
+        ReplicaRouter router = DBConnection.getRouter();
+        if (router != null) {
+            // The authors read from the primary until the replicas catch up
+            for (ReviewDTO review : reviews) {
+                router.recordWrite(review.getUsername());
+            }
+        }
+    }
+
+    /**
+     * Completes the future of a review which could not be written, unless the review is journaled
+     * and the error does not depend on its data, in which case it will be written again.
+     * @param pending failed review
+     * @param error error of the write
+     */
+    private static void fail(Pending pending, Exception error) {
+        if (!pending.journaled || isDataError(error)) {
+            pending.done.completeExceptionally(error);
+        }
+    }
+
+    /**
+     * Checks whether a write failed because of the data of the review, so that writing it again cannot succeed.
+     * @param error error of the write
+     * @return true for data exceptions and integrity constraint violations (SQLSTATE classes 22 and 23)
+     * and for reviews which cannot even be bound
+     */
+    static boolean isDataError(Exception error) {
+        if (!(error instanceof SQLException)) {
+            return true;
+        }
+        String state = ((SQLException) error).getSQLState();
+        return state != null && (state.startsWith("22") || state.startsWith("23"));
+    }
+
+    /**
+     * Removes from the journal the reviews of a written batch, including the ones which failed because of
+     * their data, whose callers are told of the failure.
+     * @param batch written reviews
+     */
+    private void forget(List<Pending> batch) {
+        if (journal == null) {
+            return;
+        }
+        for (Pending pending : batch) {
+            if (pending.journaled) {
+                journal.remove(pending.review);
+            }
+        }
+        try {
+            journal.compact();
+        } catch (IOException e) {
+            System.err.println("Unable to compact the reviews journal: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Writes a batch of reviews on the primary database in a single transaction.
+     * @param reviews reviews to write
+     * @return for each review, whether it was written
+     * @throws SQLException if the transaction fails
+     */
+    private static boolean[] writeBatch(List<ReviewDTO> reviews) throws SQLException {
+        try {
+            return WRITE.execute(conn -> {
+                try (PreparedStatement stmt = conn.prepareStatement(QUERY_UPSERT)) {
+                    for (ReviewDTO review : reviews) {
+                        bind(stmt, review);
+                        stmt.addBatch();
+                    }
+                    int[] counts = stmt.executeBatch();
+                    boolean[] written = new boolean[counts.length];
+                    for (int i = 0; i < counts.length; i++) {
+                        written[i] = counts[i] != 0;
+                    }
+                    return written;
+                }
+            });
+        } finally {
+            DBConnection.releaseConnection();
+        }
+    }
+
+    /**
+     * Sets the parameters of the upsert of a review.
+     * @param stmt upsert statement
+     * @param review review to write
+     * @throws SQLException if a parameter cannot be set
+     */
+    static void bind(PreparedStatement stmt, ReviewDTO review) throws SQLException {
+        stmt.setString(1, review.getUsername());
+        stmt.setInt(2, Integer.parseInt(review.getRestaurant_id()));
+        stmt.setInt(3, review.getRating());
+        stmt.setString(4, review.getComment());
+        stmt.setString(5, review.getReply());
+        stmt.setInt(6, review.getRating());
+        stmt.setString(7, review.getComment());
+        stmt.setString(8, review.getReply());
+    }
+}
@@ -7,8 +7,10 @@ import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Timestamp;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * Data Access Object for managing restaurant reviews.
@@ -19,6 +21,8 @@ import java.util.List;
  * @author Lorenzo Radice, 753252, CO
  */
 public class ReviewDAO {
+    /** Maximum number of reviews in a page of pending replies */
+    public static final int MAX_PAGE_SIZE = 100;
     /**
      * Retrieves all reviews for a specific restaurant.
      *
@@ -28,7 +32,7 @@ public class ReviewDAO {
      */
     public static List<ReviewDTO> getRestaurantReviews(String restaurantId) throws SQLException {
         final String query = "SELECT * FROM reviews WHERE restaurant_id = ?";
-        Connection conn = DBConnection.getConnection();
+        Connection conn = DBConnection.getReadConnection();
         PreparedStatement stmt = conn.prepareStatement(query);
         stmt.setInt(1, Integer.parseInt(restaurantId));
         ResultSet rs = stmt.executeQuery();
@@ -39,12 +43,13 @@ public class ReviewDAO {
     }
     /**
      * Parses the ResultSet from a database query into a list of ReviewDTO objects.
+     * Public so that the parsing cost can be measured by the benchmarks.
      *
      * @param rs The ResultSet containing the review data.
      * @return A list of ReviewDTO objects.
      * @throws SQLException If there is an error accessing the ResultSet.
      */
-    private static List<ReviewDTO> parseReviewResultSet(ResultSet rs) throws SQLException {
+    public static List<ReviewDTO> parseReviewResultSet(ResultSet rs) throws SQLException {
         List<ReviewDTO> reviews = new ArrayList<>();
         while (rs.next()) {
             reviews.add(parseReviewResult(rs));
@@ -65,32 +70,53 @@ public class ReviewDAO {
         review.setRating(rs.getInt(3));
         review.setComment(rs.getString(4));
         review.setReply(rs.getString(5));
+        Timestamp reviewedAt = rs.getTimestamp("reviewed_at");
+        review.setReviewedAt(reviewedAt == null ? null : reviewedAt.toInstant());
         return review;
     }
     /**
      * Updates or inserts a review for a restaurant.
      * If a review already exists for the user and restaurant, it updates the existing review.
      * Otherwise, it inserts a new review.
+     * When the server groups the review writes, the review shares its commit with the concurrent ones.
      *
      * @param review The ReviewDTO object containing the review data to be updated or inserted.
      * @return true if the operation was successful, false otherwise.
      * @throws SQLException If there is an error accessing the database.
      */
     public static boolean updateReview(ReviewDTO review) throws SQLException {
-        final String query = "INSERT INTO reviews (username, restaurant_id, rating, comment, reply) VALUES (?, ?, ?, ?, ?) " +
-                "ON CONFLICT (username, restaurant_id) DO UPDATE SET rating = ?, comment = ?, reply = ?";
+        Integer.parseInt(review.getRestaurant_id());
+        ReviewCommitQueue queue = ReviewCommitQueue.get();
+        if (queue != null) {
+            return queue.submit(review);
+        }
         Connection conn = DBConnection.getConnection();
-        PreparedStatement stmt = conn.prepareStatement(query);
-        stmt.setString(1, review.getUsername());
-        stmt.setInt(2, Integer.parseInt(review.getRestaurant_id()));
-        stmt.setInt(3, review.getRating());
-        stmt.setString(4, review.getComment());
-        stmt.setString(5, review.getReply());
-        stmt.setInt(6, review.getRating());
-        stmt.setString(7, review.getComment());
-        stmt.setString(8, review.getReply());
+        PreparedStatement stmt = conn.prepareStatement(ReviewCommitQueue.QUERY_UPSERT);
+        ReviewCommitQueue.bind(stmt, review);
         return stmt.executeUpdate() > 0;
     }
+    /**
+     * Submits a review for a restaurant without waiting for it to be written.
+     * When the server groups the review writes, the review is journaled and queued;
+     * otherwise it is written at once.
+     *
+     * @param review The ReviewDTO object containing the review data to be updated or inserted.
+     * @return completed with true if the review was written, false otherwise,
+     * or exceptionally with the error of its write.
+     * @throws SQLException If the review cannot be queued or written.
+     * @throws IllegalArgumentException If the review has no rating or an invalid restaurant ID.
+     */
+    public static CompletableFuture<Boolean> submitReview(ReviewDTO review) throws SQLException {
+        Integer.parseInt(review.getRestaurant_id());
+        if (review.getRating() == null) {
+            throw new IllegalArgumentException("Missing rating");
+        }
+        ReviewCommitQueue queue = ReviewCommitQueue.get();
+        if (queue != null) {
+            return queue.submitAsync(review);
+        }
+        return CompletableFuture.completedFuture(updateReview(review));
+    }
     /**
      * Deletes a review for a restaurant by a specific user.
      *
@@ -107,6 +133,70 @@ public class ReviewDAO {
         stmt.setInt(2, Integer.parseInt(restaurantId));
         return (stmt.executeUpdate() > 0);
     }
+    /**
+     * Retrieves a page of the reviews of an owner's restaurants still waiting for a reply, oldest first.
+     * The pages are chained by the last review of the previous page rather than by an offset,
+     * so every page is read from the partial index of the unreplied reviews.
+     *
+     * @param ownerId The ID of the owner.
+     * @param after The last review of the previous page, or null for the first page.
+     * @param limit The maximum number of reviews of the page, at most {@value #MAX_PAGE_SIZE}.
+     * @return A list of ReviewDTO objects ordered by review time.
+     * @throws SQLException If there is an error accessing the database.
+     */
+    public static List<ReviewDTO> getPendingReplies(String ownerId, ReviewDTO after, int limit) throws SQLException {
+        final String query = "SELECT v.* FROM restaurants r " +
+                "JOIN reviews v ON v.restaurant_id = r.restaurant_id AND v.reply IS NULL " +
+                "WHERE r.r_owner = ? AND (?::timestamptz IS NULL " +
+                "OR (v.reviewed_at, v.restaurant_id, v.username) > (?::timestamptz, ?, ?)) " +
+                "ORDER BY v.reviewed_at, v.restaurant_id, v.username LIMIT ?";
+        if (after != null && after.getReviewedAt() == null) {
+            throw new IllegalArgumentException("The previous page must end with a review read from the database");
+        }
+        Timestamp afterTime = after == null ? null : Timestamp.from(after.getReviewedAt());
+        Connection conn = DBConnection.getReadConnection();
+        try (PreparedStatement stmt = conn.prepareStatement(query)) {
+            stmt.setString(1, ownerId);
+            stmt.setTimestamp(2, afterTime);
+            stmt.setTimestamp(3, afterTime);
+            stmt.setInt(4, after == null ? 0 : Integer.parseInt(after.getRestaurant_id()));
+            stmt.setString(5, after == null ? "" : after.getUsername());
+            stmt.setInt(6, Math.max(0, Math.min(limit, MAX_PAGE_SIZE)));
+            try (ResultSet rs = stmt.executeQuery()) {
+                return parseReviewResultSet(rs);
+            }
+        }
+    }
+    /**
+     * Sets the reply of the owner to a review, without rewriting the rating and the comment.
+     * The reply is only written if the review is still the version that was read,
+     * i.e. neither its reply nor its rating or comment changed in the meantime.
+     *
+     * @param ownerId The ID of the owner of the reviewed restaurant.
+     * @param review The review as it was read, with its previous reply and review time.
+     * @param reply The new reply.
+     * @return true if the reply was written, false if the review changed, no longer exists
+     * or is not about a restaurant of the owner.
+     * @throws SQLException If there is an error accessing the database.
+     */
+    public static boolean replyToReview(String ownerId, ReviewDTO review, String reply) throws SQLException {
+        final String query = "UPDATE reviews v SET reply = ? FROM restaurants r " +
+                "WHERE v.username = ? AND v.restaurant_id = ? AND r.restaurant_id = v.restaurant_id AND r.r_owner = ? " +
+                "AND v.reply IS NOT DISTINCT FROM ? AND v.reviewed_at = ?";
+        if (review.getReviewedAt() == null) {
+            throw new IllegalArgumentException("The review must be read from the database");
+        }
+        Connection conn = DBConnection.getConnection();
+        try (PreparedStatement stmt = conn.prepareStatement(query)) {
+            stmt.setString(1, reply);
+            stmt.setString(2, review.getUsername());
+            stmt.setInt(3, Integer.parseInt(review.getRestaurant_id()));
+            stmt.setString(4, ownerId);
+            stmt.setString(5, review.getReply());
+            stmt.setTimestamp(6, Timestamp.from(review.getReviewedAt()));
+            return stmt.executeUpdate() > 0;
+        }
+    }
     /**
      * Retrieves all reviews written by a specific user.
      *
@@ -116,7 +206,7 @@ public class ReviewDAO {
      */
     public static List<ReviewDTO> getUserReviews(String userId) throws SQLException {
         final String query = "SELECT * FROM reviews WHERE username = ?";
-        Connection conn = DBConnection.getConnection();
+        Connection conn = DBConnection.getReadConnection();
         PreparedStatement stmt = conn.prepareStatement(query);
         stmt.setString(1, userId);
         ResultSet rs = stmt.executeQuery();
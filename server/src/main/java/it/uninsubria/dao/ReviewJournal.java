@@ -0,0 +1,153 @@
+package it.uninsubria.dao;
+
+import it.uninsubria.dto.ReviewDTO;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Local journal of the reviews submitted asynchronously and not yet written to the database.
+ * Every review is appended and forced to disk before its submission is acknowledged, so that it survives
+ * a crash of the server; once written to the database it is removed, and the journal is rewritten
+ * with the reviews still pending. A later review of the same user and restaurant replaces the earlier one.
+ * The reviews are stored in a {@link RecordJournal}, which discards a record torn by a crash
+ * and keeps other servers away from the file.
+ *
+ * @author Lorenzo Radice
+ */
+class ReviewJournal implements Closeable {
+    /** File of the records */
+    private final RecordJournal records;
+    /** Reviews recorded in the journal and not yet removed, by user and restaurant */
+    private final Map<String, ReviewDTO> pending = new LinkedHashMap<>();
+    /** Whether reviews were removed since the journal was last rewritten */
+    private boolean dirty = false;
+
+    /**
+     * Constructor for ReviewJournal.
+     * The journal is created if missing, and a torn record at its end is removed.
+     * @param path path of the journal
+     * @param sync whether every review is forced to disk
+     * @throws IOException if the journal cannot be opened, or if it is in use by another server
+     */
+    ReviewJournal(Path path, boolean sync) throws IOException {
+        this.records = new RecordJournal(path, sync);
+        try {
+            for (byte[] payload : records.records()) {
+                ReviewDTO review = decode(payload);
+                pending.put(key(review), review);
+            }
+        } catch (IOException e) {
+            records.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Returns the reviews recorded in the journal and not yet removed.
+     * @return the pending reviews, in submission order
+     */
+    synchronized List<ReviewDTO> replay() {
+        return new ArrayList<>(pending.values());
+    }
+
+    /**
+     * Appends a review to the journal.
+     * @param review review to record
+     * @throws IOException if the review cannot be written
+     */
+    synchronized void append(ReviewDTO review) throws IOException {
+        records.append(encode(review));
+        pending.put(key(review), review);
+    }
+
+    /**
+     * Removes a review which was written to the database, or which failed because of its data, unless a later review
+     * of the same user and restaurant was recorded in the meantime.
+     * The record stays in the file until {@link #compact()}.
+     * @param review recorded review
+     */
+    synchronized void remove(ReviewDTO review) {
+        if (pending.remove(key(review), review)) {
+            dirty = true;
+        }
+    }
+
+    /**
+     * Rewrites the journal with the pending reviews, if some were removed.
+     * @throws IOException if the journal cannot be written
+     */
+    synchronized void compact() throws IOException {
+        if (!dirty) {
+            return;
+        }
+        dirty = false;
+        List<byte[]> payloads = new ArrayList<>(pending.size());
+        for (ReviewDTO review : pending.values()) {
+            payloads.add(encode(review));
+        }
+        records.rewrite(payloads);
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        records.close();
+    }
+
+    /**
+     * Decodes the payload of a record.
+     * @param payload payload of a record
+     * @return the recorded review
+     * @throws IOException if the payload is not a review
+     */
+    private static ReviewDTO decode(byte[] payload) throws IOException {
+        DataInputStream record = new DataInputStream(new ByteArrayInputStream(payload));
+        String username = record.readUTF();
+        String restaurantId = record.readUTF();
+        int rating = record.readInt();
+        String comment = record.readBoolean() ? record.readUTF() : null;
+        String reply = record.readBoolean() ? record.readUTF() : null;
+        return new ReviewDTO(username, restaurantId, rating, comment, reply);
+    }
+
+    /**
+     * Returns the key of a review, unique for every user and restaurant.
+     * @param review review
+     * @return the key
+     */
+    private static String key(ReviewDTO review) {
+        return review.getUsername() + '\0' + review.getRestaurant_id();
+    }
+
+    /**
+     * Encodes a review as the payload of a record.
+     * @param review review
+     * @return the payload
+     * @throws IOException if a field is too long to be encoded
+     */
+    private static byte[] encode(ReviewDTO review) throws IOException {
+        ByteArrayOutputStream payload = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(payload);
+        out.writeUTF(review.getUsername());
+        out.writeUTF(review.getRestaurant_id());
+        out.writeInt(review.getRating());
+        out.writeBoolean(review.getComment() != null);
+        if (review.getComment() != null) {
+            out.writeUTF(review.getComment());
+        }
+        out.writeBoolean(review.getReply() != null);
+        if (review.getReply() != null) {
+            out.writeUTF(review.getReply());
+        }
+        return payload.toByteArray();
+    }
+}
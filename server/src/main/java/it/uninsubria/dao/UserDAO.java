@@ -4,12 +4,13 @@ import it.uninsubria.DBConnection;
 import it.uninsubria.dto.AddressDTO;
 import it.uninsubria.dto.UserDTO;
 import it.uninsubria.dto.UserRoleDTO;
+import it.uninsubria.metrics.PasswordEvent;
 
 import java.sql.*;
 
 /**
  * Data Access Object for managing user data in the database.
- * This class provides methods to retrieve and add users.
+ * This class provides methods to retrieve and register users.
  * It uses prepared statements to prevent SQL injection attacks.
  *
  * @author Lorenzo Radice, 753252, CO
@@ -25,12 +26,22 @@ public class UserDAO {
             WHERE username = ?
             """;
     /**
-     * SQL query to add a new user to the database.
-     * This query inserts a new record into the Users table with all necessary fields.
+     * SQL statement to register a new user together with their address.
+     * The user is inserted first, with the next address ID, and the address only if the user was inserted,
+     * so that a taken username leaves no address behind; the reference to the address is checked
+     * at the end of the statement, when both rows exist.
      */
-    private static final String QUERY_ADD_USER = "INSERT INTO users (username, h_password, name, surname, birth_date, role, address_id) " +
-            "VALUES (?, ?, ?, ?, ?, ?, ?)";
-
+    private static final String QUERY_REGISTER_USER = """
+            WITH new_user AS (
+                INSERT INTO users (username, h_password, name, surname, birth_date, role, address_id)
+                VALUES (?, ?, ?, ?, ?, ?, nextval(pg_get_serial_sequence('addresses', 'address_id')))
+                ON CONFLICT (username) DO NOTHING
+                RETURNING address_id
+            )
+            INSERT INTO addresses (address_id, country, city, street, house_number, latitude, longitude)
+            SELECT address_id, ?, ?, ?, ?, ?, ? FROM new_user
+            RETURNING address_id
+            """;
 
     /**
      * Retrieves a user by their username.
@@ -38,7 +49,7 @@ public class UserDAO {
      * @return UserDTO containing user information, or null if not found
      */
     public static UserDTO getUserByID(String usr) {
-        Connection conn = DBConnection.getConnection();
+        Connection conn = DBConnection.getReadConnection();
         try (PreparedStatement stmt = conn.prepareStatement(QUERY_GET_USER_BY_USERID)) {
             // Set the parameter (username)
             stmt.setString(1, usr);
@@ -76,21 +87,31 @@ public class UserDAO {
 
 
     /**
-     * Adds a new user to the database.
-     * @param userData UserDTO containing user information
-     * @param addressId ID of the address associated with the user
-     * @throws SQLException if there is an error during the database operation
+     * Registers a new user and their address in a single statement, which is atomic:
+     * either both rows are written or none is.
+     * @param userData UserDTO containing user information and address
+     * @return true if the user was registered, false if the username is already taken
+     * @throws SQLException if there is an error during the database operation, such as invalid coordinates
      */
-    public static synchronized void addUser(UserDTO userData, Integer addressId) throws SQLException {
+    public static boolean register(UserDTO userData) throws SQLException {
+        AddressDTO address = userData.getAddress();
         Connection conn = DBConnection.getConnection();
-        PreparedStatement stmt = conn.prepareStatement(QUERY_ADD_USER);
-        stmt.setString(1, userData.getUsername());
-        stmt.setString(2, userData.getHashedPassword());
-        stmt.setString(3, userData.getName());
-        stmt.setString(4, userData.getSurname());
-        stmt.setDate(5, userData.getBirthday());
-        stmt.setObject(6, userData.getRole(), Types.OTHER); // Convert ENUM to String
-        stmt.setInt(7, addressId);
-        stmt.executeUpdate();
+        try (PreparedStatement stmt = conn.prepareStatement(QUERY_REGISTER_USER)) {
+            stmt.setString(1, userData.getUsername());
+            stmt.setString(2, PasswordEvent.time("hash", userData.getUsername(), userData::getHashedPassword));
+            stmt.setString(3, userData.getName());
+            stmt.setString(4, userData.getSurname());
+            stmt.setDate(5, userData.getBirthday());
+            stmt.setObject(6, userData.getRole(), Types.OTHER); // Convert ENUM to String
+            stmt.setString(7, address.getCountry());
+            stmt.setString(8, address.getCity());
+            stmt.setString(9, address.getStreet());
+            stmt.setString(10, address.getHouseNumber());
+            stmt.setDouble(11, address.getLatitude());
+            stmt.setDouble(12, address.getLongitude());
+            try (ResultSet rs = stmt.executeQuery()) {
+                return rs.next();
+            }
+        }
     }
 }
@@ -0,0 +1,68 @@
+package it.uninsubria.metrics;
+
+import jdk.jfr.Configuration;
+import jdk.jfr.Recording;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.text.ParseException;
+
+/**
+ * Flight Recorder recording of the server, with the settings profile shipped in {@code /jfr/theknife.jfc}.
+ * The recording is started when the system property {@code theknife.jfr} names the output file,
+ * and is written to it when the server exits.
+ * The same profile can also be extracted from the JAR and passed to {@code -XX:StartFlightRecording:settings=}.
+ *
+ * @author Lorenzo Radice
+ */
+public class FlightRecording {
+    /** Resource of the settings profile */
+    public static final String SETTINGS = "/jfr/theknife.jfc";
+
+    /**
+     * Private constructor to prevent instantiation.
+     */
+    private FlightRecording() {}
+
+    /**
+     * Reads the settings profile of the server.
+     * @return the settings profile
+     * @throws IOException if the profile cannot be read
+     * @throws ParseException if the profile is malformed
+     */
+    public static Configuration settings() throws IOException, ParseException {
+        try (InputStream in = FlightRecording.class.getResourceAsStream(SETTINGS)) {
+            if (in == null) {
+                throw new IOException("Missing resource " + SETTINGS);
+            }
+            try (Reader reader = new InputStreamReader(in, StandardCharsets.UTF_8)) {
+                return Configuration.create(reader);
+            }
+        }
+    }
+
+    /**
+     * Starts the recording if requested through the {@code theknife.jfr} system property.
+     * A failure is only logged, since the server works without the recording.
+     */
+    public static void startIfRequested() {
+        String destination = System.getProperty("theknife.jfr");
+        if (destination == null || destination.isBlank()) {
+            return;
+        }
+        try {
+            Recording recording = new Recording(settings());
+            recording.setName("TheKnife");
+            recording.setDestination(Path.of(destination));
+            recording.setDumpOnExit(true);
+            recording.start();
+            System.out.println("Flight recording started, it will be written to " + destination);
+        } catch (Exception e) {
+            System.err.println("Unable to start the flight recording: " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,175 @@
+package it.uninsubria.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Log-linear histogram of latencies, in the style of HdrHistogram.
+ * Values are grouped in buckets of doubling magnitude, each split in {@value #HALF_BUCKET} linear sub-buckets,
+ * so that every recorded value is kept with a relative error below 1/{@value #HALF_BUCKET} (about 1.6%)
+ * using a fixed, small amount of memory.
+ * <p>
+ * Recording is lock-free and can be done concurrently by many threads.
+ * Reading while other threads record gives a consistent enough, but not atomic, view of the counts.
+ *
+ * @author Lorenzo Radice
+ */
+public class LatencyHistogram {
+    /** Number of linear sub-buckets of the first bucket */
+    private static final int SUB_BUCKETS = 128;
+    /** Number of linear sub-buckets of the following buckets */
+    private static final int HALF_BUCKET = SUB_BUCKETS / 2;
+    /** Bits of the sub-bucket index */
+    private static final int SUB_BUCKET_BITS = 7;
+    /** Number of magnitudes above the first bucket: values up to 2^50 ns (about 13 days) */
+    private static final int MAGNITUDES = 44;
+    /** Largest value that can be recorded, larger values are clamped */
+    public static final long MAX_VALUE = (1L << (MAGNITUDES + SUB_BUCKET_BITS - 1)) - 1;
+
+    /** Counts of the values recorded in every slot */
+    private final AtomicLongArray counts = new AtomicLongArray(SUB_BUCKETS + MAGNITUDES * HALF_BUCKET);
+    /** Number of recorded values */
+    private final LongAdder total = new LongAdder();
+    /** Sum of the recorded values */
+    private final LongAdder sum = new LongAdder();
+    /** Largest recorded value */
+    private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+    /**
+     * Records a value.
+     * @param value value to record, negative values are recorded as 0
+     */
+    public void record(long value) {
+        value = Math.max(0, Math.min(value, MAX_VALUE));
+        counts.incrementAndGet(indexOf(value));
+        total.increment();
+        sum.add(value);
+        max.accumulate(value);
+    }
+
+    /**
+     * Adds the values recorded by another histogram to this one.
+     * @param other histogram to add
+     */
+    public void add(LatencyHistogram other) {
+        for (int i = 0; i < counts.length(); i++) {
+            long count = other.counts.get(i);
+            if (count != 0) {
+                counts.addAndGet(i, count);
+            }
+        }
+        total.add(other.total.sum());
+        sum.add(other.sum.sum());
+        max.accumulate(other.max.get());
+    }
+
+    /**
+     * Removes from this histogram the values recorded by an earlier copy of it,
+     * leaving the values recorded in between.
+     * The maximum becomes the highest value of the remaining slots.
+     * @param earlier earlier copy of this histogram
+     */
+    public void subtract(LatencyHistogram earlier) {
+        long highest = 0;
+        for (int i = 0; i < counts.length(); i++) {
+            long count = counts.addAndGet(i, -earlier.counts.get(i));
+            if (count > 0) {
+                highest = highestEquivalentValue(i);
+            }
+        }
+        total.add(-earlier.total.sum());
+        sum.add(-earlier.sum.sum());
+        highest = Math.min(highest, max.get());
+        max.reset();
+        max.accumulate(highest);
+    }
+
+    /**
+     * Removes every recorded value.
+     */
+    public void reset() {
+        for (int i = 0; i < counts.length(); i++) {
+            counts.set(i, 0);
+        }
+        total.reset();
+        sum.reset();
+        max.reset();
+    }
+
+    /**
+     * Returns the number of recorded values.
+     * @return number of values
+     */
+    public long getCount() {
+        return total.sum();
+    }
+
+    /**
+     * Returns the largest recorded value.
+     * @return largest value, 0 if nothing was recorded
+     */
+    public long getMax() {
+        return max.get();
+    }
+
+    /**
+     * Returns the mean of the recorded values.
+     * @return mean, 0 if nothing was recorded
+     */
+    public double getMean() {
+        long count = total.sum();
+        return count == 0 ? 0 : (double) sum.sum() / count;
+    }
+
+    /**
+     * Returns the value below which the given percentage of the recorded values falls.
+     * @param percentile percentile, between 0 and 100
+     * @return the highest equivalent value of the slot holding the percentile, 0 if nothing was recorded
+     */
+    public long getValueAtPercentile(double percentile) {
+        long count = 0;
+        for (int i = 0; i < counts.length(); i++) {
+            count += counts.get(i);
+        }
+        if (count == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(Math.min(percentile, 100.0) / 100.0 * count));
+        long seen = 0;
+        for (int i = 0; i < counts.length(); i++) {
+            seen += counts.get(i);
+            if (seen >= rank) {
+                return Math.min(highestEquivalentValue(i), max.get());
+            }
+        }
+        return max.get();
+    }
+
+    /**
+     * Returns the slot of a value.
+     * @param value value between 0 and {@link #MAX_VALUE}
+     * @return index of the slot
+     */
+    static int indexOf(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int shift = 63 - Long.numberOfLeadingZeros(value) - (SUB_BUCKET_BITS - 1);
+        return SUB_BUCKETS + (shift - 1) * HALF_BUCKET + (int) (value >>> shift) - HALF_BUCKET;
+    }
+
+    /**
+     * Returns the largest value stored in a slot.
+     * @param index index of the slot
+     * @return largest value of the slot
+     */
+    static long highestEquivalentValue(int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        int shift = (index - SUB_BUCKETS) / HALF_BUCKET + 1;
+        long lowest = (long) ((index - SUB_BUCKETS) % HALF_BUCKET + HALF_BUCKET) << shift;
+        return lowest + (1L << shift) - 1;
+    }
+}
@@ -0,0 +1,167 @@
+package it.uninsubria.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Call counters and latency histogram of a remote method.
+ * Recording never locks: the counters are striped {@link LongAdder}s and the latencies go to one of several
+ * histograms chosen by thread, which are merged only when the metrics are read.
+ *
+ * @author Lorenzo Radice
+ */
+public class MethodMetrics implements MethodMetricsMBean {
+    /** Number of histograms the latencies are spread over, a power of two */
+    private static final int STRIPES = Integer.highestOneBit(Runtime.getRuntime().availableProcessors() * 2 - 1);
+
+    /** Name of the remote interface */
+    private final String service;
+    /** Name of the method */
+    private final String method;
+    /** Number of completed calls */
+    private final LongAdder calls = new LongAdder();
+    /** Number of failed calls */
+    private final LongAdder errors = new LongAdder();
+    /** Number of calls in flight */
+    private final LongAdder inFlight = new LongAdder();
+    /** Number of calls refused by the admission control */
+    private final LongAdder rejected = new LongAdder();
+    /** Time spent by the calls waiting to be admitted, in nanoseconds */
+    private final LongAdder queueWait = new LongAdder();
+    /** Latencies of the calls in nanoseconds, spread by thread */
+    private final LatencyHistogram[] latencies = new LatencyHistogram[STRIPES];
+
+    /**
+     * Constructor for MethodMetrics
+     * @param service name of the remote interface
+     * @param method name of the method
+     */
+    public MethodMetrics(String service, String method) {
+        this.service = service;
+        this.method = method;
+        for (int i = 0; i < STRIPES; i++) {
+            latencies[i] = new LatencyHistogram();
+        }
+    }
+
+    /**
+     * Marks the start of a call.
+     * @return start time to pass to {@link #end(long, boolean)}
+     */
+    public long begin() {
+        inFlight.increment();
+        return System.nanoTime();
+    }
+
+    /**
+     * Marks the end of a call.
+     * @param start value returned by {@link #begin()}
+     * @param failed whether the call threw an exception
+     */
+    public void end(long start, boolean failed) {
+        long elapsed = System.nanoTime() - start;
+        inFlight.decrement();
+        calls.increment();
+        if (failed) {
+            errors.increment();
+        }
+        latencies[(int) Thread.currentThread().getId() & (STRIPES - 1)].record(elapsed);
+    }
+
+    /**
+     * Records a call refused by the admission control.
+     */
+    public void reject() {
+        rejected.increment();
+    }
+
+    /**
+     * Records the time a call waited to be admitted.
+     * @param nanos wait in nanoseconds
+     */
+    public void queued(long nanos) {
+        queueWait.add(nanos);
+    }
+
+    /**
+     * Returns the latencies of every call, merged into a new histogram.
+     * @return latencies in nanoseconds
+     */
+    public LatencyHistogram snapshot() {
+        LatencyHistogram merged = new LatencyHistogram();
+        for (LatencyHistogram stripe : latencies) {
+            merged.add(stripe);
+        }
+        return merged;
+    }
+
+    /**
+     * Returns the name of the remote interface.
+     * @return name of the interface
+     */
+    public String getService() {
+        return service;
+    }
+
+    /**
+     * Returns the name of the method.
+     * @return name of the method
+     */
+    public String getMethod() {
+        return method;
+    }
+
+    @Override
+    public long getCalls() {
+        return calls.sum();
+    }
+
+    @Override
+    public long getErrors() {
+        return errors.sum();
+    }
+
+    @Override
+    public long getInFlight() {
+        return inFlight.sum();
+    }
+
+    @Override
+    public long getRejected() {
+        return rejected.sum();
+    }
+
+    @Override
+    public double getQueueWaitMillis() {
+        return queueWait.sum() / 1e6;
+    }
+
+    @Override
+    public double getMeanMillis() {
+        return snapshot().getMean() / 1e6;
+    }
+
+    @Override
+    public double getP50Millis() {
+        return snapshot().getValueAtPercentile(50) / 1e6;
+    }
+
+    @Override
+    public double getP95Millis() {
+        return snapshot().getValueAtPercentile(95) / 1e6;
+    }
+
+    @Override
+    public double getP99Millis() {
+        return snapshot().getValueAtPercentile(99) / 1e6;
+    }
+
+    @Override
+    public double getP999Millis() {
+        return snapshot().getValueAtPercentile(99.9) / 1e6;
+    }
+
+    @Override
+    public double getMaxMillis() {
+        return snapshot().getMax() / 1e6;
+    }
+}
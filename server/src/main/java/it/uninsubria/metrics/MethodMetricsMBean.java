@@ -0,0 +1,76 @@
+package it.uninsubria.metrics;
+
+/**
+ * Management interface of the metrics of a remote method, published over JMX.
+ * Latencies are in milliseconds and cover every call since the server started.
+ *
+ * @author Lorenzo Radice
+ */
+public interface MethodMetricsMBean {
+    /**
+     * Returns the number of completed calls.
+     * @return number of calls
+     */
+    long getCalls();
+
+    /**
+     * Returns the number of calls which threw an exception.
+     * @return number of failed calls
+     */
+    long getErrors();
+
+    /**
+     * Returns the number of calls being executed.
+     * @return number of calls in flight
+     */
+    long getInFlight();
+
+    /**
+     * Returns the number of calls refused by the admission control,
+     * which are not counted among the calls.
+     * @return number of refused calls
+     */
+    long getRejected();
+
+    /**
+     * Returns the total time the calls waited to be admitted.
+     * @return wait in milliseconds
+     */
+    double getQueueWaitMillis();
+
+    /**
+     * Returns the mean latency.
+     * @return mean latency in milliseconds
+     */
+    double getMeanMillis();
+
+    /**
+     * Returns the median latency.
+     * @return 50th percentile in milliseconds
+     */
+    double getP50Millis();
+
+    /**
+     * Returns the 95th percentile of the latency.
+     * @return 95th percentile in milliseconds
+     */
+    double getP95Millis();
+
+    /**
+     * Returns the 99th percentile of the latency.
+     * @return 99th percentile in milliseconds
+     */
+    double getP99Millis();
+
+    /**
+     * Returns the 99.9th percentile of the latency.
+     * @return 99.9th percentile in milliseconds
+     */
+    double getP999Millis();
+
+    /**
+     * Returns the highest latency.
+     * @return highest latency in milliseconds
+     */
+    double getMaxMillis();
+}
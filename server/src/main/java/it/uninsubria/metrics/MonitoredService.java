@@ -0,0 +1,175 @@
+package it.uninsubria.metrics;
+
+import it.uninsubria.DBConnection;
+import it.uninsubria.admission.AdmissionControl;
+import it.uninsubria.dto.ReviewDTO;
+import it.uninsubria.dto.UserDTO;
+import it.uninsubria.exceptions.ServerBusyException;
+import it.uninsubria.services.AdminService;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.rmi.Remote;
+import java.rmi.RemoteException;
+import java.rmi.server.RemoteServer;
+import java.rmi.server.ServerNotActiveException;
+import java.rmi.server.UnicastRemoteObject;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Instrumentation layer around the remote services.
+ * The service is wrapped in a proxy implementing the same remote interface, which records the metrics
+ * of every call in {@link ServerMetrics}, emits a {@link RemoteCallEvent} and then delegates to the service.
+ * Calls to the services other than the admin one must first pass the {@link AdmissionControl} of the server.
+ * At the end of the call, the database connection used by the calling thread is given back to the pool.
+ * The proxy, instead of the service, is exported to RMI, so the clients are unaware of it.
+ *
+ * @param <T> remote interface of the service
+ * @author Lorenzo Radice
+ */
+public class MonitoredService<T extends Remote> implements InvocationHandler {
+    /** Name of the remote interface */
+    private final String service;
+    /** Wrapped service */
+    private final T target;
+    /** Metrics of the methods of the service */
+    private final Map<Method, MethodMetrics> metrics = new HashMap<>();
+
+    /**
+     * Constructor for MonitoredService
+     * @param type remote interface of the service
+     * @param target service to wrap
+     */
+    private MonitoredService(Class<T> type, T target) {
+        this.service = type.getSimpleName();
+        this.target = target;
+        for (Method method : type.getMethods()) {
+            metrics.put(method, ServerMetrics.forMethod(type.getSimpleName(), method.getName()));
+        }
+    }
+
+    /**
+     * Wraps a service in a monitoring proxy and exports the proxy to RMI.
+     * If the service was already exported (as a {@link UnicastRemoteObject}), it is unexported,
+     * so that it can only be reached through the proxy.
+     * @param type remote interface of the service
+     * @param target service to wrap
+     * @param <T> remote interface of the service
+     * @return the stub of the proxy, to bind in the registry
+     * @throws RemoteException if the proxy cannot be exported
+     */
+    public static <T extends Remote> T export(Class<T> type, T target) throws RemoteException {
+        if (target instanceof UnicastRemoteObject) {
+            UnicastRemoteObject.unexportObject(target, true);
+        }
+        T proxy = type.cast(Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type},
+                new MonitoredService<>(type, target)));
+        return type.cast(UnicastRemoteObject.exportObject(proxy, 0));
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+        MethodMetrics methodMetrics = metrics.get(method);
+        if (methodMetrics == null) {
+            // Methods of Object, not remote
+            return method.invoke(target, args);
+        }
+        String user = userOf(method, args);
+        AdmissionControl admission = method.getDeclaringClass() == AdminService.class ? null : AdmissionControl.get();
+        if (admission != null) {
+            try {
+                admission.checkRate(method.getName(), clientHost(), user);
+                methodMetrics.queued(admission.acquire());
+            } catch (ServerBusyException e) {
+                methodMetrics.reject();
+                throw e;
+            }
+        }
+        DBConnection.setCaller(user);
+        RemoteCallEvent event = new RemoteCallEvent();
+        event.begin();
+        long start = methodMetrics.begin();
+        boolean failed = true;
+        Object result = null;
+        try {
+            result = method.invoke(target, args);
+            failed = false;
+            return result;
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        } finally {
+            if (admission != null) {
+                admission.release();
+            }
+            DBConnection.releaseConnection();
+            methodMetrics.end(start, failed);
+            if (event.shouldCommit()) {
+                event.service = service;
+                event.method = method.getName();
+                event.user = user;
+                event.resultSize = sizeOf(result);
+                event.failed = failed;
+                event.commit();
+            }
+        }
+    }
+
+    /**
+     * Finds the user on whose behalf a remote method is called.
+     * The services take the user either inside a DTO or as a string argument
+     * (userId, username or ownerId); the only string argument which is not a user is
+     * the restaurant id of {@code getReviews}, and restaurant ids always follow the user.
+     * @param method called method
+     * @param args arguments of the call
+     * @return username, or null if the call is anonymous
+     */
+    static String userOf(Method method, Object[] args) {
+        if (args == null || method.getName().equals("getReviews")) {
+            return null;
+        }
+        if (method.getDeclaringClass() == AdminService.class) {
+            // The first argument is the admin key, which must not be recorded
+            return "admin";
+        }
+        for (Object arg : args) {
+            if (arg instanceof UserDTO) {
+                return ((UserDTO) arg).getUsername();
+            }
+            if (arg instanceof ReviewDTO) {
+                return ((ReviewDTO) arg).getUsername();
+            }
+            if (arg instanceof String) {
+                return (String) arg;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns the address of the client of the current remote call.
+     * @return address of the client, or null if the call is local
+     */
+    private static String clientHost() {
+        try {
+            return RemoteServer.getClientHost();
+        } catch (ServerNotActiveException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Returns the number of elements of the result of a call.
+     * @param result result of the call
+     * @return size of a collection, 0 for no result, 1 otherwise
+     */
+    private static int sizeOf(Object result) {
+        if (result instanceof Collection) {
+            return ((Collection<?>) result).size();
+        }
+        return result == null ? 0 : 1;
+    }
+}
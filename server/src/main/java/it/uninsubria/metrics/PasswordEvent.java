@@ -0,0 +1,63 @@
+package it.uninsubria.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+import java.util.function.Supplier;
+
+/**
+ * Flight Recorder event of the hashing or verification of a password with argon2,
+ * the most CPU intensive operation of the server.
+ *
+ * @author Lorenzo Radice
+ */
+@Name("it.uninsubria.Password")
+@Label("Password Hash")
+@Description("Argon2 hashing or verification of a password")
+@Category({"TheKnife", "Security"})
+@Enabled(false)
+@StackTrace(false)
+public class PasswordEvent extends Event {
+    /** Operation: hash or verify */
+    @Label("Operation")
+    String operation;
+    /** Owner of the password */
+    @Label("User")
+    String user;
+
+    /**
+     * Runs a password operation inside an event.
+     * @param operation name of the operation, hash or verify
+     * @param user owner of the password
+     * @param task the operation
+     * @param <T> result of the operation
+     * @return the result of the operation
+     */
+    public static <T> T time(String operation, String user, Supplier<T> task) {
+        PasswordEvent event = new PasswordEvent();
+        event.begin();
+        try {
+            return task.get();
+        } finally {
+            event.complete(operation, user);
+        }
+    }
+
+    /**
+     * Fills in and commits the event, if enabled.
+     * @param operation name of the operation
+     * @param user owner of the password
+     */
+    private void complete(String operation, String user) {
+        if (shouldCommit()) {
+            this.operation = operation;
+            this.user = user;
+            commit();
+        }
+    }
+}
@@ -0,0 +1,39 @@
+package it.uninsubria.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Flight Recorder event of a call to a remote service, emitted by {@link MonitoredService}.
+ * Disabled unless turned on by a settings profile, such as the one shipped in {@code /jfr/theknife.jfc}.
+ *
+ * @author Lorenzo Radice
+ */
+@Name("it.uninsubria.RemoteCall")
+@Label("Remote Call")
+@Description("Call to a remote service of the server")
+@Category({"TheKnife", "RMI"})
+@Enabled(false)
+@StackTrace(false)
+class RemoteCallEvent extends Event {
+    /** Remote interface */
+    @Label("Service")
+    String service;
+    /** Called method */
+    @Label("Method")
+    String method;
+    /** User on whose behalf the call was made, if known */
+    @Label("User")
+    String user;
+    /** Number of elements of the result */
+    @Label("Result Size")
+    int resultSize;
+    /** Whether the call threw an exception */
+    @Label("Failed")
+    boolean failed;
+}
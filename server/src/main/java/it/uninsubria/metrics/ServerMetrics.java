@@ -0,0 +1,142 @@
+package it.uninsubria.metrics;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Registry of the metrics of the remote methods.
+ * Every method gets a {@link MethodMetrics}, published as the MBean
+ * {@code it.uninsubria:type=RemoteMethod,service=<interface>,name=<method>}
+ * on the platform MBean server, so that it can be read with JConsole or any JMX client.
+ * A compact summary of the calls of the last period can also be printed periodically.
+ *
+ * @author Lorenzo Radice
+ */
+public class ServerMetrics {
+    /** Metrics by service and method name */
+    private static final ConcurrentMap<String, MethodMetrics> metrics = new ConcurrentHashMap<>();
+    /** Snapshots of the latencies taken at the previous summary, by service and method name */
+    private static final Map<String, LatencyHistogram> previous = new HashMap<>();
+    /** Errors counted at the previous summary, by service and method name */
+    private static final Map<String, Long> previousErrors = new HashMap<>();
+    /** Refused calls counted at the previous summary, by service and method name */
+    private static final Map<String, Long> previousRejected = new HashMap<>();
+    /** Thread printing the summaries */
+    private static ScheduledExecutorService reporter;
+
+    /**
+     * Private constructor to prevent instantiation.
+     */
+    private ServerMetrics() {}
+
+    /**
+     * Returns the metrics of a method, creating and publishing them on first use.
+     * @param service name of the remote interface
+     * @param method name of the method
+     * @return metrics of the method
+     */
+    public static MethodMetrics forMethod(String service, String method) {
+        return metrics.computeIfAbsent(service + "." + method, key -> {
+            MethodMetrics created = new MethodMetrics(service, method);
+            publish(created);
+            return created;
+        });
+    }
+
+    /**
+     * Returns the metrics of every method.
+     * @return metrics sorted by service and method name
+     */
+    public static List<MethodMetrics> all() {
+        List<MethodMetrics> sorted = new ArrayList<>();
+        metrics.keySet().stream().sorted().forEach(key -> sorted.add(metrics.get(key)));
+        return sorted;
+    }
+
+    /**
+     * Starts printing a summary of the calls every period.
+     * @param period seconds between two summaries, 0 or less to disable them
+     */
+    public static synchronized void startReporter(long period) {
+        if (period <= 0 || reporter != null) {
+            return;
+        }
+        reporter = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "metrics-reporter");
+            thread.setDaemon(true);
+            return thread;
+        });
+        reporter.scheduleAtFixedRate(() -> report(period), period, period, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Stops printing the summaries.
+     */
+    public static synchronized void stopReporter() {
+        if (reporter != null) {
+            reporter.shutdownNow();
+            reporter = null;
+        }
+    }
+
+    /**
+     * Prints one line for every method called in the last period.
+     * @param period seconds since the previous summary
+     */
+    static void report(long period) {
+        for (MethodMetrics method : all()) {
+            String key = method.getService() + "." + method.getMethod();
+            LatencyHistogram current = method.snapshot();
+            LatencyHistogram interval = new LatencyHistogram();
+            interval.add(current);
+            LatencyHistogram earlier = previous.put(key, current);
+            if (earlier != null) {
+                interval.subtract(earlier);
+            }
+            long calls = method.getCalls();
+            long errors = method.getErrors();
+            Long earlierErrors = previousErrors.put(key, errors);
+            long rejected = method.getRejected();
+            Long earlierRejected = previousRejected.put(key, rejected);
+            rejected -= earlierRejected == null ? 0 : earlierRejected;
+            if (interval.getCount() == 0 && method.getInFlight() == 0 && rejected == 0) {
+                continue;
+            }
+            System.out.printf(Locale.ROOT,
+                    "[metrics] %s calls=%d (%.1f/s) errors=%d rejected=%d inFlight=%d p50=%.2fms p99=%.2fms max=%.2fms total=%d%n",
+                    key, interval.getCount(), (double) interval.getCount() / period, errors - (earlierErrors == null ? 0 : earlierErrors),
+                    rejected, method.getInFlight(), interval.getValueAtPercentile(50) / 1e6,
+                    interval.getValueAtPercentile(99) / 1e6, interval.getMax() / 1e6, calls);
+        }
+    }
+
+    /**
+     * Publishes the metrics of a method on the platform MBean server.
+     * A failure is only logged, since the metrics remain available to the periodic summary.
+     * @param method metrics to publish
+     */
+    private static void publish(MethodMetrics method) {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName("it.uninsubria:type=RemoteMethod,service="
+                    + method.getService() + ",name=" + method.getMethod());
+            if (!server.isRegistered(name)) {
+                server.registerMBean(method, name);
+            }
+        } catch (JMException e) {
+            System.err.println("Unable to publish the metrics of " + method.getMethod() + ": " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,309 @@
+package it.uninsubria.metrics;
+
+import it.uninsubria.DBConnection;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.Method;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Pattern;
+
+/**
+ * Registry of the metrics of the SQL statements executed by the DAOs, and slow-query log.
+ * Statements are grouped by template (their SQL text); every template gets a {@link StatementMetrics},
+ * published as the MBean {@code it.uninsubria:type=SqlStatement,id=<n>}.
+ * <p>
+ * Statements slower than a threshold are logged with their parameters redacted to their types.
+ * Optionally, the plan of slow queries is captured with {@code EXPLAIN (ANALYZE, BUFFERS)},
+ * at most once a minute per template, on a dedicated connection in the background,
+ * so that the request which was slow is not delayed further.
+ * The queries are the statements starting with {@code SELECT} or {@code WITH} which do not write;
+ * the connection is read-only, so that a statement which writes anyway fails instead of being executed again.
+ * <p>
+ * The initial settings are read from the system properties {@code theknife.sql.slow} (threshold in milliseconds,
+ * default 200, negative to disable the log) and {@code theknife.sql.explain} (default false);
+ * they can be changed at runtime through the MBean {@code it.uninsubria:type=SqlMonitor}.
+ *
+ * @author Lorenzo Radice
+ */
+public class SqlMonitor implements SqlMonitorMBean {
+    /** Single instance, published over JMX */
+    private static final SqlMonitor instance = new SqlMonitor();
+    /** Minimum interval between two plan captures of the same template */
+    private static final long EXPLAIN_INTERVAL = TimeUnit.MINUTES.toNanos(1);
+    /** Maximum number of plan captures waiting to run */
+    private static final int EXPLAIN_QUEUE = 16;
+    /** Keywords of the statements which write, also inside a {@code WITH} */
+    private static final Pattern WRITES = Pattern.compile("\\b(INSERT|UPDATE|DELETE|MERGE)\\b", Pattern.CASE_INSENSITIVE);
+
+    /** Metrics by template */
+    private final ConcurrentMap<String, StatementMetrics> statements = new ConcurrentHashMap<>();
+    /** Identifier of the next template */
+    private final AtomicInteger nextId = new AtomicInteger(1);
+    /** Time spent waiting for a connection, in nanoseconds */
+    private final LatencyHistogram connectionWait = new LatencyHistogram();
+    /** Whether slow statements are logged */
+    private volatile boolean slowQueryLogEnabled;
+    /** Threshold of the slow statements, in milliseconds */
+    private volatile long slowQueryThreshold;
+    /** Whether the plans of slow queries are captured */
+    private volatile boolean explainSlowQueries;
+    /** Thread capturing the plans */
+    private final ExecutorService explainer = new ThreadPoolExecutor(1, 1, 0, TimeUnit.SECONDS,
+            new LinkedBlockingQueue<>(EXPLAIN_QUEUE), runnable -> {
+        Thread thread = new Thread(runnable, "sql-explain");
+        thread.setDaemon(true);
+        return thread;
+    });
+    /** Dedicated connection of the plan captures, opened on first use */
+    private Connection explainConnection;
+
+    /**
+     * Private constructor, reads the initial settings and publishes the MBean.
+     */
+    private SqlMonitor() {
+        long threshold = Long.getLong("theknife.sql.slow", 200);
+        slowQueryLogEnabled = threshold >= 0;
+        slowQueryThreshold = Math.max(0, threshold);
+        explainSlowQueries = Boolean.getBoolean("theknife.sql.explain");
+        register(this, "it.uninsubria:type=SqlMonitor");
+    }
+
+    /**
+     * Returns the single instance.
+     * @return the SQL monitor
+     */
+    public static SqlMonitor get() {
+        return instance;
+    }
+
+    /**
+     * Returns the metrics of a statement template, creating and publishing them on first use.
+     * @param sql SQL text of the statement
+     * @return metrics of the template
+     */
+    public StatementMetrics forStatement(String sql) {
+        String template = sql.trim().replaceAll("\\s+", " ");
+        return statements.computeIfAbsent(template, key -> {
+            StatementMetrics created = new StatementMetrics(key);
+            register(created, "it.uninsubria:type=SqlStatement,id=" + nextId.getAndIncrement());
+            return created;
+        });
+    }
+
+    /**
+     * Returns the metrics of every template.
+     * @return metrics sorted by total execution time, highest first
+     */
+    public List<StatementMetrics> all() {
+        List<StatementMetrics> sorted = new ArrayList<>(statements.values());
+        sorted.sort((a, b) -> Double.compare(b.getTotalMillis(), a.getTotalMillis()));
+        return sorted;
+    }
+
+    /**
+     * Records the time spent waiting for a database connection.
+     * @param elapsed wait in nanoseconds
+     */
+    public void recordConnectionWait(long elapsed) {
+        connectionWait.record(elapsed);
+    }
+
+    /**
+     * Logs a statement if it was slow, and schedules the capture of its plan if enabled.
+     * @param metrics metrics of the template
+     * @param elapsed execution time in nanoseconds
+     * @param rows number of changed rows, or -1 for queries
+     * @param bindings calls which bound the parameters of the statement, in order
+     */
+    void checkSlow(StatementMetrics metrics, long elapsed, long rows, List<Binding> bindings) {
+        if (!slowQueryLogEnabled || elapsed < TimeUnit.MILLISECONDS.toNanos(slowQueryThreshold)) {
+            return;
+        }
+        StringBuilder parameters = new StringBuilder();
+        for (Binding binding : bindings) {
+            parameters.append(parameters.length() == 0 ? "" : ", ").append(binding.redacted());
+        }
+        System.err.printf(Locale.ROOT, "[slow-query] %.1f ms%s: %s [%s]%n", elapsed / 1e6,
+                rows >= 0 ? " rows=" + rows : "", metrics.getSql(), parameters);
+        if (explainSlowQueries && isQuery(metrics.getSql()) && metrics.claimExplain(EXPLAIN_INTERVAL)) {
+            List<Binding> copy = new ArrayList<>(bindings);
+            try {
+                explainer.execute(() -> explain(metrics.getSql(), copy));
+            } catch (RejectedExecutionException e) {
+                // Too many captures pending: skip this one
+            }
+        }
+    }
+
+    /**
+     * Checks whether a statement only reads, so that its plan can be captured by executing it again.
+     * @param sql SQL text of the statement
+     * @return true for the statements starting with {@code SELECT}, and with {@code WITH} unless they write
+     */
+    static boolean isQuery(String sql) {
+        String text = sql.stripLeading();
+        if (text.regionMatches(true, 0, "SELECT", 0, 6)) {
+            return true;
+        }
+        return text.regionMatches(true, 0, "WITH", 0, 4) && !WRITES.matcher(text).find();
+    }
+
+    /**
+     * Captures and logs the plan of a query, executing it again with the same parameters.
+     * @param sql SQL text of the query
+     * @param bindings calls which bound the parameters of the query
+     */
+    private void explain(String sql, List<Binding> bindings) {
+        try {
+            if (explainConnection == null || explainConnection.isClosed()) {
+                explainConnection = DBConnection.openConnection();
+                explainConnection.setReadOnly(true);
+            }
+            StringBuilder plan = new StringBuilder();
+            try (PreparedStatement stmt = explainConnection.prepareStatement("EXPLAIN (ANALYZE, BUFFERS) " + sql)) {
+                for (Binding binding : bindings) {
+                    binding.apply(stmt);
+                }
+                try (ResultSet rs = stmt.executeQuery()) {
+                    while (rs.next()) {
+                        plan.append("\n    ").append(rs.getString(1));
+                    }
+                }
+            }
+            System.err.println("[slow-query] plan of " + sql + ":" + plan);
+        } catch (Exception e) {
+            System.err.println("[slow-query] unable to capture the plan of " + sql + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Publishes an MBean on the platform MBean server.
+     * A failure is only logged, since the metrics remain available through this class.
+     * @param mbean MBean to publish
+     * @param name object name of the MBean
+     */
+    private static void register(Object mbean, String name) {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName objectName = new ObjectName(name);
+            if (!server.isRegistered(objectName)) {
+                server.registerMBean(mbean, objectName);
+            }
+        } catch (JMException e) {
+            System.err.println("Unable to publish " + name + ": " + e.getMessage());
+        }
+    }
+
+    @Override
+    public boolean isSlowQueryLogEnabled() {
+        return slowQueryLogEnabled;
+    }
+
+    @Override
+    public void setSlowQueryLogEnabled(boolean enabled) {
+        slowQueryLogEnabled = enabled;
+    }
+
+    @Override
+    public long getSlowQueryThresholdMillis() {
+        return slowQueryThreshold;
+    }
+
+    @Override
+    public void setSlowQueryThresholdMillis(long threshold) {
+        slowQueryThreshold = Math.max(0, threshold);
+    }
+
+    @Override
+    public boolean isExplainSlowQueries() {
+        return explainSlowQueries;
+    }
+
+    @Override
+    public void setExplainSlowQueries(boolean explain) {
+        explainSlowQueries = explain;
+    }
+
+    @Override
+    public long getConnectionRequests() {
+        return connectionWait.getCount();
+    }
+
+    @Override
+    public double getConnectionWaitP99Millis() {
+        return connectionWait.getValueAtPercentile(99) / 1e6;
+    }
+
+    @Override
+    public double getConnectionWaitMaxMillis() {
+        return connectionWait.getMax() / 1e6;
+    }
+
+    /**
+     * Call which bound a parameter of a prepared statement, kept to log and replay it.
+     */
+    static class Binding {
+        /** Setter of the parameter */
+        private final Method setter;
+        /** Arguments of the setter, the first is the index of the parameter */
+        private final Object[] args;
+
+        /**
+         * Constructor for Binding
+         * @param setter setter of the parameter
+         * @param args arguments of the setter
+         */
+        Binding(Method setter, Object[] args) {
+            this.setter = setter;
+            this.args = args.clone();
+        }
+
+        /**
+         * Returns the index of the bound parameter.
+         * @return index of the parameter, starting from 1
+         */
+        int index() {
+            return (Integer) args[0];
+        }
+
+        /**
+         * Describes the parameter without its value.
+         * @return index and type of the parameter
+         */
+        String redacted() {
+            Object value = args[1];
+            boolean isNull = value == null || setter.getName().equals("setNull");
+            return "$" + args[0] + "=" + (isNull ? "null" : value.getClass().getSimpleName());
+        }
+
+        /**
+         * Binds the parameter to another statement.
+         * @param stmt statement to bind
+         * @throws SQLException if the parameter cannot be bound
+         */
+        void apply(PreparedStatement stmt) throws SQLException {
+            try {
+                setter.invoke(stmt, args);
+            } catch (ReflectiveOperationException e) {
+                throw new SQLException("Unable to bind parameter " + args[0], e);
+            }
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package it.uninsubria.metrics;
+
+/**
+ * Management interface of the SQL instrumentation, published over JMX:
+ * settings of the slow-query log and time spent waiting for a database connection.
+ *
+ * @author Lorenzo Radice
+ */
+public interface SqlMonitorMBean {
+    /**
+     * Returns whether slow statements are logged.
+     * @return true if the slow-query log is enabled
+     */
+    boolean isSlowQueryLogEnabled();
+
+    /**
+     * Enables or disables the slow-query log.
+     * @param enabled true to log slow statements
+     */
+    void setSlowQueryLogEnabled(boolean enabled);
+
+    /**
+     * Returns the execution time above which a statement is logged as slow.
+     * @return threshold in milliseconds
+     */
+    long getSlowQueryThresholdMillis();
+
+    /**
+     * Sets the execution time above which a statement is logged as slow.
+     * @param threshold threshold in milliseconds
+     */
+    void setSlowQueryThresholdMillis(long threshold);
+
+    /**
+     * Returns whether the plan of slow queries is captured with {@code EXPLAIN (ANALYZE, BUFFERS)}.
+     * @return true if plans are captured
+     */
+    boolean isExplainSlowQueries();
+
+    /**
+     * Enables or disables the capture of the plan of slow queries.
+     * @param explain true to capture plans
+     */
+    void setExplainSlowQueries(boolean explain);
+
+    /**
+     * Returns the number of times a database connection was requested.
+     * @return number of connection requests
+     */
+    long getConnectionRequests();
+
+    /**
+     * Returns the 99th percentile of the time spent waiting for a database connection.
+     * @return 99th percentile in milliseconds
+     */
+    double getConnectionWaitP99Millis();
+
+    /**
+     * Returns the highest time spent waiting for a database connection.
+     * @return highest wait in milliseconds
+     */
+    double getConnectionWaitMaxMillis();
+}
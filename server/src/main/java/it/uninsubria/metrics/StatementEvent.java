@@ -0,0 +1,34 @@
+package it.uninsubria.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Flight Recorder event of the execution of an SQL statement, emitted by {@link TimedConnection}.
+ * The duration covers the execution; for queries the event is committed once the result has been read,
+ * so that it carries the number of rows.
+ *
+ * @author Lorenzo Radice
+ */
+@Name("it.uninsubria.SqlStatement")
+@Label("SQL Statement")
+@Description("Execution of an SQL statement by a DAO")
+@Category({"TheKnife", "Database"})
+@Enabled(false)
+@StackTrace(false)
+class StatementEvent extends Event {
+    /** SQL template of the statement */
+    @Label("SQL")
+    String sql;
+    /** Rows read or changed, -1 if unknown */
+    @Label("Rows")
+    long rows = -1;
+    /** Whether the execution threw an exception */
+    @Label("Failed")
+    boolean failed;
+}
@@ -0,0 +1,107 @@
+package it.uninsubria.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Execution counters and latency histogram of an SQL statement template,
+ * that is of every execution of the same SQL text, whatever the bound parameters.
+ *
+ * @author Lorenzo Radice
+ */
+public class StatementMetrics implements StatementMetricsMBean {
+    /** SQL text of the template */
+    private final String sql;
+    /** Number of failed executions */
+    private final LongAdder errors = new LongAdder();
+    /** Number of rows read or changed */
+    private final LongAdder rows = new LongAdder();
+    /** Execution times in nanoseconds */
+    private final LatencyHistogram latencies = new LatencyHistogram();
+    /** Time of the last automatic plan capture, in nanoseconds */
+    private final AtomicLong lastExplain = new AtomicLong(System.nanoTime() - Long.MAX_VALUE / 2);
+
+    /**
+     * Constructor for StatementMetrics
+     * @param sql SQL text of the template
+     */
+    public StatementMetrics(String sql) {
+        this.sql = sql;
+    }
+
+    /**
+     * Records an execution.
+     * @param elapsed execution time in nanoseconds
+     * @param failed whether the execution threw an exception
+     */
+    public void record(long elapsed, boolean failed) {
+        latencies.record(elapsed);
+        if (failed) {
+            errors.increment();
+        }
+    }
+
+    /**
+     * Adds rows read from a result or changed by an update.
+     * @param count number of rows
+     */
+    public void addRows(long count) {
+        rows.add(count);
+    }
+
+    /**
+     * Claims the right to capture the plan of the template, at most once per interval.
+     * @param interval minimum interval between two captures, in nanoseconds
+     * @return true if the plan can be captured now
+     */
+    boolean claimExplain(long interval) {
+        long now = System.nanoTime();
+        long last = lastExplain.get();
+        return now - last >= interval && lastExplain.compareAndSet(last, now);
+    }
+
+    @Override
+    public String getSql() {
+        return sql;
+    }
+
+    @Override
+    public long getExecutions() {
+        return latencies.getCount();
+    }
+
+    @Override
+    public long getErrors() {
+        return errors.sum();
+    }
+
+    @Override
+    public long getRows() {
+        return rows.sum();
+    }
+
+    @Override
+    public double getTotalMillis() {
+        return latencies.getMean() * latencies.getCount() / 1e6;
+    }
+
+    @Override
+    public double getMeanMillis() {
+        return latencies.getMean() / 1e6;
+    }
+
+    @Override
+    public double getP50Millis() {
+        return latencies.getValueAtPercentile(50) / 1e6;
+    }
+
+    @Override
+    public double getP99Millis() {
+        return latencies.getValueAtPercentile(99) / 1e6;
+    }
+
+    @Override
+    public double getMaxMillis() {
+        return latencies.getMax() / 1e6;
+    }
+}
@@ -0,0 +1,63 @@
+package it.uninsubria.metrics;
+
+/**
+ * Management interface of the metrics of an SQL statement template, published over JMX.
+ * Latencies are in milliseconds and cover every execution since the server started.
+ *
+ * @author Lorenzo Radice
+ */
+public interface StatementMetricsMBean {
+    /**
+     * Returns the SQL text of the template, with whitespace collapsed.
+     * @return SQL text
+     */
+    String getSql();
+
+    /**
+     * Returns the number of executions.
+     * @return number of executions
+     */
+    long getExecutions();
+
+    /**
+     * Returns the number of executions which threw an exception.
+     * @return number of failed executions
+     */
+    long getErrors();
+
+    /**
+     * Returns the number of rows read from the results or changed by the updates.
+     * @return number of rows
+     */
+    long getRows();
+
+    /**
+     * Returns the total execution time.
+     * @return total time in milliseconds
+     */
+    double getTotalMillis();
+
+    /**
+     * Returns the mean execution time.
+     * @return mean time in milliseconds
+     */
+    double getMeanMillis();
+
+    /**
+     * Returns the median execution time.
+     * @return 50th percentile in milliseconds
+     */
+    double getP50Millis();
+
+    /**
+     * Returns the 99th percentile of the execution time.
+     * @return 99th percentile in milliseconds
+     */
+    double getP99Millis();
+
+    /**
+     * Returns the highest execution time.
+     * @return highest time in milliseconds
+     */
+    double getMaxMillis();
+}
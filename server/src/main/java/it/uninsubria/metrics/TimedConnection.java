@@ -0,0 +1,247 @@
+package it.uninsubria.metrics;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Statement-execution wrapper of a JDBC connection.
+ * The connection, its statements and their result sets are wrapped in proxies which time every execution,
+ * count the rows read or changed, and report them to the {@link SqlMonitor} under the SQL text of the statement
+ * and as {@link StatementEvent}s.
+ * The DAOs are unaware of the wrapping.
+ *
+ * @author Lorenzo Radice
+ */
+public class TimedConnection implements InvocationHandler {
+    /** Wrapped connection */
+    private final Connection connection;
+
+    /**
+     * Constructor for TimedConnection
+     * @param connection connection to wrap
+     */
+    private TimedConnection(Connection connection) {
+        this.connection = connection;
+    }
+
+    /**
+     * Wraps a connection.
+     * @param connection connection to wrap
+     * @return the timed connection
+     */
+    public static Connection wrap(Connection connection) {
+        return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+                new Class<?>[]{Connection.class}, new TimedConnection(connection));
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+        Object result = call(connection, method, args);
+        String name = method.getName();
+        if (name.equals("prepareStatement")) {
+            return TimedStatement.wrap(PreparedStatement.class, (Statement) result, (String) args[0]);
+        }
+        if (name.equals("createStatement")) {
+            return TimedStatement.wrap(Statement.class, (Statement) result, null);
+        }
+        return result;
+    }
+
+    /**
+     * Invokes a method on the wrapped object, rethrowing the original exception.
+     * @param target wrapped object
+     * @param method method to invoke
+     * @param args arguments of the method
+     * @return the result of the method
+     * @throws Throwable the exception thrown by the method
+     */
+    private static Object call(Object target, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Wrapper of a statement, timing its executions.
+     */
+    private static class TimedStatement implements InvocationHandler {
+        /** Wrapped statement */
+        private final Statement statement;
+        /** SQL text of the prepared statement, null for plain statements */
+        private final String sql;
+        /** Calls which bound the parameters, in order */
+        private final List<SqlMonitor.Binding> bindings = new ArrayList<>();
+
+        /**
+         * Constructor for TimedStatement
+         * @param statement statement to wrap
+         * @param sql SQL text of the prepared statement, null for plain statements
+         */
+        private TimedStatement(Statement statement, String sql) {
+            this.statement = statement;
+            this.sql = sql;
+        }
+
+        /**
+         * Wraps a statement.
+         * @param type interface of the statement
+         * @param statement statement to wrap
+         * @param sql SQL text of the prepared statement, null for plain statements
+         * @return the timed statement
+         */
+        static Object wrap(Class<? extends Statement> type, Statement statement, String sql) {
+            return Proxy.newProxyInstance(Connection.class.getClassLoader(), new Class<?>[]{type},
+                    new TimedStatement(statement, sql));
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            String name = method.getName();
+            if (name.startsWith("execute")) {
+                return execute(method, args);
+            }
+            if (name.startsWith("set") && args != null && args.length >= 2
+                    && method.getParameterTypes()[0] == int.class && sql != null) {
+                SqlMonitor.Binding binding = new SqlMonitor.Binding(method, args);
+                bindings.removeIf(bound -> bound.index() == binding.index());
+                bindings.add(binding);
+            } else if (name.equals("clearParameters")) {
+                bindings.clear();
+            }
+            Object result = call(statement, method, args);
+            if (result instanceof ResultSet && sql != null) {
+                return TimedResultSet.wrap((ResultSet) result, SqlMonitor.get().forStatement(sql), null);
+            }
+            return result;
+        }
+
+        /**
+         * Executes the statement and records the execution.
+         * @param method execution method
+         * @param args arguments of the method, the first is the SQL text for plain statements
+         * @return the result of the execution, with result sets wrapped to count the rows
+         * @throws Throwable the exception thrown by the execution
+         */
+        private Object execute(Method method, Object[] args) throws Throwable {
+            String text = args != null && args.length > 0 && args[0] instanceof String ? (String) args[0] : sql;
+            if (text == null) {
+                // Batch of plain statements: no single template
+                return call(statement, method, args);
+            }
+            StatementMetrics metrics = SqlMonitor.get().forStatement(text);
+            StatementEvent event = new StatementEvent();
+            event.begin();
+            long start = System.nanoTime();
+            boolean failed = true;
+            Object result = null;
+            try {
+                result = call(statement, method, args);
+                failed = false;
+            } finally {
+                long elapsed = System.nanoTime() - start;
+                event.end();
+                metrics.record(elapsed, failed);
+                long rows = -1;
+                if (result instanceof Integer || result instanceof Long) {
+                    rows = ((Number) result).longValue();
+                    metrics.addRows(rows);
+                } else if (result instanceof int[]) {
+                    rows = 0;
+                    for (int count : (int[]) result) {
+                        rows += Math.max(count, 0);
+                    }
+                    metrics.addRows(rows);
+                }
+                SqlMonitor.get().checkSlow(metrics, elapsed, rows, bindings);
+                if (!(result instanceof ResultSet) && event.shouldCommit()) {
+                    event.sql = metrics.getSql();
+                    event.rows = rows;
+                    event.failed = failed;
+                    event.commit();
+                }
+            }
+            if (result instanceof ResultSet) {
+                return TimedResultSet.wrap((ResultSet) result, metrics, event);
+            }
+            return result;
+        }
+    }
+
+    /**
+     * Wrapper of a result set, counting the rows read.
+     * The event of the query is committed when the last row has been read or the result set is closed.
+     */
+    private static class TimedResultSet implements InvocationHandler {
+        /** Wrapped result set */
+        private final ResultSet resultSet;
+        /** Metrics of the statement which produced the result */
+        private final StatementMetrics metrics;
+        /** Event of the query, null once committed */
+        private StatementEvent event;
+        /** Rows read */
+        private long rows = 0;
+
+        /**
+         * Constructor for TimedResultSet
+         * @param resultSet result set to wrap
+         * @param metrics metrics of the statement which produced the result
+         * @param event event of the query, null if not tracked
+         */
+        private TimedResultSet(ResultSet resultSet, StatementMetrics metrics, StatementEvent event) {
+            this.resultSet = resultSet;
+            this.metrics = metrics;
+            this.event = event;
+        }
+
+        /**
+         * Wraps a result set.
+         * @param resultSet result set to wrap
+         * @param metrics metrics of the statement which produced the result
+         * @param event event of the query, null if not tracked
+         * @return the wrapped result set
+         */
+        static ResultSet wrap(ResultSet resultSet, StatementMetrics metrics, StatementEvent event) {
+            return (ResultSet) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+                    new Class<?>[]{ResultSet.class}, new TimedResultSet(resultSet, metrics, event));
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            Object result = call(resultSet, method, args);
+            String name = method.getName();
+            if (name.equals("next")) {
+                if (Boolean.TRUE.equals(result)) {
+                    metrics.addRows(1);
+                    rows++;
+                } else {
+                    commitEvent();
+                }
+            } else if (name.equals("close")) {
+                commitEvent();
+            }
+            return result;
+        }
+
+        /**
+         * Commits the event of the query with the rows read so far, once.
+         */
+        private void commitEvent() {
+            if (event != null && event.shouldCommit()) {
+                event.sql = metrics.getSql();
+                event.rows = rows;
+                event.commit();
+            }
+            event = null;
+        }
+    }
+}
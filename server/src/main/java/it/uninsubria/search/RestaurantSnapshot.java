@@ -0,0 +1,738 @@
+package it.uninsubria.search;
+
+import it.uninsubria.DBConnection;
+import it.uninsubria.dao.AddressDAO;
+import it.uninsubria.dto.AddressDTO;
+import it.uninsubria.dto.CuisineType;
+import it.uninsubria.dto.RestaurantDTO;
+import it.uninsubria.dto.SearchCriteriaDTO;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Array;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * In-memory snapshot of the searchable attributes of every restaurant, held column by column
+ * in primitive parallel arrays instead of a list of {@link RestaurantDTO}.
+ * A search is a single pass over the arrays: the filters and the distance are evaluated for every row
+ * without touching any object, and only the closest rows are turned into DTOs at the end.
+ * The rows are ranked by the cosine of their angular distance, which decreases with the distance,
+ * so that the arc cosine is computed only for the returned rows.
+ * <p>
+ * The server search uses the snapshot when {@code theknife.search.snapshot} is set to the number of seconds
+ * between two reloads; the changes made in between are not visible to the search until the next reload.
+ * Every loaded snapshot is saved to {@code theknife.search.snapshotFile} (default {@code restaurants.snapshot}),
+ * so that a restarting server can serve searches from the file at once, see {@link SnapshotFile}.
+ * Between two reloads, the restaurants reported by {@link #invalidate(Collection)} are read again one batch
+ * at a time by the reloading thread.
+ *
+ * @author Lorenzo Radice
+ */
+public class RestaurantSnapshot {
+    /** Mean radius of the Earth, in kilometers */
+    private static final double EARTH_RADIUS = 6371;
+    /** Query loading the searchable attributes and the ratings of every restaurant */
+    private static final String QUERY_LOAD = "SELECT r.restaurant_id, r.r_owner, r.r_name, r.avg_price, r.delivery, " +
+            "r.booking, r.r_type::text AS r_type, r.address_id, a.latitude, a.longitude, s.avg_rating, s.rating_count " +
+            "FROM restaurants r JOIN addresses a ON a.address_id = r.address_id " +
+            "LEFT JOIN (SELECT restaurant_id, AVG(rating) AS avg_rating, COUNT(*) AS rating_count " +
+            "FROM reviews GROUP BY restaurant_id) s ON s.restaurant_id = r.restaurant_id";
+    /** Query reading again the restaurants changed after a transaction, or whose reviews changed */
+    private static final String QUERY_CHANGES = "WITH changed AS (" +
+            "SELECT restaurant_id FROM restaurants WHERE age(xmin) <= age(?::xid) " +
+            "UNION SELECT restaurant_id FROM reviews WHERE age(xmin) <= age(?::xid)) " +
+            "SELECT r.restaurant_id, r.r_owner, r.r_name, r.avg_price, r.delivery, " +
+            "r.booking, r.r_type::text AS r_type, r.address_id, a.latitude, a.longitude, s.avg_rating, s.rating_count " +
+            "FROM restaurants r JOIN changed c ON c.restaurant_id = r.restaurant_id " +
+            "JOIN addresses a ON a.address_id = r.address_id " +
+            "LEFT JOIN (SELECT restaurant_id, AVG(rating) AS avg_rating, COUNT(*) AS rating_count FROM reviews " +
+            "WHERE restaurant_id IN (SELECT restaurant_id FROM changed) GROUP BY restaurant_id) s " +
+            "ON s.restaurant_id = r.restaurant_id";
+    /** Query reading again some restaurants, by id */
+    private static final String QUERY_RESTAURANTS = "SELECT r.restaurant_id, r.r_owner, r.r_name, r.avg_price, " +
+            "r.delivery, r.booking, r.r_type::text AS r_type, r.address_id, a.latitude, a.longitude, " +
+            "s.avg_rating, s.rating_count " +
+            "FROM restaurants r JOIN addresses a ON a.address_id = r.address_id " +
+            "LEFT JOIN (SELECT restaurant_id, AVG(rating) AS avg_rating, COUNT(*) AS rating_count FROM reviews " +
+            "WHERE restaurant_id = ANY(?) GROUP BY restaurant_id) s ON s.restaurant_id = r.restaurant_id " +
+            "WHERE r.restaurant_id = ANY(?)";
+    /** Snapshot used by the server, null if the search runs in the database */
+    private static volatile RestaurantSnapshot instance = null;
+    /** Thread reloading the snapshot */
+    private static ScheduledExecutorService reloader;
+    /** File where the snapshot is saved */
+    private static Path file;
+    /** Whether the snapshot was mapped from the file and misses the latest changes */
+    private static volatile boolean catchUp = false;
+    /** Restaurants changed since the last update of the snapshot, guarded by the class */
+    private static Set<Integer> pending = new HashSet<>();
+
+    /** Number of restaurants */
+    final int size;
+    /** Restaurant ids */
+    final int[] id;
+    /** Address ids */
+    final int[] addressId;
+    /** Usernames of the owners */
+    final String[] owner;
+    /** Names */
+    final String[] name;
+    /** Latitudes in degrees */
+    final double[] lat;
+    /** Longitudes in degrees */
+    final double[] lon;
+    /** Sines of the latitudes */
+    final double[] latSin;
+    /** Cosines of the latitudes */
+    final double[] latCos;
+    /** Longitudes in radians */
+    final double[] lonRad;
+    /** Ordinals of the cuisines, -1 if unknown */
+    final short[] cuisine;
+    /** Average prices, as read from the database, so that they compare and convert exactly like its values */
+    final double[] price;
+    /** Delivery flags, one bit per restaurant */
+    final long[] delivery;
+    /** Online booking flags, one bit per restaurant */
+    final long[] booking;
+    /** Average ratings, NaN without reviews */
+    final float[] rating;
+    /** Numbers of reviews */
+    final int[] reviews;
+    /** Oldest transaction id whose changes may be missing from the snapshot, -1 if unknown */
+    final long watermark;
+
+    /**
+     * Constructor for RestaurantSnapshot, from columns of the same length which are not copied.
+     * @param id restaurant ids
+     * @param addressId address ids
+     * @param owner usernames of the owners
+     * @param name names
+     * @param lat latitudes in degrees
+     * @param lon longitudes in degrees
+     * @param cuisine ordinals of the cuisines, -1 if unknown
+     * @param price average prices
+     * @param delivery delivery flags, one bit per restaurant
+     * @param booking online booking flags, one bit per restaurant
+     * @param rating average ratings, NaN without reviews
+     * @param reviews numbers of reviews
+     * @param watermark oldest transaction id whose changes may be missing, -1 if unknown
+     */
+    RestaurantSnapshot(int[] id, int[] addressId, String[] owner, String[] name, double[] lat, double[] lon,
+                       short[] cuisine, double[] price, long[] delivery, long[] booking, float[] rating, int[] reviews,
+                       long watermark) {
+        this.size = id.length;
+        this.id = id;
+        this.addressId = addressId;
+        this.owner = owner;
+        this.name = name;
+        this.lat = lat;
+        this.lon = lon;
+        this.cuisine = cuisine;
+        this.price = price;
+        this.delivery = delivery;
+        this.booking = booking;
+        this.rating = rating;
+        this.reviews = reviews;
+        this.watermark = watermark;
+        latSin = new double[size];
+        latCos = new double[size];
+        lonRad = new double[size];
+        for (int i = 0; i < size; i++) {
+            double latitude = Math.toRadians(lat[i]);
+            latSin[i] = Math.sin(latitude);
+            latCos[i] = Math.cos(latitude);
+            lonRad[i] = Math.toRadians(lon[i]);
+        }
+    }
+
+    /**
+     * Starts the snapshot of the server, if enabled by {@code theknife.search.snapshot}.
+     * The snapshot saved by the previous run, if valid, is mapped and served at once, and brought up to date
+     * with the changes made after its watermark; otherwise the search runs in the database until the first load.
+     * Every following period the snapshot is reloaded from the database and saved.
+     */
+    public static synchronized void start() {
+        long period = Long.getLong("theknife.search.snapshot", 0);
+        if (period <= 0 || reloader != null) {
+            return;
+        }
+        file = Path.of(System.getProperty("theknife.search.snapshotFile", "restaurants.snapshot"));
+        if (Files.exists(file)) {
+            try {
+                long start = System.nanoTime();
+                instance = SnapshotFile.read(file);
+                catchUp = true;
+                System.out.println("Search snapshot mapped: " + instance.size() + " restaurants in "
+                        + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) + " ms");
+            } catch (IOException e) {
+                System.err.println("Search snapshot " + file + " discarded: " + e.getMessage());
+            }
+        }
+        reloader = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "search-snapshot");
+            thread.setDaemon(true);
+            return thread;
+        });
+        reloader.scheduleWithFixedDelay(RestaurantSnapshot::refresh, 0, period, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Stops reloading the snapshot and goes back to the database search.
+     */
+    public static synchronized void stop() {
+        if (reloader != null) {
+            reloader.shutdownNow();
+            reloader = null;
+        }
+        instance = null;
+    }
+
+    /**
+     * Reads again some restaurants in the snapshot of the server, after their attributes or reviews changed;
+     * the deleted ones are dropped. Nothing is done if the snapshot is not enabled.
+     * @param restaurantIds ids of the changed restaurants
+     */
+    public static synchronized void invalidate(Collection<Integer> restaurantIds) {
+        if (reloader == null || restaurantIds.isEmpty()) {
+            return;
+        }
+        boolean scheduled = !pending.isEmpty();
+        pending.addAll(restaurantIds);
+        if (!scheduled) {
+            reloader.execute(RestaurantSnapshot::applyPending);
+        }
+    }
+
+    /**
+     * Reads again the restaurants of the snapshot of the server located at some addresses, after they changed.
+     * @param addressIds ids of the changed addresses
+     */
+    public static void invalidateAddresses(Collection<Integer> addressIds) {
+        RestaurantSnapshot current = instance;
+        if (current == null || addressIds.isEmpty()) {
+            return;
+        }
+        Set<Integer> addresses = new HashSet<>(addressIds);
+        List<Integer> restaurantIds = new ArrayList<>();
+        for (int row = 0; row < current.size; row++) {
+            if (addresses.contains(current.addressId[row])) {
+                restaurantIds.add(current.id[row]);
+            }
+        }
+        invalidate(restaurantIds);
+    }
+
+    /**
+     * Schedules a full reload of the snapshot of the server, when some of its changes may have been missed.
+     */
+    public static synchronized void resync() {
+        if (reloader == null) {
+            return;
+        }
+        pending.clear();
+        catchUp = false;
+        reloader.execute(RestaurantSnapshot::refresh);
+    }
+
+    /**
+     * Returns the snapshot used by the server.
+     * @return the snapshot, or null if the search runs in the database
+     */
+    public static RestaurantSnapshot get() {
+        return instance;
+    }
+
+    /**
+     * Brings the snapshot of the server up to date: a snapshot mapped from the file only gets the recent changes,
+     * otherwise it is reloaded and saved. On failure the previous snapshot is kept.
+     */
+    private static void refresh() {
+        try {
+            long start = System.nanoTime();
+            RestaurantSnapshot current = instance;
+            if (catchUp && current != null && current.watermark >= 0) {
+                catchUp = false;
+                instance = current.withChanges();
+                System.out.println("Search snapshot caught up: " + (instance.size() - current.size())
+                        + " new restaurants in " + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) + " ms");
+                return;
+            }
+            RestaurantSnapshot snapshot = load();
+            instance = snapshot;
+            System.out.println("Search snapshot loaded: " + snapshot.size() + " restaurants in "
+                    + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) + " ms");
+            SnapshotFile.write(snapshot, file);
+        } catch (SQLException | IOException | RuntimeException e) {
+            System.err.println("Unable to refresh the search snapshot: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Reads again the restaurants reported since the last update into the snapshot of the server.
+     * On failure they are left to the next full reload.
+     */
+    private static void applyPending() {
+        Set<Integer> restaurantIds;
+        synchronized (RestaurantSnapshot.class) {
+            restaurantIds = pending;
+            pending = new HashSet<>();
+        }
+        RestaurantSnapshot current = instance;
+        if (current == null || restaurantIds.isEmpty()) {
+            return;
+        }
+        try {
+            instance = current.withRestaurants(restaurantIds);
+        } catch (SQLException | RuntimeException e) {
+            System.err.println("Unable to update the search snapshot: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Reads a snapshot of every restaurant from the database.
+     * @return the snapshot
+     * @throws SQLException if the restaurants cannot be read
+     */
+    public static RestaurantSnapshot load() throws SQLException {
+        Builder builder = new Builder();
+        try {
+            Connection conn = DBConnection.getReadConnection();
+            builder.watermark(watermark(conn));
+            try (PreparedStatement stmt = conn.prepareStatement(QUERY_LOAD)) {
+                stmt.setFetchSize(10_000);
+                try (ResultSet res = stmt.executeQuery()) {
+                    while (res.next()) {
+                        add(builder, res);
+                    }
+                }
+            }
+        } finally {
+            DBConnection.releaseConnection();
+        }
+        return builder.build();
+    }
+
+    /**
+     * Returns a copy of this snapshot with the restaurants changed after its watermark, or whose reviews changed,
+     * read again from the database. Deleted rows are only dropped by the next full reload.
+     * @return the updated snapshot
+     * @throws SQLException if the changes cannot be read
+     */
+    RestaurantSnapshot withChanges() throws SQLException {
+        Builder builder = new Builder();
+        Builder updates = new Builder();
+        try {
+            Connection conn = DBConnection.getReadConnection();
+            builder.watermark(watermark(conn));
+            try (PreparedStatement stmt = conn.prepareStatement(QUERY_CHANGES)) {
+                // Transaction ids are compared by age, which is wraparound safe, on their 32-bit part
+                String transaction = Long.toString(watermark & 0xFFFFFFFFL);
+                stmt.setString(1, transaction);
+                stmt.setString(2, transaction);
+                try (ResultSet res = stmt.executeQuery()) {
+                    while (res.next()) {
+                        add(updates, res);
+                    }
+                }
+            }
+        } finally {
+            DBConnection.releaseConnection();
+        }
+        RestaurantSnapshot changes = updates.build();
+        Set<Integer> changed = new HashSet<>();
+        for (int row = 0; row < changes.size; row++) {
+            changed.add(changes.id[row]);
+        }
+        return merge(builder, changed, changes);
+    }
+
+    /**
+     * Returns a copy of this snapshot with some restaurants read again from the database.
+     * They are read from the primary, as a replica may not have their changes yet;
+     * the restaurants which no longer exist are dropped.
+     * @param restaurantIds ids of the restaurants to read again
+     * @return the updated snapshot
+     * @throws SQLException if the restaurants cannot be read
+     */
+    RestaurantSnapshot withRestaurants(Set<Integer> restaurantIds) throws SQLException {
+        Builder updates = new Builder();
+        try {
+            Connection conn = DBConnection.getConnection();
+            try (PreparedStatement stmt = conn.prepareStatement(QUERY_RESTAURANTS)) {
+                Array ids = conn.createArrayOf("integer", restaurantIds.toArray());
+                stmt.setArray(1, ids);
+                stmt.setArray(2, ids);
+                try (ResultSet res = stmt.executeQuery()) {
+                    while (res.next()) {
+                        add(updates, res);
+                    }
+                }
+            }
+        } finally {
+            DBConnection.releaseConnection();
+        }
+        return merge(new Builder().watermark(watermark), restaurantIds, updates.build());
+    }
+
+    /**
+     * Adds to a builder the rows of this snapshot which are not replaced, followed by every row of the changes.
+     * @param builder builder of the updated snapshot
+     * @param replaced ids of the restaurants whose rows are replaced or dropped
+     * @param changes rows of the changed restaurants
+     * @return the updated snapshot
+     */
+    private RestaurantSnapshot merge(Builder builder, Set<Integer> replaced, RestaurantSnapshot changes) {
+        for (int row = 0; row < size; row++) {
+            if (!replaced.contains(id[row])) {
+                copyRow(builder, row);
+            }
+        }
+        for (int row = 0; row < changes.size; row++) {
+            changes.copyRow(builder, row);
+        }
+        return builder.build();
+    }
+
+    /**
+     * Reads the oldest transaction id still running, whose changes may be missed by a following read.
+     * @param conn database connection
+     * @return 64-bit transaction id
+     * @throws SQLException if the query fails
+     */
+    private static long watermark(Connection conn) throws SQLException {
+        try (PreparedStatement stmt = conn.prepareStatement("SELECT txid_snapshot_xmin(txid_current_snapshot())");
+             ResultSet res = stmt.executeQuery()) {
+            res.next();
+            return res.getLong(1);
+        }
+    }
+
+    /**
+     * Adds the restaurant of the current row of a load query to a builder.
+     * @param builder builder of the snapshot
+     * @param res result of the load query
+     * @throws SQLException if the row cannot be read
+     */
+    private static void add(Builder builder, ResultSet res) throws SQLException {
+        double avgRating = res.getDouble("avg_rating");
+        boolean unrated = res.wasNull();
+        builder.add(res.getInt("restaurant_id"), res.getInt("address_id"), res.getString("r_owner"),
+                res.getString("r_name"), res.getDouble("latitude"), res.getDouble("longitude"),
+                CuisineType.fromDisplayName(res.getString("r_type")), res.getDouble("avg_price"),
+                res.getBoolean("delivery"), res.getBoolean("booking"),
+                unrated ? null : avgRating, res.getInt("rating_count"));
+    }
+
+    /**
+     * Adds a row of this snapshot to a builder.
+     * @param builder builder of another snapshot
+     * @param row row of the restaurant
+     */
+    private void copyRow(Builder builder, int row) {
+        CuisineType[] cuisines = CuisineType.values();
+        builder.add(id[row], addressId[row], owner[row], name[row], lat[row], lon[row],
+                cuisine[row] < 0 ? null : cuisines[cuisine[row]], price[row], bit(delivery, row), bit(booking, row),
+                Float.isNaN(rating[row]) ? null : (double) rating[row], reviews[row]);
+    }
+
+    /**
+     * Returns the number of restaurants of the snapshot.
+     * @return number of restaurants
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Searches the restaurants closest to the position of the criteria which match its filters.
+     * @param criteria search criteria, with valid coordinates
+     * @param limit maximum number of restaurants
+     * @return the closest matching restaurants, ordered by distance
+     */
+    public List<RestaurantDTO> search(SearchCriteriaDTO criteria, int limit) {
+        int[] rows = searchRows(criteria, limit);
+        List<RestaurantDTO> result = new ArrayList<>(rows.length);
+        for (int row : rows) {
+            result.add(toDTO(row));
+        }
+        return result;
+    }
+
+    /**
+     * Finds the rows of the restaurants closest to the position of the criteria which match its filters.
+     * @param criteria search criteria, with valid coordinates
+     * @param limit maximum number of rows
+     * @return the closest matching rows, ordered by distance
+     */
+    public int[] searchRows(SearchCriteriaDTO criteria, int limit) {
+        double latitude = Math.toRadians(criteria.getLatitude());
+        double sin = Math.sin(latitude);
+        double cos = Math.cos(latitude);
+        double longitude = Math.toRadians(criteria.getLongitude());
+        int wantedCuisine = criteria.getCuisineType() == null ? -1 : criteria.getCuisineType().ordinal();
+        double minPrice = criteria.getMinPrice() == null ? Double.NEGATIVE_INFINITY : criteria.getMinPrice();
+        double maxPrice = criteria.getMaxPrice() == null ? Double.POSITIVE_INFINITY : criteria.getMaxPrice();
+        Boolean wantedDelivery = criteria.getDeliveryAvailable();
+        Boolean wantedBooking = criteria.getOnlineBookingAvailable();
+        float minRating = criteria.getMinRating() == null ? Float.NaN : criteria.getMinRating();
+
+        // Max-heap on the distance, that is min-heap on the cosine, of the best rows so far
+        int[] heapRows = new int[limit];
+        double[] heapCos = new double[limit];
+        int found = 0;
+        for (int i = 0; i < size; i++) {
+            if ((wantedCuisine >= 0 && cuisine[i] != wantedCuisine)
+                    || price[i] < minPrice || price[i] > maxPrice
+                    || (wantedDelivery != null && bit(delivery, i) != wantedDelivery)
+                    || (wantedBooking != null && bit(booking, i) != wantedBooking)
+                    || (!Float.isNaN(minRating) && !(rating[i] >= minRating))) {
+                continue;
+            }
+            double cosine = sin * latSin[i] + cos * latCos[i] * Math.cos(lonRad[i] - longitude);
+            if (found < limit) {
+                heapRows[found] = i;
+                heapCos[found] = cosine;
+                siftUp(heapRows, heapCos, found++);
+            } else if (limit > 0 && cosine > heapCos[0]) {
+                heapRows[0] = i;
+                heapCos[0] = cosine;
+                siftDown(heapRows, heapCos, found);
+            }
+        }
+        // Emptying the heap yields the rows from the farthest to the closest
+        int[] rows = new int[found];
+        for (int n = found; n > 0; n--) {
+            rows[n - 1] = heapRows[0];
+            heapRows[0] = heapRows[n - 1];
+            heapCos[0] = heapCos[n - 1];
+            siftDown(heapRows, heapCos, n - 1);
+        }
+        return rows;
+    }
+
+    /**
+     * Returns the distance of a row from a position.
+     * @param row row of the restaurant
+     * @param latitude latitude of the position in degrees
+     * @param longitude longitude of the position in degrees
+     * @return distance in kilometers
+     */
+    double distance(int row, double latitude, double longitude) {
+        double radians = Math.toRadians(latitude);
+        double cosine = Math.sin(radians) * latSin[row]
+                + Math.cos(radians) * latCos[row] * Math.cos(lonRad[row] - Math.toRadians(longitude));
+        return EARTH_RADIUS * Math.acos(Math.min(1, cosine));
+    }
+
+    /**
+     * Turns a row into a restaurant, whose address comes from the address cache.
+     * @param row row of the restaurant
+     * @return the restaurant
+     */
+    RestaurantDTO toDTO(int row) {
+        AddressDTO address = AddressDAO.getAddress(addressId[row]);
+        if (address == null) {
+            address = new AddressDTO(lat[row], lon[row]);
+        }
+        CuisineType[] cuisines = CuisineType.values();
+        RestaurantDTO restaurant = new RestaurantDTO(String.valueOf(id[row]), owner[row], name[row],
+                price[row], bit(delivery, row), bit(booking, row),
+                cuisine[row] < 0 ? null : cuisines[cuisine[row]], address);
+        restaurant.setAvgRating(Float.isNaN(rating[row]) ? null : (double) rating[row]);
+        restaurant.setReviewsNumber(reviews[row]);
+        return restaurant;
+    }
+
+    /**
+     * Reads a flag of a row.
+     * @param bits packed flags
+     * @param row row of the restaurant
+     * @return the flag
+     */
+    private static boolean bit(long[] bits, int row) {
+        return (bits[row >>> 6] & (1L << row)) != 0;
+    }
+
+    /**
+     * Restores the heap order after adding an element at the end.
+     * @param rows rows of the heap
+     * @param cosines keys of the heap, smallest at the root
+     * @param index index of the added element
+     */
+    private static void siftUp(int[] rows, double[] cosines, int index) {
+        while (index > 0) {
+            int parent = (index - 1) >>> 1;
+            if (cosines[parent] <= cosines[index]) {
+                return;
+            }
+            swap(rows, cosines, parent, index);
+            index = parent;
+        }
+    }
+
+    /**
+     * Restores the heap order after replacing the root.
+     * @param rows rows of the heap
+     * @param cosines keys of the heap, smallest at the root
+     * @param size number of elements of the heap
+     */
+    private static void siftDown(int[] rows, double[] cosines, int size) {
+        int index = 0;
+        while (true) {
+            int child = 2 * index + 1;
+            if (child >= size) {
+                return;
+            }
+            if (child + 1 < size && cosines[child + 1] < cosines[child]) {
+                child++;
+            }
+            if (cosines[index] <= cosines[child]) {
+                return;
+            }
+            swap(rows, cosines, index, child);
+            index = child;
+        }
+    }
+
+    /**
+     * Swaps two elements of the heap.
+     * @param rows rows of the heap
+     * @param cosines keys of the heap
+     * @param a index of the first element
+     * @param b index of the second element
+     */
+    private static void swap(int[] rows, double[] cosines, int a, int b) {
+        int row = rows[a];
+        rows[a] = rows[b];
+        rows[b] = row;
+        double cosine = cosines[a];
+        cosines[a] = cosines[b];
+        cosines[b] = cosine;
+    }
+
+    /**
+     * Collects the restaurants of a snapshot, growing the columns as needed.
+     */
+    public static class Builder {
+        /** Number of added restaurants */
+        private int size = 0;
+        /** Restaurant ids */
+        private int[] id = new int[1024];
+        /** Address ids */
+        private int[] addressId = new int[1024];
+        /** Usernames of the owners */
+        private String[] owner = new String[1024];
+        /** Names */
+        private String[] name = new String[1024];
+        /** Latitudes in degrees */
+        private double[] lat = new double[1024];
+        /** Longitudes in degrees */
+        private double[] lon = new double[1024];
+        /** Ordinals of the cuisines */
+        private short[] cuisine = new short[1024];
+        /** Average prices */
+        private double[] price = new double[1024];
+        /** Delivery flags */
+        private long[] delivery = new long[16];
+        /** Online booking flags */
+        private long[] booking = new long[16];
+        /** Average ratings */
+        private float[] rating = new float[1024];
+        /** Numbers of reviews */
+        private int[] reviews = new int[1024];
+        /** Oldest transaction id whose changes may be missing */
+        private long watermark = -1;
+
+        /**
+         * Adds a restaurant.
+         * @param restaurantId id of the restaurant
+         * @param address id of the address
+         * @param ownerName username of the owner
+         * @param restaurantName name of the restaurant
+         * @param latitude latitude in degrees
+         * @param longitude longitude in degrees
+         * @param type cuisine, null if unknown
+         * @param avgPrice average price
+         * @param hasDelivery whether the restaurant delivers
+         * @param hasBooking whether the restaurant can be booked online
+         * @param avgRating average rating, null without reviews
+         * @param reviewCount number of reviews
+         * @return this builder
+         */
+        public Builder add(int restaurantId, int address, String ownerName, String restaurantName,
+                           double latitude, double longitude, CuisineType type, double avgPrice,
+                           boolean hasDelivery, boolean hasBooking, Double avgRating, int reviewCount) {
+            if (size == id.length) {
+                int capacity = size * 2;
+                id = Arrays.copyOf(id, capacity);
+                addressId = Arrays.copyOf(addressId, capacity);
+                owner = Arrays.copyOf(owner, capacity);
+                name = Arrays.copyOf(name, capacity);
+                lat = Arrays.copyOf(lat, capacity);
+                lon = Arrays.copyOf(lon, capacity);
+                cuisine = Arrays.copyOf(cuisine, capacity);
+                price = Arrays.copyOf(price, capacity);
+                delivery = Arrays.copyOf(delivery, capacity >>> 6);
+                booking = Arrays.copyOf(booking, capacity >>> 6);
+                rating = Arrays.copyOf(rating, capacity);
+                reviews = Arrays.copyOf(reviews, capacity);
+            }
+            int row = size++;
+            id[row] = restaurantId;
+            addressId[row] = address;
+            owner[row] = ownerName;
+            name[row] = restaurantName;
+            lat[row] = latitude;
+            lon[row] = longitude;
+            cuisine[row] = (short) (type == null ? -1 : type.ordinal());
+            price[row] = avgPrice;
+            if (hasDelivery) {
+                delivery[row >>> 6] |= 1L << row;
+            }
+            if (hasBooking) {
+                booking[row >>> 6] |= 1L << row;
+            }
+            rating[row] = avgRating == null ? Float.NaN : avgRating.floatValue();
+            reviews[row] = reviewCount;
+            return this;
+        }
+
+        /**
+         * Builds the snapshot of the added restaurants.
+         * @return the snapshot
+         */
+        public RestaurantSnapshot build() {
+            int words = (size + 63) >>> 6;
+            return new RestaurantSnapshot(Arrays.copyOf(id, size), Arrays.copyOf(addressId, size),
+                    Arrays.copyOf(owner, size), Arrays.copyOf(name, size), Arrays.copyOf(lat, size),
+                    Arrays.copyOf(lon, size), Arrays.copyOf(cuisine, size), Arrays.copyOf(price, size),
+                    Arrays.copyOf(delivery, words), Arrays.copyOf(booking, words), Arrays.copyOf(rating, size),
+                    Arrays.copyOf(reviews, size), watermark);
+        }
+
+        /**
+         * Sets the oldest transaction id whose changes may be missing from the snapshot.
+         * @param transaction transaction id, -1 if unknown
+         * @return this builder
+         */
+        public Builder watermark(long transaction) {
+            watermark = transaction;
+            return this;
+        }
+    }
+}
@@ -0,0 +1,217 @@
+package it.uninsubria.search;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Binary file of a {@link RestaurantSnapshot}, so that a restarting server can serve searches at once
+ * instead of reading every restaurant from the database.
+ * The file starts with a header (magic number, format version, watermark, number of restaurants,
+ * length and CRC-32 of the payload), followed by the columns of the snapshot one after the other:
+ * the primitive columns as big-endian arrays and the strings as length-prefixed UTF-8.
+ * The file is read by mapping it in memory and copying the columns out of the mapping in bulk;
+ * a file with another version, or whose checksum does not match, is rejected.
+ * The file is written to a temporary file which then atomically replaces the previous one.
+ *
+ * @author Lorenzo Radice
+ */
+class SnapshotFile {
+    /** Magic number identifying the file */
+    private static final int MAGIC = 0x544B534E;
+    /** Version of the format */
+    private static final int VERSION = 2;
+    /** Length of the header: magic, version, watermark, size, payload length and checksum */
+    private static final int HEADER = 4 + 4 + 8 + 4 + 8 + 8;
+
+    /**
+     * Private constructor to prevent instantiation.
+     */
+    private SnapshotFile() {}
+
+    /**
+     * Writes a snapshot to a file, replacing it atomically.
+     * @param snapshot snapshot to write
+     * @param path path of the file
+     * @throws IOException if the file cannot be written
+     */
+    static void write(RestaurantSnapshot snapshot, Path path) throws IOException {
+        Path temporary = path.resolveSibling(path.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            channel.position(HEADER);
+            CRC32 crc = new CRC32();
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                    new CheckedOutputStream(Channels.newOutputStream(channel), crc), 1 << 16));
+            int size = snapshot.size;
+            for (int i = 0; i < size; i++) {
+                out.writeInt(snapshot.id[i]);
+            }
+            for (int i = 0; i < size; i++) {
+                out.writeInt(snapshot.addressId[i]);
+            }
+            for (int i = 0; i < size; i++) {
+                out.writeDouble(snapshot.lat[i]);
+            }
+            for (int i = 0; i < size; i++) {
+                out.writeDouble(snapshot.lon[i]);
+            }
+            for (int i = 0; i < size; i++) {
+                out.writeShort(snapshot.cuisine[i]);
+            }
+            for (int i = 0; i < size; i++) {
+                out.writeDouble(snapshot.price[i]);
+            }
+            for (long word : snapshot.delivery) {
+                out.writeLong(word);
+            }
+            for (long word : snapshot.booking) {
+                out.writeLong(word);
+            }
+            for (int i = 0; i < size; i++) {
+                out.writeFloat(snapshot.rating[i]);
+            }
+            for (int i = 0; i < size; i++) {
+                out.writeInt(snapshot.reviews[i]);
+            }
+            for (int i = 0; i < size; i++) {
+                writeString(out, snapshot.owner[i]);
+            }
+            for (int i = 0; i < size; i++) {
+                writeString(out, snapshot.name[i]);
+            }
+            out.flush();
+
+            long length = channel.size() - HEADER;
+            ByteBuffer header = ByteBuffer.allocate(HEADER);
+            header.putInt(MAGIC).putInt(VERSION).putLong(snapshot.watermark).putInt(size)
+                    .putLong(length).putLong(crc.getValue()).flip();
+            while (header.hasRemaining()) {
+                channel.write(header, header.position());
+            }
+            channel.force(true);
+        }
+        Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Reads a snapshot from a file.
+     * @param path path of the file
+     * @return the snapshot
+     * @throws IOException if the file cannot be read, has another version or is corrupted
+     */
+    static RestaurantSnapshot read(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            if (channel.size() < HEADER) {
+                throw new IOException("Truncated snapshot");
+            }
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.getInt() != MAGIC) {
+                throw new IOException("Not a snapshot file");
+            }
+            int version = buffer.getInt();
+            if (version != VERSION) {
+                throw new IOException("Unsupported snapshot version " + version);
+            }
+            long watermark = buffer.getLong();
+            int size = buffer.getInt();
+            long length = buffer.getLong();
+            long checksum = buffer.getLong();
+            if (size < 0 || length != channel.size() - HEADER) {
+                throw new IOException("Truncated snapshot");
+            }
+            CRC32 crc = new CRC32();
+            crc.update(buffer.duplicate());
+            if (crc.getValue() != checksum) {
+                throw new IOException("Corrupted snapshot");
+            }
+
+            int[] id = new int[size];
+            int[] addressId = new int[size];
+            double[] lat = new double[size];
+            double[] lon = new double[size];
+            short[] cuisine = new short[size];
+            double[] price = new double[size];
+            long[] delivery = new long[(size + 63) >>> 6];
+            long[] booking = new long[(size + 63) >>> 6];
+            float[] rating = new float[size];
+            int[] reviews = new int[size];
+            String[] owner = new String[size];
+            String[] name = new String[size];
+            // Every column is copied in bulk from a view of the mapping, then the buffer is moved past it
+            buffer.asIntBuffer().get(id);
+            buffer.position(buffer.position() + 4 * size);
+            buffer.asIntBuffer().get(addressId);
+            buffer.position(buffer.position() + 4 * size);
+            buffer.asDoubleBuffer().get(lat);
+            buffer.position(buffer.position() + 8 * size);
+            buffer.asDoubleBuffer().get(lon);
+            buffer.position(buffer.position() + 8 * size);
+            buffer.asShortBuffer().get(cuisine);
+            buffer.position(buffer.position() + 2 * size);
+            buffer.asDoubleBuffer().get(price);
+            buffer.position(buffer.position() + 8 * size);
+            buffer.asLongBuffer().get(delivery);
+            buffer.position(buffer.position() + 8 * delivery.length);
+            buffer.asLongBuffer().get(booking);
+            buffer.position(buffer.position() + 8 * booking.length);
+            buffer.asFloatBuffer().get(rating);
+            buffer.position(buffer.position() + 4 * size);
+            buffer.asIntBuffer().get(reviews);
+            buffer.position(buffer.position() + 4 * size);
+            for (int i = 0; i < size; i++) {
+                owner[i] = readString(buffer);
+            }
+            for (int i = 0; i < size; i++) {
+                name[i] = readString(buffer);
+            }
+            return new RestaurantSnapshot(id, addressId, owner, name, lat, lon, cuisine, price, delivery, booking,
+                    rating, reviews, watermark);
+        } catch (RuntimeException e) {
+            // A malformed payload with a valid checksum, e.g. written by a different build
+            throw new IOException("Malformed snapshot: " + e, e);
+        }
+    }
+
+    /**
+     * Writes a string as its UTF-8 length and bytes, or -1 for null.
+     * @param out output of the payload
+     * @param value string to write
+     * @throws IOException if the string cannot be written
+     */
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    /**
+     * Reads a string written by {@link #writeString(DataOutputStream, String)}.
+     * @param buffer mapping of the file, positioned on the string
+     * @return the string, or null
+     */
+    private static String readString(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,174 @@
+package it.uninsubria.server_services;
+
+import it.uninsubria.ConnectionPool;
+import it.uninsubria.DBConnection;
+import it.uninsubria.cache.Caches;
+import it.uninsubria.cache.LruCache;
+import it.uninsubria.dto.CacheStatsDTO;
+import it.uninsubria.dto.GcStatsDTO;
+import it.uninsubria.dto.MethodStatsDTO;
+import it.uninsubria.dto.ServerStatusDTO;
+import it.uninsubria.metrics.MethodMetrics;
+import it.uninsubria.metrics.ServerMetrics;
+import it.uninsubria.metrics.SqlMonitor;
+import it.uninsubria.services.AdminService;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.lang.management.MemoryUsage;
+import java.nio.charset.StandardCharsets;
+import java.rmi.RemoteException;
+import java.rmi.server.UnicastRemoteObject;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Implementation of the AdminService interface for monitoring and tuning the server.
+ * The admin key is read from the {@code theknife.admin.key} system property
+ * or from the {@code THEKNIFE_ADMIN_KEY} environment variable; without a key the service is not bound.
+ *
+ * @author Lorenzo Radice
+ */
+public class AdminServiceImpl extends UnicastRemoteObject implements AdminService {
+    /** Digest of the admin key */
+    private final byte[] keyDigest;
+
+    /**
+     * Constructs a new AdminServiceImpl instance.
+     *
+     * @param adminKey admin key required by every operation
+     * @throws RemoteException if there is an error during remote method invocation
+     */
+    public AdminServiceImpl(String adminKey) throws RemoteException {
+        if (adminKey == null || adminKey.isEmpty()) {
+            throw new IllegalArgumentException("The admin key must not be empty");
+        }
+        this.keyDigest = digest(adminKey);
+    }
+
+    /**
+     * Reads the admin key configured for the server.
+     *
+     * @return the admin key, or null if none is configured
+     */
+    public static String configuredKey() {
+        String key = System.getProperty("theknife.admin.key", System.getenv("THEKNIFE_ADMIN_KEY"));
+        return key == null || key.isEmpty() ? null : key;
+    }
+
+    @Override
+    public ServerStatusDTO getStatus(String adminKey) throws RemoteException, SecurityException {
+        checkKey(adminKey);
+        ServerStatusDTO status = new ServerStatusDTO();
+        status.setUptimeMillis(ManagementFactory.getRuntimeMXBean().getUptime());
+
+        ConnectionPool pool = DBConnection.getPool();
+        if (pool != null) {
+            status.setPoolMaxSize(pool.getMaxSize());
+            status.setPoolOpen(pool.getOpen());
+            status.setPoolInUse(pool.getInUse());
+            status.setPoolWaiting(pool.getWaiting());
+        }
+        SqlMonitor sql = SqlMonitor.get();
+        status.setConnectionWaitP99Millis(sql.getConnectionWaitP99Millis());
+        status.setSlowQueryLogEnabled(sql.isSlowQueryLogEnabled());
+        status.setSlowQueryThresholdMillis(sql.getSlowQueryThresholdMillis());
+        status.setExplainSlowQueries(sql.isExplainSlowQueries());
+
+        List<MethodStatsDTO> methods = new ArrayList<>();
+        long inFlight = 0;
+        for (MethodMetrics method : ServerMetrics.all()) {
+            inFlight += method.getInFlight();
+            methods.add(new MethodStatsDTO(method.getService(), method.getMethod(), method.getCalls(),
+                    method.getErrors(), method.getRejected(), method.getInFlight(), method.getQueueWaitMillis(),
+                    method.getMeanMillis(), method.getP50Millis(), method.getP99Millis(), method.getMaxMillis()));
+        }
+        status.setMethods(methods);
+        status.setInFlight(inFlight);
+
+        List<CacheStatsDTO> caches = new ArrayList<>();
+        for (LruCache<?, ?> cache : Caches.all()) {
+            caches.add(cache.stats());
+        }
+        status.setCaches(caches);
+
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        MemoryUsage heap = memory.getHeapMemoryUsage();
+        status.setHeapUsed(heap.getUsed());
+        status.setHeapCommitted(heap.getCommitted());
+        status.setHeapMax(heap.getMax());
+        status.setNonHeapUsed(memory.getNonHeapMemoryUsage().getUsed());
+        status.setThreads(ManagementFactory.getThreadMXBean().getThreadCount());
+        List<GcStatsDTO> collectors = new ArrayList<>();
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            collectors.add(new GcStatsDTO(gc.getName(), gc.getCollectionCount(), gc.getCollectionTime()));
+        }
+        status.setGarbageCollectors(collectors);
+        return status;
+    }
+
+    @Override
+    public boolean clearCache(String adminKey, String cacheName) throws RemoteException, SecurityException {
+        checkKey(adminKey);
+        boolean cleared = Caches.clear(cacheName);
+        if (cleared) {
+            System.out.println("Cache cleared: " + (cacheName == null ? "all" : cacheName));
+        }
+        return cleared;
+    }
+
+    @Override
+    public void resizePool(String adminKey, int size) throws RemoteException, SecurityException, IllegalArgumentException {
+        checkKey(adminKey);
+        ConnectionPool pool = DBConnection.getPool();
+        if (pool == null) {
+            throw new IllegalStateException("Database connection not established");
+        }
+        pool.resize(size);
+        System.out.println("Connection pool resized to " + size);
+    }
+
+    @Override
+    public void setSlowQueryCapture(String adminKey, boolean enabled, long thresholdMillis, boolean explain)
+            throws RemoteException, SecurityException {
+        checkKey(adminKey);
+        if (thresholdMillis < 0) {
+            throw new IllegalArgumentException("The threshold must not be negative");
+        }
+        SqlMonitor sql = SqlMonitor.get();
+        sql.setSlowQueryThresholdMillis(thresholdMillis);
+        sql.setExplainSlowQueries(explain);
+        sql.setSlowQueryLogEnabled(enabled);
+        System.out.println("Slow-query capture " + (enabled ? "enabled above " + thresholdMillis + " ms" : "disabled")
+                + (explain ? ", with plans" : ""));
+    }
+
+    /**
+     * Checks the admin key of a request, in constant time.
+     *
+     * @param adminKey key sent by the client
+     * @throws SecurityException if the key is wrong
+     */
+    private void checkKey(String adminKey) throws SecurityException {
+        if (adminKey == null || !MessageDigest.isEqual(keyDigest, digest(adminKey))) {
+            throw new SecurityException("Invalid admin key");
+        }
+    }
+
+    /**
+     * Computes the SHA-256 digest of a key, so that keys of different length are compared in constant time.
+     *
+     * @param key key to digest
+     * @return digest of the key
+     */
+    private static byte[] digest(String key) {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(key.getBytes(StandardCharsets.UTF_8));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+}
@@ -1,12 +1,17 @@
 package it.uninsubria.server_services;
 
+import it.uninsubria.TransactionTemplate;
+import it.uninsubria.cache.SingleFlight;
 import it.uninsubria.dao.RestaurantDAO;
 import it.uninsubria.dto.RestaurantDTO;
+import it.uninsubria.dto.RestaurantStatsDTO;
 import it.uninsubria.dto.SearchCriteriaDTO;
 import it.uninsubria.services.RestaurantService;
 
 import java.rmi.RemoteException;
 import java.rmi.server.UnicastRemoteObject;
+import java.sql.SQLException;
+import java.util.Arrays;
 import java.util.List;
 
 /**
@@ -17,17 +22,37 @@ import java.util.List;
  * @author Lorenzo Radice, 753252, CO
  */
 public class RestaurantServiceImpl extends UnicastRemoteObject implements RestaurantService {
+    /** Concurrent identical searches, which share one execution of the query */
+    private static final SingleFlight<List<Object>, List<RestaurantDTO>> searches = new SingleFlight<>("searches");
+    /** Transaction creating a restaurant and its address together */
+    private static final TransactionTemplate CREATE = TransactionTemplate.readWrite();
+    /** Transaction of the owner dashboard, which aggregates all the reviews of an owner and is cut off if too slow */
+    private final TransactionTemplate dashboard;
+
     /**
      * Default constructor for the RestaurantServiceImpl class.
      * It initializes the remote object for RMI.
      *
      * @throws RemoteException if there is an error during remote object creation
      */
-    public RestaurantServiceImpl() throws RemoteException {}
+    public RestaurantServiceImpl() throws RemoteException {
+        this(TransactionTemplate.readOnly().withTimeout(Integer.getInteger("theknife.db.dashboardTimeout", 10_000)));
+    }
+
+    /**
+     * Constructor with the transaction of the owner dashboard.
+     *
+     * @param dashboard read-only transaction of the owner dashboard, with its statement timeout
+     * @throws RemoteException if there is an error during remote object creation
+     */
+    RestaurantServiceImpl(TransactionTemplate dashboard) throws RemoteException {
+        this.dashboard = dashboard;
+    }
 
     @Override
-    public synchronized List<RestaurantDTO> searchRestaurants(SearchCriteriaDTO criteria) throws RemoteException {
-        return RestaurantDAO.searchRestaurants(criteria);
+    public List<RestaurantDTO> searchRestaurants(SearchCriteriaDTO criteria) throws RemoteException {
+        // Not synchronized, so that identical concurrent searches can share one execution of the query
+        return searches.execute(searchKey(criteria), () -> RestaurantDAO.searchRestaurants(criteria));
     }
 
     @Override
@@ -45,6 +70,16 @@ public class RestaurantServiceImpl extends UnicastRemoteObject implements Restau
         return RestaurantDAO.getReviewedRestaurants(userId);
     }
 
+    @Override
+    public List<RestaurantStatsDTO> getOwnerDashboard(String ownerId) throws RemoteException {
+        try {
+            return dashboard.execute(conn -> RestaurantDAO.getOwnerDashboard(ownerId));
+        } catch (SQLException e) {
+            System.err.println("Error loading the dashboard of " + ownerId + ": " + e.getMessage());
+            throw new RemoteException("Error loading the dashboard", e);
+        }
+    }
+
     @Override
     public synchronized boolean addFavoriteRestaurant(String userId, String restaurantId) throws RemoteException {
         try {
@@ -71,9 +106,20 @@ public class RestaurantServiceImpl extends UnicastRemoteObject implements Restau
     public synchronized RestaurantDTO createRestaurant(RestaurantDTO restaurant, String ownerId) throws RemoteException, SecurityException {
         try {
             restaurant.setR_owner(ownerId);
-            return RestaurantDAO.insertRestaurant(restaurant);
+            return CREATE.execute(conn -> RestaurantDAO.insertRestaurant(restaurant));
         } catch (Exception e) {
             throw new SecurityException("Failed to create restaurant: " + e.getMessage());
         }
     }
+
+    /**
+     * Builds the key of a search, equal for criteria with equal filters.
+     * @param criteria search criteria
+     * @return list of the filters of the search
+     */
+    static List<Object> searchKey(SearchCriteriaDTO criteria) {
+        return Arrays.asList(criteria.getLatitude(), criteria.getLongitude(), criteria.getCuisineType(),
+                criteria.getMinPrice(), criteria.getMaxPrice(), criteria.getDeliveryAvailable(),
+                criteria.getOnlineBookingAvailable(), criteria.getMinRating());
+    }
 }
@@ -2,20 +2,38 @@ package it.uninsubria.server_services;
 
 import it.uninsubria.dao.ReviewDAO;
 import it.uninsubria.dto.ReviewDTO;
+import it.uninsubria.exceptions.ServerBusyException;
+import it.uninsubria.services.ReviewCallback;
 import it.uninsubria.services.ReviewService;
 
 import java.rmi.RemoteException;
 import java.rmi.server.UnicastRemoteObject;
 import java.sql.SQLException;
+import java.sql.SQLTransientException;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 /**
  * Implementation of the ReviewService interface for managing restaurant reviews.
  * This class provides methods to retrieve, create, update, and delete reviews.
+ * The clients of the asynchronous submissions are called back by a small pool of threads
+ * (size {@code theknife.reviews.callbacks}, default 4), so that a slow client never delays the writes.
  *
  * @author Lorenzo Radice
  */
 public class ReviewServiceImpl extends UnicastRemoteObject implements ReviewService {
+    /** Suggested wait before submitting again a review refused because the queue is full, in milliseconds */
+    private static final long RETRY_AFTER_MILLIS = 100;
+    /** Threads calling back the clients of the asynchronous submissions */
+    private static final ExecutorService callbacks = Executors.newFixedThreadPool(
+            Integer.getInteger("theknife.reviews.callbacks", 4), runnable -> {
+                Thread thread = new Thread(runnable, "review-callbacks");
+                thread.setDaemon(true);
+                return thread;
+            });
+
     /**
      * Constructs a new ReviewServiceImpl instance.
      *
@@ -33,7 +51,7 @@ public class ReviewServiceImpl extends UnicastRemoteObject implements ReviewServ
     }
 
     @Override
-    public synchronized boolean createOrUpdateReview(ReviewDTO review) throws RemoteException, SecurityException, IllegalArgumentException {
+    public boolean createOrUpdateReview(ReviewDTO review) throws RemoteException, SecurityException, IllegalArgumentException {
         try {
             return ReviewDAO.updateReview(review);
         } catch (SQLException e) {
@@ -41,6 +59,60 @@ public class ReviewServiceImpl extends UnicastRemoteObject implements ReviewServ
         }
     }
 
+    @Override
+    public boolean submitReview(ReviewDTO review, ReviewCallback callback) throws RemoteException, SecurityException, IllegalArgumentException {
+        CompletableFuture<Boolean> written;
+        try {
+            written = ReviewDAO.submitReview(review);
+        } catch (SQLTransientException e) {
+            throw new ServerBusyException(e.getMessage(), RETRY_AFTER_MILLIS, false);
+        } catch (SQLException e) {
+            throw new RuntimeException("Error submitting review for user ID: " + review.getUsername() + " and restaurant ID: " + review.getRestaurant_id(), e);
+        }
+        if (callback != null) {
+            written.whenCompleteAsync((success, error) -> notify(callback, review, success, error), callbacks);
+        }
+        return true;
+    }
+
+    /**
+     * Tells a client the outcome of a review it submitted.
+     *
+     * @param callback listener exported by the client
+     * @param review submitted review
+     * @param success whether the review was written, null if it failed
+     * @param error error of the write, null if it did not fail
+     */
+    private static void notify(ReviewCallback callback, ReviewDTO review, Boolean success, Throwable error) {
+        try {
+            if (error == null && Boolean.TRUE.equals(success)) {
+                callback.reviewCommitted(review);
+            } else {
+                callback.reviewFailed(review, error == null ? "Review not written" : error.getMessage());
+            }
+        } catch (RemoteException | RuntimeException e) {
+            System.err.println("Unable to notify the review of " + review.getUsername() + ": " + e.getMessage());
+        }
+    }
+
+    @Override
+    public List<ReviewDTO> getPendingReplies(String ownerId, ReviewDTO after, int limit) throws RemoteException {
+        try {
+            return ReviewDAO.getPendingReplies(ownerId, after, limit);
+        } catch (SQLException e) {
+            throw new RuntimeException("Error retrieving pending replies for owner ID: " + ownerId, e);
+        }
+    }
+
+    @Override
+    public boolean replyToReview(String ownerId, ReviewDTO review, String reply) throws RemoteException, IllegalArgumentException {
+        try {
+            return ReviewDAO.replyToReview(ownerId, review, reply);
+        } catch (SQLException e) {
+            throw new RuntimeException("Error replying to review for user ID: " + review.getUsername() + " and restaurant ID: " + review.getRestaurant_id(), e);
+        }
+    }
+
     @Override
     public synchronized boolean deleteReview(String username, String restaurantId) throws RemoteException, SecurityException {
         try {
@@ -1,10 +1,9 @@
 package it.uninsubria.server_services;
 
-import it.uninsubria.dao.AddressDAO;
 import it.uninsubria.dto.UserDTO;
 import it.uninsubria.dao.UserDAO;
-import it.uninsubria.exceptions.AddressException;
 import it.uninsubria.exceptions.UserException;
+import it.uninsubria.metrics.PasswordEvent;
 import it.uninsubria.services.UserService;
 
 import java.rmi.RemoteException;
@@ -39,7 +38,7 @@ public class UserServiceImpl extends UnicastRemoteObject implements UserService
             throw new SecurityException("Invalid credentials");
         }
         // Check password
-        if (!userRecord.verifyPassword(psw)) {
+        if (!PasswordEvent.time("verify", usr, () -> userRecord.verifyPassword(psw))) {
             System.err.println("Login attempt failed: Wrong password for user - " + usr);
             throw new SecurityException("Invalid credentials");
         }
@@ -49,26 +48,23 @@ public class UserServiceImpl extends UnicastRemoteObject implements UserService
     }
 
     @Override
-    public synchronized void register(UserDTO userData) throws RemoteException, UserException {
-        // check if user already exists
-        if (UserDAO.getUserByID(userData.getUsername()) != null) {
-            System.err.println("Registration attempt failed: User already exists - " + userData.getUsername());
-            throw new UserException("Username already exists"); // to handle better, maybe custom exception
-        }
-        Integer addressId = null;
-        try {
-            // add address to database and get address id
-            addressId = AddressDAO.insert(userData.getAddress());
-        } catch (AddressException e) {
-            System.err.println("Registration attempt failed: Error inserting address - " + userData.getAddress());
-            throw new UserException("Invalid address");
-        }
-        // add user to database
+    public void register(UserDTO userData) throws RemoteException, UserException {
+        boolean registered;
         try {
-            UserDAO.addUser(userData, addressId);
+            // add user and address to database in one atomic statement
+            registered = UserDAO.register(userData);
         } catch (SQLException e) {
+            // integrity constraint violation (class 23) or invalid data (class 22), such as out of range coordinates
+            if (e.getSQLState() != null && (e.getSQLState().startsWith("23") || e.getSQLState().startsWith("22"))) {
+                System.err.println("Registration attempt failed: Invalid data - " + userData.getAddress());
+                throw new UserException("Invalid address");
+            }
             System.err.println("Registration attempt failed: Error adding user to database - " + userData.getUsername());
             throw new RemoteException("Error adding user to database");
         }
+        if (!registered) {
+            System.err.println("Registration attempt failed: User already exists - " + userData.getUsername());
+            throw new UserException("Username already exists");
+        }
     }
 }
@@ -0,0 +1,243 @@
+package it.uninsubria.sync;
+
+import it.uninsubria.DBConnection;
+import it.uninsubria.cache.Caches;
+import it.uninsubria.dao.AddressDAO;
+import it.uninsubria.search.RestaurantSnapshot;
+import org.postgresql.PGConnection;
+import org.postgresql.PGNotification;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.AbstractMap;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Keeps the caches of the server consistent with the changes made by the other servers sharing the database.
+ * The triggers of {@code notify_changes.sql} send a notification on the {@value #CHANNEL} channel
+ * for every statement changing the restaurants, the reviews, the favorites or the addresses,
+ * with the table and the ids it touched (see {@link #parse(String)}).
+ * A thread listens on a dedicated connection and, for every batch of notifications it receives,
+ * removes the changed addresses from their cache and reads again the changed restaurants into the search snapshot.
+ * <p>
+ * Notifications are only delivered while the connection is listening: after the connection is lost,
+ * and when a statement changed too many rows to list them, every cache is cleared and the snapshot is reloaded.
+ * The listener runs unless {@code theknife.sync} is set to false.
+ *
+ * @author Lorenzo Radice
+ */
+public class ChangeListener implements Runnable {
+    /** Channel of the change notifications */
+    public static final String CHANNEL = "theknife_changes";
+    /** Payload of a notification whose ids were too many to be listed */
+    static final String ALL = "*";
+    /** Milliseconds waited for notifications before checking whether the listener was stopped */
+    private static final int POLL_MILLIS = 1000;
+    /** Maximum milliseconds between two connection attempts */
+    private static final long MAX_BACKOFF_MILLIS = 30_000;
+    /** Listener of the server, null if not started */
+    private static ChangeListener instance = null;
+    /** Thread of the listener of the server */
+    private static Thread thread;
+
+    /** Caches updated by the listener */
+    private final Target target;
+    /** Whether the listener was stopped */
+    private volatile boolean stopped = false;
+
+    /**
+     * Caches of the server which are updated from the change notifications.
+     */
+    interface Target {
+        /**
+         * Drops some addresses from the caches.
+         * @param addressIds ids of the changed addresses
+         */
+        void addresses(Set<Integer> addressIds);
+
+        /**
+         * Reads again some restaurants, including their ratings.
+         * @param restaurantIds ids of the changed restaurants
+         */
+        void restaurants(Set<Integer> restaurantIds);
+
+        /**
+         * Drops every cached value, after changes were missed.
+         */
+        void resync();
+    }
+
+    /**
+     * Constructor for ChangeListener.
+     * @param target caches updated by the listener
+     */
+    ChangeListener(Target target) {
+        this.target = target;
+    }
+
+    /**
+     * Starts the listener of the server, unless disabled by {@code theknife.sync}.
+     * It must be started before the caches are filled, so that no change is missed in between.
+     */
+    public static synchronized void start() {
+        if (instance != null || !Boolean.parseBoolean(System.getProperty("theknife.sync", "true"))) {
+            return;
+        }
+        instance = new ChangeListener(new ServerCaches());
+        thread = new Thread(instance, "change-listener");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Stops the listener of the server.
+     */
+    public static synchronized void stop() {
+        if (instance != null) {
+            instance.stopped = true;
+            thread.interrupt();
+            instance = null;
+            thread = null;
+        }
+    }
+
+    /**
+     * Listens for notifications until stopped, connecting again after failures.
+     */
+    @Override
+    public void run() {
+        boolean connected = false;
+        long backoff = POLL_MILLIS;
+        while (!stopped) {
+            try (Connection conn = DBConnection.openConnection()) {
+                conn.setAutoCommit(true);
+                try (Statement stmt = conn.createStatement()) {
+                    stmt.execute("LISTEN " + CHANNEL);
+                }
+                if (connected) {
+                    System.out.println("Change listener reconnected, resynchronizing the caches");
+                    target.resync();
+                }
+                connected = true;
+                backoff = POLL_MILLIS;
+                PGConnection pg = conn.unwrap(PGConnection.class);
+                while (!stopped) {
+                    PGNotification[] notifications = pg.getNotifications(POLL_MILLIS);
+                    if (notifications != null && notifications.length > 0) {
+                        String[] payloads = new String[notifications.length];
+                        for (int i = 0; i < notifications.length; i++) {
+                            payloads[i] = notifications[i].getParameter();
+                        }
+                        apply(payloads);
+                    }
+                }
+            } catch (SQLException | RuntimeException e) {
+                if (stopped) {
+                    return;
+                }
+                System.err.println("Change listener disconnected: " + e.getMessage());
+                try {
+                    Thread.sleep(backoff);
+                } catch (InterruptedException interrupted) {
+                    return;
+                }
+                backoff = Math.min(backoff * 2, MAX_BACKOFF_MILLIS);
+            }
+        }
+    }
+
+    /**
+     * Applies a batch of notifications to the caches, merging the ids of the same table.
+     * @param payloads payloads of the notifications
+     */
+    void apply(String... payloads) {
+        Map<String, Set<Integer>> changes = new HashMap<>();
+        for (String payload : payloads) {
+            Map.Entry<String, Set<Integer>> change = parse(payload);
+            if (change == null) {
+                System.err.println("Change listener ignored the notification '" + payload + "'");
+                continue;
+            }
+            if (change.getValue() == null) {
+                target.resync();
+                return;
+            }
+            changes.computeIfAbsent(change.getKey(), table -> new HashSet<>()).addAll(change.getValue());
+        }
+        Set<Integer> addresses = changes.get("addresses");
+        if (addresses != null) {
+            target.addresses(addresses);
+        }
+        Set<Integer> restaurants = new HashSet<>();
+        restaurants.addAll(changes.getOrDefault("restaurants", Set.of()));
+        restaurants.addAll(changes.getOrDefault("reviews", Set.of()));
+        // The favorites are not cached by the server, their notifications are only received
+        if (!restaurants.isEmpty()) {
+            target.restaurants(restaurants);
+        }
+    }
+
+    /**
+     * Parses the payload of a notification, made of the name of the table and the comma separated ids
+     * of its changed rows, or {@value #ALL} if they were too many.
+     * @param payload payload, such as {@code reviews 12,40}
+     * @return the table and its changed ids, null ids if too many, or null if the payload is malformed
+     */
+    static Map.Entry<String, Set<Integer>> parse(String payload) {
+        int space = payload.indexOf(' ');
+        if (space <= 0) {
+            return null;
+        }
+        String table = payload.substring(0, space);
+        String keys = payload.substring(space + 1);
+        if (keys.equals(ALL)) {
+            return new AbstractMap.SimpleImmutableEntry<>(table, null);
+        }
+        Set<Integer> ids = new HashSet<>();
+        try {
+            for (String key : keys.split(",")) {
+                ids.add(Integer.parseInt(key));
+            }
+        } catch (NumberFormatException e) {
+            return null;
+        }
+        return new AbstractMap.SimpleImmutableEntry<>(table, ids);
+    }
+
+    /**
+     * Caches of the running server.
+     */
+    private static class ServerCaches implements Target {
+        /**
+         * Drops the addresses from their cache, and reads again the restaurants located there.
+         * @param addressIds ids of the changed addresses
+         */
+        @Override
+        public void addresses(Set<Integer> addressIds) {
+            AddressDAO.invalidate(addressIds);
+            RestaurantSnapshot.invalidateAddresses(addressIds);
+        }
+
+        /**
+         * Reads again the restaurants into the search snapshot.
+         * @param restaurantIds ids of the changed restaurants
+         */
+        @Override
+        public void restaurants(Set<Integer> restaurantIds) {
+            RestaurantSnapshot.invalidate(restaurantIds);
+        }
+
+        /**
+         * Clears every cache and reloads the search snapshot.
+         */
+        @Override
+        public void resync() {
+            Caches.clear(null);
+            RestaurantSnapshot.resync();
+        }
+    }
+}
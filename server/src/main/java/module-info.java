@@ -2,4 +2,10 @@ module server {
     requires common;
     requires java.rmi;
     requires java.sql;
+    requires java.management;
+    requires jdk.jfr;
+    requires org.postgresql.jdbc;
+
+    exports it.uninsubria.cache to java.management;
+    exports it.uninsubria.metrics to java.management, jdk.jfr;
 }
@@ -0,0 +1,68 @@
+-- Change events of the cached tables, sent on the theknife_changes channel to every listening server.
+-- One notification per statement, with payload '<table> <key>,<key>,...' listing the distinct keys it touched,
+-- or '<table> *' when more than 500 keys changed, so that the listeners reload the whole table instead.
+-- The key of restaurants, reviews and favorites is the restaurant id, the key of addresses the address id.
+-- The function body contains semicolons, so the function ends with a semicolon on its own line:
+-- the build runs the script with that line as delimiter.
+CREATE OR REPLACE FUNCTION notify_changes() RETURNS trigger AS $$
+DECLARE
+    keys TEXT[];
+BEGIN
+    IF TG_OP = 'INSERT' THEN
+        EXECUTE format('SELECT array_agg(k) FROM (SELECT DISTINCT %I::text AS k FROM new_rows LIMIT 501) c',
+                       TG_ARGV[0]) INTO keys;
+    ELSIF TG_OP = 'DELETE' THEN
+        EXECUTE format('SELECT array_agg(k) FROM (SELECT DISTINCT %I::text AS k FROM old_rows LIMIT 501) c',
+                       TG_ARGV[0]) INTO keys;
+    ELSE
+        EXECUTE format('SELECT array_agg(k) FROM (SELECT %1$I::text AS k FROM old_rows '
+                       'UNION SELECT %1$I::text FROM new_rows LIMIT 501) c', TG_ARGV[0]) INTO keys;
+    END IF;
+    IF keys IS NOT NULL THEN
+        PERFORM pg_notify('theknife_changes', TG_TABLE_NAME || ' ' ||
+                          CASE WHEN cardinality(keys) > 500 THEN '*' ELSE array_to_string(keys, ',') END);
+    END IF;
+    RETURN NULL;
+END;
+$$ LANGUAGE plpgsql
+;
+
+DROP TRIGGER IF EXISTS addresses_insert_notify ON Addresses;
+DROP TRIGGER IF EXISTS addresses_update_notify ON Addresses;
+DROP TRIGGER IF EXISTS addresses_delete_notify ON Addresses;
+CREATE TRIGGER addresses_insert_notify AFTER INSERT ON Addresses REFERENCING NEW TABLE AS new_rows
+    FOR EACH STATEMENT EXECUTE FUNCTION notify_changes('address_id');
+CREATE TRIGGER addresses_update_notify AFTER UPDATE ON Addresses REFERENCING OLD TABLE AS old_rows NEW TABLE AS new_rows
+    FOR EACH STATEMENT EXECUTE FUNCTION notify_changes('address_id');
+CREATE TRIGGER addresses_delete_notify AFTER DELETE ON Addresses REFERENCING OLD TABLE AS old_rows
+    FOR EACH STATEMENT EXECUTE FUNCTION notify_changes('address_id');
+
+DROP TRIGGER IF EXISTS restaurants_insert_notify ON Restaurants;
+DROP TRIGGER IF EXISTS restaurants_update_notify ON Restaurants;
+DROP TRIGGER IF EXISTS restaurants_delete_notify ON Restaurants;
+CREATE TRIGGER restaurants_insert_notify AFTER INSERT ON Restaurants REFERENCING NEW TABLE AS new_rows
+    FOR EACH STATEMENT EXECUTE FUNCTION notify_changes('restaurant_id');
+CREATE TRIGGER restaurants_update_notify AFTER UPDATE ON Restaurants REFERENCING OLD TABLE AS old_rows NEW TABLE AS new_rows
+    FOR EACH STATEMENT EXECUTE FUNCTION notify_changes('restaurant_id');
+CREATE TRIGGER restaurants_delete_notify AFTER DELETE ON Restaurants REFERENCING OLD TABLE AS old_rows
+    FOR EACH STATEMENT EXECUTE FUNCTION notify_changes('restaurant_id');
+
+DROP TRIGGER IF EXISTS favorites_insert_notify ON Favorites;
+DROP TRIGGER IF EXISTS favorites_update_notify ON Favorites;
+DROP TRIGGER IF EXISTS favorites_delete_notify ON Favorites;
+CREATE TRIGGER favorites_insert_notify AFTER INSERT ON Favorites REFERENCING NEW TABLE AS new_rows
+    FOR EACH STATEMENT EXECUTE FUNCTION notify_changes('restaurant_id');
+CREATE TRIGGER favorites_update_notify AFTER UPDATE ON Favorites REFERENCING OLD TABLE AS old_rows NEW TABLE AS new_rows
+    FOR EACH STATEMENT EXECUTE FUNCTION notify_changes('restaurant_id');
+CREATE TRIGGER favorites_delete_notify AFTER DELETE ON Favorites REFERENCING OLD TABLE AS old_rows
+    FOR EACH STATEMENT EXECUTE FUNCTION notify_changes('restaurant_id');
+
+DROP TRIGGER IF EXISTS reviews_insert_notify ON Reviews;
+DROP TRIGGER IF EXISTS reviews_update_notify ON Reviews;
+DROP TRIGGER IF EXISTS reviews_delete_notify ON Reviews;
+CREATE TRIGGER reviews_insert_notify AFTER INSERT ON Reviews REFERENCING NEW TABLE AS new_rows
+    FOR EACH STATEMENT EXECUTE FUNCTION notify_changes('restaurant_id');
+CREATE TRIGGER reviews_update_notify AFTER UPDATE ON Reviews REFERENCING OLD TABLE AS old_rows NEW TABLE AS new_rows
+    FOR EACH STATEMENT EXECUTE FUNCTION notify_changes('restaurant_id');
+CREATE TRIGGER reviews_delete_notify AFTER DELETE ON Reviews REFERENCING OLD TABLE AS old_rows
+    FOR EACH STATEMENT EXECUTE FUNCTION notify_changes('restaurant_id');
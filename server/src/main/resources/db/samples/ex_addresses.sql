@@ -17116,3 +17116,6 @@ VALUES
 (17114, 'Czechia', 'Prague', 'Elišky Krásnohorské', '2', 50.090262, 14.419907),
 (17115, 'Czechia', 'Prague', 'Elišky Peškové', '1095/5', 50.0774137, 14.4052823),
 (17116, 'Czechia', 'Prague', 'Námĕstí Míru', '6', 50.0762171, 14.4364881);
+
+-- The sample rows have explicit IDs: new addresses continue after them.
+SELECT setval(pg_get_serial_sequence('addresses', 'address_id'), COALESCE(MAX(address_id), 0) + 1, false) FROM Addresses;
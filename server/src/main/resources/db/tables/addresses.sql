@@ -8,4 +8,13 @@ CREATE TABLE IF NOT EXISTS Addresses (
     longitude DECIMAL(9, 6) NOT NULL,
     CONSTRAINT check_latitude CHECK (latitude BETWEEN -90 AND 90),
     CONSTRAINT check_longitude CHECK (longitude BETWEEN -180 AND 180)
-);
\ No newline at end of file
+);
+
+-- Trigonometric terms of the Haversine distance, computed once per address instead of once per search.
+-- Adding the columns to an existing table computes them for every row.
+ALTER TABLE Addresses ADD COLUMN IF NOT EXISTS lat_sin DOUBLE PRECISION GENERATED ALWAYS AS (SIN(RADIANS(latitude))) STORED;
+ALTER TABLE Addresses ADD COLUMN IF NOT EXISTS lat_cos DOUBLE PRECISION GENERATED ALWAYS AS (COS(RADIANS(latitude))) STORED;
+ALTER TABLE Addresses ADD COLUMN IF NOT EXISTS lon_rad DOUBLE PRECISION GENERATED ALWAYS AS (RADIANS(longitude)) STORED;
+
+-- Moves the ID sequence past the addresses inserted with explicit IDs, such as the sample rows.
+SELECT setval(pg_get_serial_sequence('addresses', 'address_id'), COALESCE(MAX(address_id), 0) + 1, false) FROM Addresses;
@@ -13,3 +13,6 @@ CREATE TABLE IF NOT EXISTS Restaurants (
     address_id SERIAL REFERENCES Addresses(address_id) ON UPDATE CASCADE ON DELETE NO ACTION,
     CONSTRAINT check_avg_price CHECK (avg_price > 0)
 	);
+
+-- Restaurants of an owner, for the owner area and dashboard
+CREATE INDEX IF NOT EXISTS restaurants_owner_idx ON Restaurants (r_owner);
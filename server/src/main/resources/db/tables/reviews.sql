@@ -6,3 +6,10 @@ CREATE TABLE IF NOT EXISTS Reviews (
     reply TEXT,
     PRIMARY KEY (username, restaurant_id)
 );
+
+-- Time of the last change of the rating or comment, shown on the owner dashboard
+ALTER TABLE Reviews ADD COLUMN IF NOT EXISTS reviewed_at TIMESTAMPTZ NOT NULL DEFAULT now();
+-- Reviews of a restaurant, for the ratings and the owner dashboard
+CREATE INDEX IF NOT EXISTS reviews_restaurant_idx ON Reviews (restaurant_id);
+-- Reviews still waiting for a reply, in the order the owners answer them
+CREATE INDEX IF NOT EXISTS reviews_unreplied_idx ON Reviews (restaurant_id, reviewed_at, username) WHERE reply IS NULL;
@@ -0,0 +1,89 @@
+package it.uninsubria;
+
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLTimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ConnectionPoolTest {
+
+    @Test
+    void connectionsAreReusedAndBounded() throws Exception {
+        AtomicInteger opened = new AtomicInteger();
+        ConnectionPool pool = new ConnectionPool(() -> fakeConnection(opened), 2, 50, null);
+        Connection first = pool.acquire();
+        Connection second = pool.acquire();
+        assertEquals(2, opened.get());
+        assertEquals(2, pool.getInUse());
+        assertThrows(SQLTimeoutException.class, pool::acquire);
+
+        pool.release(first);
+        assertSame(first, pool.acquire());
+        assertEquals(2, opened.get());
+        pool.release(first);
+        pool.release(second);
+        assertEquals(0, pool.getInUse());
+        assertEquals(2, pool.getOpen());
+    }
+
+    @Test
+    void waitingCallerGetsReleasedConnection() throws Exception {
+        ConnectionPool pool = new ConnectionPool(() -> fakeConnection(new AtomicInteger()), 1, 5_000, null);
+        Connection held = pool.acquire();
+        Thread releaser = new Thread(() -> {
+            while (pool.getWaiting() == 0) {
+                Thread.onSpinWait();
+            }
+            pool.release(held);
+        });
+        releaser.start();
+        assertSame(held, pool.acquire());
+        releaser.join();
+    }
+
+    @Test
+    void shrinkingClosesExcessConnections() throws Exception {
+        ConnectionPool pool = new ConnectionPool(() -> fakeConnection(new AtomicInteger()), 3, 50, null);
+        Connection first = pool.acquire();
+        Connection second = pool.acquire();
+        Connection third = pool.acquire();
+        pool.release(first);
+        pool.resize(1);
+        assertTrue(first.isClosed());
+        assertEquals(2, pool.getOpen());
+
+        pool.release(second);
+        assertTrue(second.isClosed());
+        pool.release(third);
+        assertFalse(third.isClosed());
+        assertEquals(1, pool.getOpen());
+        assertThrows(IllegalArgumentException.class, () -> pool.resize(0));
+    }
+
+    private static Connection fakeConnection(AtomicInteger opened) {
+        opened.incrementAndGet();
+        boolean[] closed = {false};
+        return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(), new Class<?>[]{Connection.class},
+                (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "close":
+                            closed[0] = true;
+                            return null;
+                        case "isClosed":
+                            return closed[0];
+                        case "getAutoCommit":
+                            return true;
+                        case "equals":
+                            return proxy == args[0];
+                        case "hashCode":
+                            return System.identityHashCode(proxy);
+                        default:
+                            return null;
+                    }
+                });
+    }
+}
@@ -0,0 +1,46 @@
+package it.uninsubria;
+
+import it.uninsubria.testsupport.LocalDatabaseExtension;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+
+import java.sql.Connection;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@ExtendWith(LocalDatabaseExtension.class)
+class DBConnectionTest {
+    private static final String[] CREDENTIALS = {"theknife", "password"};
+
+    @AfterEach
+    void tearDown() {
+        DBConnection.closeConnection();
+    }
+
+    @Test
+    void aSecondLoginKeepsThePool() {
+        DBConnection.login(CREDENTIALS);
+        ConnectionPool pool = DBConnection.getPool();
+        Connection bound = DBConnection.getConnection();
+        assertEquals(1, pool.getInUse());
+
+        DBConnection.login(CREDENTIALS);
+        assertSame(pool, DBConnection.getPool());
+        assertSame(bound, DBConnection.getConnection());
+        DBConnection.releaseConnection();
+        assertEquals(0, pool.getInUse());
+    }
+
+    @Test
+    void aLoginAfterClosingOpensANewPool() {
+        DBConnection.login(CREDENTIALS);
+        ConnectionPool pool = DBConnection.getPool();
+        DBConnection.closeConnection();
+        assertNull(DBConnection.getPool());
+
+        DBConnection.login(CREDENTIALS);
+        assertNotSame(pool, DBConnection.getPool());
+        assertNotNull(DBConnection.getConnection());
+    }
+}
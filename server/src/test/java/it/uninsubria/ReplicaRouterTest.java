@@ -0,0 +1,54 @@
+package it.uninsubria;
+
+import org.junit.jupiter.api.Test;
+
+import java.sql.SQLException;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ReplicaRouterTest {
+
+    @Test
+    void readsRotateAcrossHealthyReplicas() {
+        ReplicaRouter.Replica first = replica("first");
+        ReplicaRouter.Replica second = replica("second");
+        ReplicaRouter.Replica third = replica("third");
+        ReplicaRouter router = new ReplicaRouter(null, List.of(first, second, third), 1000, 5000);
+        assertSame(first, router.pick());
+        assertSame(second, router.pick());
+        assertSame(third, router.pick());
+
+        router.update(second, 4000);
+        assertFalse(second.isHealthy());
+        assertEquals(4000, second.getLagMillis());
+        router.markDown(third, new SQLException("connection refused"));
+        for (int i = 0; i < 4; i++) {
+            assertSame(first, router.pick());
+        }
+
+        router.update(first, 5000);
+        assertNull(router.pick());
+        router.update(second, 0);
+        assertSame(second, router.pick());
+    }
+
+    @Test
+    void writersReadFromPrimaryForAWhile() throws InterruptedException {
+        ReplicaRouter router = new ReplicaRouter(null, List.of(replica("replica")), 1000, 50);
+        assertFalse(router.mustReadPrimary("writer"));
+        assertFalse(router.mustReadPrimary(null));
+        router.recordWrite("writer");
+        assertTrue(router.mustReadPrimary("writer"));
+        assertFalse(router.mustReadPrimary("reader"));
+        Thread.sleep(60);
+        assertFalse(router.mustReadPrimary("writer"));
+    }
+
+    private static ReplicaRouter.Replica replica(String name) {
+        return new ReplicaRouter.Replica("jdbc:postgresql://" + name + "/theknife_db",
+                new ConnectionPool(() -> {
+                    throw new SQLException("not used");
+                }, 1, 10, null));
+    }
+}
@@ -0,0 +1,38 @@
+package it.uninsubria;
+
+import org.junit.jupiter.api.Test;
+
+import java.sql.Connection;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TransactionTemplateTest {
+
+    @Test
+    void defaultsNeedNoSettings() {
+        assertNull(TransactionTemplate.readWrite().settings());
+        assertFalse(TransactionTemplate.readWrite().isReadOnly());
+        assertEquals("SET TRANSACTION READ ONLY", TransactionTemplate.readOnly().settings());
+    }
+
+    @Test
+    void settingsAreScopedToTheTransaction() {
+        TransactionTemplate template = TransactionTemplate.readOnly()
+                .withIsolation(Connection.TRANSACTION_REPEATABLE_READ)
+                .withTimeout(2_500);
+        assertTrue(template.isReadOnly());
+        assertEquals("SET TRANSACTION ISOLATION LEVEL REPEATABLE READ, READ ONLY; SET LOCAL statement_timeout = 2500",
+                template.settings());
+        assertEquals("SET LOCAL statement_timeout = 100", TransactionTemplate.readWrite().withTimeout(100).settings());
+        assertEquals("SET TRANSACTION ISOLATION LEVEL SERIALIZABLE",
+                TransactionTemplate.readWrite().withIsolation(Connection.TRANSACTION_SERIALIZABLE).settings());
+        // Templates are immutable
+        assertEquals("SET TRANSACTION READ ONLY", TransactionTemplate.readOnly().settings());
+    }
+
+    @Test
+    void invalidSettingsAreRejected() {
+        assertThrows(IllegalArgumentException.class, () -> TransactionTemplate.readWrite().withIsolation(42));
+        assertThrows(IllegalArgumentException.class, () -> TransactionTemplate.readWrite().withTimeout(-1));
+    }
+}
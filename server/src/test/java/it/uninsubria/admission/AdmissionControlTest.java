@@ -0,0 +1,62 @@
+package it.uninsubria.admission;
+
+import it.uninsubria.exceptions.ServerBusyException;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AdmissionControlTest {
+
+    @Test
+    void bucketRefillsAtItsRate() {
+        TokenBucket bucket = new TokenBucket(10, 2, 0);
+        assertEquals(0, bucket.tryAcquire(0));
+        assertEquals(0, bucket.tryAcquire(0));
+        long wait = bucket.tryAcquire(0);
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(100), wait, 1000);
+        assertEquals(0, bucket.tryAcquire(wait));
+    }
+
+    @Test
+    void methodLimitsOverrideTheDefault() throws Exception {
+        Map<String, AdmissionControl.Limit> hosts = new HashMap<>();
+        hosts.put(null, AdmissionControl.Limit.parse("1000"));
+        hosts.put("login", AdmissionControl.Limit.parse("0.001/2"));
+        hosts.put("getReviews", AdmissionControl.Limit.parse("off"));
+        Map<String, AdmissionControl.Limit> users = new HashMap<>();
+        users.put(null, AdmissionControl.Limit.parse("0.001/1"));
+        AdmissionControl admission = new AdmissionControl(hosts, users, 0, 0);
+
+        admission.checkRate("login", "10.0.0.1", null);
+        admission.checkRate("login", "10.0.0.1", null);
+        ServerBusyException e = assertThrows(ServerBusyException.class, () -> admission.checkRate("login", "10.0.0.1", null));
+        assertTrue(e.isRateLimited());
+        assertTrue(e.getRetryAfterMillis() > 0);
+        // Other clients and methods have their own buckets
+        admission.checkRate("login", "10.0.0.2", null);
+        for (int i = 0; i < 100; i++) {
+            admission.checkRate("getReviews", "10.0.0.1", null);
+        }
+
+        admission.checkRate("searchRestaurants", "10.0.0.1", "alice");
+        assertThrows(ServerBusyException.class, () -> admission.checkRate("searchRestaurants", "10.0.0.3", "alice"));
+        assertThrows(ServerBusyException.class, () -> admission.checkRate("getReviews", "10.0.0.3", "alice"));
+    }
+
+    @Test
+    void overloadIsShedAfterTheWaitTarget() throws Exception {
+        AdmissionControl admission = new AdmissionControl(Map.of(), Map.of(), 1, 20);
+        assertEquals(0, admission.acquire());
+        long start = System.nanoTime();
+        ServerBusyException e = assertThrows(ServerBusyException.class, admission::acquire);
+        assertFalse(e.isRateLimited());
+        assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(20));
+        admission.release();
+        assertEquals(0, admission.acquire());
+        admission.release();
+    }
+}
@@ -0,0 +1,43 @@
+package it.uninsubria.bulk;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CopyFormatTest {
+
+    @Test
+    void splitAndJoin() {
+        List<String> fields = CopyFormat.CSV.split("1,\"Via Roma, 14\",,\"\",\"say \"\"hi\"\"\"");
+        assertEquals(Arrays.asList("1", "Via Roma, 14", null, "", "say \"hi\""), fields);
+        assertEquals("1,\"Via Roma, 14\",,\"\",\"say \"\"hi\"\"\"", CopyFormat.CSV.join(fields));
+    }
+
+    @Test
+    void splitTabSeparated() {
+        List<String> fields = CopyFormat.TSV.split("7\tItaly\tVia Roma, 14");
+        assertEquals(Arrays.asList("7", "Italy", "Via Roma, 14"), fields);
+    }
+
+    @Test
+    void readRecordJoinsQuotedLineBreaks() throws IOException {
+        BufferedReader reader = new BufferedReader(new StringReader("a,\"first\nsecond\"\nb,c\n"));
+        assertEquals("a,\"first\nsecond\"", CopyFormat.readRecord(reader));
+        assertEquals("b,c", CopyFormat.readRecord(reader));
+        assertNull(CopyFormat.readRecord(reader));
+    }
+
+    @Test
+    void formatFromFileName() {
+        assertSame(CopyFormat.CSV, CopyFormat.of(Path.of("addresses.csv")));
+        assertSame(CopyFormat.TSV, CopyFormat.of(Path.of("restaurants.tsv")));
+        assertThrows(IllegalArgumentException.class, () -> CopyFormat.of(Path.of("reviews.sql")));
+    }
+}
@@ -0,0 +1,59 @@
+package it.uninsubria.bulk;
+
+import it.uninsubria.dto.CuisineType;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DatasetGeneratorTest {
+    private static final String[] TABLES = {"addresses", "users", "restaurants", "favorites", "reviews"};
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void sameSeedGivesSameDataset() throws IOException {
+        new DatasetGenerator(7, 50, 100, 300, 100).write(directory.resolve("first"));
+        new DatasetGenerator(7, 50, 100, 300, 100).write(directory.resolve("second"));
+        new DatasetGenerator(8, 50, 100, 300, 100).write(directory.resolve("other"));
+        for (String table : TABLES) {
+            String file = table + ".csv";
+            assertEquals(Files.readAllLines(directory.resolve("first").resolve(file)),
+                    Files.readAllLines(directory.resolve("second").resolve(file)), table);
+        }
+        assertNotEquals(Files.readAllLines(directory.resolve("first").resolve("reviews.csv")),
+                Files.readAllLines(directory.resolve("other").resolve("reviews.csv")));
+    }
+
+    @Test
+    void generatedRowsAreConsistent() throws IOException {
+        new DatasetGenerator(1, 40, 200, 500, 150).write(directory);
+        assertEquals(241, Files.readAllLines(directory.resolve("addresses.csv")).size());
+        for (String record : Files.readAllLines(directory.resolve("users.csv"))) {
+            assertEquals(7, CopyFormat.CSV.split(record).size(), record);
+        }
+        List<String> restaurants = Files.readAllLines(directory.resolve("restaurants.csv"));
+        assertEquals(201, restaurants.size());
+        for (String record : restaurants.subList(1, restaurants.size())) {
+            List<String> fields = CopyFormat.CSV.split(record);
+            assertNotNull(CuisineType.fromDisplayName(fields.get(6)), record);
+        }
+        List<String> reviews = Files.readAllLines(directory.resolve("reviews.csv"));
+        Set<String> pairs = new HashSet<>();
+        for (String record : reviews.subList(1, reviews.size())) {
+            List<String> fields = CopyFormat.CSV.split(record);
+            assertTrue(pairs.add(fields.get(0) + "/" + fields.get(1)), "Duplicated review " + record);
+            int rating = Integer.parseInt(fields.get(2));
+            assertTrue(rating >= 1 && rating <= 5);
+        }
+        assertTrue(pairs.size() > 400, "Expected about 500 reviews, got " + pairs.size());
+    }
+}
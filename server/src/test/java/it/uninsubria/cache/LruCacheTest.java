@@ -0,0 +1,37 @@
+package it.uninsubria.cache;
+
+import it.uninsubria.dto.CacheStatsDTO;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LruCacheTest {
+
+    @Test
+    void leastRecentlyUsedEntryIsEvicted() {
+        LruCache<Integer, String> cache = new LruCache<>("test", 2);
+        cache.put(1, "one");
+        cache.put(2, "two");
+        assertEquals("one", cache.get(1));
+        cache.put(3, "three");
+        assertNull(cache.get(2));
+        assertEquals("one", cache.get(1));
+        assertEquals("three", cache.get(3));
+
+        CacheStatsDTO stats = cache.stats();
+        assertEquals(2, stats.getSize());
+        assertEquals(3, stats.getHits());
+        assertEquals(1, stats.getMisses());
+        assertEquals(0.75, stats.getHitRate(), 1e-9);
+    }
+
+    @Test
+    void registeredCachesCanBeClearedByName() {
+        LruCache<String, String> cache = Caches.create("clear-test", 10);
+        cache.put("key", "value");
+        assertThrows(IllegalStateException.class, () -> Caches.create("clear-test", 10));
+        assertFalse(Caches.clear("missing"));
+        assertTrue(Caches.clear("clear-test"));
+        assertEquals(0, cache.size());
+    }
+}
@@ -0,0 +1,63 @@
+package it.uninsubria.cache;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SingleFlightTest {
+
+    @Test
+    void concurrentCallsShareOneLoad() throws Exception {
+        SingleFlight<String, List<String>> flight = new SingleFlight<>("test-shared");
+        AtomicInteger loads = new AtomicInteger();
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService callers = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<List<String>>> results = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                results.add(callers.submit(() -> flight.execute("milano", () -> {
+                    loads.incrementAndGet();
+                    try {
+                        release.await();
+                    } catch (InterruptedException e) {
+                        throw new IllegalStateException(e);
+                    }
+                    return List.of("pizzeria");
+                })));
+            }
+            while (flight.getExecutions() + flight.getDeduplicated() < 8) {
+                Thread.sleep(5);
+            }
+            release.countDown();
+            for (Future<List<String>> result : results) {
+                assertEquals(List.of("pizzeria"), result.get());
+            }
+        } finally {
+            callers.shutdown();
+        }
+        assertEquals(1, loads.get());
+        assertEquals(7, flight.getDeduplicated());
+        assertEquals(0, flight.getInFlight());
+
+        // Once the load ended, the next call executes it again
+        flight.execute("milano", () -> List.of("trattoria"));
+        assertEquals(2, flight.getExecutions());
+    }
+
+    @Test
+    void failuresAreNotRemembered() {
+        SingleFlight<String, String> flight = new SingleFlight<>("test-failures");
+        assertThrows(IllegalArgumentException.class, () -> flight.execute("key", () -> {
+            throw new IllegalArgumentException("invalid");
+        }));
+        assertEquals("value", flight.execute("key", () -> "value"));
+    }
+}
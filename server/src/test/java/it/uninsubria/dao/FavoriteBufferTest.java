@@ -0,0 +1,74 @@
+package it.uninsubria.dao;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FavoriteBufferTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void togglesCoalesceToTheFinalState() throws Exception {
+        List<Map<String, Map<Integer, Boolean>>> batches = new ArrayList<>();
+        FavoriteBuffer buffer = new FavoriteBuffer(journal(), batches::add, 100);
+        buffer.set("alice", 1, true);
+        buffer.set("alice", 1, false);
+        buffer.set("alice", 1, true);
+        buffer.set("alice", 2, false);
+        buffer.set("bob", 1, true);
+        assertEquals(Map.of(1, true, 2, false), buffer.pendingFor("alice"));
+        assertTrue(buffer.pendingFor("carol").isEmpty());
+
+        buffer.flush();
+        assertEquals(List.of(Map.of("alice", Map.of(1, true, 2, false), "bob", Map.of(1, true))), batches);
+        assertTrue(buffer.pendingFor("alice").isEmpty());
+        buffer.flush();
+        assertEquals(1, batches.size());
+    }
+
+    @Test
+    void pendingChangesSurviveARestart() throws Exception {
+        FavoriteJournal journal = journal();
+        FavoriteBuffer buffer = new FavoriteBuffer(journal, batch -> {
+            throw new SQLException("database down");
+        }, 100);
+        buffer.set("alice", 1, true);
+        buffer.set("alice", 2, true);
+        assertThrows(SQLException.class, buffer::flush);
+        buffer.set("alice", 2, false);
+        assertEquals(Map.of(1, true, 2, false), buffer.pendingFor("alice"));
+        journal.close();
+
+        // A crash in the middle of a record leaves a torn tail, which is discarded
+        try (FileChannel channel = FileChannel.open(directory.resolve("favorites.journal"), StandardOpenOption.APPEND)) {
+            channel.write(ByteBuffer.wrap(new byte[]{0, 0, 0, 20, 1, 0}));
+        }
+        List<Map<String, Map<Integer, Boolean>>> batches = new ArrayList<>();
+        FavoriteJournal reopened = journal();
+        FavoriteBuffer restarted = new FavoriteBuffer(reopened, batches::add, 100);
+        assertEquals(Map.of(1, true, 2, false), restarted.pendingFor("alice"));
+        restarted.set("bob", 3, true);
+        restarted.flush();
+        assertEquals(List.of(Map.of("alice", Map.of(1, true, 2, false), "bob", Map.of(3, true))), batches);
+        reopened.close();
+
+        assertTrue(journal().replay().isEmpty());
+    }
+
+    private FavoriteJournal journal() throws IOException {
+        return new FavoriteJournal(directory.resolve("favorites.journal"), true);
+    }
+}
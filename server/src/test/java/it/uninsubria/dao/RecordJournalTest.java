@@ -0,0 +1,81 @@
+package it.uninsubria.dao;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RecordJournalTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void tornAndCorruptRecordsAreDiscarded() throws Exception {
+        try (RecordJournal journal = journal()) {
+            journal.append(new byte[]{1, 2, 3});
+            journal.append(new byte[]{4});
+        }
+        long valid = Files.size(path());
+        try (FileChannel channel = FileChannel.open(path(), StandardOpenOption.APPEND)) {
+            // A record whose checksum does not match, as left by a crash in the middle of the write
+            channel.write(ByteBuffer.wrap(new byte[]{0, 0, 0, 1, 5, 0, 0, 0, 0}));
+        }
+        try (RecordJournal journal = journal()) {
+            assertEquals(valid, Files.size(path()));
+            journal.append(new byte[]{6});
+            assertEquals(List.of(List.of((byte) 1, (byte) 2, (byte) 3), List.of((byte) 4), List.of((byte) 6)),
+                    journal.records().stream().map(RecordJournalTest::bytes).toList());
+        }
+    }
+
+    @Test
+    void aJournalBelongsToOneServer() throws Exception {
+        RecordJournal journal = journal();
+        journal.append(new byte[]{1});
+        assertThrows(IOException.class, this::journal);
+
+        // The lock survives the rewrite of the journal, and is released when it is closed
+        journal.rewrite(List.of(new byte[]{2}));
+        assertThrows(IOException.class, this::journal);
+        journal.close();
+        try (RecordJournal reopened = journal()) {
+            assertEquals(List.of(List.of((byte) 2)), reopened.records().stream().map(RecordJournalTest::bytes).toList());
+        }
+    }
+
+    @Test
+    void theDefaultPathDependsOnTheServer() {
+        System.setProperty("theknife.rmi.port", "1100");
+        try {
+            assertEquals(Path.of("reviews-1100.journal"), RecordJournal.defaultPath("reviews"));
+        } finally {
+            System.clearProperty("theknife.rmi.port");
+        }
+        assertEquals(Path.of("reviews-1099.journal"), RecordJournal.defaultPath("reviews"));
+    }
+
+    private RecordJournal journal() throws IOException {
+        return new RecordJournal(path(), true);
+    }
+
+    private Path path() {
+        return directory.resolve("test.journal");
+    }
+
+    private static List<Byte> bytes(byte[] payload) {
+        Byte[] boxed = new Byte[payload.length];
+        for (int i = 0; i < payload.length; i++) {
+            boxed[i] = payload[i];
+        }
+        return List.of(boxed);
+    }
+}
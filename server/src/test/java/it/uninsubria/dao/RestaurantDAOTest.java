@@ -0,0 +1,129 @@
+package it.uninsubria.dao;
+
+import it.uninsubria.DBConnection;
+import it.uninsubria.dto.CuisineType;
+import it.uninsubria.dto.RestaurantDTO;
+import it.uninsubria.dto.RestaurantStatsDTO;
+import it.uninsubria.dto.SearchCriteriaDTO;
+import it.uninsubria.testsupport.LocalDatabaseExtension;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@ExtendWith(LocalDatabaseExtension.class)
+class RestaurantDAOTest {
+
+    @BeforeEach
+    void premise() throws Exception {
+        DBConnection.login(new String[]{"theknife", "password"});
+    }
+
+    @AfterEach
+    void release() {
+        DBConnection.releaseConnection();
+    }
+
+    @Test
+    void bufferedFavoritesOfUnknownRestaurantsAreRefused(@TempDir Path directory) throws Exception {
+        System.setProperty("theknife.favorites.journal", directory.resolve("favorites.journal").toString());
+        FavoriteBuffer.start();
+        try {
+            assertThrows(SQLException.class, () -> RestaurantDAO.insertFavoriteRestaurant("Zion.Schroeder", "999999"));
+            assertThrows(SQLException.class, () -> RestaurantDAO.insertFavoriteRestaurant("nobody", "1"));
+            assertTrue(FavoriteBuffer.get().pendingFor("Zion.Schroeder").isEmpty());
+
+            RestaurantDAO.insertFavoriteRestaurant("Zion.Schroeder", "1");
+            assertEquals(Map.of(1, true), FavoriteBuffer.get().pendingFor("Zion.Schroeder"));
+            RestaurantDAO.deleteFavoriteRestaurant("Zion.Schroeder", "1");
+        } finally {
+            FavoriteBuffer.stop();
+            System.clearProperty("theknife.favorites.journal");
+        }
+    }
+
+    @Test
+    void everyFilterCombinationReusesOnePreparedStatement() throws Exception {
+        List<SearchCriteriaDTO> searches = List.of(
+                SearchCriteriaDTO.builder().coordinates(45.46, 9.19).build(),
+                SearchCriteriaDTO.builder().coordinates(45.46, 9.19).deliveryAvailable(true).build(),
+                SearchCriteriaDTO.builder().coordinates(41.90, 12.49).cuisineType(CuisineType.values()[0]).build(),
+                SearchCriteriaDTO.builder().coordinates(41.90, 12.49).priceRange(10.0, 80.0).build(),
+                SearchCriteriaDTO.builder().coordinates(15.0, 5.0).onlineBookingAvailable(false).minRating(3).build());
+        for (int round = 0; round < 3; round++) {
+            for (SearchCriteriaDTO criteria : searches) {
+                RestaurantDAO.searchRestaurants(criteria);
+            }
+        }
+
+        // The searches ran on the connection bound to this thread, where the driver prepared the statement
+        Connection conn = DBConnection.getReadConnection();
+        try (PreparedStatement stmt = conn.prepareStatement(
+                "SELECT COUNT(*) FROM pg_prepared_statements WHERE statement LIKE '%AS min_rating%'");
+             ResultSet res = stmt.executeQuery()) {
+            assertTrue(res.next());
+            assertEquals(1, res.getInt(1));
+        }
+    }
+
+    @Test
+    void searchResultsCarryAddressAndRatings() {
+        List<RestaurantDTO> found = RestaurantDAO.searchRestaurants(
+                SearchCriteriaDTO.builder().coordinates(15.0, 5.0).deliveryAvailable(true).build());
+        assertFalse(found.isEmpty());
+        for (RestaurantDTO restaurant : found) {
+            assertNotNull(restaurant.getAddress());
+            assertTrue(restaurant.getReviewsNumber() >= 0);
+            if (restaurant.getReviewsNumber() == 0) {
+                assertNull(restaurant.getAvgRating());
+            } else {
+                assertNotNull(restaurant.getAvgRating());
+            }
+        }
+    }
+
+    @Test
+    void ownerDashboardMatchesTheOwnedRestaurants() throws Exception {
+        String owner;
+        Connection conn = DBConnection.getReadConnection();
+        try (PreparedStatement stmt = conn.prepareStatement(
+                "SELECT r_owner FROM restaurants GROUP BY r_owner ORDER BY COUNT(*) DESC LIMIT 1");
+             ResultSet res = stmt.executeQuery()) {
+            assertTrue(res.next());
+            owner = res.getString(1);
+        }
+
+        List<RestaurantStatsDTO> dashboard = RestaurantDAO.getOwnerDashboard(owner);
+        Map<String, RestaurantDTO> owned = new HashMap<>();
+        for (RestaurantDTO restaurant : RestaurantDAO.getOwnedRestaurants(owner)) {
+            owned.put(restaurant.getRestaurant_id(), restaurant);
+        }
+        assertEquals(owned.size(), dashboard.size());
+        for (RestaurantStatsDTO stats : dashboard) {
+            RestaurantDTO restaurant = owned.get(stats.getRestaurant().getRestaurant_id());
+            assertNotNull(restaurant);
+            assertEquals(restaurant.getReviewsNumber().intValue(), stats.getReviewCount());
+            assertEquals(stats.getReviewCount(), Arrays.stream(stats.getRatingHistogram()).sum());
+            assertTrue(stats.getUnrepliedCount() <= stats.getReviewCount());
+            assertEquals(stats.getReviewCount() > 0, stats.getLatestReview() != null);
+            if (restaurant.getAvgRating() == null) {
+                assertNull(stats.getAverageRating());
+            } else {
+                assertEquals(restaurant.getAvgRating(), stats.getAverageRating(), 1e-9);
+            }
+        }
+    }
+}
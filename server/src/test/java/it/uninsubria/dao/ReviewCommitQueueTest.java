@@ -0,0 +1,181 @@
+package it.uninsubria.dao;
+
+import it.uninsubria.dto.ReviewDTO;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ReviewCommitQueueTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void concurrentReviewsShareACommit() throws Exception {
+        List<Integer> batches = Collections.synchronizedList(new ArrayList<>());
+        CountDownLatch firstCommit = new CountDownLatch(1);
+        ReviewCommitQueue queue = new ReviewCommitQueue(reviews -> {
+            // The first commit is slow, so that the other reviews pile up behind it
+            try {
+                firstCommit.await();
+            } catch (InterruptedException e) {
+                throw new SQLException(e);
+            }
+            batches.add(reviews.size());
+            return new boolean[reviews.size()];
+        }, 100, 50, 5);
+        queue.begin();
+        ExecutorService callers = Executors.newFixedThreadPool(20);
+        try {
+            List<Future<Boolean>> results = new ArrayList<>();
+            for (int i = 0; i < 20; i++) {
+                ReviewDTO review = review("user" + i, "1");
+                results.add(callers.submit(() -> queue.submit(review)));
+            }
+            Thread.sleep(200);
+            firstCommit.countDown();
+            for (Future<Boolean> result : results) {
+                assertFalse(result.get());
+            }
+        } finally {
+            callers.shutdown();
+            queue.end();
+        }
+        assertEquals(20, batches.stream().mapToInt(Integer::intValue).sum());
+        assertTrue(batches.size() <= 3, "batches: " + batches);
+    }
+
+    @Test
+    void aFailingReviewOnlyFailsItsCaller() throws Exception {
+        ReviewCommitQueue queue = new ReviewCommitQueue(reviews -> {
+            for (ReviewDTO review : reviews) {
+                if (review.getUsername().equals("mallory")) {
+                    throw new SQLException("check violation");
+                }
+            }
+            boolean[] written = new boolean[reviews.size()];
+            Arrays.fill(written, true);
+            return written;
+        }, 100, 50, 50);
+        queue.begin();
+        ExecutorService callers = Executors.newFixedThreadPool(3);
+        try {
+            Future<Boolean> alice = callers.submit(() -> queue.submit(review("alice", "1")));
+            Future<Boolean> mallory = callers.submit(() -> queue.submit(review("mallory", "1")));
+            Future<Boolean> bob = callers.submit(() -> queue.submit(review("bob", "2")));
+            assertTrue(alice.get());
+            assertTrue(bob.get());
+            Exception e = assertThrows(Exception.class, mallory::get);
+            assertInstanceOf(SQLException.class, e.getCause());
+        } finally {
+            callers.shutdown();
+            queue.end();
+        }
+    }
+
+    @Test
+    void acknowledgedReviewsSurviveARestart() throws Exception {
+        CountDownLatch crash = new CountDownLatch(1);
+        ReviewJournal journal = journal();
+        ReviewCommitQueue queue = new ReviewCommitQueue(reviews -> {
+            // The server dies before the first commit
+            try {
+                crash.await();
+            } catch (InterruptedException e) {
+                throw new SQLException(e);
+            }
+            throw new SQLException("server stopped");
+        }, journal, 100, 50, 5);
+        queue.begin();
+        CompletableFuture<Boolean> first = queue.submitAsync(review("alice", "1"));
+        queue.submitAsync(review("bob", "2"));
+        queue.submitAsync(new ReviewDTO("alice", "1", 2, "changed my mind", null));
+        assertFalse(first.isDone());
+        // The crash releases the journal
+        journal.close();
+
+        List<ReviewDTO> written = Collections.synchronizedList(new ArrayList<>());
+        ReviewCommitQueue restarted = new ReviewCommitQueue(reviews -> {
+            written.addAll(reviews);
+            boolean[] result = new boolean[reviews.size()];
+            Arrays.fill(result, true);
+            return result;
+        }, journal(), 100, 50, 5);
+        restarted.begin();
+        restarted.end();
+        crash.countDown();
+        queue.end();
+
+        assertEquals(List.of("bob 4", "alice 2"), written.stream()
+                .map(review -> review.getUsername() + " " + review.getRating()).sorted(Comparator.reverseOrder()).toList());
+        assertTrue(journal().replay().isEmpty());
+    }
+
+    @Test
+    void journaledReviewsAreKeptUntilTheDatabaseIsBack() throws Exception {
+        AtomicInteger attempts = new AtomicInteger();
+        ReviewJournal journal = journal();
+        ReviewCommitQueue queue = new ReviewCommitQueue(reviews -> {
+            // The connection is lost for the batch and for the single reviews, then comes back
+            if (attempts.incrementAndGet() <= 3) {
+                throw new SQLException("connection lost", "08006");
+            }
+            for (ReviewDTO review : reviews) {
+                if (review.getUsername().equals("mallory")) {
+                    throw new SQLException("check violation", "23514");
+                }
+            }
+            boolean[] written = new boolean[reviews.size()];
+            Arrays.fill(written, true);
+            return written;
+        }, journal, 100, 50, 50, 10);
+        CompletableFuture<Boolean> alice = queue.submitAsync(review("alice", "1"));
+        CompletableFuture<Boolean> mallory = queue.submitAsync(review("mallory", "1"));
+        queue.begin();
+        try {
+            assertTrue(alice.get(5, TimeUnit.SECONDS));
+            Exception e = assertThrows(ExecutionException.class, () -> mallory.get(5, TimeUnit.SECONDS));
+            assertEquals("23514", ((SQLException) e.getCause()).getSQLState());
+            assertTrue(attempts.get() > 3);
+        } finally {
+            queue.end();
+        }
+        assertTrue(journal().replay().isEmpty());
+    }
+
+    @Test
+    void onlyDataErrorsAreFinal() {
+        assertTrue(ReviewCommitQueue.isDataError(new SQLException("bad number", "22P02")));
+        assertTrue(ReviewCommitQueue.isDataError(new SQLException("foreign key", "23503")));
+        assertTrue(ReviewCommitQueue.isDataError(new NumberFormatException("x")));
+        assertFalse(ReviewCommitQueue.isDataError(new SQLException("connection refused", "08001")));
+        assertFalse(ReviewCommitQueue.isDataError(new SQLException("serialization failure", "40001")));
+        assertFalse(ReviewCommitQueue.isDataError(new SQLException("unknown")));
+    }
+
+    private ReviewJournal journal() throws IOException {
+        return new ReviewJournal(directory.resolve("reviews.journal"), true);
+    }
+
+    private static ReviewDTO review(String username, String restaurant) {
+        return new ReviewDTO(username, restaurant, 4, "good", null);
+    }
+}
@@ -0,0 +1,102 @@
+package it.uninsubria.dao;
+
+import it.uninsubria.DBConnection;
+import it.uninsubria.dto.ReviewDTO;
+import it.uninsubria.testsupport.LocalDatabaseExtension;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@ExtendWith(LocalDatabaseExtension.class)
+class ReviewDAOTest {
+
+    @BeforeEach
+    void premise() throws Exception {
+        DBConnection.login(new String[]{"theknife", "password"});
+    }
+
+    @AfterEach
+    void release() {
+        DBConnection.releaseConnection();
+    }
+
+    @Test
+    void pendingRepliesArePagedOldestFirst() throws Exception {
+        String owner = busiestOwner();
+        List<ReviewDTO> all = new ArrayList<>();
+        List<ReviewDTO> page = ReviewDAO.getPendingReplies(owner, null, 3);
+        while (!page.isEmpty()) {
+            assertTrue(page.size() <= 3);
+            all.addAll(page);
+            page = ReviewDAO.getPendingReplies(owner, page.get(page.size() - 1), 3);
+        }
+
+        assertEquals(countPending(owner), all.size());
+        Set<String> seen = new HashSet<>();
+        for (int i = 0; i < all.size(); i++) {
+            ReviewDTO review = all.get(i);
+            assertNull(review.getReply());
+            assertTrue(seen.add(review.getUsername() + "/" + review.getRestaurant_id()));
+            if (i > 0) {
+                assertFalse(review.getReviewedAt().isBefore(all.get(i - 1).getReviewedAt()));
+            }
+        }
+    }
+
+    @Test
+    void aReplyIsOnlyWrittenOnTheVersionThatWasRead() throws Exception {
+        String owner = busiestOwner();
+        ReviewDTO read = ReviewDAO.getPendingReplies(owner, null, 1).get(0);
+
+        assertFalse(ReviewDAO.replyToReview("not-the-owner", read, "Thanks"));
+        assertTrue(ReviewDAO.replyToReview(owner, read, "Thanks"));
+        // A second reply based on the same, now stale, version is refused
+        assertFalse(ReviewDAO.replyToReview(owner, read, "Thank you!"));
+
+        ReviewDTO written = null;
+        for (ReviewDTO review : ReviewDAO.getRestaurantReviews(read.getRestaurant_id())) {
+            if (review.getUsername().equals(read.getUsername())) {
+                written = review;
+            }
+        }
+        assertNotNull(written);
+        assertEquals("Thanks", written.getReply());
+        assertEquals(read.getRating(), written.getRating());
+        assertEquals(read.getComment(), written.getComment());
+        assertEquals(read.getReviewedAt(), written.getReviewedAt());
+    }
+
+    private static String busiestOwner() throws Exception {
+        Connection conn = DBConnection.getReadConnection();
+        try (PreparedStatement stmt = conn.prepareStatement("SELECT r.r_owner FROM restaurants r " +
+                "JOIN reviews v ON v.restaurant_id = r.restaurant_id AND v.reply IS NULL " +
+                "GROUP BY r.r_owner ORDER BY COUNT(*) DESC LIMIT 1");
+             ResultSet res = stmt.executeQuery()) {
+            assertTrue(res.next());
+            return res.getString(1);
+        }
+    }
+
+    private static int countPending(String owner) throws Exception {
+        Connection conn = DBConnection.getReadConnection();
+        try (PreparedStatement stmt = conn.prepareStatement("SELECT COUNT(*) FROM restaurants r " +
+                "JOIN reviews v ON v.restaurant_id = r.restaurant_id AND v.reply IS NULL WHERE r.r_owner = ?")) {
+            stmt.setString(1, owner);
+            try (ResultSet res = stmt.executeQuery()) {
+                assertTrue(res.next());
+                return res.getInt(1);
+            }
+        }
+    }
+}
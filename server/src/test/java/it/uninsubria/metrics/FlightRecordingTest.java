@@ -0,0 +1,47 @@
+package it.uninsubria.metrics;
+
+import it.uninsubria.dto.UserDTO;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FlightRecordingTest {
+    @TempDir
+    Path directory;
+
+    @Test
+    void shippedProfileEnablesServerEvents() throws Exception {
+        Path file = directory.resolve("recording.jfr");
+        try (Recording recording = new Recording(FlightRecording.settings())) {
+            recording.start();
+            PasswordEvent.time("verify", "user", () -> true);
+            RemoteCallEvent event = new RemoteCallEvent();
+            event.service = "UserService";
+            event.method = "login";
+            event.commit();
+            recording.stop();
+            recording.dump(file);
+        }
+        List<RecordedEvent> events = RecordingFile.readAllEvents(file);
+        assertTrue(events.stream().anyMatch(e -> e.getEventType().getName().equals("it.uninsubria.Password")
+                && "verify".equals(e.getString("operation"))));
+        assertTrue(events.stream().anyMatch(e -> e.getEventType().getName().equals("it.uninsubria.RemoteCall")
+                && "login".equals(e.getString("method"))));
+    }
+
+    @Test
+    void userOfRemoteCalls() throws Exception {
+        assertEquals("anna", MonitoredService.userOf(
+                Object.class.getMethod("equals", Object.class), new Object[]{new UserDTO("anna", "pw")}));
+        assertEquals("marco", MonitoredService.userOf(
+                Object.class.getMethod("equals", Object.class), new Object[]{"marco", "12"}));
+        assertNull(MonitoredService.userOf(Object.class.getMethod("toString"), null));
+    }
+}
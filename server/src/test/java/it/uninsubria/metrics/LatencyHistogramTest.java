@@ -0,0 +1,61 @@
+package it.uninsubria.metrics;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LatencyHistogramTest {
+
+    @Test
+    void slotsCoverValuesWithSmallError() {
+        for (long value = 0; value < 10_000_000; value = value * 3 / 2 + 1) {
+            long highest = LatencyHistogram.highestEquivalentValue(LatencyHistogram.indexOf(value));
+            assertTrue(highest >= value, "slot of " + value);
+            assertTrue(highest - value <= value / 64, "error of " + value);
+        }
+        assertEquals(LatencyHistogram.MAX_VALUE,
+                LatencyHistogram.highestEquivalentValue(LatencyHistogram.indexOf(LatencyHistogram.MAX_VALUE)));
+    }
+
+    @Test
+    void percentiles() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 1; i <= 1000; i++) {
+            histogram.record(i * 1000L);
+        }
+        assertEquals(1000, histogram.getCount());
+        assertEquals(500_500.0, histogram.getMean(), 0.001);
+        assertEquals(1_000_000, histogram.getMax());
+        assertEquals(500_000, histogram.getValueAtPercentile(50), 500_000 / 64);
+        assertEquals(990_000, histogram.getValueAtPercentile(99), 990_000 / 64);
+        assertEquals(1_000_000, histogram.getValueAtPercentile(100));
+    }
+
+    @Test
+    void addAndReset() {
+        LatencyHistogram first = new LatencyHistogram();
+        LatencyHistogram second = new LatencyHistogram();
+        first.record(10);
+        second.record(5_000);
+        first.add(second);
+        assertEquals(2, first.getCount());
+        assertEquals(5_000, first.getMax());
+        first.reset();
+        assertEquals(0, first.getCount());
+        assertEquals(0, first.getValueAtPercentile(99));
+    }
+
+    @Test
+    void subtractLeavesInterval() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(1_000_000);
+        LatencyHistogram earlier = new LatencyHistogram();
+        earlier.add(histogram);
+        histogram.record(100);
+        histogram.record(200);
+        histogram.subtract(earlier);
+        assertEquals(2, histogram.getCount());
+        assertEquals(150.0, histogram.getMean(), 0.001);
+        assertEquals(200, histogram.getMax(), 200 / 64);
+    }
+}
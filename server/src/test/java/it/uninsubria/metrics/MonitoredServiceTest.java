@@ -0,0 +1,70 @@
+package it.uninsubria.metrics;
+
+import it.uninsubria.dto.ReviewDTO;
+import it.uninsubria.services.ReviewCallback;
+import it.uninsubria.services.ReviewService;
+import org.junit.jupiter.api.Test;
+
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MonitoredServiceTest {
+
+    @Test
+    void callsAreCountedAndPublished() throws Exception {
+        ReviewService service = new FakeReviewService();
+        ReviewService stub = MonitoredService.export(ReviewService.class, service);
+        assertEquals(1, stub.getReviews("1").size());
+        assertEquals(1, stub.getReviews("2").size());
+        assertThrows(SecurityException.class, () -> stub.deleteReview("user", "1"));
+
+        MethodMetrics getReviews = ServerMetrics.forMethod("ReviewService", "getReviews");
+        assertEquals(2, getReviews.getCalls());
+        assertEquals(0, getReviews.getErrors());
+        assertEquals(0, getReviews.getInFlight());
+        assertTrue(getReviews.getMaxMillis() > 0);
+        assertEquals(1, ServerMetrics.forMethod("ReviewService", "deleteReview").getErrors());
+        ObjectName name = new ObjectName("it.uninsubria:type=RemoteMethod,service=ReviewService,name=getReviews");
+        assertEquals(2L, ManagementFactory.getPlatformMBeanServer().getAttribute(name, "Calls"));
+    }
+
+    private static class FakeReviewService implements ReviewService {
+        @Override
+        public List<ReviewDTO> getReviews(String restaurantId) {
+            return List.of(new ReviewDTO("user", restaurantId, 5, "Good", null));
+        }
+
+        @Override
+        public boolean createOrUpdateReview(ReviewDTO review) {
+            return true;
+        }
+
+        @Override
+        public boolean submitReview(ReviewDTO review, ReviewCallback callback) {
+            return true;
+        }
+
+        @Override
+        public List<ReviewDTO> getPendingReplies(String ownerId, ReviewDTO after, int limit) {
+            return List.of();
+        }
+
+        @Override
+        public boolean replyToReview(String ownerId, ReviewDTO review, String reply) {
+            return true;
+        }
+
+        @Override
+        public boolean deleteReview(String username, String restaurantId) {
+            throw new SecurityException("Not allowed");
+        }
+
+        @Override
+        public List<ReviewDTO> getUserReviews(String username) {
+            return List.of();
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package it.uninsubria.metrics;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TimedConnectionTest {
+
+    @Test
+    void executionsAndRowsAreRecordedByTemplate() throws Exception {
+        // The monitor is shared with the other tests of the JVM, which may run the same statements
+        StatementMetrics select = SqlMonitor.get().forStatement("SELECT * FROM reviews WHERE restaurant_id = ?");
+        StatementMetrics delete = SqlMonitor.get().forStatement("DELETE FROM favorites WHERE username = ?");
+        long selectExecutions = select.getExecutions();
+        long selectRows = select.getRows();
+        long deleteExecutions = delete.getExecutions();
+        long deleteRows = delete.getRows();
+        Connection conn = TimedConnection.wrap(fakeConnection());
+        String query = "SELECT *   FROM reviews\n WHERE restaurant_id = ?";
+        for (int i = 0; i < 2; i++) {
+            try (PreparedStatement stmt = conn.prepareStatement(query)) {
+                stmt.setInt(1, 42);
+                try (ResultSet rs = stmt.executeQuery()) {
+                    while (rs.next()) {
+                        rs.getString(1);
+                    }
+                }
+            }
+        }
+        try (PreparedStatement stmt = conn.prepareStatement("DELETE FROM favorites WHERE username = ?")) {
+            stmt.setString(1, "user");
+            assertEquals(2, stmt.executeUpdate());
+        }
+
+        assertEquals(2, select.getExecutions() - selectExecutions);
+        assertEquals(6, select.getRows() - selectRows);
+        assertEquals(1, delete.getExecutions() - deleteExecutions);
+        assertEquals(2, delete.getRows() - deleteRows);
+    }
+
+    @Test
+    void slowQueriesAreLoggedWithRedactedParameters() throws Exception {
+        SqlMonitor monitor = SqlMonitor.get();
+        long threshold = monitor.getSlowQueryThresholdMillis();
+        PrintStream err = System.err;
+        ByteArrayOutputStream log = new ByteArrayOutputStream();
+        monitor.setSlowQueryThresholdMillis(0);
+        System.setErr(new PrintStream(log, true));
+        try (PreparedStatement stmt = TimedConnection.wrap(fakeConnection())
+                .prepareStatement("SELECT * FROM users WHERE username = ?")) {
+            stmt.setString(1, "secret-user");
+            stmt.executeQuery().close();
+        } finally {
+            System.setErr(err);
+            monitor.setSlowQueryThresholdMillis(threshold);
+        }
+        String logged = log.toString();
+        assertTrue(logged.contains("[slow-query]"), logged);
+        assertTrue(logged.contains("$1=String"), logged);
+        assertFalse(logged.contains("secret-user"), logged);
+    }
+
+    @Test
+    void plansAreCapturedOnlyForStatementsWhichRead() {
+        assertTrue(SqlMonitor.isQuery("SELECT * FROM users WHERE username = ?"));
+        assertTrue(SqlMonitor.isQuery("WITH p AS (SELECT ? AS lat) SELECT * FROM restaurants, p"));
+        assertTrue(SqlMonitor.isQuery("  with p as (select 1) select * from p"));
+        assertFalse(SqlMonitor.isQuery("WITH a AS (INSERT INTO addresses VALUES (?) RETURNING id) INSERT INTO users SELECT id FROM a"));
+        assertFalse(SqlMonitor.isQuery("WITH old AS (DELETE FROM favorites RETURNING *) SELECT count(*) FROM old"));
+        assertFalse(SqlMonitor.isQuery("UPDATE reviews SET reply = ?"));
+    }
+
+    private static Connection fakeConnection() {
+        return (Connection) Proxy.newProxyInstance(loader(), new Class<?>[]{Connection.class},
+                (proxy, method, args) -> method.getName().equals("prepareStatement") ? fakeStatement() : null);
+    }
+
+    private static PreparedStatement fakeStatement() {
+        return (PreparedStatement) Proxy.newProxyInstance(loader(),
+                new Class<?>[]{PreparedStatement.class}, (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "executeQuery":
+                            return fakeResultSet(3);
+                        case "executeUpdate":
+                            return 2;
+                        default:
+                            return null;
+                    }
+                });
+    }
+
+    private static ResultSet fakeResultSet(int rows) {
+        int[] remaining = {rows};
+        return (ResultSet) Proxy.newProxyInstance(loader(), new Class<?>[]{ResultSet.class},
+                (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "next":
+                            return remaining[0]-- > 0;
+                        case "getString":
+                            return "value";
+                        default:
+                            return null;
+                    }
+                });
+    }
+
+    private static ClassLoader loader() {
+        return TimedConnectionTest.class.getClassLoader();
+    }
+}
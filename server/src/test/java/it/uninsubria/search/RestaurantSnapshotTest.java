@@ -0,0 +1,80 @@
+package it.uninsubria.search;
+
+import it.uninsubria.dto.CuisineType;
+import it.uninsubria.dto.SearchCriteriaDTO;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RestaurantSnapshotTest {
+
+    @Test
+    void returnsTheClosestMatchingRowsInOrder() {
+        Random random = new Random(7);
+        RestaurantSnapshot.Builder builder = new RestaurantSnapshot.Builder();
+        List<Integer> matching = new ArrayList<>();
+        int size = 5000;
+        for (int i = 0; i < size; i++) {
+            CuisineType cuisine = CuisineType.values()[random.nextInt(5)];
+            int price = 10 + random.nextInt(90);
+            boolean delivery = random.nextBoolean();
+            Double rating = random.nextInt(4) == 0 ? null : 1 + random.nextDouble() * 4;
+            builder.add(i + 1, i + 1, "owner", "restaurant " + i, 40 + random.nextDouble() * 10, 5 + random.nextDouble() * 10,
+                    cuisine, price, delivery, random.nextBoolean(), rating, random.nextInt(20));
+            if (cuisine == CuisineType.values()[2] && price >= 20 && price <= 70 && delivery && rating != null && rating >= 3) {
+                matching.add(i);
+            }
+        }
+        RestaurantSnapshot snapshot = builder.build();
+        assertEquals(size, snapshot.size());
+
+        SearchCriteriaDTO criteria = SearchCriteriaDTO.builder().coordinates(45.46, 9.19)
+                .cuisineType(CuisineType.values()[2]).priceRange(20.0, 70.0).deliveryAvailable(true).minRating(3)
+                .build();
+        int[] rows = snapshot.searchRows(criteria, 25);
+        matching.sort(Comparator.comparingDouble(row -> snapshot.distance(row, 45.46, 9.19)));
+        assertEquals(25, rows.length);
+        for (int i = 0; i < rows.length; i++) {
+            assertEquals(matching.get(i), rows[i]);
+        }
+    }
+
+    @Test
+    void returnsFewerRowsWhenFewMatch() {
+        RestaurantSnapshot snapshot = new RestaurantSnapshot.Builder()
+                .add(1, 1, "owner", "far", 46.0, 9.0, CuisineType.values()[0], 30, true, false, null, 0)
+                .add(2, 2, "owner", "near", 45.5, 9.2, CuisineType.values()[0], 30, true, true, 4.5, 2)
+                .add(3, 3, "owner", "no delivery", 45.46, 9.19, CuisineType.values()[0], 30, false, true, 4.0, 1)
+                .build();
+        SearchCriteriaDTO criteria = SearchCriteriaDTO.builder().coordinates(45.46, 9.19).deliveryAvailable(true).build();
+        assertArrayEquals(new int[]{1, 0}, snapshot.searchRows(criteria, 25));
+        assertArrayEquals(new int[]{2}, snapshot.searchRows(SearchCriteriaDTO.builder().coordinates(45.46, 9.19).build(), 1));
+        assertArrayEquals(new int[]{2, 1}, snapshot.searchRows(
+                SearchCriteriaDTO.builder().coordinates(45.46, 9.19).minRating(4).onlineBookingAvailable(true).build(), 25));
+        assertArrayEquals(new int[]{1}, snapshot.searchRows(
+                SearchCriteriaDTO.builder().coordinates(45.46, 9.19).minRating(4).deliveryAvailable(true).build(), 25));
+    }
+
+    @Test
+    void pricesAreComparedAndKeptExactly() {
+        // 262144.01 is 262144.0 in single precision
+        RestaurantSnapshot snapshot = new RestaurantSnapshot.Builder()
+                .add(1, 1, "owner", "just above", 45.46, 9.19, CuisineType.values()[0], 262144.01, true, true, null, 0)
+                .add(2, 2, "owner", "at the limit", 45.47, 9.19, CuisineType.values()[0], 262144.0, true, true, null, 0)
+                .add(3, 3, "owner", "cheap", 45.48, 9.19, CuisineType.values()[0], 12.34, true, true, null, 0)
+                .build();
+        assertArrayEquals(new int[]{1, 2}, snapshot.searchRows(
+                SearchCriteriaDTO.builder().coordinates(45.46, 9.19).priceRange(1.0, 262144.0).build(), 25));
+        assertArrayEquals(new int[]{1}, snapshot.searchRows(
+                SearchCriteriaDTO.builder().coordinates(45.46, 9.19).priceRange(262144.0, 262144.0).build(), 25));
+        assertArrayEquals(new int[]{1}, snapshot.searchRows(
+                SearchCriteriaDTO.builder().coordinates(45.46, 9.19).priceRange(12.35, 262144.0).build(), 25));
+        assertEquals(262144.01, snapshot.price[0]);
+        assertEquals(12.34, snapshot.price[2]);
+    }
+}
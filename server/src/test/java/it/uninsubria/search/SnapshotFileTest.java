@@ -0,0 +1,71 @@
+package it.uninsubria.search;
+
+import it.uninsubria.dto.CuisineType;
+import it.uninsubria.dto.SearchCriteriaDTO;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SnapshotFileTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void snapshotSurvivesTheFile() throws Exception {
+        RestaurantSnapshot.Builder builder = new RestaurantSnapshot.Builder().watermark(12345);
+        for (int i = 0; i < 200; i++) {
+            builder.add(i + 1, 1000 + i, i % 3 == 0 ? null : "owner" + i, "Trattoria è " + i, 45 + i / 100.0, 9 + i / 100.0,
+                    i % 7 == 0 ? null : CuisineType.values()[i % 11], 10.5 + i, i % 2 == 0, i % 5 == 0,
+                    i % 4 == 0 ? null : 1 + (i % 40) / 10.0, i % 9);
+        }
+        RestaurantSnapshot original = builder.build();
+        Path path = directory.resolve("restaurants.snapshot");
+        SnapshotFile.write(original, path);
+        RestaurantSnapshot read = SnapshotFile.read(path);
+
+        assertEquals(original.size(), read.size());
+        assertEquals(12345, read.watermark);
+        assertArrayEquals(original.id, read.id);
+        assertArrayEquals(original.addressId, read.addressId);
+        assertArrayEquals(original.owner, read.owner);
+        assertArrayEquals(original.name, read.name);
+        assertArrayEquals(original.lat, read.lat);
+        assertArrayEquals(original.lon, read.lon);
+        assertArrayEquals(original.cuisine, read.cuisine);
+        assertArrayEquals(original.price, read.price);
+        assertArrayEquals(original.delivery, read.delivery);
+        assertArrayEquals(original.booking, read.booking);
+        assertArrayEquals(original.rating, read.rating);
+        assertArrayEquals(original.reviews, read.reviews);
+        SearchCriteriaDTO criteria = SearchCriteriaDTO.builder().coordinates(45.5, 9.5).deliveryAvailable(true).build();
+        assertArrayEquals(original.searchRows(criteria, 25), read.searchRows(criteria, 25));
+    }
+
+    @Test
+    void corruptedFilesAreRejected() throws Exception {
+        RestaurantSnapshot snapshot = new RestaurantSnapshot.Builder()
+                .add(1, 1, "owner", "name", 45, 9, CuisineType.values()[0], 20, true, true, 4.0, 3)
+                .build();
+        Path path = directory.resolve("restaurants.snapshot");
+        SnapshotFile.write(snapshot, path);
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.wrap(new byte[]{42}), channel.size() - 3);
+        }
+        IOException e = assertThrows(IOException.class, () -> SnapshotFile.read(path));
+        assertTrue(e.getMessage().contains("Corrupted"));
+
+        SnapshotFile.write(snapshot, path);
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+            channel.truncate(channel.size() - 1);
+        }
+        assertThrows(IOException.class, () -> SnapshotFile.read(path));
+    }
+}
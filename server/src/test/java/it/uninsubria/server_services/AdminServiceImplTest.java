@@ -0,0 +1,46 @@
+package it.uninsubria.server_services;
+
+import it.uninsubria.dto.ServerStatusDTO;
+import it.uninsubria.metrics.SqlMonitor;
+import org.junit.jupiter.api.Test;
+
+import java.rmi.server.UnicastRemoteObject;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AdminServiceImplTest {
+
+    @Test
+    void wrongKeyIsRejected() throws Exception {
+        AdminServiceImpl service = new AdminServiceImpl("secret");
+        try {
+            assertThrows(SecurityException.class, () -> service.getStatus("wrong"));
+            assertThrows(SecurityException.class, () -> service.getStatus(null));
+            assertThrows(SecurityException.class, () -> service.clearCache("secre", null));
+        } finally {
+            UnicastRemoteObject.unexportObject(service, true);
+        }
+    }
+
+    @Test
+    void statusAndSlowQuerySettings() throws Exception {
+        AdminServiceImpl service = new AdminServiceImpl("secret");
+        SqlMonitor monitor = SqlMonitor.get();
+        boolean enabled = monitor.isSlowQueryLogEnabled();
+        long threshold = monitor.getSlowQueryThresholdMillis();
+        try {
+            service.setSlowQueryCapture("secret", true, 75, false);
+            ServerStatusDTO status = service.getStatus("secret");
+            assertTrue(status.isSlowQueryLogEnabled());
+            assertEquals(75, status.getSlowQueryThresholdMillis());
+            assertTrue(status.getHeapUsed() > 0);
+            assertFalse(status.getGarbageCollectors().isEmpty());
+            assertNotNull(status.getMethods());
+            assertNotNull(status.getCaches());
+        } finally {
+            monitor.setSlowQueryLogEnabled(enabled);
+            monitor.setSlowQueryThresholdMillis(threshold);
+            UnicastRemoteObject.unexportObject(service, true);
+        }
+    }
+}
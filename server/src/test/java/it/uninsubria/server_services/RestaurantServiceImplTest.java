@@ -1,17 +1,24 @@
 package it.uninsubria.server_services;
 
 import it.uninsubria.DBConnection;
+import it.uninsubria.TransactionTemplate;
 import it.uninsubria.dto.AddressDTO;
 import it.uninsubria.dto.CuisineType;
 import it.uninsubria.dto.RestaurantDTO;
 import it.uninsubria.dto.SearchCriteriaDTO;
+import it.uninsubria.testsupport.LocalDatabaseExtension;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
 
 import java.rmi.RemoteException;
+import java.sql.Connection;
+import java.sql.Statement;
 import java.util.List;
 
 import static org.junit.jupiter.api.Assertions.*;
+
+@ExtendWith(LocalDatabaseExtension.class)
 class RestaurantServiceImplTest {
 
     @BeforeEach
@@ -160,4 +167,22 @@ class RestaurantServiceImplTest {
         assertNotNull(result);
         assertEquals(testName, result.getR_name());
     }
-}
\ No newline at end of file
+
+    @Test
+    void slowDashboardFailsInsteadOfReturningNothing() throws Exception {
+        String owner = "Valerie_Treutel";
+        assertFalse(new RestaurantServiceImpl().getOwnerDashboard(owner).isEmpty());
+        RestaurantServiceImpl service = new RestaurantServiceImpl(TransactionTemplate.readOnly().withTimeout(1));
+        // The dashboard waits for the lock on the reviews longer than its statement timeout
+        try (Connection locker = DBConnection.openConnection()) {
+            locker.setAutoCommit(false);
+            try (Statement stmt = locker.createStatement()) {
+                stmt.execute("LOCK TABLE reviews IN ACCESS EXCLUSIVE MODE");
+            }
+            assertThrows(RemoteException.class, () -> service.getOwnerDashboard(owner));
+            locker.rollback();
+        } finally {
+            DBConnection.releaseConnection();
+        }
+    }
+}
@@ -2,12 +2,16 @@ package it.uninsubria.server_services;
 
 import it.uninsubria.DBConnection;
 import it.uninsubria.dto.ReviewDTO;
+import it.uninsubria.testsupport.LocalDatabaseExtension;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
 
 import java.util.List;
 
 import static org.junit.jupiter.api.Assertions.*;
+
+@ExtendWith(LocalDatabaseExtension.class)
 class ReviewServiceImplTest {
 
     @BeforeEach
@@ -5,14 +5,20 @@ import it.uninsubria.dto.AddressDTO;
 import it.uninsubria.dto.UserDTO;
 import it.uninsubria.dto.UserRoleDTO;
 import it.uninsubria.exceptions.UserException;
+import it.uninsubria.testsupport.LocalDatabaseExtension;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
 
+import java.sql.Connection;
 import java.sql.Date;
+import java.sql.ResultSet;
+import java.sql.Statement;
 
 import static org.junit.jupiter.api.Assertions.*;
 
+@ExtendWith(LocalDatabaseExtension.class)
 class UserServiceImplTest {
 
     @BeforeEach
@@ -62,6 +68,31 @@ class UserServiceImplTest {
         }
     }
 
+    @Test
+    void takenUsernameLeavesNoAddress() throws Exception {
+        AddressDTO address = new AddressDTO("Italy", "Varese", "Via Dunant", "3", 45.8, 8.8);
+        UserDTO user = new UserDTO("duplicateUser", "testPassword", "Test User", "Test Surname",
+                Date.valueOf("2000-01-01"), UserRoleDTO.CLIENT, address);
+        UserServiceImpl userService = new UserServiceImpl();
+        userService.register(user);
+        int addresses = countAddresses();
+
+        UserException e = assertThrows(UserException.class, () -> userService.register(user));
+        assertEquals("Username already exists", e.getMessage());
+        assertEquals(addresses, countAddresses(), "A refused registration must not insert its address");
+    }
+
+    @Test
+    void invalidAddressIsRefused() throws Exception {
+        AddressDTO address = new AddressDTO("Italy", "Nowhere", "Via Nulla", "1", 123.0, 8.8);
+        UserDTO user = new UserDTO("lostUser", "testPassword", "Test User", "Test Surname",
+                Date.valueOf("2000-01-01"), UserRoleDTO.CLIENT, address);
+        UserServiceImpl userService = new UserServiceImpl();
+
+        assertThrows(UserException.class, () -> userService.register(user));
+        assertThrows(SecurityException.class, () -> userService.login(new UserDTO("lostUser", "testPassword")));
+    }
+
     @Test
     void login() {
         String username = "testUser";
@@ -77,4 +108,12 @@ class UserServiceImplTest {
         }
 
     }
-}
\ No newline at end of file
+
+    private static int countAddresses() throws Exception {
+        Connection conn = DBConnection.getConnection();
+        try (Statement stmt = conn.createStatement(); ResultSet res = stmt.executeQuery("SELECT COUNT(*) FROM addresses")) {
+            assertTrue(res.next());
+            return res.getInt(1);
+        }
+    }
+}
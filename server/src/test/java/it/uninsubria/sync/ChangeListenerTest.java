@@ -0,0 +1,74 @@
+package it.uninsubria.sync;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ChangeListenerTest {
+
+    @Test
+    void parsesPayloads() {
+        Map.Entry<String, Set<Integer>> change = ChangeListener.parse("reviews 12,40,12");
+        assertEquals("reviews", change.getKey());
+        assertEquals(Set.of(12, 40), change.getValue());
+
+        Map.Entry<String, Set<Integer>> all = ChangeListener.parse("restaurants *");
+        assertEquals("restaurants", all.getKey());
+        assertNull(all.getValue());
+
+        assertNull(ChangeListener.parse("reviews"));
+        assertNull(ChangeListener.parse("reviews 1,x"));
+    }
+
+    @Test
+    void mergesABatchByCache() {
+        List<String> calls = new ArrayList<>();
+        ChangeListener listener = new ChangeListener(new Recorder(calls));
+
+        listener.apply("reviews 1,2", "addresses 7", "restaurants 2,3", "favorites 9", "garbage");
+
+        assertEquals(List.of("addresses [7]", "restaurants [1, 2, 3]"), calls);
+    }
+
+    @Test
+    void resyncsWhenTheIdsWereTooMany() {
+        List<String> calls = new ArrayList<>();
+        ChangeListener listener = new ChangeListener(new Recorder(calls));
+
+        listener.apply("reviews 1", "reviews *");
+
+        assertEquals(List.of("resync"), calls);
+    }
+
+    /**
+     * Target recording the calls of the listener, with the ids sorted.
+     */
+    private static class Recorder implements ChangeListener.Target {
+        /** Recorded calls */
+        private final List<String> calls;
+
+        Recorder(List<String> calls) {
+            this.calls = calls;
+        }
+
+        @Override
+        public void addresses(Set<Integer> addressIds) {
+            calls.add("addresses " + addressIds.stream().sorted().toList());
+        }
+
+        @Override
+        public void restaurants(Set<Integer> restaurantIds) {
+            calls.add("restaurants " + restaurantIds.stream().sorted().toList());
+        }
+
+        @Override
+        public void resync() {
+            calls.add("resync");
+        }
+    }
+}
@@ -0,0 +1,150 @@
+package it.uninsubria.testsupport;
+
+import io.zonky.test.db.postgres.embedded.EmbeddedPostgres;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Throwaway PostgreSQL server for the tests, the benchmarks and the load tests.
+ * The scripts are read from the resources of the server, which must be on the class path.
+ * A real PostgreSQL is started from the binaries bundled in the embedded-postgres library,
+ * in a temporary directory and on a free port, so nothing has to be installed or created by hand.
+ * The {@code theknife} role and the {@code theknife_db} database are created as in {@code create_database.sql},
+ * the tables are created with the scripts of {@code db/tables}, their change notifications with
+ * {@code notify_changes.sql} and, optionally, the sample rows are loaded.
+ * Closing the database stops the server and deletes its files.
+ * <p>
+ * Started as a program, it keeps the database running until interrupted and prints its URL,
+ * to be passed to the server with {@code -Dtheknife.db.url}; the {@code --empty} option skips the sample rows.
+ *
+ * @author Lorenzo Radice
+ */
+public class LocalDatabase implements AutoCloseable {
+    /** Role owning the database */
+    public static final String USER = "theknife";
+    /** Password of the role */
+    public static final String PASSWORD = "password";
+    /** Name of the database */
+    public static final String DATABASE = "theknife_db";
+    /** Table creation scripts, in foreign key order */
+    private static final String[] TABLE_SCRIPTS = {"addresses", "users", "restaurants", "favorites", "reviews"};
+    /** Embedded server */
+    private final EmbeddedPostgres postgres;
+
+    /**
+     * Constructor for LocalDatabase
+     * @param postgres started embedded server
+     */
+    private LocalDatabase(EmbeddedPostgres postgres) {
+        this.postgres = postgres;
+    }
+
+    /**
+     * Starts a new server and creates the database of the application.
+     * @param samples whether to load the sample rows of {@code db/samples}
+     * @return the running database, to close when it is no longer needed
+     * @throws IOException if the server cannot be started or a script cannot be read
+     * @throws SQLException if the database cannot be created
+     */
+    public static LocalDatabase start(boolean samples) throws IOException, SQLException {
+        LocalDatabase database = new LocalDatabase(EmbeddedPostgres.builder().start());
+        try {
+            database.create(samples);
+        } catch (IOException | SQLException | RuntimeException e) {
+            database.close();
+            throw e;
+        }
+        return database;
+    }
+
+    /**
+     * Returns the JDBC URL of the database of the application.
+     * @return URL to use as {@code theknife.db.url}
+     */
+    public String getUrl() {
+        return postgres.getJdbcUrl(USER, DATABASE);
+    }
+
+    /**
+     * Stops the server and deletes its files.
+     * @throws IOException if the server cannot be stopped
+     */
+    @Override
+    public void close() throws IOException {
+        postgres.close();
+    }
+
+    /**
+     * Creates the role, the database and the tables, and loads the sample rows.
+     * @param samples whether to load the sample rows
+     * @throws IOException if a script cannot be read
+     * @throws SQLException if a script fails
+     */
+    private void create(boolean samples) throws IOException, SQLException {
+        try (Connection conn = postgres.getPostgresDatabase().getConnection(); Statement stmt = conn.createStatement()) {
+            // DROP/CREATE DATABASE cannot run in the implicit transaction of a multi-statement query
+            for (String statement : readScript("/db/create_database.sql").split(";")) {
+                if (!statement.isBlank()) {
+                    stmt.execute(statement);
+                }
+            }
+        }
+        try (Connection conn = DriverManager.getConnection(getUrl(), USER, PASSWORD);
+             Statement stmt = conn.createStatement()) {
+            for (String table : TABLE_SCRIPTS) {
+                stmt.execute(readScript("/db/tables/" + table + ".sql"));
+            }
+            stmt.execute(readScript("/db/notify_changes.sql"));
+            if (samples) {
+                for (String table : TABLE_SCRIPTS) {
+                    stmt.execute(readScript("/db/samples/ex_" + table + ".sql"));
+                }
+            }
+        }
+    }
+
+    /**
+     * Reads an SQL script from the resources of the server.
+     * @param resource path of the script
+     * @return content of the script
+     * @throws IOException if the script cannot be read
+     */
+    private static String readScript(String resource) throws IOException {
+        try (InputStream in = LocalDatabase.class.getResourceAsStream(resource)) {
+            if (in == null) {
+                throw new IOException("Missing resource " + resource);
+            }
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+
+    /**
+     * Starts a database and keeps it running until the program is interrupted.
+     * @param args {@code --empty} to skip the sample rows
+     * @throws Exception if the database cannot be started
+     */
+    public static void main(String[] args) throws Exception {
+        boolean samples = args.length == 0 || !args[0].equals("--empty");
+        LocalDatabase database = start(samples);
+        CountDownLatch stopped = new CountDownLatch(1);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            try {
+                database.close();
+            } catch (IOException e) {
+                System.err.println("Error stopping the database: " + e.getMessage());
+            }
+            stopped.countDown();
+        }));
+        System.out.println("Local database running, press Ctrl+C to stop it");
+        System.out.println("Start the server with -Dtheknife.db.url=" + database.getUrl()
+                + " and the credentials " + USER + " " + PASSWORD);
+        stopped.await();
+    }
+}
@@ -0,0 +1,34 @@
+package it.uninsubria.testsupport;
+
+import org.junit.jupiter.api.extension.BeforeAllCallback;
+import org.junit.jupiter.api.extension.ExtensionContext;
+
+/**
+ * JUnit extension giving the tests a {@link LocalDatabase} with the sample rows.
+ * The database is started once per test run, before the first test class which uses it,
+ * and stopped at the end of the run; its URL is published in the {@code theknife.db.url} property,
+ * so that {@code DBConnection.login(String[])} connects to it.
+ * If the property is already set, the tests use that database instead and nothing is started.
+ *
+ * @author Lorenzo Radice
+ */
+public class LocalDatabaseExtension implements BeforeAllCallback {
+    /** Namespace of the shared database in the root store */
+    private static final ExtensionContext.Namespace NAMESPACE = ExtensionContext.Namespace.create(LocalDatabaseExtension.class);
+
+    @Override
+    public void beforeAll(ExtensionContext context) {
+        if (System.getProperty("theknife.db.url") != null) {
+            return;
+        }
+        context.getRoot().getStore(NAMESPACE).getOrComputeIfAbsent(LocalDatabase.class, key -> {
+            try {
+                LocalDatabase database = LocalDatabase.start(true);
+                System.setProperty("theknife.db.url", database.getUrl());
+                return database;
+            } catch (Exception e) {
+                throw new IllegalStateException("Unable to start the local database", e);
+            }
+        }, LocalDatabase.class);
+    }
+}